@@ -0,0 +1,277 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.jordanml.TransactionClassifier.BinaryDatasetCache;
+import com.jordanml.TransactionClassifier.ColumnarDataset;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.DatasetSplitter;
+import com.jordanml.TransactionClassifier.NormalizedClassifier;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.TransactionClassifier;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Instances;
+
+/**
+ * JMH benchmarks for the stages of the classification pipeline. Every
+ * benchmark runs on a dataset of numeric attributes with the given number of
+ * rows, attributes and fraud ratio, written once per trial to a temporary
+ * directory by SyntheticDatasetGenerator.
+ *
+ * The benchmarks need jmh-core and the jmh-generator-annprocess annotation
+ * processor on the class path at compile time; README.md next to this file
+ * lists the versions and the javac and java commands. Run main() (or the JMH
+ * runner with -prof gc) to get the throughput of every stage together with
+ * its allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PipelineBenchmark
+{
+    /**
+     * NUM_FOLDS - the number of folds the split benchmark creates
+     * EPOCHS - the training time of the network, kept short so larger datasets finish
+     * SEED - seed for the generated data
+     */
+    private static final int NUM_FOLDS = 5;
+    private static final int EPOCHS = 20;
+    private static final long SEED = 1;
+
+    /**
+     * rows - the number of instances in the generated dataset
+     * attributes - the number of numeric attributes, not counting the class
+     * fraudRatio - the share of instances in the minority (fraud) class
+     */
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"10", "30"})
+    public int attributes;
+
+    @Param({"0.5", "0.01"})
+    public double fraudRatio;
+
+    /**
+     * directory - the temporary directory of the trial
+     * arffPath - the generated ARFF file
+     * discPath - where the discretized data is written for reduct selection
+     * dataset - the generated data with the class index set
+     * reduct - the reduct found on the training part (M-All)
+     * reducedTrain - the training part with the reduct applied
+     * reducedTest - the test part with the reduct applied
+     * model - a network built on reducedTrain
+     */
+    private File directory;
+    private String arffPath;
+    private String discPath;
+    private Dataset dataset;
+    private BitSet reduct;
+    private Dataset reducedTrain;
+    private Dataset reducedTest;
+    private Classifier model;
+
+    /**
+     * Generates the data and prepares the input of every stage
+     *
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory("pipeline-bench").toFile();
+        arffPath = new File(directory, "data.arff").getPath();
+        discPath = new File(directory, "data_discretized.arff").getPath();
+
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(rows, attributes, Runtime.getRuntime().availableProcessors());
+        generator.setFraudRatio(fraudRatio);
+        generator.setSeed(SEED);
+        generator.write(arffPath);
+
+        dataset = new Dataset(arffPath);
+
+        if (!dataset.hasData())
+            throw new IOException("Could not load " + arffPath);
+
+        // Loading only reads the binary cache, it is written here for loadDataCached
+        BinaryDatasetCache.write(arffPath, ColumnarDataset.fromInstances(dataset.getInstances()));
+
+        dataset.setClassIndex(dataset.numAttributes() - 1);
+        dataset.setName("bench");
+        Instances generated = dataset.getInstances();
+
+        // The first 80% of the (unordered) rows train, the rest test
+        int trainRows = rows * 4 / 5;
+        Dataset train = new Dataset(new Instances(generated, 0, trainRows));
+        Dataset test = new Dataset(new Instances(generated, trainRows, rows - trainRows));
+
+        reduct = TransactionClassifier.findReducts(train, discPath, 1);
+
+        if (reduct == null)
+            throw new IllegalStateException("No reduct found on the generated data");
+
+        reducedTrain = TransactionClassifier.applyReduct(reduct, train);
+        reducedTest = TransactionClassifier.applyReduct(reduct, test);
+        reducedTrain.setClassIndex(reducedTrain.numAttributes() - 1);
+        reducedTest.setClassIndex(reducedTest.numAttributes() - 1);
+        model = buildNetwork(reducedTrain);
+    }
+
+    /**
+     * Removes the files of the trial
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        File files[] = directory.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+
+        directory.delete();
+    }
+
+    /**
+     * Per-invocation state that removes the binary cache, so loadData has to
+     * parse the ARFF file
+     */
+    @State(Scope.Thread)
+    public static class ColdCache
+    {
+        @Setup(Level.Invocation)
+        public void removeCache(PipelineBenchmark benchmark)
+        {
+            new File(BinaryDatasetCache.cachePath(benchmark.arffPath)).delete();
+        }
+    }
+
+    @Benchmark
+    public Dataset loadDataParsed(ColdCache cold)
+    {
+        return new Dataset(arffPath);
+    }
+
+    @Benchmark
+    public Dataset loadDataCached()
+    {
+        // The binary cache written by setUp is read instead of the ARFF file
+        return new Dataset(arffPath);
+    }
+
+    @Benchmark
+    public ArrayList<Dataset> splitData()
+    {
+        DatasetSplitter splitter = new DatasetSplitter(dataset);
+        splitter.initFolds(NUM_FOLDS);
+        splitter.splitData();
+
+        return splitter.getFolds();
+    }
+
+    @Benchmark
+    public Instances discretize()
+    {
+        // A new dataset each time, so the statistics the cut points are searched on are not cached
+        return new Dataset(dataset.getInstances()).discretize(null);
+    }
+
+    @Benchmark
+    public BitSet findReductsAll()
+    {
+        return TransactionClassifier.findReducts(new Dataset(dataset.getInstances()), discPath, 1);
+    }
+
+    @Benchmark
+    public BitSet findReductsDec()
+    {
+        return TransactionClassifier.findReducts(new Dataset(dataset.getInstances()), discPath, 2);
+    }
+
+    @Benchmark
+    public Dataset applyReduct() throws Exception
+    {
+        return TransactionClassifier.applyReduct(reduct, dataset);
+    }
+
+    @Benchmark
+    public Classifier buildClassifier() throws Exception
+    {
+        return buildNetwork(new Dataset(reducedTrain.getInstances()));
+    }
+
+    @Benchmark
+    public Evaluation evaluateModel() throws Exception
+    {
+        Evaluation eval = new Evaluation(reducedTest.getInstances());
+        eval.evaluateModel(model, reducedTest.getInstances());
+
+        return eval;
+    }
+
+    /**
+     * Builds a network the way trainNetwork does, with a shorter training time
+     *
+     * @param train the (reduced) training data
+     * @return the built network
+     * @throws Exception
+     */
+    private static Classifier buildNetwork(Dataset train) throws Exception
+    {
+        MultilayerPerceptron neuralNetwork = TransactionClassifier.createNetwork(0.3f, 0.2f);
+        neuralNetwork.setTrainingTime(EPOCHS);
+        TransactionClassifier.setHiddenLayers(neuralNetwork, train);
+
+        NormalizedClassifier network = new NormalizedClassifier(neuralNetwork);
+        network.buildClassifier(train.getNormalizedInputs());
+
+        return network;
+    }
+
+    /**
+     * Runs every benchmark with the GC profiler, which reports the allocation
+     * rate next to the throughput
+     *
+     * @param args optional benchmark name patterns
+     * @throws RunnerException
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(args.length > 0 ? args[0] : PipelineBenchmark.class.getSimpleName());
+        builder.addProfiler(GCProfiler.class);
+
+        new Runner(builder.build()).run();
+    }
+}
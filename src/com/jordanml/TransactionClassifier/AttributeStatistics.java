@@ -0,0 +1,369 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Summary statistics of a dataset, computed once and shared by every stage
+ * that would otherwise scan the rows itself: class counts for splitting,
+ * sorted orders for discretization and ranges for normalization.
+ *
+ * All attributes are processed in a single pass that runs one task per
+ * attribute. Statistics of nominal attributes are computed over the value
+ * indices. Missing values are left out of every statistic.
+ */
+public class AttributeStatistics
+{
+    /**
+     * numInstances - the number of instances the statistics were computed from
+     * classCounts - the number of instances of each class value, null if there is no nominal class
+     * min - the smallest value of each attribute (NaN if every value is missing)
+     * max - the largest value of each attribute (NaN if every value is missing)
+     * mean - the weighted mean of each attribute
+     * variance - the weighted (sample) variance of each attribute
+     * numPresent - the number of instances with a value for each attribute
+     * valueCounts - the number of instances with each value of a nominal attribute (null for numeric attributes)
+     * sortedIndices - the instance indices of each numeric attribute in ascending order of value,
+     *                 instances with a missing value last (null for nominal attributes)
+     */
+    private int numInstances;
+    private int classCounts[];
+    private double min[];
+    private double max[];
+    private double mean[];
+    private double variance[];
+    private int numPresent[];
+    private int valueCounts[][];
+    private int sortedIndices[][];
+
+    /**
+     * Constructor. Computes the statistics of the given data.
+     *
+     * @param source     the data
+     * @param numThreads the number of threads to use
+     * @throws Exception
+     */
+    public AttributeStatistics(final ColumnarDataset source, int numThreads) throws Exception
+    {
+        int numAttributes = source.numAttributes();
+
+        numInstances = source.numInstances();
+        min = new double[numAttributes];
+        max = new double[numAttributes];
+        mean = new double[numAttributes];
+        variance = new double[numAttributes];
+        numPresent = new int[numAttributes];
+        valueCounts = new int[numAttributes][];
+        sortedIndices = new int[numAttributes][];
+
+        if (source.classIndex() >= 0 && source.isByteCoded(source.classIndex()))
+            classCounts = source.classCounts();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, numAttributes)));
+        ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+
+        try
+        {
+            for (int col = 0; col < numAttributes; col++)
+            {
+                final int index = col;
+
+                tasks.add(pool.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        computeColumn(source, index);
+                    }
+                }));
+            }
+
+            for (Future<?> task : tasks)
+                task.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw (Exception) e.getCause();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Constructor for projected statistics (see project)
+     */
+    private AttributeStatistics()
+    {
+    }
+
+    /**
+     * Gets the statistics of the given attributes, in the given order. The
+     * statistics of each attribute are shared rather than computed again.
+     *
+     * @param indices the attribute index of each projected attribute
+     * @return the statistics of the projected attributes
+     */
+    public AttributeStatistics project(int indices[])
+    {
+        AttributeStatistics projected = new AttributeStatistics();
+
+        projected.numInstances = numInstances;
+        projected.classCounts = classCounts;
+        projected.min = new double[indices.length];
+        projected.max = new double[indices.length];
+        projected.mean = new double[indices.length];
+        projected.variance = new double[indices.length];
+        projected.numPresent = new int[indices.length];
+        projected.valueCounts = new int[indices.length][];
+        projected.sortedIndices = new int[indices.length][];
+
+        for (int col = 0; col < indices.length; col++)
+        {
+            projected.min[col] = min[indices[col]];
+            projected.max[col] = max[indices[col]];
+            projected.mean[col] = mean[indices[col]];
+            projected.variance[col] = variance[indices[col]];
+            projected.numPresent[col] = numPresent[indices[col]];
+            projected.valueCounts[col] = valueCounts[indices[col]];
+            projected.sortedIndices[col] = sortedIndices[indices[col]];
+        }
+
+        return projected;
+    }
+
+    /**
+     * Computes the statistics of the given data using every available processor
+     *
+     * @param source the data
+     * @return the statistics
+     * @throws Exception
+     */
+    public static AttributeStatistics compute(ColumnarDataset source) throws Exception
+    {
+        return new AttributeStatistics(source, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes the statistics of one attribute
+     *
+     * @param source the data
+     * @param col    the attribute index
+     */
+    private void computeColumn(ColumnarDataset source, int col)
+    {
+        double columnMin = Double.NaN;
+        double columnMax = Double.NaN;
+        double sumWeights = 0;
+        double columnMean = 0;
+        double sumSquares = 0;
+        int present = 0;
+        int counts[] = null;
+
+        if (source.getHeader().attribute(col).isNominal())
+            counts = new int[source.getHeader().attribute(col).numValues()];
+
+        for (int row = 0; row < numInstances; row++)
+        {
+            double value = source.value(row, col);
+
+            if (Double.isNaN(value))
+                continue;
+
+            // Weighted form of Welford's update, stable for large row counts
+            double weight = source.weight(row);
+            double delta = value - columnMean;
+            sumWeights += weight;
+            columnMean += weight / sumWeights * delta;
+            sumSquares += weight * delta * (value - columnMean);
+
+            if (present == 0 || value < columnMin)
+                columnMin = value;
+            if (present == 0 || value > columnMax)
+                columnMax = value;
+            if (counts != null)
+                counts[(int) value]++;
+
+            present++;
+        }
+
+        min[col] = columnMin;
+        max[col] = columnMax;
+        mean[col] = present == 0 ? Double.NaN : columnMean;
+        variance[col] = sumWeights > 1 ? sumSquares / (sumWeights - 1) : 0;
+        numPresent[col] = present;
+        valueCounts[col] = counts;
+
+        if (!source.isByteCoded(col))
+            sortedIndices[col] = sortIndices(source.getNumericColumn(col));
+    }
+
+    /**
+     * Sorts the indices of a column by value with a stable merge sort. Missing
+     * values (NaN) are sorted to the end.
+     *
+     * @param values the column
+     * @return the indices in ascending order of value
+     */
+    static int[] sortIndices(double values[])
+    {
+        int n = values.length;
+        double keys[] = values.clone();
+        int indices[] = new int[n];
+        double keyBuffer[] = new double[n];
+        int indexBuffer[] = new int[n];
+
+        for (int i = 0; i < n; i++)
+            indices[i] = i;
+
+        // Bottom-up merge sort on the keys and indices together, so comparisons read the keys sequentially
+        for (int width = 1; width < n; width *= 2)
+        {
+            for (int left = 0; left < n; left += 2 * width)
+            {
+                int middle = Math.min(left + width, n);
+                int right = Math.min(left + 2 * width, n);
+                int i = left, j = middle, k = left;
+
+                while (i < middle && j < right)
+                {
+                    if (Double.compare(keys[j], keys[i]) < 0)
+                    {
+                        keyBuffer[k] = keys[j];
+                        indexBuffer[k++] = indices[j++];
+                    }
+                    else
+                    {
+                        keyBuffer[k] = keys[i];
+                        indexBuffer[k++] = indices[i++];
+                    }
+                }
+
+                while (i < middle)
+                {
+                    keyBuffer[k] = keys[i];
+                    indexBuffer[k++] = indices[i++];
+                }
+
+                while (j < right)
+                {
+                    keyBuffer[k] = keys[j];
+                    indexBuffer[k++] = indices[j++];
+                }
+            }
+
+            double swapKeys[] = keys;
+            keys = keyBuffer;
+            keyBuffer = swapKeys;
+
+            int swapIndices[] = indices;
+            indices = indexBuffer;
+            indexBuffer = swapIndices;
+        }
+
+        return indices;
+    }
+
+    /**
+     * Gets the number of instances the statistics were computed from
+     *
+     * @return int - the number of instances
+     */
+    public int numInstances()
+    {
+        return numInstances;
+    }
+
+    /**
+     * Gets the number of instances of each class value. The array is not copied.
+     *
+     * @return the class counts, or null if the class is not set or not nominal
+     */
+    public int[] classCounts()
+    {
+        return classCounts;
+    }
+
+    /**
+     * Gets the smallest value of an attribute
+     *
+     * @param col the attribute index
+     * @return the minimum, NaN if every value is missing
+     */
+    public double min(int col)
+    {
+        return min[col];
+    }
+
+    /**
+     * Gets the largest value of an attribute
+     *
+     * @param col the attribute index
+     * @return the maximum, NaN if every value is missing
+     */
+    public double max(int col)
+    {
+        return max[col];
+    }
+
+    /**
+     * Gets the weighted mean of an attribute
+     *
+     * @param col the attribute index
+     * @return the mean, NaN if every value is missing
+     */
+    public double mean(int col)
+    {
+        return mean[col];
+    }
+
+    /**
+     * Gets the weighted sample variance of an attribute
+     *
+     * @param col the attribute index
+     * @return the variance
+     */
+    public double variance(int col)
+    {
+        return variance[col];
+    }
+
+    /**
+     * Gets the number of instances with a value for an attribute
+     *
+     * @param col the attribute index
+     * @return the number of instances whose value is not missing
+     */
+    public int numPresent(int col)
+    {
+        return numPresent[col];
+    }
+
+    /**
+     * Gets the number of instances with each value of a nominal attribute. The
+     * array is not copied.
+     *
+     * @param col the attribute index
+     * @return the value counts, or null for a numeric attribute
+     */
+    public int[] valueCounts(int col)
+    {
+        return valueCounts[col];
+    }
+
+    /**
+     * Gets the instance indices of a numeric attribute in ascending order of
+     * value. The first numPresent(col) indices are the instances with a value.
+     * The array is not copied.
+     *
+     * @param col the attribute index
+     * @return the sorted indices, or null for a nominal attribute
+     */
+    public int[] sortedIndices(int col)
+    {
+        return sortedIndices[col];
+    }
+}
@@ -0,0 +1,539 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Binary cache of a dataset file. The cache is stored next to the source file
+ * and holds the attribute schema followed by one block per attribute, so it can
+ * be loaded through a memory mapped file without parsing any rows.
+ *
+ * Layout (big endian):
+ *   int    MAGIC
+ *   int    VERSION
+ *   long   length of the source file when the cache was written
+ *   long   last modified time of the source file when the cache was written
+ *   int    number of bytes in the header, followed by the ARFF header (UTF-8)
+ *   int    class index
+ *   int    number of instances
+ *   byte   1 if a weight block follows the attribute blocks, 0 otherwise
+ *   blocks one per attribute in attribute order: a byte per instance for byte
+ *          coded attributes, a double per instance for all other attributes.
+ *          Double blocks (and the weight block) start on an 8 byte boundary.
+ */
+public class BinaryDatasetCache
+{
+    /**
+     * EXTENSION - appended to the source path to get the cache path
+     * MAGIC - identifies a cache file
+     * VERSION - the version of the layout
+     */
+    public static final String EXTENSION = ".jmlc";
+    public static final int MAGIC = 0x4A4D4C43;
+    public static final int VERSION = 1;
+
+    private static final FileChannel.MapMode READ = FileChannel.MapMode.READ_ONLY;
+    private static final FileChannel.MapMode WRITE = FileChannel.MapMode.READ_WRITE;
+
+    /**
+     * The position of every block in a cache file
+     */
+    static class Layout
+    {
+        /**
+         * header - empty Instances holding the attribute information and class index
+         * numInstances - the number of instances
+         * hasWeights - whether the file has a weight block
+         * blockOffsets - the file offset of each attribute block
+         * weightOffset - the file offset of the weight block
+         * size - the size of the file
+         */
+        Instances header;
+        int numInstances;
+        boolean hasWeights;
+        long blockOffsets[];
+        long weightOffset;
+        long size;
+
+        /**
+         * Computes the block positions
+         *
+         * @param header       the attribute information
+         * @param numInstances the number of instances
+         * @param hasWeights   whether the file has a weight block
+         * @param dataStart    the offset of the first byte after the fixed fields
+         */
+        Layout(Instances header, int numInstances, boolean hasWeights, long dataStart)
+        {
+            this.header = header;
+            this.numInstances = numInstances;
+            this.hasWeights = hasWeights;
+            blockOffsets = new long[header.numAttributes()];
+
+            long position = dataStart;
+            for (int col = 0; col < blockOffsets.length; col++)
+            {
+                if (ColumnarDataset.isByteCoded(header.attribute(col)))
+                {
+                    blockOffsets[col] = position;
+                    position += numInstances;
+                }
+                else
+                {
+                    blockOffsets[col] = align(position);
+                    position = blockOffsets[col] + (long) numInstances * Double.BYTES;
+                }
+            }
+
+            weightOffset = align(position);
+            size = hasWeights ? weightOffset + (long) numInstances * Double.BYTES : position;
+        }
+
+        /**
+         * Gets the next 8 byte boundary
+         *
+         * @param position the position
+         * @return the first multiple of 8 that is >= position
+         */
+        static long align(long position)
+        {
+            return (position + 7) & ~7L;
+        }
+    }
+
+    /**
+     * Gets the path of the cache for a source file
+     *
+     * @param sourcePath the path to the dataset file
+     * @return the path of the cache file
+     */
+    public static String cachePath(String sourcePath)
+    {
+        return sourcePath + EXTENSION;
+    }
+
+    /**
+     * Checks whether a source file has a cache that was written for its current
+     * length and modification time
+     *
+     * @param sourcePath the path to the dataset file
+     * @return boolean - true if the cache can be used in place of the source
+     */
+    public static boolean isValid(String sourcePath)
+    {
+        File source = new File(sourcePath);
+        File cache = new File(cachePath(sourcePath));
+
+        if (!source.isFile() || !cache.isFile())
+            return false;
+
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r"))
+        {
+            return file.readInt() == MAGIC && file.readInt() == VERSION && file.readLong() == source.length()
+                    && file.readLong() == source.lastModified();
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the fixed fields of a cache file and computes its layout
+     *
+     * @param file the open cache file, positioned at the start
+     * @return the layout
+     * @throws IOException
+     */
+    static Layout readLayout(RandomAccessFile file) throws IOException
+    {
+        if (file.readInt() != MAGIC || file.readInt() != VERSION)
+            throw new IOException("Not a dataset cache file");
+
+        // Source length and modification time
+        file.readLong();
+        file.readLong();
+
+        byte headerBytes[] = new byte[file.readInt()];
+        file.readFully(headerBytes);
+        Instances header = new Instances(new StringReader(new String(headerBytes, StandardCharsets.UTF_8)));
+        header.setClassIndex(file.readInt());
+        int numInstances = file.readInt();
+        boolean hasWeights = file.readByte() == 1;
+
+        return new Layout(header, numInstances, hasWeights, file.getFilePointer());
+    }
+
+    /**
+     * Loads the cache of a source file onto the heap. The caller is expected to
+     * check isValid first.
+     *
+     * @param sourcePath the path to the dataset file
+     * @return the cached data
+     * @throws IOException
+     */
+    public static ColumnarDataset read(String sourcePath) throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(cachePath(sourcePath), "r");
+                FileChannel channel = file.getChannel())
+        {
+            Layout layout = readLayout(file);
+            int numInstances = layout.numInstances;
+            ColumnarDataset columns = new ColumnarDataset(layout.header, numInstances);
+
+            // Bulk copy each mapped block into its column
+            for (int col = 0; col < columns.numAttributes(); col++)
+            {
+                if (columns.isByteCoded(col))
+                    mapBlock(channel, READ, layout.blockOffsets[col], numInstances, 1).get(columns.getNominalColumn(col));
+                else
+                    mapBlock(channel, READ, layout.blockOffsets[col], numInstances, Double.BYTES).asDoubleBuffer().get(columns.getNumericColumn(col));
+            }
+
+            if (layout.hasWeights)
+            {
+                double weights[] = new double[numInstances];
+                mapBlock(channel, READ, layout.weightOffset, numInstances, Double.BYTES).asDoubleBuffer().get(weights);
+                columns.setWeights(weights);
+            }
+
+            return columns;
+        }
+    }
+
+    /**
+     * Maps the cache of a source file without copying it onto the heap. The
+     * caller is expected to check isValid first.
+     *
+     * @param sourcePath the path to the dataset file
+     * @return the cached data, backed by the mapped file
+     * @throws IOException
+     */
+    public static OffHeapDataset map(String sourcePath) throws IOException
+    {
+        return mapCache(cachePath(sourcePath));
+    }
+
+    /**
+     * Maps a cache file that may be stored anywhere (see writeStreaming)
+     *
+     * @param cachePath the path to the cache file
+     * @return the cached data, backed by the mapped file
+     * @throws IOException
+     */
+    public static OffHeapDataset mapCache(String cachePath) throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(cachePath, "r");
+                FileChannel channel = file.getChannel())
+        {
+            Layout layout = readLayout(file);
+            int numAttributes = layout.header.numAttributes();
+            int numInstances = layout.numInstances;
+            ByteBuffer nominalColumns[] = new ByteBuffer[numAttributes];
+            DoubleBuffer numericColumns[] = new DoubleBuffer[numAttributes];
+            DoubleBuffer weights = null;
+
+            // Mappings stay valid after the channel is closed
+            for (int col = 0; col < numAttributes; col++)
+            {
+                if (ColumnarDataset.isByteCoded(layout.header.attribute(col)))
+                    nominalColumns[col] = mapBlock(channel, READ, layout.blockOffsets[col], numInstances, 1);
+                else
+                    numericColumns[col] = mapBlock(channel, READ, layout.blockOffsets[col], numInstances, Double.BYTES).asDoubleBuffer();
+            }
+
+            if (layout.hasWeights)
+                weights = mapBlock(channel, READ, layout.weightOffset, numInstances, Double.BYTES).asDoubleBuffer();
+
+            return new OffHeapDataset(layout.header, numInstances, nominalColumns, numericColumns, weights);
+        }
+    }
+
+    /**
+     * Maps a single block. Each block is mapped separately, so only a single block
+     * (not the whole file) is limited to 2GB.
+     *
+     * @param channel      the open cache file
+     * @param mode         the mapping mode
+     * @param offset       the file offset of the block
+     * @param numInstances the number of values in the block
+     * @param valueBytes   the size of each value
+     * @return the mapped block
+     * @throws IOException
+     */
+    private static MappedByteBuffer mapBlock(FileChannel channel, FileChannel.MapMode mode, long offset, int numInstances, int valueBytes) throws IOException
+    {
+        return channel.map(mode, offset, (long) numInstances * valueBytes);
+    }
+
+    /**
+     * Writes the fixed fields of a cache file
+     *
+     * @param out          the output
+     * @param source       the dataset file
+     * @param header       the attribute information
+     * @param numInstances the number of instances
+     * @param hasWeights   whether the file has a weight block
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    private static long writeFixedFields(DataOutput out, File source, Instances header, int numInstances, boolean hasWeights) throws IOException
+    {
+        byte headerBytes[] = new Instances(header, 0).toString().getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(source.length());
+        out.writeLong(source.lastModified());
+        out.writeInt(headerBytes.length);
+        out.write(headerBytes);
+        out.writeInt(header.classIndex());
+        out.writeInt(numInstances);
+        out.writeByte(hasWeights ? 1 : 0);
+
+        return 4 + 4 + 8 + 8 + 4 + headerBytes.length + 4 + 4 + 1;
+    }
+
+    /**
+     * Writes the cache for a source file from data already on the heap. The cache
+     * is written to a temporary file of its own first and then moved over the
+     * cache, so a partially written cache is never used and processes writing the
+     * same cache do not write into each other's file.
+     *
+     * @param sourcePath the path to the dataset file the data was loaded from
+     * @param columns    the data
+     * @throws IOException
+     */
+    public static void write(String sourcePath, ColumnarDataset columns) throws IOException
+    {
+        File source = new File(sourcePath);
+        File temp = createTemp(cachePath(sourcePath));
+        double weights[] = columns.getWeights();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)))
+        {
+            long dataStart = writeFixedFields(out, source, columns.getHeader(), columns.numInstances(), weights != null);
+            Layout layout = new Layout(columns.getHeader(), columns.numInstances(), weights != null, dataStart);
+            long position = dataStart;
+
+            for (int col = 0; col < columns.numAttributes(); col++)
+            {
+                position = pad(out, position, layout.blockOffsets[col]);
+
+                if (columns.isByteCoded(col))
+                {
+                    out.write(columns.getNominalColumn(col));
+                    position += columns.numInstances();
+                }
+                else
+                {
+                    for (double value : columns.getNumericColumn(col))
+                        out.writeDouble(value);
+                    position += (long) columns.numInstances() * Double.BYTES;
+                }
+            }
+
+            if (weights != null)
+            {
+                pad(out, position, layout.weightOffset);
+                for (double weight : weights)
+                    out.writeDouble(weight);
+            }
+        }
+        catch (IOException e)
+        {
+            temp.delete();
+            throw e;
+        }
+
+        replace(temp, new File(cachePath(sourcePath)));
+    }
+
+    /**
+     * Writes the cache for a source file without loading the file onto the heap.
+     * The file is read twice in chunks: once to count the instances and once to
+     * write the values into the mapped cache file.
+     *
+     * @param sourcePath the path to the ARFF or CSV file
+     * @param chunkSize  the number of instances per chunk
+     * @param numThreads the number of threads parsing chunks
+     * @throws Exception
+     */
+    public static void writeStreaming(String sourcePath, int chunkSize, int numThreads) throws Exception
+    {
+        writeStreaming(sourcePath, cachePath(sourcePath), chunkSize, numThreads);
+    }
+
+    /**
+     * Writes the cache of a source file to the given path instead of next to the
+     * source, e.g. to a work directory. The written cache can be mapped with
+     * mapCache.
+     *
+     * @param sourcePath the path to the ARFF or CSV file
+     * @param cachePath  the path to write the cache to
+     * @param chunkSize  the number of instances per chunk
+     * @param numThreads the number of threads parsing chunks
+     * @throws Exception
+     */
+    public static void writeStreaming(String sourcePath, String cachePath, final int chunkSize, int numThreads) throws Exception
+    {
+        File source = new File(sourcePath);
+        final long counts[] = new long[2];
+
+        // First pass: count instances and check for weights
+        ChunkedDatasetReader counter = new ChunkedDatasetReader(sourcePath, chunkSize, numThreads);
+        counter.read(new ChunkedDatasetReader.ChunkConsumer()
+        {
+            public void accept(int chunkIndex, Instances chunk)
+            {
+                boolean weighted = false;
+                for (int i = 0; i < chunk.numInstances() && !weighted; i++)
+                    weighted = chunk.instance(i).weight() != 1.0;
+
+                synchronized (counts)
+                {
+                    counts[0] += chunk.numInstances();
+                    if (weighted)
+                        counts[1] = 1;
+                }
+            }
+        });
+
+        if (counts[0] > Integer.MAX_VALUE)
+            throw new IOException("Too many instances for a cache file");
+
+        Instances header = counter.getStructure();
+        int numInstances = (int) counts[0];
+        boolean hasWeights = counts[1] == 1;
+        File temp = createTemp(cachePath);
+
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw"); FileChannel channel = file.getChannel())
+        {
+            file.setLength(0);
+            long dataStart = writeFixedFields(file, source, header, numInstances, hasWeights);
+            final Layout layout = new Layout(header, numInstances, hasWeights, dataStart);
+            file.setLength(layout.size);
+
+            final ByteBuffer nominalColumns[] = new ByteBuffer[header.numAttributes()];
+            final DoubleBuffer numericColumns[] = new DoubleBuffer[header.numAttributes()];
+            final DoubleBuffer weights = hasWeights ? mapBlock(channel, WRITE, layout.weightOffset, numInstances, Double.BYTES).asDoubleBuffer() : null;
+
+            for (int col = 0; col < header.numAttributes(); col++)
+            {
+                if (ColumnarDataset.isByteCoded(header.attribute(col)))
+                    nominalColumns[col] = mapBlock(channel, WRITE, layout.blockOffsets[col], numInstances, 1);
+                else
+                    numericColumns[col] = mapBlock(channel, WRITE, layout.blockOffsets[col], numInstances, Double.BYTES).asDoubleBuffer();
+            }
+
+            // Second pass: every chunk but the last is full, so a chunk's first row is chunkIndex * chunkSize
+            ChunkedDatasetReader writer = new ChunkedDatasetReader(sourcePath, chunkSize, numThreads);
+            writer.setStructure(header);
+            writer.read(new ChunkedDatasetReader.ChunkConsumer()
+            {
+                public void accept(int chunkIndex, Instances chunk)
+                {
+                    int firstRow = chunkIndex * chunkSize;
+
+                    for (int i = 0; i < chunk.numInstances(); i++)
+                    {
+                        Instance current = chunk.instance(i);
+                        int row = firstRow + i;
+
+                        for (int col = 0; col < nominalColumns.length; col++)
+                        {
+                            if (nominalColumns[col] != null)
+                                nominalColumns[col].put(row, current.isMissing(col) ? ColumnarDataset.MISSING_CODE : (byte) current.value(col));
+                            else
+                                numericColumns[col].put(row, current.value(col));
+                        }
+
+                        if (weights != null)
+                            weights.put(row, current.weight());
+                    }
+                }
+            });
+        }
+        catch (Exception e)
+        {
+            temp.delete();
+            throw e;
+        }
+
+        replace(temp, new File(cachePath));
+    }
+
+    /**
+     * Writes zero bytes up to the given offset
+     *
+     * @param out      the stream
+     * @param position the current position in the file
+     * @param offset   the offset to pad to
+     * @return the new position
+     * @throws IOException
+     */
+    private static long pad(DataOutputStream out, long position, long offset) throws IOException
+    {
+        for (; position < offset; position++)
+            out.writeByte(0);
+
+        return position;
+    }
+
+    /**
+     * Creates a uniquely named temporary file next to the cache file, so the
+     * final move stays on the same file system
+     *
+     * @param cachePath the path to the cache file
+     * @return the empty temporary file
+     * @throws IOException
+     */
+    private static File createTemp(String cachePath) throws IOException
+    {
+        File cache = new File(cachePath).getAbsoluteFile();
+
+        return Files.createTempFile(cache.getParentFile().toPath(), cache.getName() + ".", ".tmp").toFile();
+    }
+
+    /**
+     * Moves a temporary file over the cache file. The move is atomic where the
+     * file system supports it, so a reader sees either the old or the new cache.
+     *
+     * @param temp  the fully written temporary file
+     * @param cache the cache file
+     * @throws IOException
+     */
+    private static void replace(File temp, File cache) throws IOException
+    {
+        try
+        {
+            Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            temp.delete();
+            throw new IOException("Could not write " + cache.getPath() + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Two stage classifier. The first stage is a lookup table of rough set decision
+ * rules induced on the discretized reduct attributes. Instances that match a
+ * rule with enough support and confidence are classified by the rule, all other
+ * instances are passed on to the neural network.
+ *
+ * The classifier expects to be trained on data that has already had the reduct
+ * applied (see TransactionClassifier.applyReduct).
+ */
+public class CascadeClassifier extends AbstractClassifier
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * DEFAULT_MIN_SUPPORT - the minimum number of training instances that must match a rule
+     */
+    public static final int DEFAULT_MIN_SUPPORT = 10;
+
+    /**
+     * network - the neural network used for instances that are not covered by a rule
+     * transformer - bins instances into the discretized values used by the rules
+     * ruleKeys - the sorted pattern keys of the rules
+     * ruleDistributions - the class distribution of each rule, parallel to ruleKeys
+     * radices - the place value of each transformer output in a pattern key
+     * bins - per-thread buffer for the bins of the instance being classified
+     * minConfidence - the fraction of matching training instances that must share the rule's class
+     * minSupport - the minimum number of training instances that must match a rule
+     * weightScale - the number of training instances one unit of instance weight stands for
+     * ruleCount - the number of instances classified by the first stage
+     * networkCount - the number of instances classified by the neural network
+     * statistics - the statistics of the training data, used by the discretizer (not serialized)
+     */
+    private MultilayerPerceptron network;
+    private FeatureTransformer transformer;
+    private long ruleKeys[] = new long[0];
+    private double ruleDistributions[][] = new double[0][];
+    private long radices[];
+    private transient ThreadLocal<int[]> bins;
+    private double minConfidence;
+    private int minSupport;
+    private double weightScale = 1;
+    private AtomicLong ruleCount = new AtomicLong();
+    private AtomicLong networkCount = new AtomicLong();
+    private transient AttributeStatistics statistics;
+
+    /**
+     * Constructor
+     *
+     * @param network       the (unbuilt) neural network to use as the second stage
+     * @param minConfidence the minimum confidence for a rule to be used (0.0 - 1.0)
+     */
+    public CascadeClassifier(MultilayerPerceptron network, double minConfidence)
+    {
+        this(network, minConfidence, DEFAULT_MIN_SUPPORT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param network       the (unbuilt) neural network to use as the second stage
+     * @param minConfidence the minimum confidence for a rule to be used (0.0 - 1.0)
+     * @param minSupport    the minimum number of training instances that must match a rule
+     */
+    public CascadeClassifier(MultilayerPerceptron network, double minConfidence, int minSupport)
+    {
+        this.network = network;
+        this.minConfidence = minConfidence;
+        this.minSupport = minSupport;
+    }
+
+    /**
+     * Sets precomputed statistics of the training data so building does not
+     * compute them again. Ignored if they do not match the training data.
+     *
+     * @param statistics the statistics of the data passed to buildClassifier
+     */
+    public void setStatistics(AttributeStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Sets the number of training instances one unit of instance weight stands
+     * for, so rule support is still counted in instances when the training data
+     * was collapsed into distinct rows with normalized weights (see
+     * ProjectedDataset.materializeDistinct). Defaults to 1.
+     *
+     * @param weightScale the number of instances per unit of weight
+     */
+    public void setWeightScale(double weightScale)
+    {
+        this.weightScale = weightScale;
+    }
+
+    /**
+     * Induces the decision rules from the discretized training data and builds the
+     * neural network.
+     *
+     * @param data the training data (reduct already applied)
+     * @throws Exception
+     */
+    @Override
+    public void buildClassifier(Instances data) throws Exception
+    {
+        if (statistics == null || statistics.numInstances() != data.numInstances())
+            statistics = AttributeStatistics.compute(ColumnarDataset.fromInstances(data));
+
+        PresortedDiscretize discretizer = new PresortedDiscretize(statistics);
+        discretizer.computeCutPoints(data);
+
+        // Every non-class attribute of the reduced data is kept
+        int keep[] = new int[data.numAttributes() - 1];
+        int index = 0;
+        for (int i = 0; i < data.numAttributes(); i++)
+        {
+            if (i != data.classIndex())
+                keep[index++] = i;
+        }
+        transformer = FeatureTransformer.compile(discretizer, keep);
+
+        buildRules(data);
+        network.buildClassifier(data);
+        resetStageCounts();
+        statistics = null;
+    }
+
+    /**
+     * Counts the class values for each distinct discretized pattern and keeps the
+     * patterns that satisfy the support and confidence thresholds.
+     *
+     * @param data the training data (reduct already applied)
+     */
+    private void buildRules(Instances data)
+    {
+        int numClasses = data.numClasses();
+        int numOutputs = transformer.numOutputs();
+        Map<Long, double[]> counts = new HashMap<Long, double[]>();
+        int instanceBins[] = new int[numOutputs];
+
+        ruleKeys = new long[0];
+        ruleDistributions = new double[0][];
+        radices = new long[numOutputs];
+
+        // Mixed radix place values for each attribute, one extra value is reserved for missing values
+        long placeValue = 1;
+        for (int i = 0; i < numOutputs; i++)
+        {
+            radices[i] = placeValue;
+            long numValues = transformer.numBins(i) + 1;
+
+            if (placeValue > Long.MAX_VALUE / numValues)
+            {
+                System.out.println("Too many distinct patterns for rule table, all instances will use the neural network");
+                return;
+            }
+            placeValue *= numValues;
+        }
+
+        for (int i = 0; i < data.numInstances(); i++)
+        {
+            Instance current = data.instance(i);
+            transformer.bin(current, instanceBins);
+            long key = patternKey(instanceBins);
+            double classCounts[] = counts.get(key);
+
+            if (classCounts == null)
+            {
+                classCounts = new double[numClasses];
+                counts.put(key, classCounts);
+            }
+
+            classCounts[(int) current.classValue()] += current.weight();
+        }
+
+        Map<Long, double[]> rules = new TreeMap<Long, double[]>();
+
+        for (Map.Entry<Long, double[]> entry : counts.entrySet())
+        {
+            double classCounts[] = entry.getValue();
+            double total = 0;
+            double max = 0;
+
+            for (double count : classCounts)
+            {
+                total += count;
+                max = Math.max(max, count);
+            }
+
+            if (total * weightScale >= minSupport && max / total >= minConfidence)
+            {
+                for (int j = 0; j < classCounts.length; j++)
+                    classCounts[j] /= total;
+
+                rules.put(entry.getKey(), classCounts);
+            }
+        }
+
+        // Sorted parallel arrays so classification can binary search without boxing
+        ruleKeys = new long[rules.size()];
+        ruleDistributions = new double[rules.size()][];
+        int index = 0;
+        for (Map.Entry<Long, double[]> entry : rules.entrySet())
+        {
+            ruleKeys[index] = entry.getKey();
+            ruleDistributions[index] = entry.getValue();
+            index++;
+        }
+
+        System.out.println("Induced " + rules.size() + " rules from " + counts.size() + " distinct patterns");
+    }
+
+    /**
+     * Computes the lookup key for the bins of an instance
+     *
+     * @param instanceBins the bins produced by the transformer
+     * @return the key identifying the instance's pattern
+     */
+    private long patternKey(int instanceBins[])
+    {
+        long key = 0;
+
+        for (int i = 0; i < radices.length; i++)
+            key += (instanceBins[i] + 1) * radices[i];
+
+        return key;
+    }
+
+    /**
+     * Classifies the instance with a rule if one applies, otherwise uses the neural
+     * network.
+     *
+     * @param instance the instance to classify (reduct already applied)
+     * @return the class distribution for the instance
+     * @throws Exception
+     */
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception
+    {
+        if (ruleKeys.length > 0)
+        {
+            int instanceBins[] = threadBins();
+            transformer.bin(instance, instanceBins);
+            int rule = Arrays.binarySearch(ruleKeys, patternKey(instanceBins));
+
+            if (rule >= 0)
+            {
+                ruleCount.incrementAndGet();
+                return ruleDistributions[rule].clone();
+            }
+        }
+
+        networkCount.incrementAndGet();
+        return network.distributionForInstance(instance);
+    }
+
+    /**
+     * Gets the bin buffer of the current thread
+     *
+     * @return the buffer
+     */
+    private int[] threadBins()
+    {
+        if (bins == null)
+        {
+            synchronized (this)
+            {
+                if (bins == null)
+                    bins = new ThreadLocal<int[]>();
+            }
+        }
+
+        int buffer[] = bins.get();
+        if (buffer == null)
+        {
+            buffer = new int[transformer.numOutputs()];
+            bins.set(buffer);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Gets the compiled feature transformer used by the rule stage. Its indices
+     * refer to the reduced data the classifier was trained on.
+     *
+     * @return the transformer, or null if the classifier has not been built
+     */
+    public FeatureTransformer getTransformer()
+    {
+        return transformer;
+    }
+
+    /**
+     * Resets the number of instances classified by each stage
+     */
+    public void resetStageCounts()
+    {
+        ruleCount.set(0);
+        networkCount.set(0);
+    }
+
+    /**
+     * Gets the number of instances classified by the rule stage
+     *
+     * @return the number of instances classified by a rule
+     */
+    public long getRuleCount()
+    {
+        return ruleCount.get();
+    }
+
+    /**
+     * Gets the number of instances classified by the neural network
+     *
+     * @return the number of instances classified by the neural network
+     */
+    public long getNetworkCount()
+    {
+        return networkCount.get();
+    }
+
+    /**
+     * Gets the number of rules in the first stage
+     *
+     * @return the number of rules
+     */
+    public int numRules()
+    {
+        return ruleKeys.length;
+    }
+
+    /**
+     * Describes the fraction of instances that were handled by each stage
+     *
+     * @return String - the stage report
+     */
+    public String getStageReport()
+    {
+        long rule = getRuleCount();
+        long net = getNetworkCount();
+        long total = rule + net;
+        double ruleFraction = total == 0 ? 0.0 : (double) rule / total;
+        double netFraction = total == 0 ? 0.0 : (double) net / total;
+
+        return String.format("Rule stage: %d (%.4f)%nNetwork stage: %d (%.4f)%n", rule, ruleFraction, net, netFraction);
+    }
+}
@@ -0,0 +1,501 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Reads an ARFF or CSV file in fixed-size chunks of instances and hands each
+ * chunk to a consumer as soon as it has been parsed. Only a bounded number of
+ * chunks is held in memory at a time, so files larger than the heap can be
+ * processed as long as the consumer does not keep every chunk.
+ *
+ * With more than one thread, chunks are parsed concurrently and may reach the
+ * consumer out of order; the chunk index gives the original order.
+ */
+public class ChunkedDatasetReader
+{
+    /**
+     * Receives the chunks of a dataset
+     */
+    public interface ChunkConsumer
+    {
+        /**
+         * Called once for every chunk. Called concurrently when the reader uses
+         * more than one thread.
+         *
+         * @param chunkIndex the position of the chunk in the file (0-indexed)
+         * @param chunk      the instances of the chunk
+         * @throws Exception
+         */
+        void accept(int chunkIndex, Instances chunk) throws Exception;
+    }
+
+    /**
+     * DEFAULT_CHUNK_SIZE - the default number of instances per chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    /**
+     * path - the path to the ARFF or CSV file
+     * chunkSize - the number of instances per chunk
+     * numThreads - the number of threads parsing chunks
+     * classIndex - the class index set on each chunk, -1 for the last attribute
+     * structure - the attribute information of the file
+     * headerText - the ARFF header (ending with the @data line) prepended to each chunk before parsing
+     * csv - whether the file is a CSV file
+     */
+    private String path;
+    private int chunkSize;
+    private int numThreads;
+    private int classIndex = -1;
+    private Instances structure;
+    private String headerText;
+    private boolean csv;
+
+    /**
+     * Constructor
+     *
+     * @param path       the path to the ARFF or CSV file
+     * @param chunkSize  the number of instances per chunk
+     * @param numThreads the number of threads parsing chunks (1 parses on the calling thread, in order)
+     */
+    public ChunkedDatasetReader(String path, int chunkSize, int numThreads)
+    {
+        this.path = path;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.numThreads = Math.max(1, numThreads);
+        this.csv = path.toLowerCase().endsWith(".csv");
+    }
+
+    /**
+     * Sets the class index of every chunk
+     *
+     * @param classIndex the class index, or -1 for the last attribute
+     */
+    public void setClassIndex(int classIndex)
+    {
+        this.classIndex = classIndex;
+    }
+
+    /**
+     * Sets the attribute information for a CSV file. Without it, the attribute
+     * types and nominal values are inferred from the whole file the way
+     * CSVLoader infers them, which reads the file twice before the first chunk.
+     *
+     * @param structure Instances providing the attribute information
+     */
+    public void setStructure(Instances structure)
+    {
+        this.structure = new Instances(structure, 0);
+        this.headerText = this.structure.toString();
+    }
+
+    /**
+     * Gets the attribute information of the file. Only known after read was
+     * called unless it was set.
+     *
+     * @return the empty Instances holding the attribute information, or null if not known yet
+     */
+    public Instances getStructure()
+    {
+        if (structure != null)
+            setChunkClassIndex(structure);
+
+        return structure;
+    }
+
+    /**
+     * Reads the whole file and passes each chunk to the consumer
+     *
+     * @param consumer the consumer of the chunks
+     * @return the number of chunks read
+     * @throws Exception the first exception thrown while parsing or consuming a chunk
+     */
+    public int read(final ChunkConsumer consumer) throws Exception
+    {
+        ExecutorService pool = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+        // Limits the number of chunks held in memory
+        final Semaphore inFlight = new Semaphore(numThreads * 2);
+        final Exception failure[] = new Exception[1];
+        int chunkIndex = 0;
+
+        if (csv && structure == null)
+            inferStructure();
+
+        try (BufferedReader reader = openReader())
+        {
+            if (csv)
+                readCsvHeader(reader);
+            else
+                readArffHeader(reader);
+
+            ArrayList<String> lines = new ArrayList<String>(chunkSize);
+            String line;
+            boolean done = false;
+
+            while (!done)
+            {
+                line = reader.readLine();
+                done = line == null;
+
+                // "%" starts a comment in ARFF files only, in a CSV file it is data
+                if (!done && !line.trim().isEmpty() && (csv || !line.startsWith("%")))
+                    lines.add(csv ? toArffRow(line) : line);
+
+                if (lines.size() == chunkSize || (done && !lines.isEmpty()))
+                {
+                    final String text = joinLines(lines);
+                    final int index = chunkIndex++;
+                    lines = new ArrayList<String>(chunkSize);
+
+                    synchronized (failure)
+                    {
+                        if (failure[0] != null)
+                            break;
+                    }
+
+                    if (pool == null)
+                    {
+                        consumer.accept(index, parseChunk(text));
+                        continue;
+                    }
+
+                    inFlight.acquire();
+                    pool.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                consumer.accept(index, parseChunk(text));
+                            }
+                            catch (Exception e)
+                            {
+                                synchronized (failure)
+                                {
+                                    if (failure[0] == null)
+                                        failure[0] = e;
+                                }
+                            }
+                            finally
+                            {
+                                inFlight.release();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+        finally
+        {
+            if (pool != null)
+            {
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        if (failure[0] != null)
+            throw failure[0];
+
+        return chunkIndex;
+    }
+
+    /**
+     * Opens the file for reading
+     *
+     * @return the buffered reader
+     * @throws IOException
+     */
+    private BufferedReader openReader() throws IOException
+    {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Reads the ARFF header up to and including the @data line
+     *
+     * @param reader the reader positioned at the start of the file
+     * @throws IOException
+     */
+    private void readArffHeader(BufferedReader reader) throws IOException
+    {
+        StringBuilder header = new StringBuilder();
+        String line;
+
+        while ((line = reader.readLine()) != null)
+        {
+            header.append(line).append('\n');
+
+            if (line.trim().toLowerCase().startsWith("@data"))
+                break;
+        }
+
+        if (structure == null)
+        {
+            headerText = header.toString();
+            structure = new Instances(new StringReader(headerText));
+        }
+    }
+
+    /**
+     * Reads the line holding the CSV column names
+     *
+     * @param reader the reader positioned at the start of the file
+     * @return the header line
+     * @throws IOException
+     */
+    private String readCsvHeader(BufferedReader reader) throws IOException
+    {
+        String line;
+
+        while ((line = reader.readLine()) != null)
+        {
+            if (!line.trim().isEmpty())
+                return line;
+        }
+
+        throw new IOException("No header in " + path);
+    }
+
+    /**
+     * Infers the attribute information of a CSV file from all of its rows, the
+     * way CSVLoader does: the first value of a column makes it numeric or
+     * nominal, a numeric column with a later value that is not a number becomes
+     * a string column, as does a column without values. Nominal values are kept
+     * in order of appearance. The first pass finds the types and the second
+     * collects the nominal values, so the values of other columns are never
+     * held in memory.
+     *
+     * @throws IOException
+     */
+    private void inferStructure() throws IOException
+    {
+        ArrayList<String> names;
+        int types[];
+
+        try (BufferedReader reader = openReader())
+        {
+            names = csvFields(readCsvHeader(reader));
+            types = new int[names.size()];
+            Arrays.fill(types, -1);
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                ArrayList<String> fields = csvFields(line);
+
+                for (int i = 0; i < Math.min(fields.size(), types.length); i++)
+                {
+                    String value = fields.get(i);
+
+                    if (value == null || types[i] == Attribute.NOMINAL || types[i] == Attribute.STRING)
+                        continue;
+
+                    if (types[i] == -1)
+                        types[i] = isNumber(value) ? Attribute.NUMERIC : Attribute.NOMINAL;
+                    else if (!isNumber(value))
+                        types[i] = Attribute.STRING;
+                }
+            }
+        }
+
+        ArrayList<LinkedHashSet<String>> values = new ArrayList<LinkedHashSet<String>>();
+        for (int i = 0; i < names.size(); i++)
+            values.add(types[i] == Attribute.NOMINAL ? new LinkedHashSet<String>() : null);
+
+        try (BufferedReader reader = openReader())
+        {
+            readCsvHeader(reader);
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                ArrayList<String> fields = csvFields(line);
+
+                for (int i = 0; i < Math.min(fields.size(), types.length); i++)
+                {
+                    if (types[i] == Attribute.NOMINAL && fields.get(i) != null)
+                        values.get(i).add(fields.get(i));
+                }
+            }
+        }
+
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        for (int i = 0; i < names.size(); i++)
+        {
+            String name = names.get(i) == null ? "?" : names.get(i);
+
+            if (types[i] == Attribute.NUMERIC)
+                attributes.add(new Attribute(name));
+            else if (types[i] == Attribute.NOMINAL)
+                attributes.add(new Attribute(name, new ArrayList<String>(values.get(i))));
+            else
+                attributes.add(new Attribute(name, (ArrayList<String>) null));
+        }
+
+        // CSVLoader names the relation after the file
+        String relation = new File(path).getName();
+        relation = relation.substring(0, relation.length() - ".csv".length());
+
+        setStructure(new Instances(relation, attributes, 0));
+    }
+
+    /**
+     * Checks whether a CSV value is read as a number
+     *
+     * @param value the value
+     * @return boolean - true if the value parses as a double
+     */
+    private static boolean isNumber(String value)
+    {
+        try
+        {
+            Double.parseDouble(value);
+            return true;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Parses the lines of a chunk with the file's structure. CSV rows are valid
+     * ARFF data rows, so both formats are parsed by WEKA's ARFF reader.
+     *
+     * @param text the data lines of the chunk
+     * @return the parsed instances
+     * @throws IOException
+     */
+    private Instances parseChunk(String text) throws IOException
+    {
+        Instances chunk = new Instances(new StringReader(headerText + text));
+        setChunkClassIndex(chunk);
+
+        return chunk;
+    }
+
+    /**
+     * Sets the configured class index on a chunk
+     *
+     * @param chunk the chunk
+     */
+    private void setChunkClassIndex(Instances chunk)
+    {
+        if (classIndex >= 0)
+            chunk.setClassIndex(classIndex);
+        else
+            chunk.setClassIndex(chunk.numAttributes() - 1);
+    }
+
+    /**
+     * Rewrites a CSV row so WEKA's ARFF reader parses it the way CSVLoader
+     * would: empty fields become missing values and fields holding characters
+     * that ARFF treats specially (comments, quotes, braces, spaces) are quoted.
+     *
+     * @param line the CSV row
+     * @return the ARFF data row
+     */
+    static String toArffRow(String line)
+    {
+        ArrayList<String> fields = csvFields(line);
+        StringBuilder row = new StringBuilder(line.length() + 8);
+
+        for (int i = 0; i < fields.size(); i++)
+        {
+            if (i > 0)
+                row.append(',');
+
+            row.append(fields.get(i) == null ? "?" : Utils.quote(fields.get(i)));
+        }
+
+        return row.toString();
+    }
+
+    /**
+     * Splits a CSV row into its values. A field may be enclosed in double or
+     * single quotes, inside which a doubled quote stands for the quote itself.
+     * Text between a closing quote and the next comma is ignored and unquoted
+     * fields are trimmed.
+     *
+     * @param line the CSV row
+     * @return the values, null for an empty or "?" field
+     */
+    static ArrayList<String> csvFields(String line)
+    {
+        ArrayList<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        char quote = 0;
+        boolean quoted = false;
+
+        for (int i = 0; i <= line.length(); i++)
+        {
+            boolean end = i == line.length();
+            char c = end ? ',' : line.charAt(i);
+
+            if (quote != 0 && !end)
+            {
+                if (c != quote)
+                    field.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == quote)
+                    field.append(line.charAt(++i));
+                else
+                    quote = 0;
+            }
+            else if (c == ',')
+            {
+                String value = quoted ? field.toString() : field.toString().trim();
+                fields.add(!quoted && (value.isEmpty() || value.equals("?")) ? null : value);
+
+                field.setLength(0);
+                quote = 0;
+                quoted = false;
+            }
+            else if ((c == '"' || c == '\'') && !quoted && field.toString().trim().isEmpty())
+            {
+                quote = c;
+                quoted = true;
+                field.setLength(0);
+            }
+            else if (!quoted)
+            {
+                field.append(c);
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * Joins lines into a single newline separated String
+     *
+     * @param lines the lines
+     * @return the joined text
+     */
+    private static String joinLines(ArrayList<String> lines)
+    {
+        StringBuilder text = new StringBuilder();
+
+        for (String line : lines)
+            text.append(line).append('\n');
+
+        return text.toString();
+    }
+}
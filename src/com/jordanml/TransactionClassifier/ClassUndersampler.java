@@ -0,0 +1,131 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.Random;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Reduces the majority class of a training set to a fixed ratio of the other
+ * classes. The number of instances of each class to keep and to drop is worked
+ * out first, and the rows are then assigned to the kept and dropped groups by
+ * the same stratified assignment that splits folds, so the result has exactly
+ * the required class counts. Rows keep their original order, and the same seed
+ * and fold always select the same rows.
+ */
+public class ClassUndersampler
+{
+    /**
+     * KEPT - the quota group of the kept instances
+     * DROPPED - the quota group of the dropped instances
+     */
+    public static final int KEPT = 0;
+    public static final int DROPPED = 1;
+
+    /**
+     * ratio - the number of majority class instances kept per instance of the other classes
+     * seed - the seed of the random selection
+     */
+    private double ratio;
+    private long seed;
+
+    /**
+     * Constructor
+     *
+     * @param ratio the number of majority class instances kept per instance of the other classes (greater than 0)
+     * @param seed  the seed of the random selection
+     */
+    public ClassUndersampler(double ratio, long seed)
+    {
+        if (!(ratio > 0))
+            throw new IllegalArgumentException("Undersampling ratio must be greater than 0");
+
+        this.ratio = ratio;
+        this.seed = seed;
+    }
+
+    /**
+     * Computes the number of instances of each class that are kept and dropped,
+     * in the quota form the stratified fold assignment takes (see
+     * DatasetSplitter.computeInstancesRequired)
+     *
+     * @param classCounts the number of instances of each class
+     * @return the number of instances required, indexed by class and then by KEPT or DROPPED
+     */
+    public int[][] instancesRequired(int classCounts[])
+    {
+        int required[][] = new int[classCounts.length][2];
+        int majority = 0;
+        long others = 0;
+
+        for (int i = 0; i < classCounts.length; i++)
+        {
+            if (classCounts[i] > classCounts[majority])
+                majority = i;
+        }
+
+        for (int i = 0; i < classCounts.length; i++)
+        {
+            if (i != majority)
+                others += classCounts[i];
+
+            required[i][KEPT] = classCounts[i];
+        }
+
+        required[majority][KEPT] = (int) Math.min(classCounts[majority], Math.round(others * ratio));
+
+        for (int i = 0; i < classCounts.length; i++)
+            required[i][DROPPED] = classCounts[i] - required[i][KEPT];
+
+        return required;
+    }
+
+    /**
+     * Undersamples the majority class of a training set. The given dataset is
+     * not modified.
+     *
+     * @param trainingSet the training set (class index set)
+     * @param fold        the index of the fold the training set belongs to, mixed into the seed
+     * @return the undersampled training set, with the name of the given set
+     */
+    public Dataset apply(Dataset trainingSet, int fold)
+    {
+        Instances source = trainingSet.getInstances();
+        int classCodes[] = new int[source.numInstances()];
+        int classCounts[] = new int[source.numClasses()];
+
+        // Counted from the rows being sampled, cached statistics may describe other rows
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            Instance current = source.instance(row);
+            classCodes[row] = current.classIsMissing() ? -1 : (int) current.classValue();
+
+            if (classCodes[row] >= 0)
+                classCounts[classCodes[row]]++;
+        }
+
+        int required[][] = instancesRequired(classCounts);
+        int kept = 0;
+
+        for (int c = 0; c < required.length; c++)
+            kept += required[c][KEPT];
+
+        // The same stratified assignment as the folds of a split, into a kept and a dropped group
+        int assignment[] = PartitionedSplitter.assignChunk(classCodes, required, new Random(seed + fold));
+        Instances sampled = new Instances(source, kept);
+
+        // Rows with a missing class cannot be accounted for and are left out
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            if (assignment[row] == KEPT)
+                sampled.add(source.instance(row));
+        }
+
+        System.out.println("Undersampled training set from " + source.numInstances() + " to " + sampled.numInstances() + " instances");
+
+        Dataset result = Dataset.adopt(sampled);
+        result.setName(trainingSet.getName());
+
+        return result;
+    }
+}
@@ -0,0 +1,409 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Column oriented copy of a dataset. Each attribute is stored in a single
+ * primitive array: nominal attributes (including discretized attributes) as
+ * one byte per instance and all other attributes as one double per instance.
+ * Converts to and from WEKA Instances at the edges of the pipeline.
+ */
+public class ColumnarDataset implements RowSource
+{
+    /**
+     * MISSING_CODE - the byte stored for a missing nominal value
+     * MAX_NOMINAL_VALUES - nominal attributes with more values than this are stored as doubles
+     */
+    public static final byte MISSING_CODE = (byte) 0xFF;
+    public static final int MAX_NOMINAL_VALUES = 255;
+
+    /**
+     * header - empty Instances holding the attribute information and class index
+     * numInstances - the number of instances (rows)
+     * numericColumns - the values of each double coded attribute (null for byte coded attributes)
+     * nominalColumns - the values of each byte coded attribute (null for double coded attributes)
+     * weights - the instance weights, null if every instance has a weight of 1
+     */
+    private Instances header;
+    private int numInstances;
+    private double numericColumns[][];
+    private byte nominalColumns[][];
+    private double weights[];
+
+    /**
+     * Constructor. Allocates empty columns for the given number of instances.
+     *
+     * @param header       Instances providing the attribute information
+     * @param numInstances the number of instances the columns hold
+     */
+    public ColumnarDataset(Instances header, int numInstances)
+    {
+        int numAttributes = header.numAttributes();
+
+        this.header = new Instances(header, 0);
+        this.numInstances = numInstances;
+        numericColumns = new double[numAttributes][];
+        nominalColumns = new byte[numAttributes][];
+
+        for (int i = 0; i < numAttributes; i++)
+        {
+            Attribute attribute = header.attribute(i);
+
+            if (attribute.isString() || attribute.isRelationValued())
+                throw new IllegalArgumentException("Attribute type not supported by columnar storage: " + attribute.name());
+
+            if (isByteCoded(attribute))
+                nominalColumns[i] = new byte[numInstances];
+            else
+                numericColumns[i] = new double[numInstances];
+        }
+    }
+
+    /**
+     * Copies the given instances into columns
+     *
+     * @param instances the data to copy
+     * @return the columnar copy of the data
+     */
+    public static ColumnarDataset fromInstances(Instances instances)
+    {
+        ColumnarDataset columns = new ColumnarDataset(instances, instances.numInstances());
+
+        for (int row = 0; row < instances.numInstances(); row++)
+        {
+            Instance current = instances.instance(row);
+
+            for (int col = 0; col < columns.numAttributes(); col++)
+                columns.setValue(row, col, current.value(col));
+
+            if (current.weight() != 1.0)
+                columns.setWeight(row, current.weight());
+        }
+
+        return columns;
+    }
+
+    /**
+     * Checks whether an attribute is stored as one byte per instance
+     *
+     * @param attribute the attribute to check
+     * @return boolean - true if the attribute is byte coded
+     */
+    public static boolean isByteCoded(Attribute attribute)
+    {
+        return attribute.isNominal() && attribute.numValues() <= MAX_NOMINAL_VALUES;
+    }
+
+    /**
+     * Gets the number of instances
+     *
+     * @return int - the number of instances
+     */
+    @Override
+    public int numInstances()
+    {
+        return numInstances;
+    }
+
+    /**
+     * Gets the number of attributes
+     *
+     * @return int - the number of attributes
+     */
+    @Override
+    public int numAttributes()
+    {
+        return header.numAttributes();
+    }
+
+    /**
+     * Gets the class index
+     *
+     * @return int - the class index, -1 if not set
+     */
+    @Override
+    public int classIndex()
+    {
+        return header.classIndex();
+    }
+
+    /**
+     * Sets the class index
+     *
+     * @param classIndex The index of the class attribute
+     */
+    @Override
+    public void setClassIndex(int classIndex)
+    {
+        header.setClassIndex(classIndex);
+    }
+
+    /**
+     * Gets the empty Instances holding the attribute information
+     *
+     * @return the header
+     */
+    @Override
+    public Instances getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * Checks whether an attribute is stored as one byte per instance
+     *
+     * @param col the attribute index
+     * @return boolean - true if the attribute is byte coded
+     */
+    public boolean isByteCoded(int col)
+    {
+        return nominalColumns[col] != null;
+    }
+
+    /**
+     * Gets the values of a double coded attribute. The array is not copied.
+     *
+     * @param col the attribute index
+     * @return the column, or null if the attribute is byte coded
+     */
+    public double[] getNumericColumn(int col)
+    {
+        return numericColumns[col];
+    }
+
+    /**
+     * Gets the values of a byte coded attribute. The array is not copied.
+     *
+     * @param col the attribute index
+     * @return the column, or null if the attribute is double coded
+     */
+    public byte[] getNominalColumn(int col)
+    {
+        return nominalColumns[col];
+    }
+
+    /**
+     * Gets a value in the same representation WEKA uses (value index for nominal
+     * attributes, NaN for missing values)
+     *
+     * @param row the instance index
+     * @param col the attribute index
+     * @return the value
+     */
+    @Override
+    public double value(int row, int col)
+    {
+        if (nominalColumns[col] != null)
+        {
+            byte code = nominalColumns[col][row];
+            return code == MISSING_CODE ? Utils.missingValue() : (double) (code & 0xFF);
+        }
+
+        return numericColumns[col][row];
+    }
+
+    /**
+     * Sets a value given in the representation WEKA uses
+     *
+     * @param row   the instance index
+     * @param col   the attribute index
+     * @param value the value
+     */
+    public void setValue(int row, int col, double value)
+    {
+        if (nominalColumns[col] != null)
+            nominalColumns[col][row] = Utils.isMissingValue(value) ? MISSING_CODE : (byte) value;
+        else
+            numericColumns[col][row] = value;
+    }
+
+    /**
+     * Gets the byte code of a nominal value
+     *
+     * @param row the instance index
+     * @param col the (byte coded) attribute index
+     * @return the value index, or -1 if the value is missing
+     */
+    public int code(int row, int col)
+    {
+        byte code = nominalColumns[col][row];
+        return code == MISSING_CODE ? -1 : code & 0xFF;
+    }
+
+    /**
+     * Gets the class value index of an instance
+     *
+     * @param row the instance index
+     * @return the class value index, or -1 if the class is missing
+     */
+    @Override
+    public int classCode(int row)
+    {
+        checkNominalClass();
+
+        if (nominalColumns[classIndex()] != null)
+            return code(row, classIndex());
+
+        // Nominal classes with more values than a byte holds are stored as doubles
+        double value = numericColumns[classIndex()][row];
+        return Utils.isMissingValue(value) ? -1 : (int) value;
+    }
+
+    /**
+     * Gets the weight of an instance
+     *
+     * @param row the instance index
+     * @return the weight
+     */
+    @Override
+    public double weight(int row)
+    {
+        return weights == null ? 1.0 : weights[row];
+    }
+
+    /**
+     * Sets the weight of an instance
+     *
+     * @param row    the instance index
+     * @param weight the weight
+     */
+    public void setWeight(int row, double weight)
+    {
+        if (weights == null)
+        {
+            if (weight == 1.0)
+                return;
+
+            weights = new double[numInstances];
+            Arrays.fill(weights, 1.0);
+        }
+
+        weights[row] = weight;
+    }
+
+    /**
+     * Gets the instance weights. The array is not copied.
+     *
+     * @return the weights, or null if every instance has a weight of 1
+     */
+    public double[] getWeights()
+    {
+        return weights;
+    }
+
+    /**
+     * Replaces the instance weights. The array is not copied.
+     *
+     * @param weights the weights (one per instance), or null if every instance has a weight of 1
+     */
+    public void setWeights(double weights[])
+    {
+        if (weights != null && weights.length != numInstances)
+            throw new IllegalArgumentException("Expected one weight per instance");
+
+        this.weights = weights;
+    }
+
+    /**
+     * Counts the instances of each class value with a single pass over the class
+     * column. Instances with a missing class are not counted.
+     *
+     * @return the number of instances of each class value
+     */
+    @Override
+    public int[] classCounts()
+    {
+        checkNominalClass();
+
+        byte classColumn[] = nominalColumns[classIndex()];
+        int counts[] = new int[header.classAttribute().numValues()];
+
+        for (int row = 0; row < numInstances; row++)
+        {
+            if (classColumn == null)
+            {
+                int code = classCode(row);
+                if (code >= 0)
+                    counts[code]++;
+            }
+            else if (classColumn[row] != MISSING_CODE)
+            {
+                counts[classColumn[row] & 0xFF]++;
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Checks that the class index is set and the class attribute is nominal
+     *
+     * @throws IllegalStateException if there is no nominal class attribute
+     */
+    private void checkNominalClass()
+    {
+        if (classIndex() < 0)
+            throw new IllegalStateException("Class index is not set");
+
+        if (!header.classAttribute().isNominal())
+            throw new IllegalStateException("Class values can only be counted for a nominal class, " + header.classAttribute().name() + " is " + Attribute.typeToString(header.classAttribute()));
+    }
+
+    /**
+     * Creates a WEKA Instance for a row
+     *
+     * @param row the instance index
+     * @return the instance (its dataset is the header)
+     */
+    @Override
+    public Instance instance(int row)
+    {
+        double values[] = new double[numAttributes()];
+
+        for (int col = 0; col < values.length; col++)
+            values[col] = value(row, col);
+
+        Instance instance = new DenseInstance(weight(row), values);
+        instance.setDataset(header);
+
+        return instance;
+    }
+
+    /**
+     * Converts all rows back to WEKA Instances
+     *
+     * @return the instances
+     */
+    public Instances toInstances()
+    {
+        Instances instances = new Instances(header, numInstances);
+
+        for (int row = 0; row < numInstances; row++)
+            instances.add(instance(row));
+
+        return instances;
+    }
+
+    /**
+     * Converts the given rows back to WEKA Instances
+     *
+     * @param rows the instance indices, in output order
+     * @return the instances
+     */
+    @Override
+    public Instances toInstances(int rows[])
+    {
+        Instances instances = new Instances(header, rows.length);
+
+        for (int row : rows)
+            instances.add(instance(row));
+
+        return instances;
+    }
+}
@@ -0,0 +1,767 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * Runs repeated (r x k) and nested cross validation as one graph of tasks on a
+ * shared thread pool. Every task is a stage of testOnceClassify: preprocessing
+ * (undersampling, discretization, reduct selection and reduction), training
+ * and evaluation.
+ *
+ * Preprocessing only depends on the training rows, so it is cached by the
+ * set of training rows: every candidate setting evaluated on the same inner
+ * fold, and any other fold that happens to train on the same rows, shares one
+ * undersampling, discretization and reduct. A cached entry is dropped once
+ * every task using it has finished.
+ */
+public class CrossValidationScheduler
+{
+    /**
+     * dataset - the source dataset (class index set)
+     * workPath - base path of the files written while preprocessing
+     * reductMode - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * options - the training pipeline options (the seed also drives the fold assignment)
+     * numThreads - the number of tasks run at the same time
+     * pool - the shared worker pool, only set while a design runs
+     * gate - holds back preprocessing until the whole graph is built, so every use of a training set is known
+     * cache - the preprocessing of each training set by its rows, shared by the tasks that use it
+     * totalTasks - the number of tasks in the running graph
+     * completedTasks - the number of tasks finished so far
+     */
+    private Dataset dataset;
+    private String workPath;
+    private int reductMode;
+    private PipelineOptions options;
+    private int numThreads;
+    private ExecutorService pool = null;
+    private CompletableFuture<Void> gate = null;
+    private ConcurrentHashMap<TrainingRows, CacheEntry> cache = new ConcurrentHashMap<TrainingRows, CacheEntry>();
+    private AtomicInteger totalTasks = new AtomicInteger();
+    private AtomicInteger completedTasks = new AtomicInteger();
+
+    /**
+     * Candidate network settings
+     */
+    public static class Candidate
+    {
+        /**
+         * learningRate - the learning rate for backpropagation
+         * momentum - the momentum for backpropagation
+         */
+        private float learningRate;
+        private float momentum;
+
+        /**
+         * Constructor
+         *
+         * @param learningRate the learning rate for backpropagation
+         * @param momentum     the momentum for backpropagation
+         */
+        public Candidate(float learningRate, float momentum)
+        {
+            this.learningRate = learningRate;
+            this.momentum = momentum;
+        }
+
+        public float getLearningRate()
+        {
+            return learningRate;
+        }
+
+        public float getMomentum()
+        {
+            return momentum;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "learning-rate " + learningRate + ", momentum " + momentum;
+        }
+    }
+
+    /**
+     * The result of evaluating one outer fold
+     */
+    public static class FoldResult
+    {
+        /**
+         * repetition - the repetition the fold belongs to
+         * fold - the fold number
+         * candidate - the settings the fold's model was trained with
+         * evaluation - the evaluation on the fold's test rows, null if the fold failed
+         */
+        private int repetition;
+        private int fold;
+        private Candidate candidate;
+        private Evaluation evaluation;
+
+        FoldResult(int repetition, int fold, Candidate candidate, Evaluation evaluation)
+        {
+            this.repetition = repetition;
+            this.fold = fold;
+            this.candidate = candidate;
+            this.evaluation = evaluation;
+        }
+
+        public int getRepetition()
+        {
+            return repetition;
+        }
+
+        public int getFold()
+        {
+            return fold;
+        }
+
+        public Candidate getCandidate()
+        {
+            return candidate;
+        }
+
+        public Evaluation getEvaluation()
+        {
+            return evaluation;
+        }
+    }
+
+    /**
+     * The preprocessed form of a training set
+     */
+    private static class Preprocessed
+    {
+        /**
+         * projection - the reduct projection of the training set
+         * inputs - the normalized training set on the reduct attributes
+         */
+        private ProjectedDataset projection;
+        private NormalizedInputs inputs;
+
+        Preprocessed(ProjectedDataset projection, NormalizedInputs inputs)
+        {
+            this.projection = projection;
+            this.inputs = inputs;
+        }
+    }
+
+    /**
+     * The rows of a training set, in row order, as the key of its cached
+     * preprocessing
+     */
+    private static class TrainingRows
+    {
+        private int rows[];
+        private int hash;
+
+        TrainingRows(int rows[])
+        {
+            this.rows = rows;
+            this.hash = Arrays.hashCode(rows);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof TrainingRows && hash == ((TrainingRows) other).hash && Arrays.equals(rows, ((TrainingRows) other).rows);
+        }
+    }
+
+    /**
+     * A cached preprocessing task and the number of tasks still to use it
+     */
+    private static class CacheEntry
+    {
+        private CompletableFuture<Preprocessed> task;
+        private int uses;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param dataset    the source dataset (class index set)
+     * @param workPath   base path of the files written while preprocessing
+     * @param reductMode the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param options    the training pipeline options
+     * @param numThreads the number of tasks run at the same time
+     */
+    public CrossValidationScheduler(Dataset dataset, String workPath, int reductMode, PipelineOptions options, int numThreads)
+    {
+        this.dataset = dataset;
+        this.workPath = workPath;
+        this.reductMode = reductMode;
+        this.options = options;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Runs repeated cross validation: the data is split into numFolds
+     * stratified folds numRepetitions times, each time with a different seed
+     *
+     * @param numRepetitions the number of repetitions
+     * @param numFolds       the number of folds
+     * @param candidate      the network settings
+     * @return the result of every fold, ordered by repetition and then fold
+     */
+    public List<FoldResult> runRepeated(int numRepetitions, int numFolds, final Candidate candidate)
+    {
+        ArrayList<CompletableFuture<FoldResult>> outer = new ArrayList<CompletableFuture<FoldResult>>();
+        start();
+
+        try
+        {
+            for (int r = 0; r < numRepetitions; r++)
+            {
+                int rows[] = allRows();
+                int assignment[] = assignFolds(rows, numFolds, options.getSeed() + r);
+
+                for (int f = 0; f < numFolds; f++)
+                {
+                    final int repetition = r;
+                    final int fold = f;
+                    String name = workPath + "rep_" + r + "_fold_" + f;
+
+                    CompletableFuture<Evaluation> evaluation = trainAndEvaluate(select(rows, assignment, f, false), select(rows, assignment, f, true), candidate, name);
+
+                    outer.add(evaluation.thenApply(new Function<Evaluation, FoldResult>()
+                    {
+                        public FoldResult apply(Evaluation result)
+                        {
+                            return new FoldResult(repetition, fold, candidate, result);
+                        }
+                    }));
+                }
+            }
+
+            gate.complete(null);
+
+            return collect(outer);
+        }
+        finally
+        {
+            stop();
+        }
+    }
+
+    /**
+     * Runs nested cross validation. Each outer training set is split again into
+     * numInnerFolds folds to pick the candidate with the best positive class
+     * F-measure, which is then trained on the whole outer training set and
+     * evaluated on the outer test fold.
+     *
+     * @param numRepetitions the number of repetitions of the outer split
+     * @param numOuterFolds  the number of outer folds
+     * @param numInnerFolds  the number of inner folds
+     * @param candidates     the network settings to choose from
+     * @return the result of every outer fold, ordered by repetition and then fold
+     */
+    public List<FoldResult> runNested(int numRepetitions, int numOuterFolds, int numInnerFolds, final List<Candidate> candidates)
+    {
+        ArrayList<CompletableFuture<FoldResult>> outer = new ArrayList<CompletableFuture<FoldResult>>();
+        int numClasses = dataset.getInstances().numClasses();
+        // The inner splits draw their seeds from their own stream, so they never repeat an outer split's seed
+        Random innerSeeds = new Random(options.getSeed());
+        start();
+
+        try
+        {
+            for (int r = 0; r < numRepetitions; r++)
+            {
+                int rows[] = allRows();
+                int assignment[] = assignFolds(rows, numOuterFolds, options.getSeed() + r);
+
+                for (int f = 0; f < numOuterFolds; f++)
+                {
+                    final int repetition = r;
+                    final int fold = f;
+                    final String name = workPath + "rep_" + r + "_fold_" + f;
+                    final int outerTrain[] = select(rows, assignment, f, false);
+                    final int outerTest[] = select(rows, assignment, f, true);
+                    int innerAssignment[] = assignFolds(outerTrain, numInnerFolds, innerSeeds.nextLong());
+
+                    // Confusion matrices of each candidate, summed over the inner folds
+                    final ArrayList<CompletableFuture<double[][]>> scores = new ArrayList<CompletableFuture<double[][]>>();
+
+                    for (Candidate candidate : candidates)
+                    {
+                        CompletableFuture<double[][]> summed = CompletableFuture.completedFuture(new double[numClasses][numClasses]);
+
+                        for (int j = 0; j < numInnerFolds; j++)
+                        {
+                            CompletableFuture<Evaluation> inner = trainAndEvaluate(select(outerTrain, innerAssignment, j, false), select(outerTrain, innerAssignment, j, true), candidate, name + "_inner_" + j);
+                            summed = summed.thenCombine(inner, new BiFunction<double[][], Evaluation, double[][]>()
+                            {
+                                public double[][] apply(double total[][], Evaluation result)
+                                {
+                                    return addConfusion(total, result);
+                                }
+                            });
+                        }
+
+                        scores.add(summed);
+                    }
+
+                    // The outer model waits for the inner folds only to learn which candidate to train
+                    CompletableFuture<Candidate> best = CompletableFuture.allOf(scores.toArray(new CompletableFuture<?>[scores.size()])).thenApply(new Function<Void, Candidate>()
+                    {
+                        public Candidate apply(Void done)
+                        {
+                            return bestCandidate(candidates, scores);
+                        }
+                    });
+
+                    // The outer training set is preprocessed alongside the inner folds
+                    final TrainingRows outerKey = new TrainingRows(outerTrain);
+                    final CompletableFuture<Preprocessed> preprocessed = preprocess(outerKey, name);
+                    taskAdded();
+
+                    outer.add(best.thenCombine(preprocessed, new BiFunction<Candidate, Preprocessed, Candidate>()
+                    {
+                        public Candidate apply(Candidate candidate, Preprocessed ignored)
+                        {
+                            return candidate;
+                        }
+                    }).thenComposeAsync(new Function<Candidate, CompletableFuture<FoldResult>>()
+                    {
+                        public CompletableFuture<FoldResult> apply(final Candidate candidate)
+                        {
+                            System.out.println("Repetition " + repetition + ", fold " + fold + ": selected " + candidate);
+
+                            return trainAndEvaluate(preprocessed, outerKey, outerTest, candidate, name).thenApply(new Function<Evaluation, FoldResult>()
+                            {
+                                public FoldResult apply(Evaluation result)
+                                {
+                                    return new FoldResult(repetition, fold, candidate, result);
+                                }
+                            });
+                        }
+                    }, pool));
+                }
+            }
+
+            gate.complete(null);
+
+            return collect(outer);
+        }
+        finally
+        {
+            stop();
+        }
+    }
+
+    /**
+     * Saves the confusion counts of every outer fold to resultsPath_rep_r_fold_f
+     * and their sum to resultsPath_summary
+     *
+     * @param results     the fold results
+     * @param resultsPath base path to save results to
+     */
+    public static void saveResults(List<FoldResult> results, String resultsPath)
+    {
+        double total[][] = null;
+        Instances header = null;
+        int failed = 0;
+
+        for (FoldResult result : results)
+        {
+            if (result.getEvaluation() == null)
+            {
+                failed++;
+                continue;
+            }
+
+            TransactionClassifier.saveResults(result.getEvaluation(), resultsPath + "_rep_" + result.getRepetition() + "_fold_" + result.getFold());
+
+            if (total == null)
+            {
+                header = result.getEvaluation().getHeader();
+                total = new double[header.numClasses()][header.numClasses()];
+            }
+
+            total = addConfusion(total, result.getEvaluation());
+        }
+
+        if (total == null)
+        {
+            System.out.println("Empty results -> Could not run classifier");
+            return;
+        }
+
+        int positive = TransactionClassifier.POSITIVE_CLASS_INDEX;
+
+        try (PrintWriter printResults = new PrintWriter(new FileWriter(resultsPath + "_summary")))
+        {
+            printResults.printf("TP: %f%nFP: %f%nTN: %f%nFN: %f%n", total[positive][positive], sumColumn(total, positive) - total[positive][positive],
+                                                                   sum(total) - sumRow(total, positive) - sumColumn(total, positive) + total[positive][positive],
+                                                                   sumRow(total, positive) - total[positive][positive]);
+            TransactionClassifier.printConfusionMatrix(printResults, total, header);
+            printResults.printf("Folds: %d%nFailed folds: %d%n", results.size(), failed);
+            System.out.println("Saved summary to " + resultsPath + "_summary");
+        }
+        catch (Exception e)
+        {
+            System.out.println("Could not save summary");
+        }
+    }
+
+    /**
+     * Gets the F-measure of a class from a confusion matrix
+     *
+     * @param confusion  the confusion matrix, indexed by actual and then predicted class
+     * @param classIndex the class
+     * @return the F-measure, 0 if the class was never predicted or seen
+     */
+    public static double fMeasure(double confusion[][], int classIndex)
+    {
+        double truePositives = confusion[classIndex][classIndex];
+        double denominator = sumRow(confusion, classIndex) + sumColumn(confusion, classIndex);
+
+        return denominator == 0 ? 0 : 2 * truePositives / denominator;
+    }
+
+    /**
+     * Preprocesses, trains and evaluates on the given rows, sharing the
+     * preprocessing with every other task training on the same rows
+     */
+    private CompletableFuture<Evaluation> trainAndEvaluate(int trainRows[], int testRows[], Candidate candidate, String name)
+    {
+        TrainingRows key = new TrainingRows(trainRows);
+        taskAdded();
+
+        return trainAndEvaluate(preprocess(key, name), key, testRows, candidate, name);
+    }
+
+    /**
+     * Trains and evaluates once the preprocessing of the training rows is done.
+     * The caller counts the task.
+     */
+    private CompletableFuture<Evaluation> trainAndEvaluate(CompletableFuture<Preprocessed> preprocessed, final TrainingRows trainRows, final int testRows[], final Candidate candidate, final String name)
+    {
+        return preprocessed.thenApplyAsync(new Function<Preprocessed, Evaluation>()
+        {
+            public Evaluation apply(Preprocessed input)
+            {
+                Metrics.setTag(name.substring(workPath.length()));
+
+                try
+                {
+                    if (input == null)
+                        return null;
+
+                    Classifier network = TransactionClassifier.trainNetwork(input.inputs, candidate.getLearningRate(), candidate.getMomentum());
+
+                    if (network == null)
+                        return null;
+
+                    Dataset testSet = copyRows(testRows, name + "_test");
+
+                    return TransactionClassifier.evaluate(new ProjectedClassifier(network, input.projection), testSet, TransactionClassifier.threadBudget(numThreads));
+                }
+                catch (RuntimeException e)
+                {
+                    System.err.println("Could not train and evaluate " + name + ": " + e.getMessage());
+                    return null;
+                }
+                finally
+                {
+                    Metrics.clearTag();
+                    release(trainRows);
+                    taskCompleted("train and evaluate " + name);
+                }
+            }
+        }, pool);
+    }
+
+    /**
+     * Gets the preprocessing task of a training set, adding it to the graph
+     * the first time its rows are seen. The rows also seed the undersampling
+     * of the training set, so the sample does not depend on which task asked
+     * first. Every call must be matched by one call to release once the result
+     * has been used.
+     */
+    private CompletableFuture<Preprocessed> preprocess(final TrainingRows key, final String name)
+    {
+        synchronized (cache)
+        {
+            CacheEntry entry = cache.get(key);
+
+            if (entry == null)
+            {
+                entry = new CacheEntry();
+                taskAdded();
+                entry.task = gate.thenApplyAsync(new Function<Void, Preprocessed>()
+                {
+                    public Preprocessed apply(Void start)
+                    {
+                        Metrics.setTag(name.substring(workPath.length()));
+
+                        try
+                        {
+                            Dataset trainingSet = TransactionClassifier.resampleTrainingSet(copyRows(key.rows, name + "_train"), options, key.hashCode());
+                            BitSet reduct = TransactionClassifier.selectReduct(trainingSet, reductMode);
+
+                            if (reduct == null)
+                                return null;
+
+                            ProjectedDataset projection = new ProjectedDataset(trainingSet, reduct);
+
+                            return new Preprocessed(projection, TransactionClassifier.prepareInputs(projection, options));
+                        }
+                        catch (RuntimeException e)
+                        {
+                            System.err.println("Could not preprocess " + name + ": " + e.getMessage());
+                            return null;
+                        }
+                        finally
+                        {
+                            Metrics.clearTag();
+                            taskCompleted("preprocess " + name);
+                        }
+                    }
+                }, pool);
+                cache.put(key, entry);
+            }
+            else
+            {
+                System.out.println("Reusing preprocessed training set for " + name);
+            }
+
+            entry.uses++;
+
+            return entry.task;
+        }
+    }
+
+    /**
+     * Releases one use of a cached training set, dropping it after the last
+     */
+    private void release(TrainingRows key)
+    {
+        synchronized (cache)
+        {
+            CacheEntry entry = cache.get(key);
+
+            if (entry != null && --entry.uses == 0)
+                cache.remove(key);
+        }
+    }
+
+    /**
+     * Copies rows of the source dataset into a new dataset
+     */
+    private Dataset copyRows(int rows[], String name)
+    {
+        Instances source = dataset.getInstances();
+        Instances copy = new Instances(source, rows.length);
+
+        for (int row : rows)
+            copy.add(source.instance(row));
+
+        Dataset result = Dataset.adopt(copy);
+        result.setClassIndex(source.classIndex());
+        result.setName(name);
+
+        return result;
+    }
+
+    /**
+     * Gets the rows of the source dataset that have a class value
+     */
+    private int[] allRows()
+    {
+        Instances source = dataset.getInstances();
+        int count = 0;
+        int rows[] = new int[source.numInstances()];
+
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            if (!source.instance(row).classIsMissing())
+                rows[count++] = row;
+        }
+
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Assigns rows to stratified folds with the class counts DatasetSplitter
+     * would give them
+     *
+     * @param rows     the rows to assign (all with a class value)
+     * @param numFolds the number of folds
+     * @param seed     the seed of the assignment
+     * @return the fold of each row
+     */
+    private int[] assignFolds(int rows[], int numFolds, long seed)
+    {
+        Instances source = dataset.getInstances();
+        int classCodes[] = new int[rows.length];
+        int classCounts[] = new int[source.numClasses()];
+
+        for (int i = 0; i < rows.length; i++)
+        {
+            classCodes[i] = (int) source.instance(rows[i]).classValue();
+            classCounts[classCodes[i]]++;
+        }
+
+        return PartitionedSplitter.assignChunk(classCodes, DatasetSplitter.computeInstancesRequired(classCounts, numFolds), new Random(seed));
+    }
+
+    /**
+     * Selects the rows in or out of a fold, in row order
+     */
+    private static int[] select(int rows[], int assignment[], int fold, boolean inFold)
+    {
+        int count = 0;
+        int selected[] = new int[rows.length];
+
+        for (int i = 0; i < rows.length; i++)
+        {
+            if ((assignment[i] == fold) == inFold)
+                selected[count++] = rows[i];
+        }
+
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Picks the candidate with the highest positive class F-measure. Earlier
+     * candidates win ties and candidates whose inner folds failed are skipped.
+     */
+    private static Candidate bestCandidate(List<Candidate> candidates, List<CompletableFuture<double[][]>> scores)
+    {
+        Candidate best = candidates.get(0);
+        double bestScore = -1;
+
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            double confusion[][] = scores.get(i).join();
+
+            if (confusion == null)
+                continue;
+
+            double score = fMeasure(confusion, TransactionClassifier.POSITIVE_CLASS_INDEX);
+
+            if (score > bestScore)
+            {
+                best = candidates.get(i);
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Adds the confusion matrix of an evaluation to a running total. A failed
+     * evaluation makes the total null, so a candidate failing on any inner fold
+     * is never selected.
+     */
+    private static double[][] addConfusion(double total[][], Evaluation evaluation)
+    {
+        if (total == null || evaluation == null)
+            return null;
+
+        double confusion[][] = evaluation.confusionMatrix();
+
+        for (int i = 0; i < confusion.length; i++)
+        {
+            for (int j = 0; j < confusion[i].length; j++)
+                total[i][j] += confusion[i][j];
+        }
+
+        return total;
+    }
+
+    private static double sumRow(double matrix[][], int row)
+    {
+        double total = 0;
+
+        for (double value : matrix[row])
+            total += value;
+
+        return total;
+    }
+
+    private static double sumColumn(double matrix[][], int column)
+    {
+        double total = 0;
+
+        for (double values[] : matrix)
+            total += values[column];
+
+        return total;
+    }
+
+    private static double sum(double matrix[][])
+    {
+        double total = 0;
+
+        for (int row = 0; row < matrix.length; row++)
+            total += sumRow(matrix, row);
+
+        return total;
+    }
+
+    /**
+     * Waits for the outer folds in order
+     */
+    private static List<FoldResult> collect(List<CompletableFuture<FoldResult>> outer)
+    {
+        ArrayList<FoldResult> results = new ArrayList<FoldResult>();
+
+        for (CompletableFuture<FoldResult> result : outer)
+            results.add(result.join());
+
+        return results;
+    }
+
+    private void start()
+    {
+        pool = Executors.newFixedThreadPool(numThreads);
+        gate = new CompletableFuture<Void>();
+        totalTasks.set(0);
+        completedTasks.set(0);
+    }
+
+    private void stop()
+    {
+        pool.shutdown();
+        pool = null;
+        cache.clear();
+    }
+
+    private void taskAdded()
+    {
+        totalTasks.incrementAndGet();
+    }
+
+    /**
+     * Reports the progress of the graph as a task finishes
+     */
+    private void taskCompleted(String task)
+    {
+        System.out.println("[" + completedTasks.incrementAndGet() + "/" + totalTasks.get() + "] finished " + task);
+    }
+}
@@ -1,11 +1,32 @@
 package com.jordanml.TransactionClassifier;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
+import weka.core.SerializationHelper;
 
 public class CrossValidationThread extends Thread
 {
-    private Dataset testSet = null;
-    private Dataset trainSet = null;
+    /**
+     * fullSet - all folds combined, the fold's test and training sets are copied from it when the fold starts
+     * testFirst - the index of the first test instance in fullSet
+     * testInstances - the number of test instances
+     * admission - limits the number of folds holding their data at once
+     * options - the training pipeline options
+     * manifest - records the output of each finished stage, null to run without checkpoints
+     * numThreads - the number of threads the fold may classify its test set with
+     */
+    private Dataset fullSet = null;
+    private int testFirst = 0;
+    private int testInstances = 0;
+    private FoldAdmission admission = null;
+    private PipelineOptions options = null;
+    private RunManifest manifest = null;
+    private int numThreads = 1;
+    private String name = null;
     private int fold = 0;
     private int reductMode = 1;
     private float learningRate;
@@ -14,18 +35,230 @@ public class CrossValidationThread extends Thread
     
     public void run()
     {
-        long t_start = System.nanoTime();
-        System.out.println("Thread " + Thread.currentThread().getId() + "is evaluating on fold " + fold);
-        Evaluation results = TransactionClassifier.testOnceClassify(trainSet, testSet, learningRate, momentum, reductMode);
-        TransactionClassifier.saveResults(results, resultsPath);
-        long t_end = System.nanoTime();
-        System.out.println("Thread " + Thread.currentThread().getId() + " terminating: " + (t_end - t_start)/1000000 + " ms");
+        int reserved;
+        
+        if(manifest != null && manifest.isComplete(fold))
+        {
+            System.out.println("Fold " + fold + " already finished, results in " + manifest.getStage(fold, RunManifest.STAGE_RESULTS));
+            fullSet = null;
+            return;
+        }
+        
+        try
+        {
+            reserved = admission.acquire(FoldAdmission.estimateFoldBytes(fullSet.numInstances(), fullSet.numAttributes()));
+        }
+        catch(InterruptedException e)
+        {
+            System.err.println("Thread handling fold " + fold + " was interrupted before starting");
+            return;
+        }
+        
+        Metrics.setTag("fold_" + fold);
+        
+        try
+        {
+            Metrics.Timer foldTimer = Metrics.start(Metrics.FOLD);
+            System.out.println("Thread " + Thread.currentThread().getId() + "is evaluating on fold " + fold);
+            
+            // Materialize the fold's data only once it has been admitted
+            Dataset testSet = TransactionClassifier.getTestDataset(fullSet, testFirst, testInstances);
+            testSet.setClassIndex(testSet.numAttributes() - 1);
+            testSet.setName(name + "_test");
+            
+            Evaluation results;
+            
+            if(manifest == null)
+                results = TransactionClassifier.testOnceClassify(trainingSet(), testSet, learningRate, momentum, reductMode, options, numThreads);
+            else
+                results = checkpointedClassify(testSet);
+            
+            TransactionClassifier.saveResults(results, resultsPath);
+            
+            if(manifest != null && results != null)
+                record(RunManifest.STAGE_RESULTS, resultsPath);
+            System.out.println("Thread " + Thread.currentThread().getId() + " terminating: " + foldTimer.stop() + " ms");
+        }
+        finally
+        {
+            // The fold's data is unreachable once run returns, release its share of the budget
+            fullSet = null;
+            admission.release(reserved);
+            Metrics.clearTag();
+        }
+    }
+    
+    /**
+     * Runs the stages of testOnceClassify, skipping every stage whose output was recorded in the
+     * manifest by an earlier run and recording the output of every stage that finishes. A saved model
+     * skips training entirely, a recorded reduct skips discretization and reduct selection and a
+     * recorded discretized training set skips discretization.
+     * 
+     * @param testSet the fold's test set
+     * @return the evaluation, or null on failure
+     */
+    private Evaluation checkpointedClassify(Dataset testSet)
+    {
+        String modelPath = manifest.getStage(fold, RunManifest.STAGE_MODEL);
+        Classifier model = null;
+        
+        if(modelPath != null && new File(modelPath).exists())
+        {
+            try
+            {
+                model = (Classifier) SerializationHelper.read(modelPath);
+                System.out.println("Fold " + fold + ": loaded model from " + modelPath);
+            }
+            catch(Exception e)
+            {
+                System.err.println("Could not load model " + modelPath + ", training again: " + e.getMessage());
+            }
+        }
+        
+        if(model == null)
+        {
+            // Undersampling is seeded, so a recorded reduct still matches the resampled training set
+            Dataset trainSet = TransactionClassifier.resampleTrainingSet(trainingSet(), options, fold);
+            BitSet reduct = RunManifest.decodeReduct(manifest.getStage(fold, RunManifest.STAGE_REDUCT));
+            
+            if(reduct == null)
+            {
+                reduct = selectReduct(trainSet);
+                
+                if(reduct == null)
+                    return null;
+                
+                record(RunManifest.STAGE_REDUCT, RunManifest.encodeReduct(reduct));
+            }
+            else
+            {
+                System.out.println("Fold " + fold + ": reusing reduct " + reduct);
+            }
+            
+            ProjectedDataset projection = new ProjectedDataset(trainSet, reduct);
+            Classifier network = TransactionClassifier.trainNetwork(TransactionClassifier.prepareInputs(projection, options), learningRate, momentum);
+            
+            if(network == null)
+                return null;
+            
+            model = new ProjectedClassifier(network, projection);
+            modelPath = name + ".model";
+            
+            try
+            {
+                SerializationHelper.write(modelPath, model);
+                record(RunManifest.STAGE_MODEL, modelPath);
+            }
+            catch(Exception e)
+            {
+                System.err.println("Could not save model " + modelPath + ": " + e.getMessage());
+            }
+        }
+        
+        return TransactionClassifier.evaluate(model, testSet, numThreads);
+    }
+    
+    /**
+     * Finds the reduct of the fold's training set, reusing the discretized training set an earlier
+     * run recorded if the file has not changed since
+     * 
+     * @param trainSet the fold's (resampled) training set
+     * @return the reduct, or null if none was found
+     */
+    private BitSet selectReduct(Dataset trainSet)
+    {
+        String discPath = manifest.getFileStage(fold, RunManifest.STAGE_CUT_POINTS);
+        
+        if(discPath != null)
+        {
+            System.out.println("Fold " + fold + ": reusing discretized training set " + discPath);
+        }
+        else
+        {
+            discPath = trainSet.getName() + "_discretized.arff";
+            System.out.println("Beginning discretization and reduct selection...");
+            
+            if(!TransactionClassifier.discretizeForReducts(trainSet, discPath))
+                return null;
+            
+            try
+            {
+                manifest.setFileStage(fold, RunManifest.STAGE_CUT_POINTS, discPath);
+            }
+            catch(IOException e)
+            {
+                System.err.println("Could not record " + RunManifest.STAGE_CUT_POINTS + " of fold " + fold + ": " + e.getMessage());
+            }
+        }
+        
+        BitSet reduct = TransactionClassifier.findDiscretizedReducts(trainSet, discPath, reductMode);
+        
+        if(reduct == null)
+            System.err.println("Could not apply reducts: no reduct found");
+        
+        return reduct;
+    }
+    
+    /**
+     * Copies the fold's training set from the combined folds
+     * 
+     * @return the training set
+     */
+    private Dataset trainingSet()
+    {
+        Dataset trainSet = TransactionClassifier.getTrainDataset(fullSet, testFirst, testInstances);
+        trainSet.setClassIndex(trainSet.numAttributes() - 1);
+        trainSet.setName(name + "_train");
+        
+        return trainSet;
+    }
+    
+    /**
+     * Records the output of a finished stage. A manifest that cannot be written only costs the
+     * checkpoint, the fold carries on.
+     * 
+     * @param stage  the stage key
+     * @param output the output of the stage
+     */
+    private void record(String stage, String output)
+    {
+        try
+        {
+            manifest.setStage(fold, stage, output);
+        }
+        catch(IOException e)
+        {
+            System.err.println("Could not record " + stage + " of fold " + fold + ": " + e.getMessage());
+        }
     }
     
-    public void init(String path, Dataset train, Dataset test, int foldNum, float learningRate, float momentum, int reductMode)
+    /**
+     * Sets up the fold. No data is copied until the thread runs.
+     * 
+     * @param path          path to save results to
+     * @param fullSet       all folds combined
+     * @param testFirst     the index of the first test instance in fullSet
+     * @param testInstances the number of test instances
+     * @param name          base name for files written for this fold
+     * @param foldNum       the fold number
+     * @param learningRate  the learning rate for backpropagation
+     * @param momentum      the momentum for backpropagation
+     * @param reductMode    the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param admission     limits the number of folds holding their data at once
+     * @param options       the training pipeline options
+     * @param manifest      records the output of each finished stage (null to run without checkpoints)
+     * @param numThreads    the number of threads the fold may classify its test set with
+     */
+    public void init(String path, Dataset fullSet, int testFirst, int testInstances, String name, int foldNum, float learningRate, float momentum, int reductMode, FoldAdmission admission, PipelineOptions options, RunManifest manifest, int numThreads)
     {
-        testSet = test;
-        trainSet = train;
+        this.options = options;
+        this.manifest = manifest;
+        this.numThreads = Math.max(1, numThreads);
+        this.fullSet = fullSet;
+        this.testFirst = testFirst;
+        this.testInstances = testInstances;
+        this.name = name;
+        this.admission = admission;
         fold = foldNum;
         resultsPath = path;
         this.learningRate = learningRate;
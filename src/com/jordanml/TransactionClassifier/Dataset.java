@@ -1,11 +1,12 @@
 package com.jordanml.TransactionClassifier;
 
+import java.util.ArrayList;
+
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.converters.ConverterUtils.DataSink;
 import weka.core.converters.ConverterUtils.DataSource;
 import weka.filters.Filter;
-import weka.filters.supervised.attribute.Discretize;
 
 public class Dataset
 {
@@ -14,10 +15,25 @@ public class Dataset
      * data - the object that contains the dataset instances
      * path - the path to the file from which the dataset was loaded
      * name - the name of the dataset
+     * shared - whether data has been handed out or taken from another owner and must be copied before it is modified
+     * statistics - the cached statistics of data, null until requested or after the data changes
+     * inputs - the cached normalized network inputs of data, null until requested or after the data changes
+     * 
+     * data stays public for existing callers; assigning or modifying it directly
+     * bypasses the copy before modification and the cached statistics, use
+     * loadData and addInstance instead.
      */
     public Instances data;
     private String path;
     private String name;
+    private boolean shared;
+    private AttributeStatistics statistics;
+    private NormalizedInputs inputs;
+    
+    /**
+     * binaryCache - whether loading or saving a file also writes its binary cache (off by default)
+     */
+    private static boolean binaryCache = false;
     
     /**
      * Constructor
@@ -44,15 +60,50 @@ public class Dataset
 
     /**
      * Constructor with an Instances object as a parameter. Loads data from an
-     * existing instances object.
+     * existing instances object. The instances are not copied, see
+     * loadData(Instances).
      * 
-     * @param instances The existing Instances object to copy.
+     * @param instances The existing Instances object to share.
      */
     public Dataset(Instances instances)
     {
         loadData(instances);
     }
 
+    /**
+     * Constructor with columnar data (on or off the heap) as a parameter. Converts
+     * the columns back into an Instances object.
+     * 
+     * @param columns The columnar data to convert.
+     */
+    public Dataset(RowSource columns)
+    {
+        int rows[] = new int[columns.numInstances()];
+        
+        for(int i = 0; i < rows.length; i++)
+            rows[i] = i;
+        
+        data = columns.toInstances(rows);
+        shared = false;
+        path = null;
+    }
+
+    /**
+     * Creates a dataset that takes ownership of the given instances. Used for
+     * Instances that were just built and are not referenced anywhere else, so they
+     * are never copied.
+     * 
+     * @param instances The Instances object to take ownership of
+     * @return the new dataset
+     */
+    static Dataset adopt(Instances instances)
+    {
+        Dataset dataset = new Dataset(instances);
+        dataset.shared = false;
+        
+        return dataset;
+    }
+
     /**
      * Getters
      */
@@ -110,13 +161,113 @@ public class Dataset
     }
     
     /**
-     * Gets the Instances object representing the dataset
+     * Gets the Instances object representing the dataset. The instances are
+     * the dataset's own and must not be modified through this reference; later
+     * modifications of this dataset may be visible through it. Callers that
+     * keep the instances use shareInstances instead.
      * @return the Instances object representing the dataset
      */
     public Instances getInstances()
     {
         return data;
     }
+    
+    /**
+     * Gets the Instances object representing the dataset for a caller that keeps
+     * it. The instances must not be modified through this reference; this dataset
+     * copies them before its own next modification, so the caller never sees it.
+     * @return the Instances object representing the dataset
+     */
+    public Instances shareInstances()
+    {
+        if(data != null)
+            shared = true;
+        
+        return data;
+    }
+    
+    /**
+     * Sets whether loading or saving a file also writes the binary cache next to
+     * it. An existing valid cache is read either way.
+     * 
+     * @param enabled true to write the cache
+     */
+    public static void setBinaryCache(boolean enabled)
+    {
+        binaryCache = enabled;
+    }
+
+    /**
+     * Copies the dataset into a columnar representation for column-wise processing
+     * 
+     * @return the columnar copy of the data, or null if no data is loaded
+     */
+    public ColumnarDataset toColumnar()
+    {
+        if(data == null)
+            return null;
+        
+        return ColumnarDataset.fromInstances(data);
+    }
+
+    /**
+     * Gets the statistics of the dataset, computing them on first use. The
+     * statistics are kept until the dataset is modified through this object
+     * (addInstance, setClassIndex, loadData); changes made directly to the
+     * Instances are not detected.
+     * 
+     * @return the statistics, or null if no data is loaded or they could not be computed
+     */
+    public synchronized AttributeStatistics getStatistics()
+    {
+        if(statistics == null && data != null)
+        {
+            try
+            {
+                statistics = AttributeStatistics.compute(toColumnar());
+            }
+            catch(Exception e)
+            {
+                System.err.println("Could not compute statistics: " + e.getMessage());
+            }
+        }
+        
+        return statistics;
+    }
+
+    /**
+     * Gets the normalized network inputs of the dataset, computing them on first
+     * use. Cached and invalidated like the statistics, so every network trained
+     * on this dataset shares a single copy.
+     * 
+     * @return the normalized inputs, or null if no data is loaded, the class index is not set or they could not be computed
+     */
+    public synchronized NormalizedInputs getNormalizedInputs()
+    {
+        if(inputs == null && data != null && data.classIndex() >= 0 && getStatistics() != null)
+            inputs = new NormalizedInputs(data, statistics);
+        
+        return inputs;
+    }
+
+    /**
+     * Checks if the statistics of the dataset have already been computed
+     * 
+     * @return boolean - true if getStatistics() will not scan the data
+     */
+    public synchronized boolean hasStatistics()
+    {
+        return statistics != null;
+    }
+
+    /**
+     * Drops the cached statistics and inputs after the data has changed
+     */
+    private synchronized void invalidateStatistics()
+    {
+        statistics = null;
+        inputs = null;
+    }
 
     public void setName(String name)
     {
@@ -130,13 +281,32 @@ public class Dataset
      */
     public void setClassIndex(int classIndex)
     {
+        if(data.classIndex() == classIndex)
+            return;
+        
+        copyIfShared();
         data.setClassIndex(classIndex);
+        invalidateStatistics();
+    }
+    
+    /**
+     * Copies the shared instances so this dataset can modify them without
+     * affecting any other owner
+     */
+    private void copyIfShared()
+    {
+        if(shared)
+        {
+            data = new Instances(data);
+            shared = false;
+        }
     }
     
     /**
-     * Saves data to a file with the given path
+     * Saves data to a file with the given path. A binary cache is written next to
+     * the file so loading it again does not require parsing.
      * 
-     * @throws  Exception
+     * @return boolean - true if the file was written, false (after reporting the error) otherwise
      */
     public boolean saveFile(String path)
     {
@@ -144,12 +314,17 @@ public class Dataset
         {
             DataSink.write(path, data);
             this.path = path;
-            return true;
         }
         catch(Exception e)
         {
+            System.err.println("Error writing " + path);
+            System.err.println(e.getMessage());
             return false;
         }
+        
+        if(binaryCache)
+            writeCache(path);
+        return true;
     }
 
     /**
@@ -174,11 +349,17 @@ public class Dataset
      */
     public void addInstance(Instance instance)
     {
+        copyIfShared();
         data.add(instance);
+        invalidateStatistics();
     }
 
     /**
-     * Loads dataset from the provided file into the data Instances object.
+     * Loads dataset from the provided file into the data Instances object. If a
+     * binary cache of the file exists and is up to date it is loaded instead,
+     * otherwise the cache is written after parsing the file. ARFF and CSV files
+     * are parsed in chunks on every core (see ChunkedDatasetReader). Either way
+     * the class index is left unset, as data files do not record it.
      * 
      * @param path The path to the file containing the dataset.
      * @throws Exception
@@ -187,34 +368,147 @@ public class Dataset
     {
 
         System.out.println("Loading data from " + path + "...");
+        invalidateStatistics();
+        Metrics.Timer load = Metrics.start(Metrics.LOAD);
+
+        if (BinaryDatasetCache.isValid(path))
+        {
+            try
+            {
+                data = BinaryDatasetCache.read(path).toInstances();
+                // The cache keeps the class index the data was saved with, parsing the file does not
+                data.setClassIndex(-1);
+                shared = false;
+                this.path = path;
+                load.stop();
+                return;
+            }
+            catch (Exception e)
+            {
+                System.err.println("Could not read cache for " + path + ", parsing instead");
+            }
+        }
 
         try
         {
-            // See p.210 of the WEKA 3-8-2 manual
-            data = DataSource.read(path);
+            String lowerPath = path.toLowerCase();
+            
+            if (lowerPath.endsWith(".arff") || lowerPath.endsWith(".csv"))
+                data = readChunked(path);
+            else
+                // See p.210 of the WEKA 3-8-2 manual
+                data = DataSource.read(path);
+            shared = false;
             this.path = path;
+            load.stop();
 
         } catch (Exception e)
         {
             System.err.println("Error reading " + path);
             System.err.println(e.getMessage());
+            return;
         }
+
+        if (binaryCache)
+            writeCache(path);
     }
 
     /**
-     * Loads dataset from a pre-existing Instances object.
+     * Parses an ARFF or CSV file in chunks on every core and joins the chunks in
+     * file order. Each chunk is dropped as soon as it has been copied.
      * 
-     * @param instances The data to be copied
+     * @param path The path to the file containing the dataset.
+     * @return the instances of the file, without a class index
+     * @throws Exception if the file cannot be parsed
+     */
+    private static Instances readChunked(String path) throws Exception
+    {
+        ChunkedDatasetReader reader = new ChunkedDatasetReader(path, ChunkedDatasetReader.DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+        final ArrayList<Instances> chunks = new ArrayList<Instances>();
+        
+        int numChunks = reader.read(new ChunkedDatasetReader.ChunkConsumer()
+        {
+            public void accept(int chunkIndex, Instances chunk)
+            {
+                synchronized (chunks)
+                {
+                    while (chunks.size() <= chunkIndex)
+                        chunks.add(null);
+                    
+                    chunks.set(chunkIndex, chunk);
+                }
+            }
+        });
+        
+        int numInstances = 0;
+        for (Instances chunk : chunks)
+            numInstances += chunk.numInstances();
+        
+        Instances instances = new Instances(reader.getStructure(), numInstances);
+        instances.setClassIndex(-1);
+        boolean hasStrings = instances.checkForStringAttributes();
+        
+        for (int i = 0; i < numChunks; i++)
+        {
+            Instances chunk = chunks.get(i);
+            
+            for (int j = 0; j < chunk.numInstances(); j++)
+            {
+                instances.add(chunk.instance(j));
+                
+                // String values are indices into the chunk's own string pool
+                for (int att = 0; hasStrings && att < chunk.numAttributes(); att++)
+                {
+                    if (chunk.attribute(att).isString() && !chunk.instance(j).isMissing(att))
+                        instances.lastInstance().setValue(att, chunk.instance(j).stringValue(att));
+                }
+            }
+            
+            chunks.set(i, null);
+        }
+        
+        return instances;
+    }
+
+    /**
+     * Writes the binary cache for the file the data was loaded from or saved to.
+     * Failure is not an error, the file will be parsed again on the next load.
+     * 
+     * @param path The path to the file containing the dataset.
+     */
+    private void writeCache(String path)
+    {
+        try
+        {
+            BinaryDatasetCache.write(path, ColumnarDataset.fromInstances(data));
+        }
+        catch (Exception e)
+        {
+            System.err.println("Could not write cache for " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads dataset from a pre-existing Instances object. The instances are
+     * shared with the caller rather than copied: this dataset copies them
+     * before its own first modification (addInstance, setClassIndex), but
+     * changes the caller makes to them afterwards are seen by this dataset, so
+     * the caller must not modify them.
+     * 
+     * @param instances The data to be shared
      */
     public void loadData(Instances instances)
     {
-        data = new Instances(instances);
+        data = instances;
+        shared = true;
         path = null;
+        invalidateStatistics();
     }
 
     /**
      * Discretize data using WEKA implementation of Fayyad & Irani MDL
-     * discretization. See WEKA 3-8-2 Manual p.219.
+     * discretization. See WEKA 3-8-2 Manual p.219. The cut point search uses the
+     * sorted orders of the cached statistics (see PresortedDiscretize).
      * 
      * @param savePath Path to save discretized data to. The file extension (.arff or .csv) is specified when providing savePath.
      *
@@ -231,10 +525,10 @@ public class Dataset
         }
 
         Instances discretizedData = null;
-        Discretize discretizer = new Discretize();
-
         try
         {
+            PresortedDiscretize discretizer = new PresortedDiscretize(getStatistics());
+            
             // discretize data
             discretizer.setInputFormat(data);
             discretizedData = Filter.useFilter(data, discretizer);
@@ -1,11 +1,10 @@
 package com.jordanml.TransactionClassifier;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.lang.Float;
 
-import weka.core.AttributeStats;
-import weka.core.Instance;
 import weka.core.Instances;
 
 /**
@@ -19,12 +18,16 @@ public class DatasetSplitter
 
     /**
      * folds - collection of Datasets split from source sourceData - the source data
-     * sourceData - copy of the data from the target dataset to be split
+     * sourceData - the data from the target dataset to be split (shared, never modified)
+     * columns - row access to the source data that splitting runs over
      * template - the template from which each fold dataset gets its attribute information
+     * classCounts - class counts taken from the source's cached statistics, null to count them when splitting
      */
     private ArrayList<Dataset> folds;
     private Instances sourceData;
+    private RowSource columns;
     private Instances template;
+    private int classCounts[];
 
     /**
      * needed - the number of instances needed by each fold (set once) 
@@ -32,32 +35,67 @@ public class DatasetSplitter
      * probabilities - the probability that a fold should be selected (for each class)
      * foldsInitialized - whether or not the folds have been initialized
      * numClasses - the number of possible classes in the source data
-     * classIndex - the attribute index of the class attribute
-     * possibleClasses - array of the possible class values
+     * numSkipped - the number of instances of the last split that were left out because their class is missing
      */
     private int instancesRequired[][];
     private int fitnesses[][];
     private float probabilities[][];
     private boolean foldsInitialized;
     private int numClasses;
-    private int classIndex;
-    private String possibleClasses[];
+    private int numSkipped;
     
     public DatasetSplitter(Instances source)
     {
-        foldsInitialized = false;
-        sourceData = new Instances(source);
-        sourceData.setClassIndex(sourceData.numAttributes() - 1);
-        template = new Instances(sourceData, 0);
-        numClasses = sourceData.classAttribute().numValues();
-        classIndex = sourceData.classIndex();
-        possibleClasses = new String[numClasses];
-        folds = new ArrayList<Dataset>();
-        
-        for(int i = 0; i < numClasses; i++)
+        // The source is only read, so it is copied only when its class index has to be set
+        if (source.classIndex() != source.numAttributes() - 1)
         {
-            possibleClasses[i] = sourceData.classAttribute().value(i);
+            source = new Instances(source);
+            source.setClassIndex(source.numAttributes() - 1);
         }
+        
+        sourceData = source;
+        init(ColumnarDataset.fromInstances(source));
+    }
+    
+    /**
+     * Constructor for a dataset. Reuses the class counts of the dataset's
+     * statistics if they have already been computed for the last attribute.
+     * 
+     * @param source the data to split
+     */
+    public DatasetSplitter(Dataset source)
+    {
+        this(source.shareInstances());
+        
+        if (source.hasStatistics() && source.classIndex() == source.numAttributes() - 1)
+            classCounts = source.getStatistics().classCounts();
+    }
+    
+    /**
+     * Constructor for data that is already stored in columns, on or off the heap.
+     * The class attribute is expected to be the last attribute.
+     * 
+     * @param source the data to split
+     */
+    public DatasetSplitter(RowSource source)
+    {
+        sourceData = null;
+        source.setClassIndex(source.numAttributes() - 1);
+        init(source);
+    }
+    
+    /**
+     * Sets up the splitter state for the given source data
+     * 
+     * @param source the data to split
+     */
+    private void init(RowSource source)
+    {
+        foldsInitialized = false;
+        columns = source;
+        template = new Instances(columns.getHeader(), 0);
+        numClasses = template.classAttribute().numValues();
+        folds = new ArrayList<Dataset>();
     }
 
     /**
@@ -91,12 +129,37 @@ public class DatasetSplitter
      */
     public boolean splitData()
     {
-
+        int foldRows[][] = assignRows();
+        
         //Check if the folds have been initialized, if not then data splitting cannot continue
-        if (!isInitialized())
+        if (foldRows == null)
         {
             return false;
         }
+        
+        // Materialize the instances of each fold
+        for (int i = 0; i < foldRows.length; i++)
+        {
+            for (int j = 0; j < foldRows[i].length; j++)
+            {
+                folds.get(i).addInstance(columns.instance(foldRows[i][j]));
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Assigns every row of the source data to a fold without materializing the
+     * folds, so they can be written straight from the source (see FoldExporter).
+     * 
+     * @return the rows of each fold in source order, or null if the folds have not been initialized
+     */
+    public int[][] assignRows()
+    {
+        if (!isInitialized())
+        {
+            return null;
+        }
 
         /**
          * numFolds - the number of folds 
@@ -104,29 +167,47 @@ public class DatasetSplitter
          * random - a random number generator used when selecting which fold the current instance will be added to
          * rand - the random number
          * selectedFold - the fold to add the current instance to
-         * currentInstance - the instance from the source dataset that is currently under consideration
          */
         Random random = new Random();
         float rand;
         int fitnessSum, selectedFold;
+        int numFolds = folds.size();
 
         // Set the number of instances of each class that each fold expects when splitting is done
         setInstancesRequired();
         setFitnesses();
         
-        // Loop until all Instances have been distributed
-        while (sourceData.numInstances() != 0)
+        // The rows selected for each fold, in source order
+        int foldRows[][] = new int[numFolds][];
+        int foldSizes[] = new int[numFolds];
+        
+        for (int i = 0; i < numFolds; i++)
+        {
+            int size = 0;
+            for (int j = 0; j < numClasses; j++)
+                size += instancesRequired[j][i];
+            
+            foldRows[i] = new int[size];
+        }
+        
+        numSkipped = 0;
+        
+        // Assign every row of the class column to a fold
+        for (int row = 0; row < columns.numInstances(); row++)
         {
             // Reset selectedFold < 0
             selectedFold = -1;
             
-            // System.out.println("Adding instance: " + currentInstance);
-            // Get copy of current instance
-            Instance copy = (Instance) sourceData.instance(0).copy();
-            sourceData.delete(0);
-            
             // Get class value index and calculate fitness sum and update probabilities based on class value index
-            int classValueIndex = getClassValueIndex(copy);
+            int classValueIndex = columns.classCode(row);
+            
+            // Rows with a missing class cannot be stratified
+            if (classValueIndex < 0)
+            {
+                numSkipped++;
+                continue;
+            }
+            
             fitnessSum = sumFitnesses(classValueIndex);
             setProbabilities(classValueIndex, fitnessSum);
             // Get new random number
@@ -144,12 +225,15 @@ public class DatasetSplitter
                 currentFold++;
             }
             
-            // Add instance to selected fold
-            folds.get(selectedFold).addInstance(copy);
+            foldRows[selectedFold][foldSizes[selectedFold]++] = row;
             // Adjust fitness
             fitnesses[classValueIndex][selectedFold]--;
         }
-        return true;
+        
+        for (int i = 0; i < numFolds; i++)
+            foldRows[i] = Arrays.copyOf(foldRows[i], foldSizes[i]);
+        
+        return foldRows;
     }
 
     /**
@@ -201,15 +285,27 @@ public class DatasetSplitter
      */
     private void setInstancesRequired()
     {
-        // Get count of each class
-        AttributeStats stats = sourceData.attributeStats(classIndex);
-        int classCounts[] = stats.nominalCounts;
+        // Get count of each class from the statistics or the packed class column
+        int classCounts[] = this.classCounts != null ? this.classCounts : columns.classCounts();
         
-        // Get number of folds
-        int numFolds = folds.size();
+        instancesRequired = computeInstancesRequired(classCounts, folds.size());
+    }
+    
+    /**
+     * Computes the number of instances of each class that each fold requires. The
+     * instances of each class are shared out evenly, the first folds taking one
+     * extra instance while a remainder is left.
+     * 
+     * @param classCounts the number of instances of each class
+     * @param numFolds    the number of folds
+     * @return the number of instances required, indexed by class and then by fold
+     */
+    public static int[][] computeInstancesRequired(int classCounts[], int numFolds)
+    {
+        int required[][] = new int[classCounts.length][numFolds];
         
         // For each class...
-        for(int i = 0; i < numClasses; i++)
+        for(int i = 0; i < classCounts.length; i++)
         {
             // Initial calculation of minimum number of instances (of the current class) per fold
             int minPerFold = classCounts[i] / numFolds;
@@ -218,39 +314,20 @@ public class DatasetSplitter
             
             for(int j = 0; j < numFolds; j++)
             {
-                instancesRequired[i][j] = minPerFold; 
+                required[i][j] = minPerFold; 
                 
                 // If unassigned instances of this class remain, add one
                 if(remaining > 0)
                 {
-                    instancesRequired[i][j]++;
+                    required[i][j]++;
                     remaining--;
                 }
             }
         }
-    }
-
-    /**
-     * Gets the class value index by comparing the String value of the current
-     * instance's class to the possible class values.
-     * 
-     * @param currentInstance The current instance being considered
-     * @return integer value representing the class value index
-     */
-    private int getClassValueIndex(Instance currentInstance)
-    {
-        String classValue = currentInstance.stringValue(classIndex);
-        int classValueIndex = -1;
-        
-        for(int i = 0; i < numClasses && classValueIndex < 0; i++)
-        {
-            if(classValue.equals(possibleClasses[i]))
-                classValueIndex = i;
-        }
         
-        return classValueIndex;
+        return required;
     }
-    
+
     /**
      * Returns the folds ArrayList
      * 
@@ -262,6 +339,16 @@ public class DatasetSplitter
         return folds;
     }
 
+    /**
+     * Gets the row access to the source data that splitting runs over
+     * 
+     * @return the source rows
+     */
+    public RowSource getRowSource()
+    {
+        return columns;
+    }
+
     /**
      * Returns the Instances object containing the source data
      * 
@@ -269,9 +356,29 @@ public class DatasetSplitter
      */
     public Instances getSource()
     {
+        // Data given in columns is only converted back to Instances when requested
+        if (sourceData == null)
+        {
+            int rows[] = new int[columns.numInstances()];
+            for (int i = 0; i < rows.length; i++)
+                rows[i] = i;
+            
+            sourceData = columns.toInstances(rows);
+        }
+        
         return sourceData;
     }
 
+    /**
+     * Gets the number of instances the last split left out because their class is missing
+     * 
+     * @return the number of instances left out
+     */
+    public int getNumSkipped()
+    {
+        return numSkipped;
+    }
+
     /**
      * Getter to check whether or not folds have been initialized and data is ready
      * to be split
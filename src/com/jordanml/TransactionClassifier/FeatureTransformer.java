@@ -0,0 +1,252 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.supervised.attribute.Discretize;
+
+/**
+ * Compiled form of the discretization, reduct projection and input
+ * normalization used during training. Turns a raw transaction into the network
+ * input vector or into the discretized bin indices of the kept attributes
+ * without building a filter chain or allocating per transaction.
+ */
+public class FeatureTransformer implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * keep - the indices of the raw attributes that are kept, in output order
+     * cutPoints - the sorted cut points of each kept attribute (empty if the attribute has a single bin)
+     * numValues - the number of values of each kept nominal attribute, 0 for numeric attributes
+     * normalizer - maps the raw transaction onto the network inputs, null if the network normalizes its own inputs
+     */
+    private int keep[];
+    private double cutPoints[][];
+    private int numValues[];
+    private InputNormalizer normalizer;
+
+    /**
+     * Constructor
+     *
+     * @param keep      the indices of the raw attributes that are kept, in output order
+     * @param cutPoints the sorted cut points for each kept attribute
+     * @param numValues the number of values of each kept nominal attribute, 0 for numeric attributes
+     */
+    public FeatureTransformer(int keep[], double cutPoints[][], int numValues[])
+    {
+        if (keep.length != cutPoints.length || keep.length != numValues.length)
+            throw new IllegalArgumentException("Expected cut points and a value count for each kept attribute");
+
+        this.keep = keep.clone();
+        this.numValues = numValues.clone();
+        this.cutPoints = new double[cutPoints.length][];
+
+        for (int i = 0; i < cutPoints.length; i++)
+            this.cutPoints[i] = cutPoints[i] == null ? new double[0] : cutPoints[i].clone();
+    }
+
+    /**
+     * Compiles a transformer from a trained discretizer. The kept indices refer
+     * to the attributes of the data the discretizer was trained on.
+     * Nominal attributes are not discretized, their bin is their value index.
+     *
+     * @param discretizer the trained discretizer
+     * @param keep        the indices of the attributes that are kept, in output order
+     * @return the compiled transformer
+     */
+    public static FeatureTransformer compile(Discretize discretizer, int keep[])
+    {
+        Instances format = discretizer.getCopyOfInputFormat();
+        double cutPoints[][] = new double[keep.length][];
+        int numValues[] = new int[keep.length];
+
+        for (int i = 0; i < keep.length; i++)
+        {
+            if (format.attribute(keep[i]).isNominal())
+                numValues[i] = format.attribute(keep[i]).numValues();
+            else
+                cutPoints[i] = discretizer.getCutPoints(keep[i]);
+        }
+
+        return new FeatureTransformer(keep, cutPoints, numValues);
+    }
+
+    /**
+     * Gets the indices of the non-class attributes included in a reduct
+     *
+     * @param reduct        BitSet representing the attributes that are included in the reduct
+     * @param numAttributes the number of attributes in the raw data
+     * @param classIndex    the class index of the raw data
+     * @return the kept attribute indices in ascending order
+     */
+    public static int[] reductIndices(BitSet reduct, int numAttributes, int classIndex)
+    {
+        int count = 0;
+        for (int i = 0; i < numAttributes; i++)
+        {
+            if (reduct.get(i) && i != classIndex)
+                count++;
+        }
+
+        int indices[] = new int[count];
+        int index = 0;
+        for (int i = 0; i < numAttributes; i++)
+        {
+            if (reduct.get(i) && i != classIndex)
+                indices[index++] = i;
+        }
+
+        return indices;
+    }
+
+    /**
+     * Creates a transformer that reads its kept attributes through an additional
+     * index mapping, e.g. from reduced data indices to raw data indices.
+     *
+     * @param rawIndices rawIndices[i] is the raw index of attribute i in this transformer's input
+     * @return the remapped transformer
+     */
+    public FeatureTransformer remap(int rawIndices[])
+    {
+        int mapped[] = new int[keep.length];
+
+        for (int i = 0; i < keep.length; i++)
+            mapped[i] = rawIndices[keep[i]];
+
+        FeatureTransformer transformer = new FeatureTransformer(mapped, cutPoints, numValues);
+        transformer.normalizer = normalizer == null ? null : normalizer.remap(rawIndices);
+
+        return transformer;
+    }
+
+    /**
+     * Creates a transformer that feeds the network through the given
+     * normalizer. The normalizer must read the same attribute indices as this
+     * transformer.
+     *
+     * @param normalizer the normalization of the network inputs
+     * @return the transformer with the normalizer
+     */
+    public FeatureTransformer withNormalizer(InputNormalizer normalizer)
+    {
+        FeatureTransformer transformer = new FeatureTransformer(keep, cutPoints, numValues);
+        transformer.normalizer = normalizer;
+
+        return transformer;
+    }
+
+    /**
+     * Gets the number of kept attributes
+     *
+     * @return int - the length of the output vectors
+     */
+    public int numOutputs()
+    {
+        return keep.length;
+    }
+
+    /**
+     * Gets the number of network inputs
+     *
+     * @return int - the length of the network input vectors
+     */
+    public int numInputs()
+    {
+        return normalizer != null ? normalizer.numOutputs() : keep.length;
+    }
+
+    /**
+     * Gets the number of bins of a kept attribute
+     *
+     * @param output the position of the attribute in the output vector
+     * @return int - the number of bins
+     */
+    public int numBins(int output)
+    {
+        if (numValues[output] > 0)
+            return numValues[output];
+
+        return cutPoints[output].length + 1;
+    }
+
+    /**
+     * Computes the network input vector of a raw transaction. Without a
+     * normalizer the kept values are copied unchanged, for networks that
+     * normalize their own inputs.
+     *
+     * @param raw the raw attribute values
+     * @param out the output vector, at least numInputs() long
+     */
+    public void project(double raw[], double out[])
+    {
+        if (normalizer != null)
+        {
+            normalizer.transform(raw, out);
+            return;
+        }
+
+        for (int i = 0; i < keep.length; i++)
+            out[i] = raw[keep[i]];
+    }
+
+    /**
+     * Bins the kept attributes of a raw transaction. Missing values are binned to -1.
+     *
+     * @param raw the raw attribute values
+     * @param out the output bins, at least numOutputs() long
+     */
+    public void bin(double raw[], int out[])
+    {
+        for (int i = 0; i < keep.length; i++)
+            out[i] = binValue(i, raw[keep[i]]);
+    }
+
+    /**
+     * Bins the kept attributes of a raw instance. Missing values are binned to -1.
+     *
+     * @param raw the raw instance
+     * @param out the output bins, at least numOutputs() long
+     */
+    public void bin(Instance raw, int out[])
+    {
+        for (int i = 0; i < keep.length; i++)
+            out[i] = binValue(i, raw.value(keep[i]));
+    }
+
+    /**
+     * Finds the bin of a value. Matches WEKA's Discretize, where a value belongs
+     * to the first bin whose upper cut point is greater than or equal to it and
+     * a nominal value keeps its index.
+     *
+     * @param output the position of the attribute in the output vector
+     * @param value  the raw value
+     * @return the bin index or -1 for a missing value
+     */
+    public int binValue(int output, double value)
+    {
+        if (Double.isNaN(value))
+            return -1;
+
+        if (numValues[output] > 0)
+            return (int) value;
+
+        double cuts[] = cutPoints[output];
+        int low = 0;
+        int high = cuts.length;
+
+        // Find the first cut point >= value
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (cuts[mid] < value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+}
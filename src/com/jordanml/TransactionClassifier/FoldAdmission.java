@@ -0,0 +1,134 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of cross validation folds that hold their training and
+ * test data at the same time. Each fold reserves its estimated heap usage from
+ * a fixed budget before materializing its data and returns it when finished.
+ * The number of folds running at once can also be capped.
+ */
+public class FoldAdmission
+{
+    /**
+     * BYTES_PER_PERMIT - the granularity of the budget (1MB)
+     * BYTES_PER_INSTANCE - estimated overhead of a DenseInstance apart from its values
+     * COPIES_PER_FOLD - copies of a fold's rows alive at once (train/test, discretized, reduct)
+     */
+    private static final long BYTES_PER_PERMIT = 1L << 20;
+    private static final long BYTES_PER_INSTANCE = 56;
+    private static final int COPIES_PER_FOLD = 3;
+
+    /**
+     * permits - the remaining budget, in permits
+     * totalPermits - the whole budget, in permits
+     * slots - the folds that may still start, null if the number of folds is not capped
+     */
+    private Semaphore permits;
+    private int totalPermits;
+    private Semaphore slots = null;
+
+    /**
+     * Constructor
+     *
+     * @param heapBudget the heap (in bytes) that running folds may use together
+     */
+    public FoldAdmission(long heapBudget)
+    {
+        totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, heapBudget / BYTES_PER_PERMIT));
+        permits = new Semaphore(totalPermits, true);
+    }
+
+    /**
+     * Constructor with a cap on the number of folds running at once
+     *
+     * @param heapBudget the heap (in bytes) that running folds may use together
+     * @param maxFolds   the number of folds that may run at once, 0 for no cap
+     */
+    public FoldAdmission(long heapBudget, int maxFolds)
+    {
+        this(heapBudget);
+
+        if (maxFolds > 0)
+            slots = new Semaphore(maxFolds, true);
+    }
+
+    /**
+     * Gets a default budget of 80% of the heap that is not in use yet
+     *
+     * @return the budget in bytes
+     */
+    public static long defaultBudget()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+
+        return (long) ((runtime.maxMemory() - used) * 0.8);
+    }
+
+    /**
+     * Estimates the heap used while a fold is processed
+     *
+     * @param numInstances  the number of instances in the fold's training and test sets together
+     * @param numAttributes the number of attributes
+     * @return the estimate in bytes
+     */
+    public static long estimateFoldBytes(int numInstances, int numAttributes)
+    {
+        return COPIES_PER_FOLD * (long) numInstances * (BYTES_PER_INSTANCE + (long) numAttributes * Double.BYTES);
+    }
+
+    /**
+     * Waits until the estimated heap of a fold (and, with a cap, a free fold
+     * slot) is available and reserves it. A fold larger than the whole budget
+     * waits for the whole budget, so it runs alone.
+     *
+     * @param bytes the estimated heap usage of the fold
+     * @return the number of permits reserved, to be passed to release
+     * @throws InterruptedException
+     */
+    public int acquire(long bytes) throws InterruptedException
+    {
+        int needed = (int) Math.min(totalPermits, Math.max(1, (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT));
+
+        if (slots != null)
+            slots.acquire();
+
+        try
+        {
+            permits.acquire(needed);
+        }
+        catch (InterruptedException e)
+        {
+            if (slots != null)
+                slots.release();
+
+            throw e;
+        }
+
+        return needed;
+    }
+
+    /**
+     * Returns reserved heap to the budget
+     *
+     * @param reserved the number of permits returned by acquire
+     */
+    public void release(int reserved)
+    {
+        permits.release(reserved);
+
+        if (slots != null)
+            slots.release();
+    }
+
+    /**
+     * Gets the size of the budget
+     *
+     * @return the budget in bytes
+     */
+    public long getBudget()
+    {
+        return totalPermits * BYTES_PER_PERMIT;
+    }
+}
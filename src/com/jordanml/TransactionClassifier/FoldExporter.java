@@ -0,0 +1,270 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.core.Instances;
+
+/**
+ * Writes the folds produced by a DatasetSplitter. Every output file is an
+ * independent task on a thread pool. The combined training file of a fold is
+ * written by streaming the rows of the other folds straight to the file, so no
+ * combined copy of the data is ever built.
+ *
+ * The folds are given as the row assignment of a DatasetSplitter over its
+ * RowSource. Each row is only turned into an Instance while it is written, so
+ * the folds are never held on the heap.
+ */
+public class FoldExporter
+{
+    /**
+     * WRITE_BUFFER_SIZE - the buffer size of each output file
+     */
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * source - the data the fold rows are taken from
+     * foldRows - the rows of each fold in source
+     * path - the base path of the output files
+     * numThreads - the number of files written at the same time
+     */
+    private RowSource source;
+    private int foldRows[][];
+    private String path;
+    private int numThreads;
+
+    /**
+     * Constructor
+     *
+     * @param source     the data the fold rows are taken from
+     * @param foldRows   the rows of each fold (see DatasetSplitter.assignRows)
+     * @param path       the base path of the output files
+     * @param numThreads the number of files written at the same time
+     */
+    public FoldExporter(RowSource source, int foldRows[][], String path, int numThreads)
+    {
+        this.source = source;
+        this.foldRows = foldRows;
+        this.path = path;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Gets the number of folds
+     *
+     * @return the number of folds
+     */
+    public int numFolds()
+    {
+        return foldRows.length;
+    }
+
+    /**
+     * Gets the path of a fold file
+     *
+     * @param fold the fold number
+     * @return the path
+     */
+    public String foldPath(int fold)
+    {
+        return foldPath(path, fold);
+    }
+
+    /**
+     * Gets the path of a fold file
+     *
+     * @param path the base path of the output files
+     * @param fold the fold number
+     * @return the path
+     */
+    public static String foldPath(String path, int fold)
+    {
+        return path + "_fold_" + fold + ".arff";
+    }
+
+    /**
+     * Gets the path of the file combining every fold except one
+     *
+     * @param excluded the fold number left out
+     * @return the path
+     */
+    public String combinedPath(int excluded)
+    {
+        return combinedPath(path, excluded);
+    }
+
+    /**
+     * Gets the path of the file combining every fold except one
+     *
+     * @param path     the base path of the output files
+     * @param excluded the fold number left out
+     * @return the path
+     */
+    public static String combinedPath(String path, int excluded)
+    {
+        return path + "_combined_excludes_" + excluded + ".arff";
+    }
+
+    /**
+     * Writes each fold to its own file and, if requested, the combination of
+     * the other folds for each fold
+     *
+     * @param saveCombined whether the combined files are written
+     * @return the path of each fold file, null for folds that could not be written
+     */
+    public String[] write(boolean saveCombined)
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<Boolean>> foldTasks = new ArrayList<Future<Boolean>>();
+        ArrayList<Future<Boolean>> combinedTasks = new ArrayList<Future<Boolean>>();
+        String paths[] = new String[numFolds()];
+
+        try
+        {
+            for (int i = 0; i < numFolds(); i++)
+            {
+                final int fold = i;
+
+                foldTasks.add(pool.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws IOException
+                    {
+                        writeFold(fold);
+                        return true;
+                    }
+                }));
+
+                if (saveCombined)
+                {
+                    combinedTasks.add(pool.submit(new Callable<Boolean>()
+                    {
+                        public Boolean call() throws IOException
+                        {
+                            writeCombined(fold);
+                            return true;
+                        }
+                    }));
+                }
+            }
+
+            for (int i = 0; i < foldTasks.size(); i++)
+            {
+                if (await(foldTasks.get(i), foldPath(i)))
+                    paths[i] = foldPath(i);
+            }
+
+            for (int i = 0; i < combinedTasks.size(); i++)
+                await(combinedTasks.get(i), combinedPath(i));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        return paths;
+    }
+
+    /**
+     * Streams every fold except one to the combined file of that fold, in fold
+     * order. Produces the same file as saving the combined Instances.
+     *
+     * @param excluded the fold number left out
+     * @throws IOException
+     */
+    public void writeCombined(int excluded) throws IOException
+    {
+        try (Writer writer = open(combinedPath(excluded)))
+        {
+            for (int i = 0; i < numFolds(); i++)
+            {
+                if (i != excluded)
+                    writeRows(writer, i);
+            }
+        }
+    }
+
+    /**
+     * Streams the rows of a fold to its fold file. Produces the same file as
+     * saving the fold's Instances.
+     *
+     * @param fold the fold number
+     * @throws IOException
+     */
+    public void writeFold(int fold) throws IOException
+    {
+        try (Writer writer = open(foldPath(fold)))
+        {
+            writeRows(writer, fold);
+        }
+    }
+
+    /**
+     * Opens an output file and writes the ARFF header, which ends with the @data line
+     *
+     * @param outputPath the file to write
+     * @return the writer
+     * @throws IOException
+     */
+    private Writer open(String outputPath) throws IOException
+    {
+        Instances header = new Instances(source.getHeader(), 0);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputPath), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+
+        writer.write(header.toString());
+
+        return writer;
+    }
+
+    /**
+     * Writes the rows of a fold, one ARFF data line each
+     *
+     * @param writer the output
+     * @param fold   the fold number
+     * @throws IOException
+     */
+    private void writeRows(Writer writer, int fold) throws IOException
+    {
+        for (int row : foldRows[fold])
+        {
+            writer.write(source.instance(row).toString());
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Waits for a write task and reports its failure
+     *
+     * @param task       the task
+     * @param outputPath the file the task writes
+     * @return boolean - true if the file was written
+     */
+    private static boolean await(Future<Boolean> task, String outputPath)
+    {
+        try
+        {
+            if (task.get())
+                return true;
+        }
+        catch (ExecutionException e)
+        {
+            System.err.println(e.getCause().getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        System.err.println("Could not write " + outputPath);
+        return false;
+    }
+}
@@ -0,0 +1,191 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import weka.classifiers.Evaluation;
+import weka.core.SerializationHelper;
+
+/**
+ * The worker side of WorkerPool. A worker repeatedly claims a pending task
+ * from the spool directory, runs testOnceClassify on the task's training and
+ * test sets and leaves the serialized Evaluation in done/. A task that fails
+ * goes to failed/ with the reason (the stack trace of an exception) next to
+ * it, so the coordinator can report it. It exits once no task is pending.
+ */
+public class FoldWorker
+{
+    /**
+     * spoolDir - the spool directory shared with the coordinator
+     * workerId - the id given by the coordinator
+     * options - the training pipeline options
+     */
+    private File spoolDir;
+    private int workerId;
+    private PipelineOptions options;
+
+    /**
+     * Constructor
+     *
+     * @param spoolDir the spool directory shared with the coordinator
+     * @param workerId the id given by the coordinator
+     * @param options  the training pipeline options
+     */
+    public FoldWorker(String spoolDir, int workerId, PipelineOptions options)
+    {
+        this.spoolDir = new File(spoolDir);
+        this.workerId = workerId;
+        this.options = options;
+    }
+
+    /**
+     * Runs tasks until none is pending
+     *
+     * @return the number of tasks this worker finished
+     */
+    public int run()
+    {
+        int finished = 0;
+        File claimed;
+
+        while ((claimed = claim()) != null)
+        {
+            if (runTask(claimed))
+                finished++;
+        }
+
+        System.out.println("Worker " + workerId + " finished " + finished + " task(s)");
+
+        return finished;
+    }
+
+    /**
+     * Claims the first pending task that no other worker has claimed
+     *
+     * @return the claimed task file in running/, or null if no task is pending
+     */
+    private File claim()
+    {
+        File pending[] = new File(spoolDir, WorkerPool.PENDING).listFiles();
+
+        if (pending == null)
+            return null;
+
+        Arrays.sort(pending);
+
+        for (File task : pending)
+        {
+            if (!task.getName().endsWith(WorkerPool.TASK_SUFFIX))
+                continue;
+
+            File claimed = new File(new File(spoolDir, WorkerPool.RUNNING), task.getName() + "." + workerId);
+
+            try
+            {
+                // Only one worker's rename can succeed, the others no longer find the file
+                Files.move(task.toPath(), claimed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return claimed;
+            }
+            catch (IOException e)
+            {
+                continue;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs a claimed task and moves it to done/ or failed/
+     *
+     * @param claimed the claimed task file
+     * @return boolean - true if the task finished
+     */
+    private boolean runTask(File claimed)
+    {
+        String taskFile = claimed.getName().substring(0, claimed.getName().lastIndexOf('.'));
+        String taskName = taskFile.substring(0, taskFile.length() - WorkerPool.TASK_SUFFIX.length());
+        File done = new File(spoolDir, WorkerPool.DONE);
+        boolean finished = false;
+        String error = null;
+
+        try
+        {
+            Properties task = WorkerPool.readTask(claimed);
+            Metrics.setTag("fold_" + task.getProperty("fold"));
+            Metrics.Timer foldTimer = Metrics.start(Metrics.FOLD);
+            System.out.println("Worker " + workerId + " is evaluating on fold " + task.getProperty("fold"));
+
+            Dataset trainSet = new Dataset(task.getProperty("train"));
+            Dataset testSet = new Dataset(task.getProperty("test"));
+
+            if (!trainSet.hasData() || !testSet.hasData())
+            {
+                error = "Could not load the data of " + taskFile;
+                System.err.println(error);
+            }
+            else
+            {
+                trainSet.setClassIndex(trainSet.numAttributes() - 1);
+                testSet.setClassIndex(testSet.numAttributes() - 1);
+                trainSet.setName(task.getProperty("name") + "_train");
+                testSet.setName(task.getProperty("name") + "_test");
+
+                Evaluation results = TransactionClassifier.testOnceClassify(trainSet, testSet, Float.parseFloat(task.getProperty("learningRate")),
+                                                                            Float.parseFloat(task.getProperty("momentum")),
+                                                                            Integer.parseInt(task.getProperty("reductMode")), options,
+                                                                            Integer.parseInt(task.getProperty("threads", "1")));
+
+                if (results != null)
+                {
+                    // The result is complete before the task is marked done
+                    File temporary = new File(done, taskName + WorkerPool.RESULT_SUFFIX + ".tmp");
+                    SerializationHelper.write(temporary.getPath(), results);
+                    Files.move(temporary.toPath(), new File(done, taskName + WorkerPool.RESULT_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    finished = true;
+                }
+                else
+                {
+                    error = "Training or evaluation failed, see the log of worker " + workerId;
+                }
+            }
+
+            System.out.println("Worker " + workerId + " finished " + taskFile + ": " + foldTimer.stop() + " ms");
+        }
+        catch (Exception e)
+        {
+            System.err.println("Task " + taskFile + " failed: " + e.getMessage());
+
+            StringWriter trace = new StringWriter();
+            e.printStackTrace(new PrintWriter(trace));
+            error = trace.toString();
+        }
+        finally
+        {
+            Metrics.clearTag();
+        }
+
+        try
+        {
+            // The reason is in place before the task shows up as failed
+            if (!finished)
+                Files.write(new File(new File(spoolDir, WorkerPool.FAILED), taskName + WorkerPool.ERROR_SUFFIX).toPath(), error.getBytes(StandardCharsets.UTF_8));
+
+            File target = new File(new File(spoolDir, finished ? WorkerPool.DONE : WorkerPool.FAILED), taskFile);
+            Files.move(claimed.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not move " + claimed + ": " + e.getMessage());
+        }
+
+        return finished;
+    }
+}
@@ -0,0 +1,238 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Maps instances onto the numeric inputs of a neural network the way WEKA's
+ * MultilayerPerceptron prepares its data: nominal attributes are converted to
+ * binary inputs, every input is scaled to [-1, 1] using the range of the
+ * training data and a missing value is fed as 0, the middle of the range.
+ * Computed once from the training statistics so the network does not have to
+ * repeat it.
+ */
+public class InputNormalizer implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * outputHeader - empty Instances holding the numeric inputs followed by the class
+     * sources - the input attribute index of each output
+     * oneHotValues - the nominal value an output stands for, -1 if the output holds the attribute's value
+     * bases - the value each output is centered on
+     * ranges - half the range of each output (0 if the output is constant)
+     */
+    private Instances outputHeader;
+    private int sources[];
+    private int oneHotValues[];
+    private double bases[];
+    private double ranges[];
+
+    /**
+     * Constructor
+     *
+     * @param header     Instances providing the attribute information and class index of the input data
+     * @param statistics the statistics of the training data
+     */
+    public InputNormalizer(Instances header, AttributeStatistics statistics)
+    {
+        ArrayList<Integer> sourceList = new ArrayList<Integer>();
+        ArrayList<Integer> valueList = new ArrayList<Integer>();
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+
+        // Numeric and two-valued nominal attributes give one input, other nominal attributes one input per value
+        for (int col = 0; col < header.numAttributes(); col++)
+        {
+            Attribute attribute = header.attribute(col);
+
+            if (col == header.classIndex())
+                continue;
+
+            if (attribute.isNominal() && attribute.numValues() > 2)
+            {
+                for (int value = 0; value < attribute.numValues(); value++)
+                {
+                    sourceList.add(col);
+                    valueList.add(value);
+                    attributes.add(new Attribute(attribute.name() + "=" + attribute.value(value)));
+                }
+            }
+            else
+            {
+                sourceList.add(col);
+                valueList.add(-1);
+                attributes.add(new Attribute(attribute.name()));
+            }
+        }
+
+        int numOutputs = sourceList.size();
+        sources = new int[numOutputs];
+        oneHotValues = new int[numOutputs];
+        bases = new double[numOutputs];
+        ranges = new double[numOutputs];
+
+        for (int i = 0; i < numOutputs; i++)
+        {
+            sources[i] = sourceList.get(i);
+            oneHotValues[i] = valueList.get(i);
+
+            double min = statistics.min(sources[i]);
+            double max = statistics.max(sources[i]);
+
+            // A binary input only spans [0, 1] if its value occurs in some rows but not in all
+            if (oneHotValues[i] >= 0)
+            {
+                int count = statistics.valueCounts(sources[i])[oneHotValues[i]];
+
+                min = count > 0 && count == statistics.numPresent(sources[i]) ? 1 : 0;
+                max = count > 0 ? 1 : 0;
+            }
+
+            // An attribute without any values is constant at 0
+            if (Double.isNaN(min))
+            {
+                min = 0;
+                max = 0;
+            }
+
+            bases[i] = (max + min) / 2;
+            ranges[i] = (max - min) / 2;
+        }
+
+        attributes.add((Attribute) header.classAttribute().copy());
+        outputHeader = new Instances(header.relationName() + "-normalized", attributes, 0);
+        outputHeader.setClassIndex(numOutputs);
+    }
+
+    /**
+     * Creates a normalizer that reads its inputs through an additional index
+     * mapping, e.g. from reduced data indices to raw data indices, so raw
+     * instances are normalized without projecting them first.
+     *
+     * @param rawIndices rawIndices[i] is the raw index of attribute i in this normalizer's input
+     * @return the remapped normalizer
+     */
+    public InputNormalizer remap(int rawIndices[])
+    {
+        InputNormalizer mapped = new InputNormalizer();
+
+        mapped.outputHeader = outputHeader;
+        mapped.sources = new int[sources.length];
+        mapped.oneHotValues = oneHotValues;
+        mapped.bases = bases;
+        mapped.ranges = ranges;
+
+        for (int i = 0; i < sources.length; i++)
+            mapped.sources[i] = rawIndices[sources[i]];
+
+        return mapped;
+    }
+
+    /**
+     * Constructor for remapped normalizers (see remap)
+     */
+    private InputNormalizer()
+    {
+    }
+
+    /**
+     * Gets the number of network inputs
+     *
+     * @return int - the number of inputs (excluding the class)
+     */
+    public int numOutputs()
+    {
+        return sources.length;
+    }
+
+    /**
+     * Gets the empty Instances holding the inputs followed by the class
+     *
+     * @return the output header
+     */
+    public Instances getOutputHeader()
+    {
+        return outputHeader;
+    }
+
+    /**
+     * Normalizes the values of an instance
+     *
+     * @param instance the instance, with the attributes of the input data
+     * @param out      the output array, at least numOutputs() long
+     */
+    public void transform(Instance instance, double out[])
+    {
+        for (int i = 0; i < sources.length; i++)
+            out[i] = normalize(i, instance.value(sources[i]));
+    }
+
+    /**
+     * Normalizes an array of attribute values
+     *
+     * @param values the attribute values, indexed like the input data
+     * @param out    the output array, at least numOutputs() long
+     */
+    public void transform(double values[], double out[])
+    {
+        for (int i = 0; i < sources.length; i++)
+            out[i] = normalize(i, values[sources[i]]);
+    }
+
+    /**
+     * Normalizes the values of a row
+     *
+     * @param source the data, with the attributes of the input data
+     * @param row    the instance index
+     * @param out    the output array, at least numOutputs() long
+     */
+    public void transform(RowSource source, int row, double out[])
+    {
+        for (int i = 0; i < sources.length; i++)
+            out[i] = normalize(i, source.value(row, sources[i]));
+    }
+
+    /**
+     * Normalizes the value of one output
+     *
+     * @param i     the output index
+     * @param value the value of the output's input attribute
+     * @return the normalized value
+     */
+    private double normalize(int i, double value)
+    {
+        // MultilayerPerceptron feeds a missing input as 0 after scaling
+        if (Double.isNaN(value))
+            return 0;
+
+        if (oneHotValues[i] >= 0)
+            value = (int) value == oneHotValues[i] ? 1 : 0;
+
+        // Same scaling as MultilayerPerceptron, constant inputs are only centered
+        return ranges[i] != 0 ? (value - bases[i]) / ranges[i] : value - bases[i];
+    }
+
+    /**
+     * Creates the normalized copy of an instance
+     *
+     * @param instance the instance, with the attributes of the input data
+     * @return the normalized instance (its dataset is the output header)
+     */
+    public Instance transform(Instance instance)
+    {
+        double values[] = new double[sources.length + 1];
+
+        transform(instance, values);
+        values[sources.length] = instance.classValue();
+
+        Instance normalized = new DenseInstance(instance.weight(), values);
+        normalized.setDataset(outputHeader);
+
+        return normalized;
+    }
+}
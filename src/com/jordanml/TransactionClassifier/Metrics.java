@@ -0,0 +1,449 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of stage timings and counters. Every measurement is
+ * tagged with a stage (see the constants) and with the tag of the current
+ * thread, usually the fold it works on, so a run can be broken down per stage
+ * and per fold. Timings go into log-bucketed histograms (16 sub-buckets per
+ * power of two, at most about 6% error on percentiles) made of atomic
+ * counters, so recording from many threads takes no lock.
+ *
+ * The registry is written as JSON or CSV at the end of a run along with the
+ * thread and heap usage of the JVM.
+ */
+public class Metrics
+{
+    /**
+     * LOAD, SPLIT, DISCRETIZE, REDUCT, APPLY_REDUCT, TRAIN, EVALUATE, SAVE - the pipeline stages
+     * GENERATE - writing a synthetic dataset
+     * FOLD - a whole fold, CROSS_VALIDATION - all folds of a cross validation, RUN - a whole run
+     * ALL - the tag of measurements made outside any fold
+     */
+    public static final String LOAD = "load";
+    public static final String SPLIT = "split";
+    public static final String DISCRETIZE = "discretize";
+    public static final String REDUCT = "reduct";
+    public static final String APPLY_REDUCT = "applyReduct";
+    public static final String TRAIN = "train";
+    public static final String EVALUATE = "evaluate";
+    public static final String SAVE = "save";
+    public static final String GENERATE = "generate";
+    public static final String FOLD = "fold";
+    public static final String CROSS_VALIDATION = "crossValidation";
+    public static final String RUN = "run";
+    public static final String ALL = "all";
+
+    /**
+     * timers - the timing histogram of each stage and tag
+     * counters - the value of each counter and tag
+     * tag - the tag of the current thread
+     */
+    private static final ConcurrentHashMap<String, Histogram> timers = new ConcurrentHashMap<String, Histogram>();
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private static final ThreadLocal<String> tag = new ThreadLocal<String>();
+
+    /**
+     * A running measurement of a stage
+     */
+    public static class Timer
+    {
+        /**
+         * stage - the stage measured
+         * tag - the tag of the thread that started the timer
+         * start - System.nanoTime() when the timer started
+         */
+        private String stage;
+        private String tag;
+        private long start;
+
+        private Timer(String stage, String tag)
+        {
+            this.stage = stage;
+            this.tag = tag;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Records the time since the timer started
+         *
+         * @return the elapsed time in milliseconds
+         */
+        public long stop()
+        {
+            long elapsed = System.nanoTime() - start;
+            histogram(stage, tag).record(elapsed);
+
+            return elapsed / 1000000;
+        }
+    }
+
+    /**
+     * Histogram of durations in nanoseconds with logarithmic buckets, plus the
+     * threads that recorded into it and the largest heap in use at a recording
+     */
+    private static class Histogram
+    {
+        /**
+         * SUB_BITS - log2 of the number of sub-buckets per power of two
+         * SUB_BUCKETS - the number of sub-buckets per power of two
+         */
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private LongAdder count = new LongAdder();
+        private LongAdder total = new LongAdder();
+        private AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private AtomicLong max = new AtomicLong(0);
+        private AtomicLong maxHeapUsed = new AtomicLong(0);
+        private Set<Long> threads = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+        void record(long value)
+        {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(bucket(value));
+            count.increment();
+            total.add(value);
+            raise(max, value);
+            lower(min, value);
+            raise(maxHeapUsed, Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+            threads.add(Thread.currentThread().getId());
+        }
+
+        /**
+         * Gets a percentile, as the lower bound of the bucket holding it
+         *
+         * @param fraction the percentile as a fraction (0.5 for the median)
+         * @return the value in nanoseconds
+         */
+        long percentile(double fraction)
+        {
+            long target = (long) Math.ceil(fraction * count.sum());
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length(); i++)
+            {
+                seen += buckets.get(i);
+
+                if (seen >= target && seen > 0)
+                    return lowerBound(i);
+            }
+
+            return 0;
+        }
+
+        static int bucket(long value)
+        {
+            if (value < SUB_BUCKETS)
+                return (int) value;
+
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+
+            return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        static long lowerBound(int bucket)
+        {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+
+            int shift = bucket / SUB_BUCKETS - 1;
+
+            return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+        }
+    }
+
+    /**
+     * Sets the tag of measurements made by the current thread
+     *
+     * @param threadTag the tag, usually the fold being worked on
+     */
+    public static void setTag(String threadTag)
+    {
+        tag.set(threadTag);
+    }
+
+    /**
+     * Removes the tag of the current thread
+     */
+    public static void clearTag()
+    {
+        tag.remove();
+    }
+
+    /**
+     * Starts timing a stage for the current thread's tag
+     *
+     * @param stage the stage
+     * @return the timer, stop it when the stage ends
+     */
+    public static Timer start(String stage)
+    {
+        return new Timer(stage, currentTag());
+    }
+
+    /**
+     * Adds to a counter of the current thread's tag
+     *
+     * @param name  the counter
+     * @param delta the amount to add
+     */
+    public static void count(String name, long delta)
+    {
+        String key = key(name, currentTag());
+        LongAdder counter = counters.get(key);
+
+        if (counter == null)
+        {
+            counters.putIfAbsent(key, new LongAdder());
+            counter = counters.get(key);
+        }
+
+        counter.add(delta);
+    }
+
+    /**
+     * Gets the time spent in a stage, summed over every tag
+     *
+     * @param stage the stage
+     * @return the total time in nanoseconds
+     */
+    public static long totalNanos(String stage)
+    {
+        long total = 0;
+
+        for (Map.Entry<String, Histogram> timer : timers.entrySet())
+        {
+            if (split(timer.getKey())[0].equals(stage))
+                total += timer.getValue().total.sum();
+        }
+
+        return total;
+    }
+
+    /**
+     * Removes every measurement
+     */
+    public static void reset()
+    {
+        timers.clear();
+        counters.clear();
+    }
+
+    /**
+     * Writes the measurements as JSON: a "timers" and a "counters" array with
+     * one entry per stage and tag (durations in milliseconds), and a "jvm"
+     * object with thread and heap usage
+     *
+     * @param path the file to write
+     * @throws IOException
+     */
+    public static void writeJson(String path) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path)))
+        {
+            out.println("{");
+            out.println("  \"timers\": [");
+
+            ArrayList<String> keys = sortedKeys(timers);
+
+            for (int i = 0; i < keys.size(); i++)
+            {
+                String parts[] = split(keys.get(i));
+                Histogram h = timers.get(keys.get(i));
+                out.printf(Locale.ROOT, "    {\"stage\": \"%s\", \"tag\": \"%s\", \"count\": %d, \"totalMs\": %.3f, \"meanMs\": %.3f, \"minMs\": %.3f, \"maxMs\": %.3f, "
+                           + "\"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"threads\": %d, \"maxHeapUsedMB\": %.1f}%s%n",
+                           escape(parts[0]), escape(parts[1]), h.count.sum(), ms(h.total.sum()), ms(mean(h)), ms(h.min.get()), ms(h.max.get()),
+                           ms(h.percentile(0.5)), ms(h.percentile(0.9)), ms(h.percentile(0.99)), h.threads.size(), mb(h.maxHeapUsed.get()),
+                           i < keys.size() - 1 ? "," : "");
+            }
+
+            out.println("  ],");
+            out.println("  \"counters\": [");
+
+            keys = sortedKeys(counters);
+
+            for (int i = 0; i < keys.size(); i++)
+            {
+                String parts[] = split(keys.get(i));
+                out.printf(Locale.ROOT, "    {\"name\": \"%s\", \"tag\": \"%s\", \"value\": %d}%s%n", escape(parts[0]), escape(parts[1]),
+                           counters.get(keys.get(i)).sum(), i < keys.size() - 1 ? "," : "");
+            }
+
+            out.println("  ],");
+
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            Runtime runtime = Runtime.getRuntime();
+            out.printf(Locale.ROOT, "  \"jvm\": {\"processors\": %d, \"threads\": %d, \"peakThreads\": %d, \"heapUsedMB\": %.1f, \"heapCommittedMB\": %.1f, "
+                       + "\"heapMaxMB\": %.1f, \"peakHeapUsedMB\": %.1f}%n", runtime.availableProcessors(), threadBean.getThreadCount(),
+                       threadBean.getPeakThreadCount(), mb(runtime.totalMemory() - runtime.freeMemory()), mb(runtime.totalMemory()),
+                       mb(runtime.maxMemory()), mb(peakHeapUsed()));
+            out.println("}");
+        }
+    }
+
+    /**
+     * Writes the measurements as CSV, one row per timer or counter and tag
+     * (durations in milliseconds), followed by rows for the JVM's thread and
+     * heap usage
+     *
+     * @param path the file to write
+     * @throws IOException
+     */
+    public static void writeCsv(String path) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path)))
+        {
+            out.println("type,name,tag,count,total_ms,mean_ms,min_ms,max_ms,p50_ms,p90_ms,p99_ms,threads,max_heap_used_mb,value");
+
+            for (String key : sortedKeys(timers))
+            {
+                String parts[] = split(key);
+                Histogram h = timers.get(key);
+                out.printf(Locale.ROOT, "timer,%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%.1f,%n", parts[0], parts[1], h.count.sum(), ms(h.total.sum()),
+                           ms(mean(h)), ms(h.min.get()), ms(h.max.get()), ms(h.percentile(0.5)), ms(h.percentile(0.9)), ms(h.percentile(0.99)),
+                           h.threads.size(), mb(h.maxHeapUsed.get()));
+            }
+
+            for (String key : sortedKeys(counters))
+            {
+                String parts[] = split(key);
+                out.printf(Locale.ROOT, "counter,%s,%s,,,,,,,,,,,%d%n", parts[0], parts[1], counters.get(key).sum());
+            }
+
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            Runtime runtime = Runtime.getRuntime();
+            out.printf(Locale.ROOT, "jvm,processors,%s,,,,,,,,,,,%d%n", ALL, runtime.availableProcessors());
+            out.printf(Locale.ROOT, "jvm,peakThreads,%s,,,,,,,,,,,%d%n", ALL, threadBean.getPeakThreadCount());
+            out.printf(Locale.ROOT, "jvm,heapMaxMB,%s,,,,,,,,,,,%.1f%n", ALL, mb(runtime.maxMemory()));
+            out.printf(Locale.ROOT, "jvm,peakHeapUsedMB,%s,,,,,,,,,,,%.1f%n", ALL, mb(peakHeapUsed()));
+        }
+    }
+
+    private static Histogram histogram(String stage, String tag)
+    {
+        String key = key(stage, tag);
+        Histogram histogram = timers.get(key);
+
+        if (histogram == null)
+        {
+            timers.putIfAbsent(key, new Histogram());
+            histogram = timers.get(key);
+        }
+
+        return histogram;
+    }
+
+    private static String currentTag()
+    {
+        String current = tag.get();
+
+        return current == null ? ALL : current;
+    }
+
+    private static String key(String name, String tag)
+    {
+        return name + '\u0000' + tag;
+    }
+
+    private static String[] split(String key)
+    {
+        return key.split("\u0000", 2);
+    }
+
+    private static ArrayList<String> sortedKeys(Map<String, ?> map)
+    {
+        ArrayList<String> keys = new ArrayList<String>(map.keySet());
+        Collections.sort(keys);
+
+        return keys;
+    }
+
+    /**
+     * Sums the peak usage of the heap memory pools since the JVM started or
+     * the last resetPeakHeapUsed(). Each pool peaks at its own time (eden
+     * just before a collection, the old generation after it), so the sum is
+     * an upper bound of the heap ever used at once.
+     *
+     * @return the upper bound of the peak usage in bytes
+     */
+    public static long peakHeapUsed()
+    {
+        long peak = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+        }
+
+        return peak;
+    }
+
+    /**
+     * Starts tracking the peak heap usage from the current usage
+     */
+    public static void resetPeakHeapUsed()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    private static long mean(Histogram h)
+    {
+        long count = h.count.sum();
+
+        return count == 0 ? 0 : h.total.sum() / count;
+    }
+
+    private static double ms(long nanos)
+    {
+        return nanos == Long.MAX_VALUE ? 0 : nanos / 1e6;
+    }
+
+    private static double mb(long bytes)
+    {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void raise(AtomicLong target, long value)
+    {
+        long current;
+
+        while (value > (current = target.get()) && !target.compareAndSet(current, value))
+            ;
+    }
+
+    private static void lower(AtomicLong target, long value)
+    {
+        long current;
+
+        while (value < (current = target.get()) && !target.compareAndSet(current, value))
+            ;
+    }
+}
@@ -0,0 +1,100 @@
+package com.jordanml.TransactionClassifier;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Trains a classifier on precomputed normalized inputs (see NormalizedInputs)
+ * and normalizes each instance the same way as it is classified. A wrapped
+ * MultilayerPerceptron is configured not to convert or rescale its inputs
+ * again.
+ */
+public class NormalizedClassifier extends AbstractClassifier
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * classifier - the classifier built on the normalized inputs
+     * normalizer - the mapping from instances onto the classifier's inputs
+     */
+    private Classifier classifier;
+    private InputNormalizer normalizer;
+
+    /**
+     * Constructor
+     *
+     * @param classifier the (unbuilt) classifier to train on the normalized inputs
+     */
+    public NormalizedClassifier(Classifier classifier)
+    {
+        this.classifier = classifier;
+
+        if (classifier instanceof MultilayerPerceptron)
+        {
+            ((MultilayerPerceptron) classifier).setNormalizeAttributes(false);
+            ((MultilayerPerceptron) classifier).setNominalToBinaryFilter(false);
+        }
+    }
+
+    /**
+     * Normalizes the given data and builds the wrapped classifier on it. Prefer
+     * buildClassifier(NormalizedInputs) when the same data is trained on more
+     * than once.
+     *
+     * @param data the training data
+     * @throws Exception
+     */
+    @Override
+    public void buildClassifier(Instances data) throws Exception
+    {
+        buildClassifier(new NormalizedInputs(data, AttributeStatistics.compute(ColumnarDataset.fromInstances(data))));
+    }
+
+    /**
+     * Builds the wrapped classifier on shared normalized inputs
+     *
+     * @param inputs the normalized training data
+     * @throws Exception
+     */
+    public void buildClassifier(NormalizedInputs inputs) throws Exception
+    {
+        normalizer = inputs.getNormalizer();
+        classifier.buildClassifier(inputs.toInstances());
+    }
+
+    /**
+     * Normalizes the instance and classifies it with the wrapped classifier
+     *
+     * @param instance the instance, with the attributes of the training data
+     * @return the class distribution for the instance
+     * @throws Exception
+     */
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception
+    {
+        return classifier.distributionForInstance(normalizer.transform(instance));
+    }
+
+    /**
+     * Gets the mapping from instances onto the classifier's inputs
+     *
+     * @return the normalizer, null until the classifier is built
+     */
+    public InputNormalizer getNormalizer()
+    {
+        return normalizer;
+    }
+
+    /**
+     * Gets the wrapped classifier
+     *
+     * @return the classifier built on the normalized inputs
+     */
+    public Classifier getClassifier()
+    {
+        return classifier;
+    }
+}
@@ -0,0 +1,232 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.Arrays;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * The training data of a fold as a dense, normalized input matrix and a label
+ * vector, prepared once after the reduct is applied. The artifact is
+ * read-only, so any number of training runs on the fold (for example with
+ * different learning rates) can share it without repeating the conversion.
+ */
+public class NormalizedInputs
+{
+    /**
+     * normalizer - the mapping from the training data onto the network inputs
+     * numAttributes - the number of attributes of the training data, class included
+     * numRows - the number of instances
+     * numInputs - the number of network inputs per instance
+     * values - the normalized inputs in row-major order
+     * labels - the class value index of each instance, -1 if the class is missing
+     * weights - the instance weights, null if every instance has a weight of 1
+     * instances - the matrix as WEKA Instances, built on first use
+     */
+    private InputNormalizer normalizer;
+    private int numAttributes;
+    private int numRows;
+    private int numInputs;
+    private float values[];
+    private int labels[];
+    private double weights[];
+    private Instances instances;
+
+    /**
+     * Constructor. Normalizes the given training data.
+     *
+     * @param data       the training data (reduct already applied, class index set)
+     * @param statistics the statistics of the training data
+     */
+    public NormalizedInputs(Instances data, AttributeStatistics statistics)
+    {
+        allocate(new InputNormalizer(data, statistics), data.numAttributes(), data.numInstances());
+        double row[] = new double[numInputs];
+
+        for (int i = 0; i < numRows; i++)
+        {
+            Instance current = data.instance(i);
+            normalizer.transform(current, row);
+            setRow(i, row, current.classIsMissing() ? -1 : (int) current.classValue(), current.weight());
+        }
+    }
+
+    /**
+     * Constructor. Normalizes the given training data, reading the values
+     * straight from its rows.
+     *
+     * @param data       the training data (reduct already applied, class index set)
+     * @param statistics the statistics of the training data
+     */
+    public NormalizedInputs(RowSource data, AttributeStatistics statistics)
+    {
+        allocate(new InputNormalizer(data.getHeader(), statistics), data.numAttributes(), data.numInstances());
+        double row[] = new double[numInputs];
+
+        for (int i = 0; i < numRows; i++)
+        {
+            normalizer.transform(data, i, row);
+            setRow(i, row, data.classCode(i), data.weight(i));
+        }
+    }
+
+    /**
+     * Sets up the matrix for the given normalizer and size
+     *
+     * @param normalizer    the mapping from the training data onto the network inputs
+     * @param numAttributes the number of attributes of the training data, class included
+     * @param numRows       the number of instances
+     */
+    private void allocate(InputNormalizer normalizer, int numAttributes, int numRows)
+    {
+        this.normalizer = normalizer;
+        this.numAttributes = numAttributes;
+        this.numRows = numRows;
+        numInputs = normalizer.numOutputs();
+
+        if ((long) numRows * numInputs > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many values for an input matrix: " + numRows + " x " + numInputs);
+
+        values = new float[numRows * numInputs];
+        labels = new int[numRows];
+    }
+
+    /**
+     * Stores one normalized row
+     *
+     * @param i      the instance index
+     * @param row    the normalized inputs of the instance
+     * @param label  the class value index, -1 if the class is missing
+     * @param weight the instance weight
+     */
+    private void setRow(int i, double row[], int label, double weight)
+    {
+        for (int j = 0; j < numInputs; j++)
+            values[i * numInputs + j] = (float) row[j];
+
+        labels[i] = label;
+
+        if (weight != 1.0)
+        {
+            if (weights == null)
+            {
+                weights = new double[numRows];
+                Arrays.fill(weights, 1.0);
+            }
+
+            weights[i] = weight;
+        }
+    }
+
+    /**
+     * Gets the mapping from the training data onto the network inputs
+     *
+     * @return the normalizer
+     */
+    public InputNormalizer getNormalizer()
+    {
+        return normalizer;
+    }
+
+    /**
+     * Gets the number of attributes of the training data
+     *
+     * @return int - the number of attributes, class included
+     */
+    public int numAttributes()
+    {
+        return numAttributes;
+    }
+
+    /**
+     * Gets the number of instances
+     *
+     * @return int - the number of rows of the matrix
+     */
+    public int numRows()
+    {
+        return numRows;
+    }
+
+    /**
+     * Gets the number of network inputs
+     *
+     * @return int - the number of columns of the matrix
+     */
+    public int numInputs()
+    {
+        return numInputs;
+    }
+
+    /**
+     * Gets a normalized input value
+     *
+     * @param row   the instance index
+     * @param input the input index
+     * @return the value
+     */
+    public float value(int row, int input)
+    {
+        return values[row * numInputs + input];
+    }
+
+    /**
+     * Gets the input matrix in row-major order. The array is shared and must not be modified.
+     *
+     * @return the values
+     */
+    public float[] getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Gets the label vector. The array is shared and must not be modified.
+     *
+     * @return the class value index of each instance, -1 if the class is missing
+     */
+    public int[] getLabels()
+    {
+        return labels;
+    }
+
+    /**
+     * Gets the instance weights. The array is shared and must not be modified.
+     *
+     * @return the weights, or null if every instance has a weight of 1
+     */
+    public double[] getWeights()
+    {
+        return weights;
+    }
+
+    /**
+     * Gets the matrix as WEKA Instances for classifiers that only accept
+     * Instances. Built on first use and shared by every caller; classifiers copy
+     * their training data before changing it, so the shared copy stays intact.
+     *
+     * @return the normalized instances
+     */
+    public synchronized Instances toInstances()
+    {
+        if (instances == null)
+        {
+            instances = new Instances(normalizer.getOutputHeader(), numRows);
+
+            for (int i = 0; i < numRows; i++)
+            {
+                double row[] = new double[numInputs + 1];
+
+                for (int j = 0; j < numInputs; j++)
+                    row[j] = values[i * numInputs + j];
+
+                row[numInputs] = labels[i] < 0 ? Utils.missingValue() : labels[i];
+                instances.add(new DenseInstance(weights == null ? 1.0 : weights[i], row));
+            }
+        }
+
+        return instances;
+    }
+}
@@ -0,0 +1,349 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Column oriented dataset whose values live outside the Java heap, either in
+ * direct buffers or in a memory mapped cache file (see BinaryDatasetCache).
+ * Heap usage is limited to the attribute information and the buffer objects,
+ * regardless of the number of instances. Uses the same column coding as
+ * ColumnarDataset.
+ */
+public class OffHeapDataset implements RowSource
+{
+    /**
+     * header - empty Instances holding the attribute information and class index
+     * numInstances - the number of instances (rows)
+     * nominalColumns - the values of each byte coded attribute (null for double coded attributes)
+     * numericColumns - the values of each double coded attribute (null for byte coded attributes)
+     * weights - the instance weights, null if every instance has a weight of 1
+     */
+    private Instances header;
+    private int numInstances;
+    private ByteBuffer nominalColumns[];
+    private DoubleBuffer numericColumns[];
+    private DoubleBuffer weights;
+
+    /**
+     * Constructor. Wraps existing buffers, which are not copied.
+     *
+     * @param header         Instances providing the attribute information
+     * @param numInstances   the number of instances
+     * @param nominalColumns the buffer of each byte coded attribute
+     * @param numericColumns the buffer of each double coded attribute
+     * @param weights        the instance weights, null if every instance has a weight of 1
+     */
+    OffHeapDataset(Instances header, int numInstances, ByteBuffer nominalColumns[], DoubleBuffer numericColumns[], DoubleBuffer weights)
+    {
+        this.header = new Instances(header, 0);
+        this.numInstances = numInstances;
+        this.nominalColumns = nominalColumns;
+        this.numericColumns = numericColumns;
+        this.weights = weights;
+    }
+
+    /**
+     * Allocates direct buffers for the given number of instances
+     *
+     * @param header       Instances providing the attribute information
+     * @param numInstances the number of instances
+     * @return the (zero filled) dataset
+     */
+    public static OffHeapDataset allocate(Instances header, int numInstances)
+    {
+        int numAttributes = header.numAttributes();
+        ByteBuffer nominalColumns[] = new ByteBuffer[numAttributes];
+        DoubleBuffer numericColumns[] = new DoubleBuffer[numAttributes];
+
+        for (int col = 0; col < numAttributes; col++)
+        {
+            if (header.attribute(col).isString() || header.attribute(col).isRelationValued())
+                throw new IllegalArgumentException("Attribute type not supported by columnar storage: " + header.attribute(col).name());
+
+            if (ColumnarDataset.isByteCoded(header.attribute(col)))
+                nominalColumns[col] = ByteBuffer.allocateDirect(numInstances);
+            else
+                numericColumns[col] = allocateDoubles(numInstances);
+        }
+
+        return new OffHeapDataset(header, numInstances, nominalColumns, numericColumns, null);
+    }
+
+    /**
+     * Copies the given instances into direct buffers
+     *
+     * @param instances the data to copy
+     * @return the off-heap copy of the data
+     */
+    public static OffHeapDataset fromInstances(Instances instances)
+    {
+        OffHeapDataset dataset = allocate(instances, instances.numInstances());
+
+        for (int row = 0; row < instances.numInstances(); row++)
+        {
+            Instance current = instances.instance(row);
+
+            for (int col = 0; col < dataset.numAttributes(); col++)
+                dataset.setValue(row, col, current.value(col));
+
+            dataset.setWeight(row, current.weight());
+        }
+
+        return dataset;
+    }
+
+    /**
+     * Loads a dataset file through its memory mapped cache. If the cache is
+     * missing or out of date it is first written next to the file by streaming
+     * over the file in chunks, so the file is never loaded onto the heap as a
+     * whole.
+     *
+     * @param sourcePath the path to the ARFF or CSV file
+     * @return the dataset backed by the mapped cache, or null if the file could not be read
+     */
+    public static OffHeapDataset load(String sourcePath)
+    {
+        return load(sourcePath, null);
+    }
+
+    /**
+     * Loads a dataset file through a memory mapped cache. An up to date cache
+     * next to the file is used as it is. Otherwise the cache is written to a
+     * temporary file in the given directory, which is deleted once it is mapped
+     * (or on exit where a mapped file cannot be deleted), so nothing is left
+     * next to the file.
+     *
+     * @param sourcePath     the path to the ARFF or CSV file
+     * @param cacheDirectory the directory for the temporary cache, null to keep the cache next to the file
+     * @return the dataset backed by the mapped cache, or null if the file could not be read
+     */
+    public static OffHeapDataset load(String sourcePath, String cacheDirectory)
+    {
+        System.out.println("Loading data from " + sourcePath + " off-heap...");
+        int numThreads = Runtime.getRuntime().availableProcessors();
+
+        try
+        {
+            if (BinaryDatasetCache.isValid(sourcePath))
+                return BinaryDatasetCache.map(sourcePath);
+
+            if (cacheDirectory == null)
+            {
+                BinaryDatasetCache.writeStreaming(sourcePath, ChunkedDatasetReader.DEFAULT_CHUNK_SIZE, numThreads);
+                return BinaryDatasetCache.map(sourcePath);
+            }
+
+            File cache = Files.createTempFile(Paths.get(cacheDirectory), new File(sourcePath).getName() + ".", BinaryDatasetCache.EXTENSION).toFile();
+            cache.deleteOnExit();
+            BinaryDatasetCache.writeStreaming(sourcePath, cache.getPath(), ChunkedDatasetReader.DEFAULT_CHUNK_SIZE, numThreads);
+            OffHeapDataset dataset = BinaryDatasetCache.mapCache(cache.getPath());
+
+            // Where the mapping outlives its file the space is freed once the dataset is unreachable
+            cache.delete();
+
+            return dataset;
+        }
+        catch (Exception e)
+        {
+            System.err.println("Error reading " + sourcePath);
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public int numInstances()
+    {
+        return numInstances;
+    }
+
+    @Override
+    public int numAttributes()
+    {
+        return header.numAttributes();
+    }
+
+    @Override
+    public int classIndex()
+    {
+        return header.classIndex();
+    }
+
+    @Override
+    public void setClassIndex(int classIndex)
+    {
+        header.setClassIndex(classIndex);
+    }
+
+    @Override
+    public Instances getHeader()
+    {
+        return header;
+    }
+
+    @Override
+    public double value(int row, int col)
+    {
+        if (nominalColumns[col] != null)
+        {
+            byte code = nominalColumns[col].get(row);
+            return code == ColumnarDataset.MISSING_CODE ? Utils.missingValue() : (double) (code & 0xFF);
+        }
+
+        return numericColumns[col].get(row);
+    }
+
+    /**
+     * Sets a value given in the representation WEKA uses. Fails for a dataset
+     * backed by a read-only mapping.
+     *
+     * @param row   the instance index
+     * @param col   the attribute index
+     * @param value the value
+     */
+    public void setValue(int row, int col, double value)
+    {
+        if (nominalColumns[col] != null)
+            nominalColumns[col].put(row, Utils.isMissingValue(value) ? ColumnarDataset.MISSING_CODE : (byte) value);
+        else
+            numericColumns[col].put(row, value);
+    }
+
+    /**
+     * Copies all values of a row into an array
+     *
+     * @param row the instance index
+     * @param out the output array, at least numAttributes() long
+     */
+    public void getRow(int row, double out[])
+    {
+        for (int col = 0; col < out.length && col < numAttributes(); col++)
+            out[col] = value(row, col);
+    }
+
+    @Override
+    public double weight(int row)
+    {
+        return weights == null ? 1.0 : weights.get(row);
+    }
+
+    /**
+     * Sets the weight of an instance
+     *
+     * @param row    the instance index
+     * @param weight the weight
+     */
+    public void setWeight(int row, double weight)
+    {
+        if (weights == null)
+        {
+            if (weight == 1.0)
+                return;
+
+            weights = allocateDoubles(numInstances);
+            for (int i = 0; i < numInstances; i++)
+                weights.put(i, 1.0);
+        }
+
+        weights.put(row, weight);
+    }
+
+    @Override
+    public int classCode(int row)
+    {
+        checkNominalClass();
+
+        if (nominalColumns[classIndex()] == null)
+        {
+            // Nominal classes with more values than a byte holds are stored as doubles
+            double value = numericColumns[classIndex()].get(row);
+            return Utils.isMissingValue(value) ? -1 : (int) value;
+        }
+
+        byte code = nominalColumns[classIndex()].get(row);
+        return code == ColumnarDataset.MISSING_CODE ? -1 : code & 0xFF;
+    }
+
+    @Override
+    public int[] classCounts()
+    {
+        checkNominalClass();
+
+        int counts[] = new int[header.classAttribute().numValues()];
+
+        for (int row = 0; row < numInstances; row++)
+        {
+            int code = classCode(row);
+            if (code >= 0)
+                counts[code]++;
+        }
+
+        return counts;
+    }
+
+    /**
+     * Checks that the class index is set and the class attribute is nominal
+     *
+     * @throws IllegalStateException if there is no nominal class attribute
+     */
+    private void checkNominalClass()
+    {
+        if (classIndex() < 0)
+            throw new IllegalStateException("Class index is not set");
+
+        if (!header.classAttribute().isNominal())
+            throw new IllegalStateException("Class values can only be counted for a nominal class, " + header.classAttribute().name() + " is " + Attribute.typeToString(header.classAttribute()));
+    }
+
+    /**
+     * Allocates a direct buffer of doubles. A direct buffer holds at most 2GB,
+     * larger columns have to come from a mapped cache file (see BinaryDatasetCache).
+     *
+     * @param numInstances the number of values
+     * @return the buffer
+     * @throws IllegalArgumentException if the values do not fit in a direct buffer
+     */
+    private static DoubleBuffer allocateDoubles(int numInstances)
+    {
+        long bytes = (long) numInstances * Double.BYTES;
+
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Cannot allocate " + numInstances + " values in a direct buffer, the limit is "
+                    + (Integer.MAX_VALUE / Double.BYTES) + "; load the data through its cache file instead");
+
+        return ByteBuffer.allocateDirect((int) bytes).asDoubleBuffer();
+    }
+
+    @Override
+    public Instance instance(int row)
+    {
+        double values[] = new double[numAttributes()];
+        getRow(row, values);
+
+        Instance instance = new DenseInstance(weight(row), values);
+        instance.setDataset(header);
+
+        return instance;
+    }
+
+    @Override
+    public Instances toInstances(int rows[])
+    {
+        Instances instances = new Instances(header, rows.length);
+
+        for (int row : rows)
+            instances.add(instance(row));
+
+        return instances;
+    }
+}
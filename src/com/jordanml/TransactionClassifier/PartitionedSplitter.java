@@ -0,0 +1,342 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Instances;
+
+/**
+ * Stratified splitting that works on chunks of rows in parallel. The global
+ * class counts give the number of instances of each class that each fold
+ * requires (as in DatasetSplitter). That requirement is apportioned to the
+ * chunks in proportion to each chunk's class counts, and every chunk then
+ * assigns its rows to folds independently with a seeded shuffle of its
+ * quota. Merging the chunks gives every fold exactly the class counts
+ * DatasetSplitter would give it.
+ *
+ * Files are streamed twice through a ChunkedDatasetReader (once to count,
+ * once to assign) and the folds are written straight to disk, so files larger
+ * than the heap can be split. The chunks are assigned on the reader's threads.
+ */
+public class PartitionedSplitter
+{
+    /**
+     * numFolds - the number of folds
+     * seed - the seed of the shuffles (chunk i is shuffled with seed + i)
+     */
+    private int numFolds;
+    private long seed;
+
+    /**
+     * Constructor
+     *
+     * @param numFolds the number of folds
+     * @param seed     the seed of the shuffles
+     */
+    public PartitionedSplitter(int numFolds, long seed)
+    {
+        this.numFolds = numFolds;
+        this.seed = seed;
+    }
+
+    /**
+     * Apportions the instances each fold requires to the chunks. For every
+     * class the chunks are visited in order and each takes a share of every
+     * fold's remaining requirement in proportion to its own class count
+     * (largest remainder rounding), so the quotas add up exactly in both
+     * directions.
+     *
+     * @param chunkCounts the number of instances of each class in each chunk, indexed by chunk and then by class
+     * @param required    the number of instances required, indexed by class and then by fold
+     * @return the quotas, indexed by chunk, class and then fold
+     */
+    public static int[][][] apportion(int chunkCounts[][], int required[][])
+    {
+        int numChunks = chunkCounts.length;
+        int numClasses = required.length;
+        int numFolds = numClasses == 0 ? 0 : required[0].length;
+        int quotas[][][] = new int[numChunks][numClasses][numFolds];
+
+        for (int c = 0; c < numClasses; c++)
+        {
+            int remaining[] = required[c].clone();
+            long remainingTotal = 0;
+
+            for (int need : remaining)
+                remainingTotal += need;
+
+            for (int k = 0; k < numChunks; k++)
+            {
+                int count = chunkCounts[k][c];
+
+                if (count == 0 || remainingTotal == 0)
+                    continue;
+
+                int quota[] = quotas[k][c];
+                long remainders[] = new long[numFolds];
+                int assigned = 0;
+
+                // Exact integer shares: count * remaining / remainingTotal, keeping the remainders for rounding
+                for (int f = 0; f < numFolds; f++)
+                {
+                    long share = (long) count * remaining[f];
+                    quota[f] = (int) (share / remainingTotal);
+                    remainders[f] = share % remainingTotal;
+                    assigned += quota[f];
+                }
+
+                // Hand the rounding leftovers to the folds with the largest remainders
+                while (assigned < count)
+                {
+                    int best = -1;
+
+                    for (int f = 0; f < numFolds; f++)
+                    {
+                        if (remainders[f] > 0 && (best < 0 || remainders[f] > remainders[best]))
+                            best = f;
+                    }
+
+                    quota[best]++;
+                    remainders[best] = 0;
+                    assigned++;
+                }
+
+                for (int f = 0; f < numFolds; f++)
+                    remaining[f] -= quota[f];
+
+                remainingTotal -= count;
+            }
+        }
+
+        return quotas;
+    }
+
+    /**
+     * Assigns the rows of a chunk to folds
+     *
+     * @param classCodes the class value index of each row, -1 if the class is missing
+     * @param quotas     the quotas of the chunk, indexed by class and then fold
+     * @param random     the generator of the chunk's shuffles
+     * @return the fold of each row, -1 for rows with a missing class
+     */
+    static int[] assignChunk(int classCodes[], int quotas[][], Random random)
+    {
+        int assignment[] = new int[classCodes.length];
+        int labels[][] = new int[quotas.length][];
+        int next[] = new int[quotas.length];
+
+        // One shuffled list of fold numbers per class, holding each fold as often as its quota
+        for (int c = 0; c < quotas.length; c++)
+        {
+            int size = 0;
+            for (int quota : quotas[c])
+                size += quota;
+
+            labels[c] = new int[size];
+            int index = 0;
+
+            for (int f = 0; f < quotas[c].length; f++)
+            {
+                for (int i = 0; i < quotas[c][f]; i++)
+                    labels[c][index++] = f;
+            }
+
+            for (int i = size - 1; i > 0; i--)
+            {
+                int j = random.nextInt(i + 1);
+                int swap = labels[c][i];
+                labels[c][i] = labels[c][j];
+                labels[c][j] = swap;
+            }
+        }
+
+        for (int row = 0; row < classCodes.length; row++)
+        {
+            int c = classCodes[row];
+            assignment[row] = c < 0 ? -1 : labels[c][next[c]++];
+        }
+
+        return assignment;
+    }
+
+    /**
+     * Splits a file without loading it, writing each fold to path_fold_i.arff
+     * and optionally every combination of the other folds to
+     * path_combined_excludes_i.arff (the same names FoldExporter uses). Rows
+     * are written in chunk order within a chunk, but chunks assigned in
+     * parallel may reach a fold file in any order.
+     *
+     * @param reader       the reader of the file to split (chunk size and threads set)
+     * @param path         the base path of the output files
+     * @param saveCombined whether the combined files are written
+     * @return the path of each fold file
+     * @throws Exception
+     */
+    public String[] split(ChunkedDatasetReader reader, String path, boolean saveCombined) throws Exception
+    {
+        // First pass: class counts of every chunk
+        final ArrayList<int[]> counted = new ArrayList<int[]>();
+
+        reader.read(new ChunkedDatasetReader.ChunkConsumer()
+        {
+            public void accept(int chunkIndex, Instances chunk)
+            {
+                int counts[] = new int[chunk.numClasses()];
+
+                for (int i = 0; i < chunk.numInstances(); i++)
+                {
+                    if (!chunk.instance(i).classIsMissing())
+                        counts[(int) chunk.instance(i).classValue()]++;
+                }
+
+                synchronized (counted)
+                {
+                    while (counted.size() <= chunkIndex)
+                        counted.add(null);
+
+                    counted.set(chunkIndex, counts);
+                }
+            }
+        });
+
+        Instances structure = reader.getStructure();
+        int numClasses = structure.classAttribute().numValues();
+        int chunkCounts[][] = counted.toArray(new int[counted.size()][]);
+        final int quotas[][][] = apportion(chunkCounts, DatasetSplitter.computeInstancesRequired(sum(chunkCounts, numClasses), numFolds));
+        final Writer foldWriters[] = new Writer[numFolds];
+        final Writer combinedWriters[] = new Writer[saveCombined ? numFolds : 0];
+        String paths[] = new String[numFolds];
+        String header = new Instances(structure, 0).toString();
+
+        try
+        {
+            for (int f = 0; f < numFolds; f++)
+            {
+                paths[f] = FoldExporter.foldPath(path, f);
+                foldWriters[f] = openWriter(paths[f], header);
+
+                if (saveCombined)
+                    combinedWriters[f] = openWriter(FoldExporter.combinedPath(path, f), header);
+            }
+
+            // Second pass: assign the rows of every chunk and append them to the outputs
+            reader.read(new ChunkedDatasetReader.ChunkConsumer()
+            {
+                public void accept(int chunkIndex, Instances chunk) throws IOException
+                {
+                    int classCodes[] = new int[chunk.numInstances()];
+
+                    for (int i = 0; i < classCodes.length; i++)
+                        classCodes[i] = chunk.instance(i).classIsMissing() ? -1 : (int) chunk.instance(i).classValue();
+
+                    int assignment[] = assignChunk(classCodes, quotas[chunkIndex], new Random(seed + chunkIndex));
+                    StringBuilder text[] = new StringBuilder[numFolds];
+
+                    for (int f = 0; f < numFolds; f++)
+                        text[f] = new StringBuilder();
+
+                    for (int i = 0; i < assignment.length; i++)
+                    {
+                        if (assignment[i] >= 0)
+                            text[assignment[i]].append(chunk.instance(i).toString()).append('\n');
+                    }
+
+                    for (int f = 0; f < numFolds; f++)
+                    {
+                        append(foldWriters[f], text[f]);
+
+                        // A fold's rows belong to the combined file of every other fold
+                        for (int other = 0; other < combinedWriters.length; other++)
+                        {
+                            if (other != f)
+                                append(combinedWriters[other], text[f]);
+                        }
+                    }
+                }
+            });
+        }
+        finally
+        {
+            closeAll(foldWriters);
+            closeAll(combinedWriters);
+        }
+
+        return paths;
+    }
+
+    /**
+     * Opens an output file and writes the ARFF header
+     *
+     * @param outputPath the path of the file
+     * @param header     the ARFF header, ending with the @data line
+     * @return the writer
+     * @throws IOException
+     */
+    private static Writer openWriter(String outputPath, String header) throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputPath), StandardCharsets.UTF_8), 1 << 16);
+        writer.write(header);
+
+        return writer;
+    }
+
+    /**
+     * Appends the rows of a chunk to an output. Chunks are consumed
+     * concurrently, so each chunk's rows are written as one block.
+     *
+     * @param writer the output
+     * @param text   the rows
+     * @throws IOException
+     */
+    private static void append(Writer writer, CharSequence text) throws IOException
+    {
+        if (text.length() == 0)
+            return;
+
+        synchronized (writer)
+        {
+            writer.append(text);
+        }
+    }
+
+    /**
+     * Closes every open output
+     *
+     * @param writers the outputs (entries may be null)
+     * @throws IOException
+     */
+    private static void closeAll(Writer writers[]) throws IOException
+    {
+        for (Writer writer : writers)
+        {
+            if (writer != null)
+                writer.close();
+        }
+    }
+
+    /**
+     * Adds up the class counts of all chunks
+     *
+     * @param chunkCounts the class counts of each chunk
+     * @param numClasses  the number of class values
+     * @return the global class counts
+     */
+    private static int[] sum(int chunkCounts[][], int numClasses)
+    {
+        int total[] = new int[numClasses];
+
+        for (int counts[] : chunkCounts)
+        {
+            for (int c = 0; c < numClasses; c++)
+                total[c] += counts[c];
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,336 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.ArrayList;
+
+/**
+ * Optional settings of the training pipeline, given on the command line as
+ * flags of the form --name or --name=value anywhere after the mode. Flags are
+ * separated from the positional arguments so each mode can keep checking its
+ * arguments by position.
+ */
+public class PipelineOptions
+{
+    /**
+     * COLLAPSE_DUPLICATES - flag that enables collapsing identical training rows
+     * UNDERSAMPLE - flag setting the majority class ratio of undersampled training sets (--undersample=ratio)
+     * SEED - flag setting the seed of the random stages (--seed=n)
+     * CHUNK_SIZE - flag that makes split mode stream the file in chunks of the given number of rows (--chunk-size=n)
+     * METRICS - flag setting the base path of the metrics report (--metrics=path)
+     * RESUME - flag that makes multi mode continue the run recorded in its manifest
+     * BINARY_CACHE - flag that makes every mode write the binary cache next to the dataset files it loads, saves or generates
+     * THREADS - flag capping the number of folds multi mode runs at once (--threads=n)
+     * DEFAULT_SEED - the seed used when none is given
+     */
+    public static final String COLLAPSE_DUPLICATES = "--collapse-duplicates";
+    public static final String UNDERSAMPLE = "--undersample";
+    public static final String SEED = "--seed";
+    public static final String CHUNK_SIZE = "--chunk-size";
+    public static final String RESUME = "--resume";
+    public static final String METRICS = "--metrics";
+    public static final String BINARY_CACHE = "--binary-cache";
+    public static final String THREADS = "--threads";
+    public static final long DEFAULT_SEED = 1;
+
+    /**
+     * arguments - the positional arguments (flags removed)
+     * collapseDuplicates - whether identical rows of the reduced training set are merged into one weighted row
+     * undersampleRatio - the majority class instances kept per other instance in training sets, 0 to keep all
+     * seed - the seed of the random stages
+     * chunkSize - the number of rows per chunk when splitting a file as a stream, 0 to load the file
+     * resume - whether finished folds and stages of an interrupted run are skipped
+     * metricsPath - the base path of the metrics report, null to not save one
+     * binaryCache - whether binary caches are written next to dataset files
+     * threads - the number of folds multi mode runs at once, 0 for no cap
+     */
+    private String arguments[] = new String[0];
+    private boolean collapseDuplicates;
+    private double undersampleRatio;
+    private long seed = DEFAULT_SEED;
+    private int chunkSize;
+    private boolean resume;
+    private String metricsPath;
+    private boolean binaryCache;
+    private int threads;
+
+    /**
+     * Separates the flags from the positional arguments
+     *
+     * @param args the command-line arguments
+     * @return the options, or null if an unknown or malformed flag was given
+     */
+    public static PipelineOptions parse(String args[])
+    {
+        PipelineOptions options = new PipelineOptions();
+        ArrayList<String> positional = new ArrayList<String>();
+
+        for (String arg : args)
+        {
+            if (!arg.startsWith("--"))
+            {
+                positional.add(arg);
+                continue;
+            }
+
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            String value = separator < 0 ? null : arg.substring(separator + 1);
+
+            try
+            {
+                switch (name)
+                {
+                    case COLLAPSE_DUPLICATES:
+                        options.collapseDuplicates = true;
+                        break;
+                    case UNDERSAMPLE:
+                        options.undersampleRatio = value == null ? 0 : Double.parseDouble(value);
+                        if (!(options.undersampleRatio > 0))
+                        {
+                            System.out.println("Undersampling ratio must be greater than 0");
+                            return null;
+                        }
+                        break;
+                    case SEED:
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case METRICS:
+                        if (value == null || value.isEmpty())
+                        {
+                            System.out.println("Expected a path for option " + name);
+                            return null;
+                        }
+                        options.metricsPath = value;
+                        break;
+                    case RESUME:
+                        options.resume = true;
+                        break;
+                    case BINARY_CACHE:
+                        options.binaryCache = true;
+                        break;
+                    case THREADS:
+                        options.threads = Integer.parseInt(value);
+                        if (options.threads <= 0)
+                        {
+                            System.out.println("Number of threads must be greater than 0");
+                            return null;
+                        }
+                        break;
+                    case CHUNK_SIZE:
+                        options.chunkSize = Integer.parseInt(value);
+                        if (options.chunkSize <= 0)
+                        {
+                            System.out.println("Chunk size must be greater than 0");
+                            return null;
+                        }
+                        break;
+                    default:
+                        System.out.println("Unknown option: " + arg);
+                        return null;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                System.out.println("Expected a number for option " + name);
+                return null;
+            }
+        }
+
+        options.arguments = positional.toArray(new String[positional.size()]);
+
+        return options;
+    }
+
+    /**
+     * Gets the positional arguments
+     *
+     * @return the command-line arguments without the flags
+     */
+    public String[] getArguments()
+    {
+        return arguments;
+    }
+
+    /**
+     * Checks whether identical rows of the reduced training set are merged
+     *
+     * @return boolean - true if duplicates are collapsed into weighted rows
+     */
+    public boolean collapseDuplicates()
+    {
+        return collapseDuplicates;
+    }
+
+    /**
+     * Sets whether identical rows of the reduced training set are merged
+     *
+     * @param collapseDuplicates true to collapse duplicates into weighted rows
+     */
+    public void setCollapseDuplicates(boolean collapseDuplicates)
+    {
+        this.collapseDuplicates = collapseDuplicates;
+    }
+
+    /**
+     * Gets the majority class ratio of undersampled training sets
+     *
+     * @return the majority class instances kept per instance of the other classes, 0 if training sets are not undersampled
+     */
+    public double getUndersampleRatio()
+    {
+        return undersampleRatio;
+    }
+
+    /**
+     * Sets the majority class ratio of undersampled training sets
+     *
+     * @param undersampleRatio the majority class instances kept per instance of the other classes, 0 to keep all
+     */
+    public void setUndersampleRatio(double undersampleRatio)
+    {
+        this.undersampleRatio = undersampleRatio;
+    }
+
+    /**
+     * Gets the seed of the random stages
+     *
+     * @return the seed
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the random stages
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the number of rows per chunk when splitting a file as a stream
+     *
+     * @return the chunk size, 0 if the file is loaded before splitting
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of rows per chunk when splitting a file as a stream
+     *
+     * @param chunkSize the chunk size, 0 to load the file before splitting
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Checks whether an interrupted run is resumed
+     *
+     * @return boolean - true if finished folds and stages recorded in the run manifest are skipped
+     */
+    public boolean resume()
+    {
+        return resume;
+    }
+
+    /**
+     * Sets whether an interrupted run is resumed
+     *
+     * @param resume true to skip the finished folds and stages recorded in the run manifest
+     */
+    public void setResume(boolean resume)
+    {
+        this.resume = resume;
+    }
+
+    /**
+     * Writes the training pipeline settings back as flags, so another process
+     * can train the same way. Options of the split and resume steps are left out.
+     *
+     * @return the flags
+     */
+    public ArrayList<String> toArguments()
+    {
+        ArrayList<String> flags = new ArrayList<String>();
+
+        if (collapseDuplicates)
+            flags.add(COLLAPSE_DUPLICATES);
+
+        if (undersampleRatio > 0)
+            flags.add(UNDERSAMPLE + "=" + undersampleRatio);
+
+        flags.add(SEED + "=" + seed);
+
+        if (binaryCache)
+            flags.add(BINARY_CACHE);
+
+        return flags;
+    }
+
+    /**
+     * Gets the base path of the metrics report
+     *
+     * @return the path, the report is saved to path.json and path.csv; null if no report is saved
+     */
+    public String getMetricsPath()
+    {
+        return metricsPath;
+    }
+
+    /**
+     * Sets the base path of the metrics report
+     *
+     * @param metricsPath the path, null to not save a report
+     */
+    public void setMetricsPath(String metricsPath)
+    {
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * Checks whether binary caches are written next to dataset files
+     *
+     * @return boolean - true if the binary cache is written next to loaded, saved and generated files
+     */
+    public boolean binaryCache()
+    {
+        return binaryCache;
+    }
+
+    /**
+     * Sets whether binary caches are written next to dataset files
+     *
+     * @param binaryCache true to write the binary cache next to loaded, saved and generated files
+     */
+    public void setBinaryCache(boolean binaryCache)
+    {
+        this.binaryCache = binaryCache;
+    }
+
+    /**
+     * Gets the number of folds multi mode runs at once
+     *
+     * @return the number of folds, 0 if only the heap budget limits them
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Sets the number of folds multi mode runs at once
+     *
+     * @param threads the number of folds, 0 to let only the heap budget limit them
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,309 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import weka.classifiers.Evaluation;
+import weka.classifiers.evaluation.NominalPrediction;
+import weka.classifiers.evaluation.Prediction;
+
+/**
+ * The predictions of one evaluation, kept so decision thresholds and costs can
+ * be evaluated again without retraining (see ThresholdAnalysis). For every
+ * test instance the store holds the predicted probability of the positive
+ * class, whether the instance is positive and its weight. It is written next
+ * to the results of a fold as resultsPath.preds.
+ *
+ * Layout (big endian):
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    number of instances
+ *   byte   1 if a weight block follows the labels, 0 if every weight is 1
+ *   double per instance, the probability of the positive class
+ *   byte   per instance, 1 if the instance is positive, 0 otherwise
+ *   double per instance, the weight (only if the weight flag is set)
+ */
+public class PredictionStore
+{
+    /**
+     * EXTENSION - appended to the results path to get the store path
+     * MAGIC - identifies a prediction store
+     * VERSION - the version of the layout (2 stores the probabilities as doubles)
+     */
+    public static final String EXTENSION = ".preds";
+    public static final int MAGIC = 0x4A4D4C50;
+    public static final int VERSION = 2;
+
+    /**
+     * HEADER_BYTES - the size of the fixed fields
+     */
+    private static final int HEADER_BYTES = 13;
+
+    /**
+     * scores - the probability of the positive class of each instance
+     * labels - 1 for each positive instance, 0 otherwise
+     * weights - the weight of each instance, null if every weight is 1
+     */
+    private double scores[];
+    private byte labels[];
+    private double weights[];
+
+    /**
+     * Constructor
+     *
+     * @param scores  the probability of the positive class of each instance
+     * @param labels  1 for each positive instance, 0 otherwise
+     * @param weights the weight of each instance, null if every weight is 1
+     */
+    public PredictionStore(double scores[], byte labels[], double weights[])
+    {
+        this.scores = scores;
+        this.labels = labels;
+        this.weights = weights;
+    }
+
+    /**
+     * Collects the predictions recorded by an evaluation. Instances with a
+     * missing class are left out.
+     *
+     * @param eval          the evaluation
+     * @param positiveClass the index of the positive class
+     * @return the store, or null if the evaluation kept no predictions
+     */
+    public static PredictionStore fromEvaluation(Evaluation eval, int positiveClass)
+    {
+        ArrayList<Prediction> predictions = eval.predictions();
+
+        if (predictions == null)
+            return null;
+
+        double scores[] = new double[predictions.size()];
+        byte labels[] = new byte[predictions.size()];
+        double weights[] = new double[predictions.size()];
+        boolean weighted = false;
+        int count = 0;
+
+        for (Prediction prediction : predictions)
+        {
+            if (prediction.actual() == Prediction.MISSING_VALUE || !(prediction instanceof NominalPrediction))
+                continue;
+
+            scores[count] = ((NominalPrediction) prediction).distribution()[positiveClass];
+            labels[count] = (byte) ((int) prediction.actual() == positiveClass ? 1 : 0);
+            weights[count] = prediction.weight();
+            weighted |= weights[count] != 1.0;
+            count++;
+        }
+
+        return new PredictionStore(Arrays.copyOf(scores, count), Arrays.copyOf(labels, count), weighted ? Arrays.copyOf(weights, count) : null);
+    }
+
+    /**
+     * Gets the path of the store for a results file
+     *
+     * @param resultsPath the path of the results
+     * @return the path of the store
+     */
+    public static String storePath(String resultsPath)
+    {
+        return resultsPath + EXTENSION;
+    }
+
+    /**
+     * Finds the stores written for the folds of a run: resultsPath.preds (a
+     * single run), resultsPath_fold_f.preds (multi mode) and
+     * resultsPath_rep_r_fold_f.preds (repeated, nested and multi-process
+     * modes). Other files that share the prefix are left out.
+     *
+     * @param resultsPath base path the results of the run were saved to
+     * @return the paths of the stores, sorted
+     */
+    public static ArrayList<String> findStores(String resultsPath)
+    {
+        File base = new File(resultsPath);
+        File directory = base.getAbsoluteFile().getParentFile();
+        Pattern storeName = Pattern.compile(Pattern.quote(base.getName()) + "(_fold_\\d+|_rep_\\d+_fold_\\d+)?" + Pattern.quote(EXTENSION));
+        ArrayList<String> paths = new ArrayList<String>();
+        File files[] = directory == null ? null : directory.listFiles();
+
+        if (files == null)
+            return paths;
+
+        for (File file : files)
+        {
+            if (file.isFile() && storeName.matcher(file.getName()).matches())
+                paths.add(new File(base.getParentFile(), file.getName()).getPath());
+        }
+
+        Collections.sort(paths);
+
+        return paths;
+    }
+
+    /**
+     * Writes the store to a temporary file and moves it to path
+     *
+     * @param path the path of the store
+     * @throws IOException
+     */
+    public void write(String path) throws IOException
+    {
+        File temp = new File(path + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(scores.length);
+            out.writeByte(weights != null ? 1 : 0);
+
+            for (double score : scores)
+                out.writeDouble(score);
+
+            out.write(labels);
+
+            if (weights != null)
+            {
+                for (double weight : weights)
+                    out.writeDouble(weight);
+            }
+        }
+
+        File target = new File(path);
+
+        if (target.exists() && !target.delete())
+            throw new IOException("Could not replace " + path);
+
+        if (!temp.renameTo(target))
+            throw new IOException("Could not write " + path);
+    }
+
+    /**
+     * Reads a store
+     *
+     * @param path the path of the store
+     * @return the store
+     * @throws IOException if the file is not a prediction store, is truncated or cannot be read
+     */
+    public static PredictionStore read(String path) throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel())
+        {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                throw new IOException("Not a prediction store: " + path);
+
+            int numInstances = buffer.getInt();
+            boolean hasWeights = buffer.get() == 1;
+
+            // A store cut short (a partial copy, a full disk) would otherwise fail partway through reading
+            if (numInstances < 0 || channel.size() != HEADER_BYTES + (long) numInstances * (Double.BYTES + 1 + (hasWeights ? Double.BYTES : 0)))
+                throw new IOException("Truncated prediction store: " + path + " (" + channel.size() + " bytes for " + numInstances + " instances)");
+
+            double scores[] = new double[numInstances];
+            byte labels[] = new byte[numInstances];
+            double weights[] = hasWeights ? new double[numInstances] : null;
+
+            buffer.asDoubleBuffer().get(scores);
+            buffer.position(buffer.position() + numInstances * Double.BYTES);
+            buffer.get(labels);
+
+            if (hasWeights)
+                buffer.asDoubleBuffer().get(weights);
+
+            return new PredictionStore(scores, labels, weights);
+        }
+    }
+
+    /**
+     * Joins the predictions of several stores, for example every fold of a run
+     *
+     * @param stores the stores
+     * @return the joined store
+     */
+    public static PredictionStore concat(List<PredictionStore> stores)
+    {
+        int total = 0;
+        boolean weighted = false;
+
+        for (PredictionStore store : stores)
+        {
+            total += store.numInstances();
+            weighted |= store.weights != null;
+        }
+
+        double scores[] = new double[total];
+        byte labels[] = new byte[total];
+        double weights[] = weighted ? new double[total] : null;
+        int offset = 0;
+
+        for (PredictionStore store : stores)
+        {
+            int n = store.numInstances();
+            System.arraycopy(store.scores, 0, scores, offset, n);
+            System.arraycopy(store.labels, 0, labels, offset, n);
+
+            for (int i = 0; weighted && i < n; i++)
+                weights[offset + i] = store.weight(i);
+
+            offset += n;
+        }
+
+        return new PredictionStore(scores, labels, weights);
+    }
+
+    /**
+     * Gets the number of instances
+     *
+     * @return the number of instances
+     */
+    public int numInstances()
+    {
+        return scores.length;
+    }
+
+    /**
+     * Gets the probability of the positive class predicted for an instance
+     *
+     * @param i the instance
+     * @return the probability
+     */
+    public double score(int i)
+    {
+        return scores[i];
+    }
+
+    /**
+     * Checks whether an instance is positive
+     *
+     * @param i the instance
+     * @return boolean - true if the actual class of the instance is the positive class
+     */
+    public boolean isPositive(int i)
+    {
+        return labels[i] == 1;
+    }
+
+    /**
+     * Gets the weight of an instance
+     *
+     * @param i the instance
+     * @return the weight
+     */
+    public double weight(int i)
+    {
+        return weights == null ? 1.0 : weights[i];
+    }
+}
@@ -0,0 +1,265 @@
+package com.jordanml.TransactionClassifier;
+
+import weka.core.ContingencyTables;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.supervised.attribute.Discretize;
+
+/**
+ * WEKA's supervised (Fayyad &amp; Irani MDL) discretization using the sorted
+ * orders of a dataset's AttributeStatistics instead of sorting a copy of the
+ * data once per attribute. Produces the same cut points and output format as
+ * Discretize. Falls back to Discretize when the statistics do not match the
+ * input data or a non-default option needs its own cut point search.
+ */
+public class PresortedDiscretize extends Discretize
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * statistics - the statistics of the data the filter is used on
+     */
+    private transient AttributeStatistics statistics;
+
+    /**
+     * cutPointData - the data computeCutPoints searches, null when the cut points are computed from the buffered input
+     */
+    private transient Instances cutPointData;
+
+    /**
+     * Constructor
+     *
+     * @param statistics the statistics of the data the filter will be used on
+     */
+    public PresortedDiscretize(AttributeStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Computes the cut points of a dataset without buffering or converting its
+     * instances. Afterwards getCutPoints and the output format are available as
+     * if the data had been passed through the filter.
+     *
+     * @param data the data to compute the cut points on
+     * @throws Exception if the data's format is not supported
+     */
+    public void computeCutPoints(Instances data) throws Exception
+    {
+        setInputFormat(data);
+
+        // The fallback searches the buffered input like Discretize does
+        if (!usesStatistics(data))
+        {
+            for (int i = 0; i < data.numInstances(); i++)
+                bufferInput(data.instance(i));
+        }
+
+        cutPointData = data;
+        try
+        {
+            calculateCutPoints();
+        }
+        finally
+        {
+            cutPointData = null;
+        }
+
+        flushInput();
+        setOutputFormat();
+    }
+
+    /**
+     * Computes the cut points of every numeric attribute from the presorted
+     * instance orders
+     */
+    @Override
+    protected void calculateCutPoints()
+    {
+        Instances data = cutPointData != null ? cutPointData : getInputFormat();
+
+        if (!usesStatistics(data))
+        {
+            super.calculateCutPoints();
+            return;
+        }
+
+        m_CutPoints = new double[data.numAttributes()][];
+
+        for (int i = 0; i < data.numAttributes(); i++)
+        {
+            if (m_DiscretizeCols.isInRange(i) && data.attribute(i).isNumeric() && data.classIndex() != i)
+                m_CutPoints[i] = calculateCutPointsByMDL(data, i);
+        }
+    }
+
+    /**
+     * Checks whether the cut points of the data can be searched in the
+     * presorted orders of the statistics
+     *
+     * @param data the input data
+     * @return boolean - true if the statistics match the data and the options are the defaults
+     */
+    private boolean usesStatistics(Instances data)
+    {
+        return statistics != null && statistics.numInstances() == data.numInstances() && !m_UseKononenko && !m_UseBetterEncoding;
+    }
+
+    /**
+     * Sets the output format, naming the relation after Discretize so the
+     * discretized files are identical to the ones Discretize writes
+     */
+    @Override
+    protected void setOutputFormat()
+    {
+        super.setOutputFormat();
+
+        Instances format = outputFormatPeek();
+        format.setRelationName(format.relationName().replace(getClass().getName(), Discretize.class.getName()));
+    }
+
+    /**
+     * Gathers the values, classes and weights of an attribute in sorted order
+     * and searches them for cut points
+     *
+     * @param data     the input data
+     * @param attIndex the attribute index
+     * @return the cut points, or null if the attribute is not split
+     */
+    private double[] calculateCutPointsByMDL(Instances data, int attIndex)
+    {
+        int order[] = statistics.sortedIndices(attIndex);
+        int present = statistics.numPresent(attIndex);
+        double values[] = new double[present];
+        int classes[] = new int[present];
+        double weights[] = new double[present];
+
+        for (int i = 0; i < present; i++)
+        {
+            Instance current = data.instance(order[i]);
+            values[i] = current.value(attIndex);
+            classes[i] = (int) current.classValue();
+            weights[i] = current.weight();
+        }
+
+        return cutPointsForSubset(values, classes, weights, data.numClasses(), 0, present);
+    }
+
+    /**
+     * Selects the cut points of a sorted range of instances. Mirrors
+     * Discretize.cutPointsForSubset with the default options.
+     *
+     * @param values      the attribute values in ascending order
+     * @param classes     the class value index of each instance
+     * @param weights     the weight of each instance
+     * @param numClasses  the number of class values
+     * @param first       the first instance of the range
+     * @param lastPlusOne one past the last instance of the range
+     * @return the cut points, or null if the range is not split
+     */
+    private static double[] cutPointsForSubset(double values[], int classes[], double weights[], int numClasses, int first, int lastPlusOne)
+    {
+        if (lastPlusOne - first < 2)
+            return null;
+
+        double counts[][] = new double[2][numClasses];
+        double bestCounts[][] = new double[2][numClasses];
+        double numInstances = 0;
+
+        for (int i = first; i < lastPlusOne; i++)
+        {
+            numInstances += weights[i];
+            counts[1][classes[i]] += weights[i];
+        }
+
+        double priorCounts[] = counts[1].clone();
+        double priorEntropy = ContingencyTables.entropy(priorCounts);
+        double bestEntropy = priorEntropy;
+        double bestCutPoint = -1;
+        int bestIndex = -1;
+
+        for (int i = first; i < lastPlusOne - 1; i++)
+        {
+            counts[0][classes[i]] += weights[i];
+            counts[1][classes[i]] -= weights[i];
+
+            if (values[i] < values[i + 1])
+            {
+                double currentEntropy = ContingencyTables.entropyConditionedOnRows(counts);
+
+                if (currentEntropy < bestEntropy)
+                {
+                    bestCutPoint = (values[i] + values[i + 1]) / 2.0;
+                    bestEntropy = currentEntropy;
+                    bestIndex = i;
+                    System.arraycopy(counts[0], 0, bestCounts[0], 0, numClasses);
+                    System.arraycopy(counts[1], 0, bestCounts[1], 0, numClasses);
+                }
+            }
+        }
+
+        if (priorEntropy - bestEntropy <= 0 || !acceptSplit(priorCounts, bestCounts, numInstances, lastPlusOne - first - 1))
+            return null;
+
+        double left[] = cutPointsForSubset(values, classes, weights, numClasses, first, bestIndex + 1);
+        double right[] = cutPointsForSubset(values, classes, weights, numClasses, bestIndex + 1, lastPlusOne);
+        int numLeft = left == null ? 0 : left.length;
+        int numRight = right == null ? 0 : right.length;
+        double cutPoints[] = new double[numLeft + 1 + numRight];
+
+        if (left != null)
+            System.arraycopy(left, 0, cutPoints, 0, numLeft);
+
+        cutPoints[numLeft] = bestCutPoint;
+
+        if (right != null)
+            System.arraycopy(right, 0, cutPoints, numLeft + 1, numRight);
+
+        return cutPoints;
+    }
+
+    /**
+     * Fayyad &amp; Irani's MDL stopping criterion
+     *
+     * @param priorCounts  the class counts before the split
+     * @param bestCounts   the class counts on each side of the split
+     * @param numInstances the (weighted) number of instances
+     * @param numCutPoints the number of candidate cut points
+     * @return boolean - true if the split is accepted
+     */
+    private static boolean acceptSplit(double priorCounts[], double bestCounts[][], double numInstances, int numCutPoints)
+    {
+        double priorEntropy = ContingencyTables.entropy(priorCounts);
+        double gain = priorEntropy - ContingencyTables.entropyConditionedOnRows(bestCounts);
+        int numClassesTotal = countPresent(priorCounts);
+        int numClassesLeft = countPresent(bestCounts[0]);
+        int numClassesRight = countPresent(bestCounts[1]);
+        double entropyLeft = ContingencyTables.entropy(bestCounts[0]);
+        double entropyRight = ContingencyTables.entropy(bestCounts[1]);
+
+        double delta = Utils.log2(Math.pow(3, numClassesTotal) - 2)
+                - ((numClassesTotal * priorEntropy) - (numClassesRight * entropyRight) - (numClassesLeft * entropyLeft));
+
+        return gain > (Utils.log2(numCutPoints) + delta) / numInstances;
+    }
+
+    /**
+     * Counts the class values that occur
+     *
+     * @param counts the class counts
+     * @return the number of nonzero counts
+     */
+    private static int countPresent(double counts[])
+    {
+        int present = 0;
+
+        for (double count : counts)
+        {
+            if (count > 0)
+                present++;
+        }
+
+        return present;
+    }
+}
@@ -0,0 +1,98 @@
+package com.jordanml.TransactionClassifier;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Classifies instances with all attributes using a classifier that was built
+ * on a reduct projection. Each instance is projected as it is classified, so a
+ * test set never has to be copied to drop the attributes outside the reduct.
+ * A NormalizedClassifier reads the raw instance directly through a remapped
+ * normalizer, so no projected instance is created for it at all.
+ */
+public class ProjectedClassifier extends AbstractClassifier
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * classifier - the classifier built on the projected data
+     * indices - the attribute index of each projected attribute (class last)
+     * header - empty Instances holding the projected attribute information
+     * normalizer - the normalizer of a wrapped NormalizedClassifier, reading raw instances (null otherwise)
+     */
+    private Classifier classifier;
+    private int indices[];
+    private Instances header;
+    private InputNormalizer normalizer;
+
+    /**
+     * Constructor
+     *
+     * @param classifier the classifier built on the projected data
+     * @param projection the projection the classifier was built on
+     */
+    public ProjectedClassifier(Classifier classifier, ProjectedDataset projection)
+    {
+        this.classifier = classifier;
+        this.indices = projection.getIndices().clone();
+        this.header = new Instances(projection.getHeader(), 0);
+        remapNormalizer();
+    }
+
+    /**
+     * Maps the normalizer of a built NormalizedClassifier onto the raw attribute indices
+     */
+    private void remapNormalizer()
+    {
+        normalizer = null;
+
+        if (classifier instanceof NormalizedClassifier && ((NormalizedClassifier) classifier).getNormalizer() != null)
+            normalizer = ((NormalizedClassifier) classifier).getNormalizer().remap(indices);
+    }
+
+    /**
+     * Builds the wrapped classifier on the projection of the given data
+     *
+     * @param data the training data with all attributes
+     * @throws Exception
+     */
+    @Override
+    public void buildClassifier(Instances data) throws Exception
+    {
+        Instances projected = new Instances(header, data.numInstances());
+
+        for (int i = 0; i < data.numInstances(); i++)
+            projected.add(ProjectedDataset.project(data.instance(i), indices, header));
+
+        classifier.buildClassifier(projected);
+        remapNormalizer();
+    }
+
+    /**
+     * Projects the instance and classifies it with the wrapped classifier
+     *
+     * @param instance the instance with all attributes
+     * @return the class distribution for the instance
+     * @throws Exception
+     */
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception
+    {
+        if (normalizer != null)
+            return ((NormalizedClassifier) classifier).getClassifier().distributionForInstance(normalizer.transform(instance));
+
+        return classifier.distributionForInstance(ProjectedDataset.project(instance, indices, header));
+    }
+
+    /**
+     * Gets the wrapped classifier
+     *
+     * @return the classifier built on the projected data
+     */
+    public Classifier getClassifier()
+    {
+        return classifier;
+    }
+}
@@ -0,0 +1,413 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * View of a dataset that only exposes the attributes of a reduct plus the
+ * class attribute. Accesses are mapped to the underlying dataset, so creating
+ * the view does not depend on the number of instances, and consumers that
+ * read rows (see RowSource) never need a copy of the projected data.
+ */
+public class ProjectedDataset implements RowSource
+{
+    /**
+     * base - the underlying dataset
+     * source - the instances of the underlying dataset
+     * indices - the underlying attribute index of each projected attribute (class last)
+     * header - empty Instances holding the projected attribute information
+     * inputs - the cached normalized network inputs of the projection, null until requested
+     */
+    private Dataset base;
+    private Instances source;
+    private int indices[];
+    private Instances header;
+    private NormalizedInputs inputs;
+
+    /**
+     * Constructor
+     *
+     * @param base   the underlying dataset (class index must be set)
+     * @param reduct BitSet representing the attributes that are included in the reduct
+     */
+    public ProjectedDataset(Dataset base, BitSet reduct)
+    {
+        this.base = base;
+        this.source = base.shareInstances();
+        this.indices = projectionIndices(reduct, base.numAttributes(), base.classIndex());
+        this.header = projectHeader(source, indices);
+    }
+
+    /**
+     * Gets the attribute indices kept by a reduct, in ascending order with the
+     * class attribute last
+     *
+     * @param reduct        BitSet representing the attributes that are included in the reduct
+     * @param numAttributes the number of attributes in the underlying data
+     * @param classIndex    the class index of the underlying data
+     * @return the kept attribute indices
+     */
+    public static int[] projectionIndices(BitSet reduct, int numAttributes, int classIndex)
+    {
+        int reductIndices[] = FeatureTransformer.reductIndices(reduct, numAttributes, classIndex);
+        int indices[] = new int[reductIndices.length + 1];
+
+        System.arraycopy(reductIndices, 0, indices, 0, reductIndices.length);
+        indices[reductIndices.length] = classIndex;
+
+        return indices;
+    }
+
+    /**
+     * Builds the attribute information of the projection
+     *
+     * @param source  the underlying data
+     * @param indices the kept attribute indices (class last)
+     * @return empty Instances holding the projected attributes with the class index set
+     */
+    static Instances projectHeader(Instances source, int indices[])
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>(indices.length);
+
+        for (int index : indices)
+            attributes.add((Attribute) source.attribute(index).copy());
+
+        Instances projected = new Instances(source.relationName() + "-reduct", attributes, 0);
+        projected.setClassIndex(indices.length - 1);
+
+        return projected;
+    }
+
+    /**
+     * Gets the underlying attribute index of each projected attribute
+     *
+     * @return the indices (class last), not copied
+     */
+    public int[] getIndices()
+    {
+        return indices;
+    }
+
+    /**
+     * Gets the empty Instances holding the projected attribute information
+     *
+     * @return the header
+     */
+    public Instances getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * Gets the number of instances
+     *
+     * @return int - the number of instances in the underlying dataset
+     */
+    @Override
+    public int numInstances()
+    {
+        return source.numInstances();
+    }
+
+    /**
+     * Gets the number of projected attributes
+     *
+     * @return int - the number of reduct attributes plus the class
+     */
+    @Override
+    public int numAttributes()
+    {
+        return indices.length;
+    }
+
+    /**
+     * Gets the class index of the projection
+     *
+     * @return int - the class index (always the last attribute)
+     */
+    @Override
+    public int classIndex()
+    {
+        return header.classIndex();
+    }
+
+    /**
+     * The class of a projection is always its last attribute, so only that
+     * index is accepted
+     *
+     * @param classIndex The index of the class attribute
+     */
+    @Override
+    public void setClassIndex(int classIndex)
+    {
+        if (classIndex != header.classIndex())
+            throw new IllegalArgumentException("The class of a projection is its last attribute, not " + classIndex);
+    }
+
+    /**
+     * Gets a projected value
+     *
+     * @param row the instance index
+     * @param col the projected attribute index
+     * @return the value of the underlying attribute
+     */
+    @Override
+    public double value(int row, int col)
+    {
+        return source.instance(row).value(indices[col]);
+    }
+
+    /**
+     * Gets the weight of an instance
+     *
+     * @param row the instance index
+     * @return the weight of the underlying instance
+     */
+    @Override
+    public double weight(int row)
+    {
+        return source.instance(row).weight();
+    }
+
+    /**
+     * Gets the total weight of the instances
+     *
+     * @return the sum of the weights of the underlying instances
+     */
+    public double sumOfWeights()
+    {
+        return source.sumOfWeights();
+    }
+
+    /**
+     * Gets the class value index of an instance
+     *
+     * @param row the instance index
+     * @return the class value index, or -1 if the class is missing
+     */
+    @Override
+    public int classCode(int row)
+    {
+        Instance instance = source.instance(row);
+
+        return instance.classIsMissing() ? -1 : (int) instance.classValue();
+    }
+
+    /**
+     * Counts the instances of each class value
+     *
+     * @return the number of instances of each class value
+     */
+    @Override
+    public int[] classCounts()
+    {
+        if (!header.classAttribute().isNominal())
+            throw new IllegalStateException("Class values can only be counted for a nominal class, " + header.classAttribute().name() + " is " + Attribute.typeToString(header.classAttribute()));
+
+        int counts[] = new int[header.classAttribute().numValues()];
+
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            int code = classCode(row);
+
+            if (code >= 0)
+                counts[code]++;
+        }
+
+        return counts;
+    }
+
+    /**
+     * Creates the projected copy of an instance
+     *
+     * @param row the instance index
+     * @return the projected instance (its dataset is the projected header)
+     */
+    @Override
+    public Instance instance(int row)
+    {
+        return project(source.instance(row));
+    }
+
+    /**
+     * Copies the given rows onto the projected attributes
+     *
+     * @param rows the instance indices, in output order
+     * @return the projected instances
+     */
+    @Override
+    public Instances toInstances(int rows[])
+    {
+        Instances projected = new Instances(header, rows.length);
+
+        for (int row : rows)
+            projected.add(instance(row));
+
+        return projected;
+    }
+
+    /**
+     * Gets the statistics of the projected attributes. Taken from the statistics
+     * of the underlying dataset, so only the first call on the underlying
+     * dataset scans the rows.
+     *
+     * @return the statistics, or null if they could not be computed
+     */
+    public AttributeStatistics getStatistics()
+    {
+        AttributeStatistics statistics = base.getStatistics();
+
+        return statistics == null ? null : statistics.project(indices);
+    }
+
+    /**
+     * Gets the normalized network inputs of the projection, computing them on
+     * first use. The inputs are read straight from the underlying rows, so the
+     * projected data is never copied into Instances.
+     *
+     * @return the normalized inputs, or null if the statistics could not be computed
+     */
+    public synchronized NormalizedInputs getNormalizedInputs()
+    {
+        if (inputs == null)
+        {
+            AttributeStatistics statistics = getStatistics();
+
+            if (statistics != null)
+                inputs = new NormalizedInputs(this, statistics);
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Projects an instance of the underlying data
+     *
+     * @param raw the instance with all attributes
+     * @return the projected instance (its dataset is the projected header)
+     */
+    public Instance project(Instance raw)
+    {
+        return project(raw, indices, header);
+    }
+
+    /**
+     * Projects an instance onto the given attributes
+     *
+     * @param raw     the instance with all attributes
+     * @param indices the kept attribute indices
+     * @param header  the projected header
+     * @return the projected instance (its dataset is the projected header)
+     */
+    static Instance project(Instance raw, int indices[], Instances header)
+    {
+        double values[] = new double[indices.length];
+
+        for (int i = 0; i < indices.length; i++)
+            values[i] = raw.value(indices[i]);
+
+        Instance projected = new DenseInstance(raw.weight(), values);
+        projected.setDataset(header);
+
+        return projected;
+    }
+
+    /**
+     * Copies the projected values into a new dataset in a single pass. Needed
+     * only for consumers that require Instances of the projected attributes,
+     * such as the cascade classifier; the neural network trains on
+     * getNormalizedInputs() instead.
+     *
+     * @return the projected dataset
+     */
+    public Dataset materialize()
+    {
+        Instances projected = new Instances(header, source.numInstances());
+
+        for (int row = 0; row < source.numInstances(); row++)
+            projected.add(instance(row));
+
+        return Dataset.adopt(projected);
+    }
+
+    /**
+     * Copies the projected values into a new dataset, keeping one instance for
+     * each group of identical projected rows (class included). The weight of
+     * the kept instance is proportional to the sum of the weights of its group,
+     * so classifiers that use instance weights learn the same distribution
+     * from fewer rows. The weights are divided by their mean, so they average
+     * 1 like the weights of the full data: MultilayerPerceptron scales each
+     * update by the instance weight, and summed counts would multiply its
+     * learning rate.
+     *
+     * @return the projected dataset of distinct rows
+     */
+    public Dataset materializeDistinct()
+    {
+        Instances projected = new Instances(header, 0);
+        HashMap<RowKey, Integer> distinct = new HashMap<RowKey, Integer>();
+        double totalWeight = 0;
+
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            Instance current = instance(row);
+            RowKey key = new RowKey(current.toDoubleArray());
+            Integer index = distinct.get(key);
+            totalWeight += current.weight();
+
+            if (index == null)
+            {
+                distinct.put(key, projected.numInstances());
+                projected.add(current);
+            }
+            else
+            {
+                Instance kept = projected.instance(index);
+                kept.setWeight(kept.weight() + current.weight());
+            }
+        }
+
+        double meanWeight = totalWeight / projected.numInstances();
+
+        for (int i = 0; i < projected.numInstances(); i++)
+            projected.instance(i).setWeight(projected.instance(i).weight() / meanWeight);
+
+        System.out.println("Collapsed " + source.numInstances() + " rows into " + projected.numInstances() + " distinct rows");
+
+        return Dataset.adopt(projected);
+    }
+
+    /**
+     * Hash key for the values of a row. Missing values are equal to each other.
+     */
+    private static class RowKey
+    {
+        private double values[];
+        private int hash;
+
+        RowKey(double values[])
+        {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof RowKey && Arrays.equals(values, ((RowKey) other).values);
+        }
+    }
+}
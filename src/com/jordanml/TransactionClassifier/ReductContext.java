@@ -0,0 +1,174 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Properties;
+
+import rseslib.processing.reducts.AllGlobalReductsProvider;
+import rseslib.structure.table.ArrayListDoubleDataTable;
+import rseslib.structure.table.DoubleDataTable;
+import rseslib.system.progress.Progress;
+
+/**
+ * Runs the rseslib side of reduct selection for one task. Nothing is
+ * registered on rseslib's static Report: progress and messages go to a buffer
+ * owned by the task and are printed in one piece by flush(), so folds running
+ * at the same time neither contend for shared outputs nor close each other's.
+ * A context is used by a single thread.
+ */
+public class ReductContext
+{
+    /**
+     * DEC_PROPERTIES - the reduct provider settings for discernibility matrices of type M-Dec
+     * decProperties - the M-Dec settings, loaded once and copied for every provider
+     */
+    private static final String DEC_PROPERTIES = "/discernibility-matrix-dec.properties";
+    private static Properties decProperties = null;
+
+    /**
+     * name - the name of the task, prefixed to its output
+     * log - the buffered messages of the task
+     */
+    private String name;
+    private StringBuilder log = new StringBuilder();
+
+    /**
+     * Progress sink that records the start and end of each rseslib stage in
+     * the task's buffer instead of printing every step
+     */
+    private class BufferedProgress implements Progress
+    {
+        /**
+         * stage - the name of the running stage
+         * steps - the number of steps of the running stage
+         * done - the steps taken so far
+         * started - System.nanoTime() when the stage started
+         */
+        private String stage;
+        private long steps;
+        private long done;
+        private long started;
+
+        public void set(String name, long noOfSteps)
+        {
+            stage = name;
+            steps = noOfSteps;
+            done = 0;
+            started = System.nanoTime();
+
+            if (steps <= 0)
+                log(stage);
+        }
+
+        public void step()
+        {
+            if (++done == steps)
+                log(stage + ": " + steps + " steps in " + (System.nanoTime() - started)/1000000 + " ms");
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param name the name of the task, prefixed to its output
+     */
+    public ReductContext(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Finds the reduct with the largest reduction in dimensionality
+     *
+     * @param discPath   path to the discretized data
+     * @param reductMode the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @return the reduct, or null on failure
+     */
+    public BitSet findReduct(String discPath, int reductMode)
+    {
+        try
+        {
+            // Null properties select the provider defaults (M-All)
+            Properties properties = reductMode == 2 ? copyDecProperties() : null;
+
+            DoubleDataTable table = new ArrayListDoubleDataTable(new File(discPath), new BufferedProgress());
+            AllGlobalReductsProvider reductsProvider = new AllGlobalReductsProvider(properties, table);
+
+            Collection<BitSet> reducts = reductsProvider.getReducts();
+
+            if (reducts == null || reducts.isEmpty())
+            {
+                log("No reducts found");
+                return null;
+            }
+
+            // The first reduct offers the most reduction in dimensionality
+            BitSet firstReduct = reducts.iterator().next();
+            log("Selected " + firstReduct + " of " + reducts.size() + " reducts");
+
+            return firstReduct;
+        }
+        catch (Exception e)
+        {
+            log("Could not compute reducts: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Adds a message to the task's buffer
+     *
+     * @param message the message
+     */
+    public void log(String message)
+    {
+        log.append('[').append(name).append("] ").append(message).append(System.lineSeparator());
+    }
+
+    /**
+     * Prints the buffered messages in one write and empties the buffer
+     */
+    public void flush()
+    {
+        if (log.length() == 0)
+            return;
+
+        System.out.print(log.toString());
+        log.setLength(0);
+    }
+
+    /**
+     * Gets a copy of the M-Dec settings, loading them on first use
+     *
+     * @return the settings
+     * @throws IOException if the settings cannot be read
+     */
+    private static Properties copyDecProperties() throws IOException
+    {
+        synchronized (ReductContext.class)
+        {
+            if (decProperties == null)
+            {
+                Properties loaded = new Properties();
+
+                try (InputStream fileStream = ReductContext.class.getResourceAsStream(DEC_PROPERTIES))
+                {
+                    if (fileStream == null)
+                        throw new IOException("Missing " + DEC_PROPERTIES);
+
+                    loaded.load(fileStream);
+                }
+
+                decProperties = loaded;
+            }
+        }
+
+        Properties copy = new Properties();
+        copy.putAll(decProperties);
+
+        return copy;
+    }
+}
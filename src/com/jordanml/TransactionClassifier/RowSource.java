@@ -0,0 +1,95 @@
+package com.jordanml.TransactionClassifier;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Row access to a dataset regardless of where its values are stored. Values are
+ * returned in the representation WEKA uses (value index for nominal attributes,
+ * NaN for missing values).
+ */
+public interface RowSource
+{
+    /**
+     * Gets the number of instances
+     *
+     * @return int - the number of instances
+     */
+    int numInstances();
+
+    /**
+     * Gets the number of attributes
+     *
+     * @return int - the number of attributes
+     */
+    int numAttributes();
+
+    /**
+     * Gets the class index
+     *
+     * @return int - the class index, -1 if not set
+     */
+    int classIndex();
+
+    /**
+     * Sets the class index
+     *
+     * @param classIndex The index of the class attribute
+     */
+    void setClassIndex(int classIndex);
+
+    /**
+     * Gets the empty Instances holding the attribute information
+     *
+     * @return the header
+     */
+    Instances getHeader();
+
+    /**
+     * Gets a value
+     *
+     * @param row the instance index
+     * @param col the attribute index
+     * @return the value
+     */
+    double value(int row, int col);
+
+    /**
+     * Gets the weight of an instance
+     *
+     * @param row the instance index
+     * @return the weight
+     */
+    double weight(int row);
+
+    /**
+     * Gets the class value index of an instance
+     *
+     * @param row the instance index
+     * @return the class value index, or -1 if the class is missing
+     */
+    int classCode(int row);
+
+    /**
+     * Counts the instances of each class value
+     *
+     * @return the number of instances of each class value
+     */
+    int[] classCounts();
+
+    /**
+     * Creates a WEKA Instance for a row
+     *
+     * @param row the instance index
+     * @return the instance (its dataset is the header)
+     */
+    Instance instance(int row);
+
+    /**
+     * Converts the given rows to WEKA Instances
+     *
+     * @param rows the instance indices, in output order
+     * @return the instances
+     */
+    Instances toInstances(int rows[]);
+}
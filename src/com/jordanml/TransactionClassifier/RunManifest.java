@@ -0,0 +1,375 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Records the progress of a multi-fold run in a properties file so an
+ * interrupted run can be resumed. The manifest holds the run parameters, the
+ * fold files of the split and, for every fold, the output of each finished
+ * stage:
+ *
+ *     fold.i.cutpoints - the discretized training set the reduct is found on
+ *     fold.i.reduct    - the reduct (attribute indices separated by commas)
+ *     fold.i.model     - the serialized model
+ *     fold.i.results   - the saved results, set once the fold is complete
+ *
+ * The fold files and the discretized training sets are recorded with their
+ * CRC32 checksum (fold.i.path.checksum, fold.i.cutpoints.checksum), so a
+ * resumed run only reuses files that have not changed since.
+ *
+ * The file is rewritten after every change, through a temporary file that
+ * replaces it, so a run killed at any point leaves the last complete manifest.
+ */
+public class RunManifest
+{
+    /**
+     * STAGE_CUT_POINTS - stage key of the discretized training set
+     * STAGE_REDUCT - stage key of the reduct
+     * STAGE_MODEL - stage key of the serialized model
+     * STAGE_RESULTS - stage key of the results, marks the fold as complete
+     */
+    public static final String STAGE_CUT_POINTS = "cutpoints";
+    public static final String STAGE_REDUCT = "reduct";
+    public static final String STAGE_MODEL = "model";
+    public static final String STAGE_RESULTS = "results";
+
+    /**
+     * path - the path of the manifest file
+     * properties - the recorded entries
+     */
+    private String path;
+    private Properties properties = new Properties();
+
+    /**
+     * Constructor for a new, empty manifest. Nothing is written until the
+     * first entry is recorded.
+     *
+     * @param path the path of the manifest file
+     */
+    public RunManifest(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * Loads the manifest of an earlier run
+     *
+     * @param path the path of the manifest file
+     * @return the manifest
+     * @throws IOException if the file cannot be read
+     */
+    public static RunManifest load(String path) throws IOException
+    {
+        RunManifest manifest = new RunManifest(path);
+
+        try (InputStream in = new FileInputStream(path))
+        {
+            manifest.properties.load(in);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Gets the path of the manifest file
+     *
+     * @return the path
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Checks the run parameters against the recorded ones. Parameters that
+     * were not recorded yet are recorded.
+     *
+     * @param parameters the parameters of the run
+     * @return boolean - true if every recorded parameter has the same value
+     * @throws IOException if the manifest cannot be written
+     */
+    public synchronized boolean checkParameters(Map<String, String> parameters) throws IOException
+    {
+        boolean matches = true;
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet())
+        {
+            String key = "run." + parameter.getKey();
+            String recorded = properties.getProperty(key);
+
+            if (recorded == null)
+            {
+                properties.setProperty(key, parameter.getValue());
+            }
+            else if (!recorded.equals(parameter.getValue()))
+            {
+                System.out.println("Manifest " + path + " has " + parameter.getKey() + " " + recorded + ", this run has " + parameter.getValue());
+                matches = false;
+            }
+        }
+
+        if (matches)
+            save();
+
+        return matches;
+    }
+
+    /**
+     * Gets the fold files of the split
+     *
+     * @param numFolds the number of folds
+     * @return the path of each fold file, or null if the split was not recorded or a file is gone
+     */
+    public synchronized String[] getFoldPaths(int numFolds)
+    {
+        String paths[] = new String[numFolds];
+
+        for (int i = 0; i < numFolds; i++)
+        {
+            paths[i] = getStage(i, "path");
+
+            if (paths[i] == null || !new File(paths[i]).exists())
+                return null;
+        }
+
+        return paths;
+    }
+
+    /**
+     * Records the fold files of the split with their checksums
+     *
+     * @param paths the path of each fold file
+     * @param sizes the number of instances in each fold
+     * @throws IOException if a fold file cannot be read or the manifest cannot be written
+     */
+    public synchronized void setFoldPaths(String paths[], int sizes[]) throws IOException
+    {
+        for (int i = 0; i < paths.length; i++)
+        {
+            properties.setProperty(foldKey(i, "path"), paths[i]);
+            properties.setProperty(foldKey(i, "path.checksum"), Long.toString(checksum(paths[i])));
+            properties.setProperty(foldKey(i, "size"), Integer.toString(sizes[i]));
+        }
+
+        save();
+    }
+
+    /**
+     * Checks whether a fold file still has the checksum it was recorded with
+     *
+     * @param fold the fold number
+     * @return boolean - true if the file is unchanged, false if it changed, is gone or was recorded without a checksum
+     */
+    public synchronized boolean isFoldUnchanged(int fold)
+    {
+        return isUnchanged(fold, "path");
+    }
+
+    /**
+     * Gets the recorded number of instances in a fold
+     *
+     * @param fold the fold number
+     * @return the number of instances, -1 if not recorded
+     */
+    public synchronized int getFoldSize(int fold)
+    {
+        String size = getStage(fold, "size");
+
+        return size == null ? -1 : Integer.parseInt(size);
+    }
+
+    /**
+     * Gets the output of a finished stage of a fold
+     *
+     * @param fold  the fold number
+     * @param stage the stage key
+     * @return the recorded output, or null if the stage has not finished
+     */
+    public synchronized String getStage(int fold, String stage)
+    {
+        return properties.getProperty(foldKey(fold, stage));
+    }
+
+    /**
+     * Records the output of a finished stage of a fold
+     *
+     * @param fold   the fold number
+     * @param stage  the stage key
+     * @param output the output of the stage
+     * @throws IOException if the manifest cannot be written
+     */
+    public synchronized void setStage(int fold, String stage, String output) throws IOException
+    {
+        properties.setProperty(foldKey(fold, stage), output);
+        save();
+    }
+
+    /**
+     * Gets the file written by a finished stage of a fold
+     *
+     * @param fold  the fold number
+     * @param stage the stage key
+     * @return the path of the file, or null if the stage has not finished or the file changed since
+     */
+    public synchronized String getFileStage(int fold, String stage)
+    {
+        return isUnchanged(fold, stage) ? getStage(fold, stage) : null;
+    }
+
+    /**
+     * Records the file written by a finished stage of a fold with its checksum
+     *
+     * @param fold  the fold number
+     * @param stage the stage key
+     * @param file  the path of the file
+     * @throws IOException if the file cannot be read or the manifest cannot be written
+     */
+    public synchronized void setFileStage(int fold, String stage, String file) throws IOException
+    {
+        properties.setProperty(foldKey(fold, stage + ".checksum"), Long.toString(checksum(file)));
+        properties.setProperty(foldKey(fold, stage), file);
+        save();
+    }
+
+    /**
+     * Computes the CRC32 checksum of a file
+     *
+     * @param file the path of the file
+     * @return the checksum
+     * @throws IOException if the file cannot be read
+     */
+    public static long checksum(String file) throws IOException
+    {
+        byte buffer[] = new byte[1 << 16];
+
+        try (CheckedInputStream in = new CheckedInputStream(new FileInputStream(file), new CRC32()))
+        {
+            while (in.read(buffer) >= 0)
+                ;
+
+            return in.getChecksum().getValue();
+        }
+    }
+
+    /**
+     * Checks whether the file recorded for a stage still has its recorded checksum
+     *
+     * @param fold  the fold number
+     * @param stage the key the file is recorded under
+     * @return boolean - true if the file is unchanged
+     */
+    private boolean isUnchanged(int fold, String stage)
+    {
+        String file = getStage(fold, stage);
+        String recorded = getStage(fold, stage + ".checksum");
+
+        if (file == null || recorded == null || !new File(file).exists())
+            return false;
+
+        try
+        {
+            return Long.parseLong(recorded) == checksum(file);
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether every stage of a fold has finished
+     *
+     * @param fold the fold number
+     * @return boolean - true if the fold's results were saved
+     */
+    public boolean isComplete(int fold)
+    {
+        return getStage(fold, STAGE_RESULTS) != null;
+    }
+
+    /**
+     * Writes a reduct as attribute indices separated by commas
+     *
+     * @param reduct the reduct
+     * @return the encoded reduct
+     */
+    public static String encodeReduct(BitSet reduct)
+    {
+        StringBuilder encoded = new StringBuilder();
+
+        for (int i = reduct.nextSetBit(0); i >= 0; i = reduct.nextSetBit(i + 1))
+        {
+            if (encoded.length() > 0)
+                encoded.append(',');
+
+            encoded.append(i);
+        }
+
+        return encoded.toString();
+    }
+
+    /**
+     * Reads a reduct written by encodeReduct
+     *
+     * @param encoded the encoded reduct (may be null)
+     * @return the reduct, or null if none was given
+     */
+    public static BitSet decodeReduct(String encoded)
+    {
+        if (encoded == null)
+            return null;
+
+        BitSet reduct = new BitSet();
+
+        for (String index : encoded.split(","))
+        {
+            if (!index.isEmpty())
+                reduct.set(Integer.parseInt(index.trim()));
+        }
+
+        return reduct;
+    }
+
+    /**
+     * Writes the manifest to a temporary file and moves it over the manifest
+     *
+     * @throws IOException
+     */
+    private void save() throws IOException
+    {
+        File target = new File(path);
+        File temporary = new File(path + ".tmp");
+
+        try (OutputStream out = new FileOutputStream(temporary))
+        {
+            properties.store(out, "Run manifest");
+        }
+
+        try
+        {
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            // Not every file system can move atomically
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String foldKey(int fold, String stage)
+    {
+        return "fold." + fold + "." + stage;
+    }
+}
@@ -0,0 +1,445 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Runs the multi mode pipeline (multithreadCV) end to end over a matrix of
+ * dataset sizes, fold counts and thread counts, and reports how it scales.
+ * Datasets are generated by SyntheticDatasetGenerator and reused by every run
+ * of the same size. Each run records its wall time, the CPU time of the
+ * process, an upper bound of the peak heap and the time spent in every stage,
+ * summed over folds.
+ *
+ * Each run is timed under its own tag (n<size>_k<folds>_t<threads>) in the
+ * metrics registry, so a --metrics report covers the whole benchmark.
+ *
+ * Two tables are derived from the runs:
+ *
+ *     strong scaling - for each size and fold count, the speedup and
+ *                      efficiency of every thread count over the smallest one
+ *     weak scaling   - for each fold count, the efficiency when the dataset
+ *                      grows with the thread count (size = smallest size *
+ *                      threads / smallest thread count)
+ *
+ * The thread count caps the number of folds running at once (see
+ * PipelineOptions.THREADS). Runs share one JVM, so a warm-up run of the
+ * smallest configuration is made first and not recorded.
+ */
+public class ScalingBenchmark
+{
+    /**
+     * STAGES - the stages reported for every run
+     * NUMERIC_SHARE, FRAUD_RATIO, REDUNDANCY - the shape of the generated datasets
+     */
+    private static final String STAGES[] = {Metrics.LOAD, Metrics.SPLIT, Metrics.DISCRETIZE, Metrics.REDUCT, Metrics.APPLY_REDUCT,
+                                            Metrics.TRAIN, Metrics.EVALUATE, Metrics.SAVE};
+    private static final double NUMERIC_SHARE = 1.0;
+    private static final double FRAUD_RATIO = 0.05;
+    private static final double REDUNDANCY = 0.25;
+
+    /**
+     * The measurements of one run
+     */
+    public static class Run
+    {
+        /**
+         * instances - the size of the dataset
+         * folds - the number of folds
+         * threads - the number of folds run at once
+         * wallMs - the elapsed time of the run, loading included
+         * cpuMs - the CPU time the process used during the run, -1 if not available
+         * peakHeapMB - an upper bound of the peak heap usage during the run (see Metrics.peakHeapUsed)
+         * stageMs - the time spent in each of STAGES, summed over folds
+         */
+        public int instances;
+        public int folds;
+        public int threads;
+        public double wallMs;
+        public double cpuMs;
+        public double peakHeapMB;
+        public double stageMs[] = new double[STAGES.length];
+
+        /**
+         * Gets the stage with the most time
+         *
+         * @return the name of the stage
+         */
+        public String bottleneck()
+        {
+            int slowest = 0;
+
+            for (int i = 1; i < stageMs.length; i++)
+            {
+                if (stageMs[i] > stageMs[slowest])
+                    slowest = i;
+            }
+
+            return STAGES[slowest];
+        }
+    }
+
+    /**
+     * savePath - base path of the generated datasets and fold files
+     * resultsPath - base path of the results and reports
+     * numAttributes - the number of attributes of the generated datasets
+     * learningRate - the learning rate for backpropagation
+     * momentum - the momentum for backpropagation
+     * reductMode - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * options - the training pipeline options, the thread count is set for every run
+     * runs - the recorded runs
+     */
+    private String savePath;
+    private String resultsPath;
+    private int numAttributes;
+    private float learningRate;
+    private float momentum;
+    private int reductMode;
+    private PipelineOptions options;
+    private ArrayList<Run> runs = new ArrayList<Run>();
+
+    /**
+     * Constructor
+     *
+     * @param savePath      base path of the generated datasets and fold files
+     * @param resultsPath   base path of the results and reports
+     * @param numAttributes the number of attributes of the generated datasets
+     * @param learningRate  the learning rate for backpropagation
+     * @param momentum      the momentum for backpropagation
+     * @param reductMode    the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param options       the training pipeline options
+     */
+    public ScalingBenchmark(String savePath, String resultsPath, int numAttributes, float learningRate, float momentum, int reductMode, PipelineOptions options)
+    {
+        this.savePath = savePath;
+        this.resultsPath = resultsPath;
+        this.numAttributes = numAttributes;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.reductMode = reductMode;
+        this.options = options;
+    }
+
+    /**
+     * Runs every combination of size, fold count and thread count, then the
+     * runs the weak scaling table needs that are not in the matrix
+     *
+     * @param sizes   the dataset sizes, smallest first
+     * @param folds   the fold counts
+     * @param threads the thread counts, smallest first
+     * @throws Exception if a dataset cannot be generated
+     */
+    public void run(int sizes[], int folds[], int threads[]) throws Exception
+    {
+        System.out.println("Warm-up run, not recorded");
+        measure(sizes[0], folds[0], threads[0]);
+
+        int total = sizes.length * folds.length * threads.length;
+        int done = 0;
+
+        for (int size : sizes)
+        {
+            for (int numFolds : folds)
+            {
+                for (int numThreads : threads)
+                {
+                    System.out.println("[" + (++done) + "/" + total + "] " + size + " instances, " + numFolds + " folds, " + numThreads + " threads");
+                    record(measure(size, numFolds, numThreads));
+                }
+            }
+        }
+
+        for (int numFolds : folds)
+        {
+            for (int numThreads : threads)
+            {
+                int size = weakSize(sizes[0], numThreads, threads[0]);
+
+                if (find(size, numFolds, numThreads) == null)
+                {
+                    System.out.println("[weak] " + size + " instances, " + numFolds + " folds, " + numThreads + " threads");
+                    record(measure(size, numFolds, numThreads));
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps the measurements of a run that finished
+     *
+     * @param run the measurements, null if the run failed
+     */
+    private void record(Run run)
+    {
+        if (run == null)
+            System.out.println("Run failed, not recorded");
+        else
+            runs.add(run);
+    }
+
+    /**
+     * Gets the recorded runs
+     *
+     * @return the runs in the order they were made
+     */
+    public ArrayList<Run> getRuns()
+    {
+        return runs;
+    }
+
+    /**
+     * Runs multi mode once
+     *
+     * @param instances  the size of the dataset
+     * @param numFolds   the number of folds
+     * @param numThreads the number of folds run at once
+     * @return the measurements, or null if multi mode failed
+     * @throws Exception if the dataset cannot be generated
+     */
+    private Run measure(int instances, int numFolds, int numThreads) throws Exception
+    {
+        String datasetPath = datasetPath(instances);
+        String name = "_n" + instances + "_k" + numFolds + "_t" + numThreads;
+        Run run = new Run();
+        run.instances = instances;
+        run.folds = numFolds;
+        run.threads = numThreads;
+        options.setThreads(numThreads);
+        options.setResume(false);
+
+        // The registry keeps every run, a run's stage times are the difference
+        long stageStart[] = new long[STAGES.length];
+
+        for (int i = 0; i < STAGES.length; i++)
+            stageStart[i] = Metrics.totalNanos(STAGES[i]);
+
+        // Start from a collected heap, so earlier runs do not count towards the peak
+        System.gc();
+        Metrics.resetPeakHeapUsed();
+        Metrics.setTag(name.substring(1));
+        long cpuStart = processCpuNanos();
+        Metrics.Timer wall = Metrics.start(Metrics.RUN);
+
+        boolean finished;
+
+        try
+        {
+            Dataset dataset = new Dataset(datasetPath);
+
+            if (!dataset.hasData())
+                throw new IOException("Could not load " + datasetPath);
+
+            finished = TransactionClassifier.multithreadCV(resultsPath + name, dataset, numFolds, savePath + name, learningRate, momentum, reductMode,
+                                                FoldAdmission.defaultBudget(), options);
+        }
+        finally
+        {
+            run.wallMs = wall.stop();
+            Metrics.clearTag();
+        }
+
+        if (!finished)
+            return null;
+
+        long cpuEnd = processCpuNanos();
+        run.cpuMs = cpuStart < 0 || cpuEnd < 0 ? -1 : (cpuEnd - cpuStart) / 1e6;
+        run.peakHeapMB = Metrics.peakHeapUsed() / (1024.0 * 1024.0);
+
+        for (int i = 0; i < STAGES.length; i++)
+            run.stageMs[i] = (Metrics.totalNanos(STAGES[i]) - stageStart[i]) / 1e6;
+
+        return run;
+    }
+
+    /**
+     * Gets the generated dataset of a size, generating it and its binary cache
+     * on first use
+     *
+     * @param instances the size of the dataset
+     * @return the path of the dataset
+     * @throws Exception if the dataset cannot be generated
+     */
+    private String datasetPath(int instances) throws Exception
+    {
+        String path = savePath + "_n" + instances + ".arff";
+
+        if (new File(path).exists() && BinaryDatasetCache.isValid(path))
+            return path;
+
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(instances, numAttributes, numThreads);
+        generator.setNumericShare(NUMERIC_SHARE);
+        generator.setFraudRatio(FRAUD_RATIO);
+        generator.setRedundancy(REDUNDANCY);
+        generator.setSeed(options.getSeed());
+
+        System.out.println("Generating " + instances + " instances to " + path + "...");
+        generator.write(path);
+        // Every run then loads the dataset the same way, from its cache
+        BinaryDatasetCache.writeStreaming(path, SyntheticDatasetGenerator.DEFAULT_CHUNK_SIZE, numThreads);
+
+        return path;
+    }
+
+    /**
+     * Writes one row per run to path as CSV
+     *
+     * @param path the file to write
+     * @throws IOException
+     */
+    public void saveRuns(String path) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path)))
+        {
+            out.print("instances,folds,threads,wall_ms,cpu_ms,cpu_per_wall,peak_heap_mb");
+
+            for (String stage : STAGES)
+                out.print("," + stage + "_ms");
+
+            out.println(",bottleneck");
+
+            for (Run run : runs)
+            {
+                out.printf(Locale.ROOT, "%d,%d,%d,%.1f,%.1f,%.2f,%.1f", run.instances, run.folds, run.threads, run.wallMs, run.cpuMs,
+                           cpuPerWall(run), run.peakHeapMB);
+
+                for (double stageMs : run.stageMs)
+                    out.printf(Locale.ROOT, ",%.1f", stageMs);
+
+                out.println("," + run.bottleneck());
+            }
+        }
+    }
+
+    /**
+     * Builds the strong scaling table: for each size and fold count, the
+     * speedup and efficiency of each thread count over the smallest one
+     *
+     * @param sizes   the dataset sizes
+     * @param folds   the fold counts
+     * @param threads the thread counts, smallest first
+     * @return the table as text
+     */
+    public String strongScaling(int sizes[], int folds[], int threads[])
+    {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%12s %6s %8s %12s %10s %10s %10s %10s  %s%n", "instances", "folds", "threads", "wall_ms", "speedup",
+                                   "efficiency", "cpu/wall", "heap_mb", "bottleneck"));
+
+        for (int size : sizes)
+        {
+            for (int numFolds : folds)
+            {
+                Run base = find(size, numFolds, threads[0]);
+
+                for (int numThreads : threads)
+                    appendRow(table, find(size, numFolds, numThreads), base, (double) numThreads / threads[0]);
+            }
+        }
+
+        return table.toString();
+    }
+
+    /**
+     * Builds the weak scaling table: for each fold count, the efficiency of
+     * each thread count when the dataset grows with it
+     *
+     * @param sizes   the dataset sizes, the first is the size of the smallest thread count
+     * @param folds   the fold counts
+     * @param threads the thread counts, smallest first
+     * @return the table as text
+     */
+    public String weakScaling(int sizes[], int folds[], int threads[])
+    {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%12s %6s %8s %12s %10s %10s %10s %10s  %s%n", "instances", "folds", "threads", "wall_ms", "speedup",
+                                   "efficiency", "cpu/wall", "heap_mb", "bottleneck"));
+
+        for (int numFolds : folds)
+        {
+            Run base = find(sizes[0], numFolds, threads[0]);
+
+            // With perfect weak scaling the wall time stays the same, so the expected speedup is 1
+            for (int numThreads : threads)
+                appendRow(table, find(weakSize(sizes[0], numThreads, threads[0]), numFolds, numThreads), base, 1.0);
+        }
+
+        return table.toString();
+    }
+
+    /**
+     * Appends a run to a scaling table
+     *
+     * @param table   the table
+     * @param run     the run (may be null if it failed)
+     * @param base    the run the speedup is relative to (may be null)
+     * @param perfect the speedup of perfect scaling
+     */
+    private static void appendRow(StringBuilder table, Run run, Run base, double perfect)
+    {
+        if (run == null)
+            return;
+
+        double speedup = base == null ? 0 : base.wallMs / run.wallMs;
+        table.append(String.format(Locale.ROOT, "%12d %6d %8d %12.1f %10.2f %10.2f %10.2f %10.1f  %s%n", run.instances, run.folds, run.threads,
+                                   run.wallMs, speedup, speedup / perfect, cpuPerWall(run), run.peakHeapMB, run.bottleneck()));
+    }
+
+    /**
+     * Gets the recorded run of a configuration
+     *
+     * @param instances the size of the dataset
+     * @param folds     the number of folds
+     * @param threads   the number of folds run at once
+     * @return the run, or null if it was not made or failed
+     */
+    public Run find(int instances, int folds, int threads)
+    {
+        for (Run run : runs)
+        {
+            if (run.instances == instances && run.folds == folds && run.threads == threads)
+                return run;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the dataset size of a thread count in the weak scaling table
+     *
+     * @param baseSize    the size of the smallest thread count
+     * @param threads     the thread count
+     * @param baseThreads the smallest thread count
+     * @return baseSize grown in proportion to threads
+     */
+    public static int weakSize(int baseSize, int threads, int baseThreads)
+    {
+        return (int) ((long) baseSize * threads / baseThreads);
+    }
+
+    private static double cpuPerWall(Run run)
+    {
+        return run.cpuMs < 0 || run.wallMs <= 0 ? 0 : run.cpuMs / run.wallMs;
+    }
+
+    /**
+     * Gets the CPU time used by the process so far
+     *
+     * @return the CPU time in nanoseconds, -1 if the JVM does not report it
+     */
+    private static long processCpuNanos()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+
+        return -1;
+    }
+}
@@ -0,0 +1,130 @@
+package com.jordanml.TransactionClassifier;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * Evaluates a built model on a test set split into contiguous shards, one
+ * thread per shard. Weka's classifiers keep state while classifying, so every
+ * shard after the first classifies with its own copy of the model. Each shard
+ * fills its part of the prediction buffer.
+ *
+ * The Evaluation returned is built by recording the buffered predictions in
+ * instance order, which gives exactly the statistics evaluateModel would, while
+ * the classification itself (the expensive part) runs in parallel.
+ */
+public class ShardedEvaluator
+{
+    /**
+     * MIN_SHARD_SIZE - the smallest shard worth a thread and a copy of the model
+     */
+    private static final int MIN_SHARD_SIZE = 2000;
+
+    /**
+     * model - the built model
+     * numThreads - the largest number of shards
+     */
+    private Classifier model;
+    private int numThreads;
+
+    /**
+     * Constructor
+     *
+     * @param model      the built model
+     * @param numThreads the largest number of shards
+     */
+    public ShardedEvaluator(Classifier model, int numThreads)
+    {
+        this.model = model;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Classifies every instance of the test set and evaluates the predictions
+     *
+     * @param testSet the test data, with the class index set
+     * @return the evaluation
+     * @throws Exception if an instance cannot be classified
+     */
+    public Evaluation evaluate(final Instances testSet) throws Exception
+    {
+        int numInstances = testSet.numInstances();
+        int numShards = Math.max(1, Math.min(numThreads, numInstances / MIN_SHARD_SIZE));
+        final double distributions[][] = new double[numInstances][];
+
+        ArrayList<Callable<Void>> shards = new ArrayList<Callable<Void>>();
+        int shardSize = (numInstances + numShards - 1) / numShards;
+
+        for (int s = 0; s < numShards; s++)
+        {
+            final int first = s * shardSize;
+            final int last = Math.min(numInstances, first + shardSize);
+            final Classifier shardModel = s == 0 ? model : AbstractClassifier.makeCopy(model);
+
+            shards.add(new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    for (int i = first; i < last; i++)
+                        distributions[i] = shardModel.distributionForInstance(testSet.instance(i));
+
+                    return null;
+                }
+            });
+        }
+
+        run(shards);
+
+        Evaluation eval = new Evaluation(testSet);
+
+        for (int i = 0; i < numInstances; i++)
+            eval.evaluateModelOnceAndRecordPrediction(distributions[i], testSet.instance(i));
+
+        return eval;
+    }
+
+    /**
+     * Runs the shards, on the calling thread if there is only one
+     *
+     * @param shards the shard tasks
+     * @throws Exception the first exception thrown by a shard
+     */
+    private static void run(ArrayList<Callable<Void>> shards) throws Exception
+    {
+        if (shards.size() == 1)
+        {
+            shards.get(0).call();
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(shards.size());
+
+        try
+        {
+            for (Future<Void> shard : pool.invokeAll(shards))
+            {
+                try
+                {
+                    shard.get();
+                }
+                catch (ExecutionException e)
+                {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Generates transaction-like ARFF datasets of any size for scale testing. The
+ * attributes are laid out as
+ *
+ *     V1..Vb       - base attributes, numeric first and nominal after them.
+ *                    Every other base attribute depends on the class, the
+ *                    rest are noise
+ *     Vb+1..Vn     - redundant attributes, each a one-to-one function of an
+ *                    informative base attribute (a linear map for numeric
+ *                    attributes, a relabeling for nominal ones), so several
+ *                    reducts exist
+ *     Class        - {n, f}
+ *
+ * Rows are generated in chunks by a thread pool and written in chunk order as
+ * they finish, with a bounded number of chunks in memory. Every chunk has its
+ * own random generator seeded from the seed and the chunk number, so the output
+ * only depends on the seed, never on the number of threads.
+ */
+public class SyntheticDatasetGenerator
+{
+    /**
+     * NOMINAL_VALUES - the number of values of a nominal attribute
+     * SHIFT - the mean of informative numeric attributes for fraud instances (1 standard deviation)
+     * FRAUD_VALUE_BIAS - the chance that an informative nominal attribute of a fraud instance takes its first value
+     * DUPLICATE_WINDOW - the number of earlier rows of a chunk a duplicate is drawn from
+     * WRITE_BUFFER_SIZE - the buffer size of the output file
+     * DEFAULT_CHUNK_SIZE - the rows per chunk when none is given
+     */
+    private static final int NOMINAL_VALUES = 4;
+    private static final double SHIFT = 1.0;
+    private static final double FRAUD_VALUE_BIAS = 0.5;
+    private static final int DUPLICATE_WINDOW = 1024;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    public static final int DEFAULT_CHUNK_SIZE = 100000;
+
+    /**
+     * numInstances - the number of rows to generate
+     * numAttributes - the number of attributes, not counting the class
+     * numericShare - the share of base attributes that are numeric (0.0 - 1.0)
+     * fraudRatio - the share of fraud rows (0.0 - 1.0)
+     * duplicateRate - the share of rows that repeat an earlier row (0.0 - 1.0)
+     * redundancy - the share of attributes that are functions of other attributes (0.0 - 1.0)
+     * seed - the seed of the generated data
+     * chunkSize - the number of rows generated by one task
+     * numThreads - the number of chunks generated at the same time
+     */
+    private long numInstances;
+    private int numAttributes;
+    private double numericShare = 1.0;
+    private double fraudRatio = 0.01;
+    private double duplicateRate;
+    private double redundancy;
+    private long seed = PipelineOptions.DEFAULT_SEED;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int numThreads;
+
+    /**
+     * numBase - the number of base attributes
+     * numNumeric - the number of numeric base attributes
+     * source - for each attribute, the base attribute it is derived from (itself for base attributes)
+     * relabel - for each redundant nominal attribute, the value each value of its source maps to
+     */
+    private int numBase;
+    private int numNumeric;
+    private int source[];
+    private int relabel[][];
+
+    /**
+     * Constructor
+     *
+     * @param numInstances  the number of rows to generate
+     * @param numAttributes the number of attributes, not counting the class
+     * @param numThreads    the number of chunks generated at the same time
+     */
+    public SyntheticDatasetGenerator(long numInstances, int numAttributes, int numThreads)
+    {
+        this.numInstances = numInstances;
+        this.numAttributes = Math.max(1, numAttributes);
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Sets the share of base attributes that are numeric, the others are nominal
+     *
+     * @param numericShare the share (0.0 - 1.0)
+     */
+    public void setNumericShare(double numericShare)
+    {
+        this.numericShare = clamp(numericShare);
+        source = null;
+    }
+
+    /**
+     * Sets the share of fraud rows
+     *
+     * @param fraudRatio the share (0.0 - 1.0)
+     */
+    public void setFraudRatio(double fraudRatio)
+    {
+        this.fraudRatio = clamp(fraudRatio);
+    }
+
+    /**
+     * Sets the share of rows that repeat an earlier row of their chunk
+     *
+     * @param duplicateRate the share (0.0 - 1.0)
+     */
+    public void setDuplicateRate(double duplicateRate)
+    {
+        this.duplicateRate = clamp(duplicateRate);
+    }
+
+    /**
+     * Sets the share of attributes that are one-to-one functions of an
+     * informative base attribute. At least one base attribute is always kept.
+     *
+     * @param redundancy the share (0.0 - 1.0)
+     */
+    public void setRedundancy(double redundancy)
+    {
+        this.redundancy = clamp(redundancy);
+        source = null;
+    }
+
+    /**
+     * Sets the seed of the generated data
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+        source = null;
+    }
+
+    /**
+     * Sets the number of rows generated by one task
+     *
+     * @param chunkSize the chunk size
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Gets the attribute information of the generated data
+     *
+     * @return the empty Instances holding the attributes, with the class index set
+     */
+    public Instances getHeader()
+    {
+        layout();
+
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        ArrayList<String> nominalValues = new ArrayList<String>();
+        ArrayList<String> classValues = new ArrayList<String>();
+
+        for (int v = 0; v < NOMINAL_VALUES; v++)
+            nominalValues.add("a" + v);
+
+        classValues.add("n");
+        classValues.add("f");
+
+        for (int i = 0; i < numAttributes; i++)
+        {
+            if (isNumeric(i))
+                attributes.add(new Attribute("V" + (i + 1)));
+            else
+                attributes.add(new Attribute("V" + (i + 1), new ArrayList<String>(nominalValues)));
+        }
+
+        attributes.add(new Attribute("Class", classValues));
+
+        Instances header = new Instances("synthetic_" + numInstances + "_" + numAttributes, attributes, 0);
+        header.setClassIndex(numAttributes);
+
+        return header;
+    }
+
+    /**
+     * Writes the dataset to an ARFF file
+     *
+     * @param path the path of the ARFF file
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException
+     */
+    public void write(String path) throws IOException, InterruptedException
+    {
+        Instances header = getHeader();
+        long numChunks = (numInstances + chunkSize - 1) / chunkSize;
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        // Chunks in generation order, at most two per thread are held in memory
+        ArrayDeque<Future<String>> inFlight = new ArrayDeque<Future<String>>();
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE))
+        {
+            // An empty Instances prints the header and the @data line
+            out.write(header.toString());
+
+            for (long chunk = 0; chunk < numChunks; chunk++)
+            {
+                final long index = chunk;
+                final int rows = (int) Math.min(chunkSize, numInstances - chunk * chunkSize);
+
+                inFlight.add(pool.submit(new Callable<String>()
+                {
+                    public String call()
+                    {
+                        return generateChunk(index, rows);
+                    }
+                }));
+
+                if (inFlight.size() >= numThreads * 2)
+                    out.write(await(inFlight.poll()));
+            }
+
+            while (!inFlight.isEmpty())
+                out.write(await(inFlight.poll()));
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates the rows of one chunk as ARFF data lines
+     *
+     * @param chunk the chunk number
+     * @param rows  the number of rows in the chunk
+     * @return the lines
+     */
+    String generateChunk(long chunk, int rows)
+    {
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + chunk);
+        StringBuilder text = new StringBuilder(rows * numAttributes * 8);
+        String window[] = new String[Math.min(rows, DUPLICATE_WINDOW)];
+        int windowed = 0;
+        double values[] = new double[numAttributes];
+
+        for (int r = 0; r < rows; r++)
+        {
+            String line;
+
+            if (windowed > 0 && random.nextDouble() < duplicateRate)
+            {
+                line = window[random.nextInt(Math.min(windowed, window.length))];
+            }
+            else
+            {
+                line = generateRow(random, values);
+                window[windowed++ % window.length] = line;
+            }
+
+            text.append(line).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Generates one row
+     *
+     * @param random the random generator of the chunk
+     * @param values space for the attribute values
+     * @return the ARFF data line
+     */
+    private String generateRow(Random random, double values[])
+    {
+        boolean fraud = random.nextDouble() < fraudRatio;
+        StringBuilder line = new StringBuilder(numAttributes * 8);
+
+        for (int i = 0; i < numAttributes; i++)
+        {
+            if (source[i] != i)
+            {
+                // Redundant attributes follow their source, which always comes first
+                values[i] = isNumeric(i) ? 2 * values[source[i]] + 1 : relabel[i][(int) values[source[i]]];
+            }
+            else if (isNumeric(i))
+            {
+                values[i] = random.nextGaussian() + (fraud && isInformative(i) ? SHIFT : 0);
+            }
+            else if (fraud && isInformative(i) && random.nextDouble() < FRAUD_VALUE_BIAS)
+            {
+                values[i] = 0;
+            }
+            else
+            {
+                values[i] = random.nextInt(NOMINAL_VALUES);
+            }
+
+            if (isNumeric(i))
+                appendDecimal(line, values[i]);
+            else
+                line.append('a').append((int) values[i]);
+
+            line.append(',');
+        }
+
+        return line.append(fraud ? 'f' : 'n').toString();
+    }
+
+    /**
+     * Computes which attributes are numeric and what the redundant attributes
+     * are derived from
+     */
+    private void layout()
+    {
+        if (source != null)
+            return;
+
+        numBase = Math.max(1, numAttributes - (int) Math.round(numAttributes * redundancy));
+        numNumeric = (int) Math.round(numBase * numericShare);
+        source = new int[numAttributes];
+        relabel = new int[numAttributes][];
+        Random random = new Random(seed);
+        int numInformative = (numBase + 1) / 2;
+
+        for (int i = 0; i < numAttributes; i++)
+        {
+            // Informative base attributes are the even ones, see isInformative
+            source[i] = i < numBase ? i : 2 * ((i - numBase) % numInformative);
+
+            if (source[i] != i && !isNumeric(i))
+            {
+                relabel[i] = new int[NOMINAL_VALUES];
+
+                for (int v = 0; v < NOMINAL_VALUES; v++)
+                    relabel[i][v] = v;
+
+                // A random permutation of the values
+                for (int v = NOMINAL_VALUES - 1; v > 0; v--)
+                {
+                    int other = random.nextInt(v + 1);
+                    int swap = relabel[i][v];
+                    relabel[i][v] = relabel[i][other];
+                    relabel[i][other] = swap;
+                }
+            }
+        }
+    }
+
+    private boolean isNumeric(int attribute)
+    {
+        return source[attribute] < numNumeric;
+    }
+
+    private boolean isInformative(int attribute)
+    {
+        return attribute % 2 == 0;
+    }
+
+    /**
+     * Appends a number with four decimals, faster than formatting a double
+     *
+     * @param line  the line to append to
+     * @param value the number
+     */
+    private static void appendDecimal(StringBuilder line, double value)
+    {
+        long scaled = Math.round(value * 10000);
+
+        if (scaled < 0)
+        {
+            line.append('-');
+            scaled = -scaled;
+        }
+
+        long fraction = scaled % 10000;
+        line.append(scaled / 10000).append('.');
+
+        for (long digit = 1000; digit > fraction && digit > 1; digit /= 10)
+            line.append('0');
+
+        line.append(fraction);
+    }
+
+    private static double clamp(double share)
+    {
+        return Math.max(0.0, Math.min(1.0, share));
+    }
+
+    /**
+     * Waits for a chunk
+     *
+     * @param chunk the chunk task
+     * @return the lines of the chunk
+     * @throws IOException if the chunk failed
+     * @throws InterruptedException
+     */
+    private static String await(Future<String> chunk) throws IOException, InterruptedException
+    {
+        try
+        {
+            return chunk.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("Could not generate a chunk: " + e.getCause(), e.getCause());
+        }
+    }
+}
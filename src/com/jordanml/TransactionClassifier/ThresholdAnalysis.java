@@ -0,0 +1,277 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Evaluates every decision threshold of a set of stored predictions in one
+ * pass. The predictions are sorted by the probability of the positive class
+ * and swept from the highest probability down; each distinct probability is a
+ * point, where the instances with that probability or a higher one are
+ * predicted positive. Point 0 lies above every probability, where nothing is
+ * predicted positive.
+ *
+ * A threshold predicts positive the instances with a probability above it, so
+ * a threshold of 0.5 gives the predictions of Weka's Evaluation, which breaks
+ * a tie between two classes in favour of the first (negative) class.
+ *
+ * From the points follow the confusion counts at any threshold, the ROC and
+ * precision-recall curves and the threshold with the lowest misclassification
+ * cost.
+ */
+public class ThresholdAnalysis
+{
+    /**
+     * thresholds - the lowest probability predicted positive at each point, descending
+     * truePositives - the weight of positive instances predicted positive at each point
+     * falsePositives - the weight of negative instances predicted positive at each point
+     * positives - the weight of all positive instances
+     * negatives - the weight of all negative instances
+     */
+    private double thresholds[];
+    private double truePositives[];
+    private double falsePositives[];
+    private double positives;
+    private double negatives;
+
+    /**
+     * Constructor, sorts and sweeps the predictions
+     *
+     * @param store the predictions
+     */
+    public ThresholdAnalysis(final PredictionStore store)
+    {
+        int n = store.numInstances();
+        Integer order[] = new Integer[n];
+
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(store.score(a), store.score(b));
+            }
+        });
+
+        thresholds = new double[n + 1];
+        truePositives = new double[n + 1];
+        falsePositives = new double[n + 1];
+        thresholds[0] = Double.POSITIVE_INFINITY;
+        int points = 1;
+
+        for (int k = n - 1; k >= 0; k--)
+        {
+            int i = order[k];
+            double score = store.score(i);
+
+            // A new point starts at each distinct probability
+            if (score != thresholds[points - 1])
+            {
+                thresholds[points] = score;
+                truePositives[points] = truePositives[points - 1];
+                falsePositives[points] = falsePositives[points - 1];
+                points++;
+            }
+
+            if (store.isPositive(i))
+            {
+                truePositives[points - 1] += store.weight(i);
+                positives += store.weight(i);
+            }
+            else
+            {
+                falsePositives[points - 1] += store.weight(i);
+                negatives += store.weight(i);
+            }
+        }
+
+        thresholds = Arrays.copyOf(thresholds, points);
+        truePositives = Arrays.copyOf(truePositives, points);
+        falsePositives = Arrays.copyOf(falsePositives, points);
+    }
+
+    /**
+     * Gets the number of points
+     *
+     * @return the number of distinct probabilities plus one
+     */
+    public int numPoints()
+    {
+        return thresholds.length;
+    }
+
+    /**
+     * Gets the point of a threshold
+     *
+     * @param threshold the probability above which instances are predicted positive
+     * @return the point predicting positive exactly the instances with a probability above the threshold
+     */
+    public int point(double threshold)
+    {
+        int low = 0;
+        int high = thresholds.length - 1;
+
+        // thresholds[0] is infinite, so the answer is at least 0
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+
+            if (thresholds[mid] > threshold)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the lowest probability predicted positive at a point
+     *
+     * @param point the point
+     * @return the probability, infinite for point 0
+     */
+    public double threshold(int point)
+    {
+        return thresholds[point];
+    }
+
+    /**
+     * Gets the confusion matrix at a point
+     *
+     * @param point the point
+     * @return the matrix indexed by actual and then predicted class, negative class first
+     */
+    public double[][] confusionMatrix(int point)
+    {
+        double tp = truePositives[point];
+        double fp = falsePositives[point];
+
+        return new double[][] {{negatives - fp, fp}, {positives - tp, tp}};
+    }
+
+    /**
+     * Gets the misclassification cost at a point
+     *
+     * @param point  the point
+     * @param costFP the cost of a false positive
+     * @param costFN the cost of a false negative
+     * @return the cost
+     */
+    public double cost(int point, double costFP, double costFN)
+    {
+        return costFP * falsePositives[point] + costFN * (positives - truePositives[point]);
+    }
+
+    /**
+     * Finds the point with the lowest misclassification cost
+     *
+     * @param costFP the cost of a false positive
+     * @param costFN the cost of a false negative
+     * @return the point, the one with the highest threshold if several tie
+     */
+    public int costOptimal(double costFP, double costFN)
+    {
+        int best = 0;
+
+        for (int k = 1; k < thresholds.length; k++)
+        {
+            if (cost(k, costFP, costFN) < cost(best, costFP, costFN))
+                best = k;
+        }
+
+        return best;
+    }
+
+    /**
+     * Gets the area under the ROC curve (trapezoidal)
+     *
+     * @return the area, 0 if either class has no instances
+     */
+    public double areaUnderROC()
+    {
+        if (positives == 0 || negatives == 0)
+            return 0;
+
+        double area = 0;
+
+        for (int k = 1; k < thresholds.length; k++)
+            area += (falsePositives[k] - falsePositives[k - 1]) * (truePositives[k] + truePositives[k - 1]) / 2;
+
+        return area / (positives * negatives);
+    }
+
+    /**
+     * Gets the area under the precision-recall curve as average precision: the
+     * precision at each point weighted by the recall it adds
+     *
+     * @return the area, 0 if there are no positive instances
+     */
+    public double areaUnderPR()
+    {
+        if (positives == 0)
+            return 0;
+
+        double area = 0;
+
+        for (int k = 1; k < thresholds.length; k++)
+            area += (truePositives[k] - truePositives[k - 1]) * precision(k);
+
+        return area / positives;
+    }
+
+    /**
+     * Writes the ROC curve as CSV (threshold, false positive rate, true positive rate)
+     *
+     * @param path the file to write
+     * @throws IOException
+     */
+    public void writeROC(String path) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path)))
+        {
+            out.println("threshold,fpr,tpr");
+
+            for (int k = 0; k < thresholds.length; k++)
+                out.printf(Locale.ROOT, "%s,%.6f,%.6f%n", formatThreshold(k), rate(falsePositives[k], negatives), rate(truePositives[k], positives));
+        }
+    }
+
+    /**
+     * Writes the precision-recall curve as CSV (threshold, recall, precision)
+     *
+     * @param path the file to write
+     * @throws IOException
+     */
+    public void writePR(String path) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(path)))
+        {
+            out.println("threshold,recall,precision");
+
+            for (int k = 1; k < thresholds.length; k++)
+                out.printf(Locale.ROOT, "%s,%.6f,%.6f%n", formatThreshold(k), rate(truePositives[k], positives), precision(k));
+        }
+    }
+
+    private double precision(int point)
+    {
+        return rate(truePositives[point], truePositives[point] + falsePositives[point]);
+    }
+
+    private String formatThreshold(int point)
+    {
+        return point == 0 ? "inf" : String.format(Locale.ROOT, "%.6f", thresholds[point]);
+    }
+
+    private static double rate(double count, double total)
+    {
+        return total == 0 ? 0 : count / total;
+    }
+}
@@ -2,30 +2,21 @@ package com.jordanml.TransactionClassifier;
 
 import java.io.File;
 import java.io.FileWriter;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Collection;
-import java.util.Properties;
-
-// RSESLIB
-import rseslib.processing.reducts.AllGlobalReductsProvider;
-import rseslib.structure.table.ArrayListDoubleDataTable;
-import rseslib.structure.table.DoubleDataTable;
-// For reporting progress to console
-import rseslib.system.Report;
-import rseslib.system.output.StandardErrorOutput;
-import rseslib.system.output.StandardOutput;
-import rseslib.system.progress.StdOutProgress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 
 // WEKA
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.functions.MultilayerPerceptron;
 import weka.core.Instances;
-import weka.core.converters.ConverterUtils.DataSink;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
+import weka.core.SerializationHelper;
 
 public class TransactionClassifier
 {
@@ -34,19 +25,53 @@ public class TransactionClassifier
     
     public static void main(String[] args)
     {
-        long start = System.nanoTime(); // Time that execution started
-        checkArgs(args);
-        long end = System.nanoTime(); // Time that execution ended
-        System.out.println("Terminating: " + (end - start)/1000000);
+        Metrics.Timer run = Metrics.start(Metrics.RUN);
+        PipelineOptions options = checkArgs(args);
+        System.out.println("Terminating: " + run.stop());
+        
+        if(options != null && options.getMetricsPath() != null)
+            saveMetrics(options.getMetricsPath());
+    }
+    
+    /**
+     * Saves the stage timings and counters of the run to path.json and path.csv
+     * 
+     * @param path base path of the metrics report
+     */
+    public static void saveMetrics(String path)
+    {
+        try
+        {
+            Metrics.writeJson(path + ".json");
+            Metrics.writeCsv(path + ".csv");
+            System.out.println("Saved metrics to " + path + ".json and " + path + ".csv");
+        }
+        catch(IOException e)
+        {
+            System.out.println("Could not save metrics: " + e.getMessage());
+        }
     }
     
     /**
      * Checks the provided command-line arguments and proceeds appropriately
      * 
      * @param args The provided command-line arguments
+     * @return the pipeline options given with the arguments, or null if they were invalid
      */
-    public static void checkArgs(String[] args)
+    public static PipelineOptions checkArgs(String[] args)
     {
+        // Separate the optional pipeline flags from the positional arguments
+        PipelineOptions options = PipelineOptions.parse(args);
+        
+        if(options == null)
+        {
+            printProperUsage();
+            return null;
+        }
+        
+        args = options.getArguments();
+        Dataset.setBinaryCache(options.binaryCache());
+        
         if(args.length < 1)
         {
             System.out.println("No arguments provided");
@@ -59,13 +84,37 @@ public class TransactionClassifier
             {
                 case "split":
                     // Check for proper arguments (a single file and number of folds)
-                    trySplit(args);
+                    trySplit(args, options);
                     break;
                 case "test-once":
-                    testOnce(args);
+                    testOnce(args, options);
                     break;
                 case "multi":
-                    tryMultithread(args);
+                    tryMultithread(args, options);
+                    break;
+                case "cascade":
+                    tryCascade(args, options);
+                    break;
+                case "multi-process":
+                    tryMultiProcess(args, options);
+                    break;
+                case "worker":
+                    tryWorker(args, options);
+                    break;
+                case "repeated":
+                    tryRepeated(args, options);
+                    break;
+                case "nested":
+                    tryNested(args, options);
+                    break;
+                case "generate":
+                    tryGenerate(args, options);
+                    break;
+                case "bench":
+                    tryBench(args, options);
+                    break;
+                case "reevaluate":
+                    tryReevaluate(args);
                     break;
                 case "help":
                     printProperUsage();
@@ -76,18 +125,22 @@ public class TransactionClassifier
                     break;
             }
         }
+        
+        return options;
     }
     
     /**
      * Splits a dataset into the specified number of folds and saves each fold as a separate .arff file.
+     * With a chunk size in the options the file is never loaded: it is streamed in chunks that are
+     * split in parallel (see PartitionedSplitter).
      * 
      * @param args The command-line arguments
+     * @param options the pipeline flags given on the command line
      */
-    public static void trySplit(String[] args)
+    public static void trySplit(String[] args, PipelineOptions options)
     {
         String filepath, savePath;
         int numFolds;
-        Dataset dataset;
         
         // Check for proper number of arguments
         if(args.length < 4)
@@ -112,10 +165,19 @@ public class TransactionClassifier
                 return;
             }
             
-            // Load the data
-            dataset = new Dataset(filepath);
+            if(options.getChunkSize() > 0)
+            {
+                streamSplit(filepath, numFolds, savePath, options);
+                return;
+            }
+            
+            // Load the data off-heap, the fold files are written straight from its rows. The mapped
+            // cache is only kept next to the dataset with --binary-cache, otherwise it is a temporary
+            // file beside the fold files
+            String cacheDirectory = options.binaryCache() ? null : new File(savePath).getAbsoluteFile().getParent();
+            OffHeapDataset source = OffHeapDataset.load(filepath, cacheDirectory);
             
-            if(!dataset.hasData())
+            if(source == null)
             {
                 System.out.println("No dataset loaded");
                 return;
@@ -123,18 +185,308 @@ public class TransactionClassifier
             else
             {
                 // Split the data
-                DatasetSplitter splitter = null;
-                
-                splitData(splitter, dataset, numFolds, savePath, true);
+                splitData(new DatasetSplitter(source), numFolds, savePath, true);
+            }
+        }
+    }
+    
+    /**
+     * Splits a file into folds without loading it, writing the fold and combined files as the
+     * chunks are assigned.
+     * 
+     * @param filepath path to the .arff or .csv file to split
+     * @param numFolds the number of folds
+     * @param savePath base path to save the fold files to
+     * @param options  the pipeline options (chunk size and seed)
+     * @return the paths of the fold files, or null on failure
+     */
+    public static String[] streamSplit(String filepath, int numFolds, String savePath, PipelineOptions options)
+    {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        ChunkedDatasetReader reader = new ChunkedDatasetReader(filepath, options.getChunkSize(), numThreads);
+        PartitionedSplitter splitter = new PartitionedSplitter(numFolds, options.getSeed());
+        
+        System.out.println("Splitting " + filepath + " in chunks of " + options.getChunkSize() + " instances...");
+        
+        try
+        {
+            String paths[] = splitter.split(reader, savePath, true);
+            System.out.println("Done.");
+            return paths;
+        }
+        catch(Exception e)
+        {
+            System.err.println("Could not split " + filepath + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Checks the provided arguments and writes a synthetic dataset (see SyntheticDatasetGenerator)
+     * 
+     * @param args The command-line arguments
+     * @param options the pipeline flags given on the command line (seed, chunk size and binary cache)
+     */
+    public static void tryGenerate(String[] args, PipelineOptions options)
+    {
+        if(args.length < 8)
+        {
+            System.out.println("Not enough arguments for mode 'generate'");
+            return;
+        }
+        
+        String savePath = args[1];
+        SyntheticDatasetGenerator generator;
+        
+        try
+        {
+            generator = new SyntheticDatasetGenerator(Long.parseLong(args[2]), Integer.parseInt(args[3]), Runtime.getRuntime().availableProcessors());
+            generator.setNumericShare(Double.parseDouble(args[4]));
+            generator.setFraudRatio(Double.parseDouble(args[5]));
+            generator.setDuplicateRate(Double.parseDouble(args[6]));
+            generator.setRedundancy(Double.parseDouble(args[7]));
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Expected numbers for the size and shares of the generated dataset");
+            printProperUsage();
+            return;
+        }
+        
+        generator.setSeed(options.getSeed());
+        
+        if(options.getChunkSize() > 0)
+            generator.setChunkSize(options.getChunkSize());
+        
+        System.out.println("Generating " + args[2] + " instances to " + savePath + "...");
+        Metrics.Timer generate = Metrics.start(Metrics.GENERATE);
+        
+        try
+        {
+            generator.write(savePath);
+            System.out.println("Generating took: " + generate.stop());
+            
+            if(options.binaryCache())
+            {
+                Metrics.Timer save = Metrics.start(Metrics.SAVE);
+                BinaryDatasetCache.writeStreaming(savePath, options.getChunkSize() > 0 ? options.getChunkSize() : SyntheticDatasetGenerator.DEFAULT_CHUNK_SIZE,
+                                                  Runtime.getRuntime().availableProcessors());
+                System.out.println("Writing the binary cache took: " + save.stop());
+            }
+        }
+        catch(Exception e)
+        {
+            System.err.println("Could not generate " + savePath + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Checks the provided arguments and evaluates the stored predictions of every fold of a run again
+     * (see PredictionStore and ThresholdAnalysis): the confusion matrix at a given threshold, the ROC and
+     * precision-recall curves and the threshold with the lowest cost, without retraining. The report is
+     * saved to <results>_reevaluation and the curves to <results>_roc.csv and <results>_pr.csv
+     * 
+     * @param args The command-line arguments
+     */
+    public static void tryReevaluate(String[] args)
+    {
+        double costFP, costFN, threshold = 0.5;
+        
+        if(args.length < 4)
+        {
+            System.out.println("Not enough arguments for mode: reevaluate");
+            printProperUsage();
+            return;
+        }
+        
+        try
+        {
+            costFP = Double.parseDouble(args[2]);
+            costFN = Double.parseDouble(args[3]);
+            
+            if(args.length > 4)
+                threshold = Double.parseDouble(args[4]);
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Invalid non-numeric argument.");
+            printProperUsage();
+            return;
+        }
+        
+        String resultsPath = args[1];
+        ArrayList<String> paths = PredictionStore.findStores(resultsPath);
+        
+        if(paths.isEmpty())
+        {
+            System.out.println("No stored predictions found for " + resultsPath);
+            return;
+        }
+        
+        Metrics.Timer evaluate = Metrics.start(Metrics.EVALUATE);
+        ArrayList<PredictionStore> stores = new ArrayList<PredictionStore>();
+        
+        try(PrintWriter report = new PrintWriter(new FileWriter(resultsPath + "_reevaluation")))
+        {
+            report.printf(Locale.ROOT, "%-40s %12s %10s %10s%n", "fold", "instances", "auc_roc", "auc_pr");
+            
+            for(String path : paths)
+            {
+                PredictionStore store = PredictionStore.read(path);
+                ThresholdAnalysis fold = new ThresholdAnalysis(store);
+                stores.add(store);
+                report.printf(Locale.ROOT, "%-40s %12d %10.4f %10.4f%n", new File(path).getName(), store.numInstances(), fold.areaUnderROC(), fold.areaUnderPR());
             }
+            
+            PredictionStore all = PredictionStore.concat(stores);
+            ThresholdAnalysis pooled = new ThresholdAnalysis(all);
+            int atThreshold = pooled.point(threshold);
+            int optimal = pooled.costOptimal(costFP, costFN);
+            
+            report.printf(Locale.ROOT, "%nAll folds: %d instances, AUC-ROC %.4f, AUC-PR %.4f%n", all.numInstances(),
+                          pooled.areaUnderROC(), pooled.areaUnderPR());
+            report.printf(Locale.ROOT, "%nThreshold %.6f (cost %.4f):%n", threshold, pooled.cost(atThreshold, costFP, costFN));
+            printCounts(report, pooled.confusionMatrix(atThreshold));
+            report.printf(Locale.ROOT, "%nLowest cost for FP cost %.4f and FN cost %.4f: fraud at probability %s (cost %.4f)%n", costFP, costFN,
+                          optimal == 0 ? "above every probability" : String.format(Locale.ROOT, ">= %.6f", pooled.threshold(optimal)),
+                          pooled.cost(optimal, costFP, costFN));
+            printCounts(report, pooled.confusionMatrix(optimal));
+            
+            pooled.writeROC(resultsPath + "_roc.csv");
+            pooled.writePR(resultsPath + "_pr.csv");
+        }
+        catch(IOException e)
+        {
+            System.out.println("Could not reevaluate " + resultsPath + ": " + e.getMessage());
+            return;
+        }
+        
+        System.out.println("Reevaluated " + paths.size() + " fold(s) in " + evaluate.stop() + " ms, report saved to " + resultsPath + "_reevaluation");
+    }
+    
+    /**
+     * Prints the counts of a binary confusion matrix in the format of saveResults
+     * 
+     * @param out       the writer to print to
+     * @param confusion the matrix indexed by actual and then predicted class, negative class first
+     */
+    private static void printCounts(PrintWriter out, double confusion[][])
+    {
+        out.printf("TP: %f%nFP: %f%nTN: %f%nFN: %f%n", confusion[1][1], confusion[0][1], confusion[0][0], confusion[1][0]);
+    }
+    
+    /**
+     * Checks the provided arguments and runs multi mode over a matrix of dataset sizes, fold counts
+     * and thread counts (see ScalingBenchmark). The runs are saved to <results>_bench.csv and the
+     * scaling tables to <results>_strong_scaling.txt and <results>_weak_scaling.txt
+     * 
+     * @param args The command-line arguments
+     * @param options the pipeline flags given on the command line
+     */
+    public static void tryBench(String[] args, PipelineOptions options)
+    {
+        int sizes[], folds[], threads[];
+        int numAttributes, reductMode;
+        float learningRate, momentum;
+        
+        if(args.length < 10)
+        {
+            System.out.println("Not enough arguments for mode: bench");
+            printProperUsage();
+            return;
+        }
+        
+        try
+        {
+            sizes = parseList(args[3]);
+            folds = parseList(args[4]);
+            threads = parseList(args[5]);
+            numAttributes = Integer.parseInt(args[6]);
+            learningRate = Float.parseFloat(args[7]);
+            momentum = Float.parseFloat(args[8]);
+            reductMode = Integer.parseInt(args[9]);
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Invalid non-numeric argument.");
+            printProperUsage();
+            return;
+        }
+        
+        if(reductMode != 1 && reductMode != 2)
+        {
+            System.out.println("Invalid reduct mode. Must be 1 or 2.");
+            printProperUsage();
+            return;
+        }
+        
+        ScalingBenchmark bench = new ScalingBenchmark(args[1], args[2], numAttributes, learningRate, momentum, reductMode, options);
+        
+        try
+        {
+            bench.run(sizes, folds, threads);
+            
+            String strong = bench.strongScaling(sizes, folds, threads);
+            String weak = bench.weakScaling(sizes, folds, threads);
+            bench.saveRuns(args[2] + "_bench.csv");
+            saveText(strong, args[2] + "_strong_scaling.txt");
+            saveText(weak, args[2] + "_weak_scaling.txt");
+            
+            System.out.println("\nStrong scaling:\n" + strong);
+            System.out.println("Weak scaling:\n" + weak);
+        }
+        catch(Exception e)
+        {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Parses a comma-separated list of positive integers and sorts it
+     * 
+     * @param list the list
+     * @return the integers, smallest first
+     * @throws NumberFormatException if an entry is not a positive integer
+     */
+    private static int[] parseList(String list)
+    {
+        String entries[] = list.split(",");
+        int values[] = new int[entries.length];
+        
+        for(int i = 0; i < entries.length; i++)
+        {
+            values[i] = Integer.parseInt(entries[i].trim());
+            
+            if(values[i] <= 0)
+                throw new NumberFormatException("Expected a positive integer: " + entries[i]);
+        }
+        
+        Arrays.sort(values);
+        
+        return values;
+    }
+    
+    /**
+     * Writes text to a file
+     * 
+     * @param text the text
+     * @param path the file to write
+     * @throws IOException
+     */
+    private static void saveText(String text, String path) throws IOException
+    {
+        try(PrintWriter out = new PrintWriter(new FileWriter(path)))
+        {
+            out.print(text);
         }
     }
     
     /**
      * Checks provided arguments and attempts to run multi-threaded cross validation
      * @param args
+     * @param options the pipeline flags given on the command line
      */
-    public static void tryMultithread(String args[])
+    public static void tryMultithread(String args[], PipelineOptions options)
     {
         String datasetPath = null;
         String resultsPath = null;
@@ -182,58 +534,348 @@ public class TransactionClassifier
                 return;
             }
             
-            multithreadCV(resultsPath, dataset, numFolds, savePath, learningRate, momentum, reductMode);
+            long heapBudget = FoldAdmission.defaultBudget();
+            
+            if(args.length > 8)
+            {
+                try
+                {
+                    heapBudget = Long.parseLong(args[8]) * 1024 * 1024;
+                }
+                catch(NumberFormatException e)
+                {
+                    System.out.println("Expected an integer for the heap budget in MB");
+                    printProperUsage();
+                    return;
+                }
+            }
+            
+            multithreadCV(resultsPath, dataset, numFolds, savePath, learningRate, momentum, reductMode, heapBudget, options);
             
         }
     }
     /**
-     * Checks arguments for the testOnce mode. If arguments are valid, calls testOnceClassify
-     * and trains and evaluates a model with the given training set, evaluation set, learning rate,
-     * momentum, and reduct mode.
+     * Checks arguments for the multi-process mode. If arguments are valid, splits the dataset and runs
+     * every fold in a pool of worker JVMs (see WorkerPool), then saves the results of each fold and their sum.
      * 
      * @param args
+     * @param options the pipeline flags given on the command line, passed on to the workers
      */
-    public static void testOnce(String[] args)
+    public static void tryMultiProcess(String[] args, PipelineOptions options)
     {
-        String filepathTrain, filepathTest, resultsPath;
-        Dataset trainingSet, testingSet;
+        int numFolds, reductMode, numWorkers, workerHeapMB = 0;
         float learningRate, momentum;
-        int reductMode;
         
-        if(args.length < 7)
+        if(args.length < 9)
         {
-            System.out.println("Not enough arguments for mode 'test-once'");
+            System.out.println("Not enough arguments for mode: multi-process");
             printProperUsage();
+            return;
         }
-        else
+        
+        String datasetPath = args[1];
+        String savePath = args[2];
+        String resultsPath = args[3];
+        
+        try
         {
-            filepathTrain = args[1];
-            filepathTest = args[2];
-            resultsPath = args[3];
-            
-            try
-            {
-                learningRate = Float.parseFloat(args[4]);
-                momentum = Float.parseFloat(args[5]);
-                reductMode = Integer.parseInt(args[6]);
-            }
-            catch(NumberFormatException e)
-            {
-                System.out.println("Learning rate and momentum are expected as floats between 0.0 and 1.0");
-                printProperUsage();
-                return;
-            }
+            numFolds = Integer.parseInt(args[4]);
+            learningRate = Float.parseFloat(args[5]);
+            momentum = Float.parseFloat(args[6]);
+            reductMode = Integer.parseInt(args[7]);
+            numWorkers = Integer.parseInt(args[8]);
             
-            if(learningRate < 0.0 || learningRate > 1.0 || momentum < 0.0 || momentum > 1.0)
+            if(args.length > 9)
+                workerHeapMB = Integer.parseInt(args[9]);
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Invalid non-numeric argument.");
+            printProperUsage();
+            return;
+        }
+        
+        if(reductMode != 1 && reductMode != 2)
+        {
+            System.out.println("Invalid reduct mode. Must be 1 or 2.");
+            printProperUsage();
+            return;
+        }
+        
+        Dataset dataset = new Dataset(datasetPath);
+        
+        if(!dataset.hasData())
+        {
+            System.out.println("Failed to load data from " + datasetPath);
+            return;
+        }
+        
+        Metrics.Timer crossValidation = Metrics.start(Metrics.CROSS_VALIDATION);
+        
+        // Each worker reads its fold and the combined file of the other folds, nothing else is shared
+        DatasetSplitter splitter = null;
+        String foldPaths[] = splitData(splitter, dataset, numFolds, savePath, true);
+        dataset = null;
+        WorkerPool pool = new WorkerPool(savePath + "_spool", numWorkers, workerHeapMB, options);
+        pool.clear();
+        
+        try
+        {
+            for(int i = 0; i < numFolds; i++)
             {
-                System.out.println("Learning rate and momentum are expected as floats between 0.0 and 1.0");
-                printProperUsage();
-                return;
+                if(foldPaths[i] == null)
+                {
+                    System.out.println("Could not write fold " + i);
+                    return;
+                }
+                
+                pool.submit(i, FoldExporter.combinedPath(savePath, i), foldPaths[i], savePath + "fold_" + i, learningRate, momentum, reductMode);
             }
             
-            if(reductMode != 1 && reductMode != 2)
-            {
-                System.out.println("Reduct-mode can only be set to 1 (M-All) or 2 (M-Dec)");
+            CrossValidationScheduler.saveResults(pool.run(numFolds), resultsPath);
+        }
+        catch(IOException e)
+        {
+            System.out.println("Could not run workers: " + e.getMessage());
+            return;
+        }
+        catch(InterruptedException e)
+        {
+            System.err.println("Interrupted while waiting for workers");
+            return;
+        }
+        
+        System.out.println("All workers have completed their jobs. Time: " + crossValidation.stop() + " ms");
+    }
+    
+    /**
+     * Runs a worker of the multi-process mode. Started by the coordinator, not meant to be run by hand.
+     * 
+     * @param args
+     * @param options the pipeline flags passed on by the coordinator
+     */
+    public static void tryWorker(String[] args, PipelineOptions options)
+    {
+        if(args.length < 3)
+        {
+            System.out.println("Not enough arguments for mode: worker");
+            System.exit(2);
+        }
+        
+        int workerId;
+        
+        try
+        {
+            workerId = Integer.parseInt(args[2]);
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Expected an integer worker id");
+            System.exit(2);
+            return;
+        }
+        
+        new FoldWorker(args[1], workerId, options).run();
+    }
+    
+    /**
+     * Checks arguments for the repeated mode. If arguments are valid, runs repeated cross validation
+     * with the given number of repetitions and folds on a shared thread pool.
+     * 
+     * @param args
+     * @param options the pipeline flags given on the command line
+     */
+    public static void tryRepeated(String[] args, PipelineOptions options)
+    {
+        int numRepetitions, numFolds, reductMode;
+        float learningRate, momentum;
+        
+        if(args.length < 9)
+        {
+            System.out.println("Not enough arguments for mode: repeated");
+            printProperUsage();
+            return;
+        }
+        
+        try
+        {
+            numRepetitions = Integer.parseInt(args[4]);
+            numFolds = Integer.parseInt(args[5]);
+            learningRate = Float.parseFloat(args[6]);
+            momentum = Float.parseFloat(args[7]);
+            reductMode = Integer.parseInt(args[8]);
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Invalid non-numeric argument.");
+            printProperUsage();
+            return;
+        }
+        
+        if(numRepetitions < 1 || numFolds < 2)
+        {
+            System.out.println("Expected at least 1 repetition and 2 folds");
+            printProperUsage();
+            return;
+        }
+        
+        if(reductMode != 1 && reductMode != 2)
+        {
+            System.out.println("Invalid reduct mode. Must be 1 or 2.");
+            printProperUsage();
+            return;
+        }
+        
+        Dataset dataset = loadForScheduler(args[1]);
+        
+        if(dataset == null)
+            return;
+        
+        Metrics.Timer crossValidation = Metrics.start(Metrics.CROSS_VALIDATION);
+        CrossValidationScheduler scheduler = new CrossValidationScheduler(dataset, args[2], reductMode, options, Runtime.getRuntime().availableProcessors());
+        List<CrossValidationScheduler.FoldResult> results = scheduler.runRepeated(numRepetitions, numFolds, new CrossValidationScheduler.Candidate(learningRate, momentum));
+        CrossValidationScheduler.saveResults(results, args[3]);
+        
+        System.out.println("Repeated cross validation finished. Time: " + crossValidation.stop() + " ms");
+    }
+    
+    /**
+     * Checks arguments for the nested mode. If arguments are valid, runs nested cross validation,
+     * choosing the learning rate and momentum of every outer fold on its inner folds.
+     * 
+     * @param args
+     * @param options the pipeline flags given on the command line
+     */
+    public static void tryNested(String[] args, PipelineOptions options)
+    {
+        int numRepetitions, numOuterFolds, numInnerFolds, reductMode;
+        ArrayList<CrossValidationScheduler.Candidate> candidates = new ArrayList<CrossValidationScheduler.Candidate>();
+        
+        if(args.length < 10)
+        {
+            System.out.println("Not enough arguments for mode: nested");
+            printProperUsage();
+            return;
+        }
+        
+        try
+        {
+            numRepetitions = Integer.parseInt(args[4]);
+            numOuterFolds = Integer.parseInt(args[5]);
+            numInnerFolds = Integer.parseInt(args[6]);
+            reductMode = Integer.parseInt(args[9]);
+            
+            // Every combination of the listed learning rates and momentums is a candidate
+            for(String learningRate : args[7].split(","))
+            {
+                for(String momentum : args[8].split(","))
+                    candidates.add(new CrossValidationScheduler.Candidate(Float.parseFloat(learningRate), Float.parseFloat(momentum)));
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Invalid non-numeric argument.");
+            printProperUsage();
+            return;
+        }
+        
+        if(numRepetitions < 1 || numOuterFolds < 2 || numInnerFolds < 2)
+        {
+            System.out.println("Expected at least 1 repetition and 2 inner and outer folds");
+            printProperUsage();
+            return;
+        }
+        
+        if(reductMode != 1 && reductMode != 2)
+        {
+            System.out.println("Invalid reduct mode. Must be 1 or 2.");
+            printProperUsage();
+            return;
+        }
+        
+        Dataset dataset = loadForScheduler(args[1]);
+        
+        if(dataset == null)
+            return;
+        
+        Metrics.Timer crossValidation = Metrics.start(Metrics.CROSS_VALIDATION);
+        CrossValidationScheduler scheduler = new CrossValidationScheduler(dataset, args[2], reductMode, options, Runtime.getRuntime().availableProcessors());
+        List<CrossValidationScheduler.FoldResult> results = scheduler.runNested(numRepetitions, numOuterFolds, numInnerFolds, candidates);
+        CrossValidationScheduler.saveResults(results, args[3]);
+        
+        System.out.println("Nested cross validation finished. Time: " + crossValidation.stop() + " ms");
+    }
+    
+    /**
+     * Loads a dataset for the cross validation scheduler, with the last attribute as the class
+     * 
+     * @param datasetPath path to the dataset
+     * @return the dataset, or null if it could not be loaded
+     */
+    private static Dataset loadForScheduler(String datasetPath)
+    {
+        Dataset dataset = new Dataset(datasetPath);
+        
+        if(!dataset.hasData())
+        {
+            System.out.println("Failed to load data from " + datasetPath);
+            return null;
+        }
+        
+        dataset.setClassIndex(dataset.numAttributes() - 1);
+        
+        return dataset;
+    }
+    
+    /**
+     * Checks arguments for the testOnce mode. If arguments are valid, calls testOnceClassify
+     * and trains and evaluates a model with the given training set, evaluation set, learning rate,
+     * momentum, and reduct mode.
+     * 
+     * @param args
+     * @param options the pipeline flags given on the command line
+     */
+    public static void testOnce(String[] args, PipelineOptions options)
+    {
+        String filepathTrain, filepathTest, resultsPath;
+        Dataset trainingSet, testingSet;
+        float learningRate, momentum;
+        int reductMode;
+        
+        if(args.length < 7)
+        {
+            System.out.println("Not enough arguments for mode 'test-once'");
+            printProperUsage();
+        }
+        else
+        {
+            filepathTrain = args[1];
+            filepathTest = args[2];
+            resultsPath = args[3];
+            
+            try
+            {
+                learningRate = Float.parseFloat(args[4]);
+                momentum = Float.parseFloat(args[5]);
+                reductMode = Integer.parseInt(args[6]);
+            }
+            catch(NumberFormatException e)
+            {
+                System.out.println("Learning rate and momentum are expected as floats between 0.0 and 1.0");
+                printProperUsage();
+                return;
+            }
+            
+            if(learningRate < 0.0 || learningRate > 1.0 || momentum < 0.0 || momentum > 1.0)
+            {
+                System.out.println("Learning rate and momentum are expected as floats between 0.0 and 1.0");
+                printProperUsage();
+                return;
+            }
+            
+            if(reductMode != 1 && reductMode != 2)
+            {
+                System.out.println("Reduct-mode can only be set to 1 (M-All) or 2 (M-Dec)");
                 printProperUsage();
                 return;
             }
@@ -255,7 +897,7 @@ public class TransactionClassifier
             }
             else
             {
-                Evaluation results = testOnceClassify(trainingSet, testingSet, learningRate, momentum, reductMode);
+                Evaluation results = testOnceClassify(trainingSet, testingSet, learningRate, momentum, reductMode, options, Runtime.getRuntime().availableProcessors(), resultsPath + "_transformer.model");
                 saveResults(results, resultsPath);
             }
         }
@@ -275,6 +917,8 @@ public class TransactionClassifier
         }
         else
         {
+            Metrics.Timer save = Metrics.start(Metrics.SAVE);
+            
             try
             {
 
@@ -283,7 +927,16 @@ public class TransactionClassifier
                                                                       results.numFalsePositives(POSITIVE_CLASS_INDEX),
                                                                       results.numTrueNegatives(POSITIVE_CLASS_INDEX),
                                                                       results.numFalseNegatives(POSITIVE_CLASS_INDEX));
+                printConfusionMatrix(printResults, results.confusionMatrix(), results.getHeader());
                 printResults.close();
+                
+                // Keep the predictions so other thresholds and costs can be evaluated without retraining
+                PredictionStore predictions = PredictionStore.fromEvaluation(results, POSITIVE_CLASS_INDEX);
+                
+                if(predictions != null)
+                    predictions.write(PredictionStore.storePath(path));
+                
+                save.stop();
                 System.out.println("Saved results to " + path);
             }
             catch(Exception e)
@@ -293,8 +946,54 @@ public class TransactionClassifier
         }
     }
     
+    /**
+     * Prints a full confusion matrix, one row per actual class and one column per predicted class
+     * 
+     * @param out       the writer to print to
+     * @param confusion the confusion matrix, indexed by actual and then predicted class
+     * @param header    the data the matrix was computed on, for the class names
+     */
+    public static void printConfusionMatrix(PrintWriter out, double confusion[][], Instances header)
+    {
+        out.println("Confusion matrix (rows: actual, columns: predicted):");
+        out.printf("%12s", "");
+        
+        for(int j = 0; j < confusion.length; j++)
+            out.printf(" %16s", header.classAttribute().value(j));
+        
+        out.println();
+        
+        for(int i = 0; i < confusion.length; i++)
+        {
+            out.printf("%12s", header.classAttribute().value(i));
+            
+            for(int j = 0; j < confusion[i].length; j++)
+                out.printf(" %16f", confusion[i][j]);
+            
+            out.println();
+        }
+    }
+    
+    /**
+     * Runs multi-threaded cross validation. Each run of cross validation is executed in a separate thread.
+     * 
+     * @param resultsPath base path to save results to 
+     * @param dataset the source dataset
+     * @param numFolds the number of folds
+     * @param savePath path to save folds .arff files to 
+     * @param learningRate the learning rate for backpropagation
+     * @param momentum the momentum for backpropagation
+     * @return boolean - true if every fold was run, false if the run could not be set up or was interrupted
+     */
+    public static boolean multithreadCV(String resultsPath, Dataset dataset, int numFolds, String savePath, float learningRate, float momentum, int reductMode)
+    {
+        return multithreadCV(resultsPath, dataset, numFolds, savePath, learningRate, momentum, reductMode, FoldAdmission.defaultBudget());
+    }
+    
     /**
      * Runs multi-threaded cross validation. Each run of cross validation is executed in a separate thread.
+     * A fold's training and test sets are only built once the fold is admitted against the heap budget,
+     * and are released as soon as the fold finishes.
      * 
      * @param resultsPath base path to save results to 
      * @param dataset the source dataset
@@ -302,167 +1001,777 @@ public class TransactionClassifier
      * @param savePath path to save folds .arff files to 
      * @param learningRate the learning rate for backpropagation
      * @param momentum the momentum for backpropagation
+     * @param reductMode the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param heapBudget the heap (in bytes) that running folds may use together
+     * @return boolean - true if every fold was run, false if the run could not be set up or was interrupted
+     */
+    public static boolean multithreadCV(String resultsPath, Dataset dataset, int numFolds, String savePath, float learningRate, float momentum, int reductMode, long heapBudget)
+    {
+        return multithreadCV(resultsPath, dataset, numFolds, savePath, learningRate, momentum, reductMode, heapBudget, new PipelineOptions());
+    }
+    
+    /**
+     * Runs multi-threaded cross validation with the given pipeline options. Each run of cross validation
+     * is executed in a separate thread, admitted against the heap budget as described above.
+     * The fold files and the output of every finished stage are recorded in savePath_manifest.properties;
+     * with the resume option the recorded folds are reused and finished folds and stages are skipped.
+     * 
+     * @param resultsPath base path to save results to 
+     * @param dataset the source dataset
+     * @param numFolds the number of folds
+     * @param savePath path to save folds .arff files to 
+     * @param learningRate the learning rate for backpropagation
+     * @param momentum the momentum for backpropagation
+     * @param reductMode the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param heapBudget the heap (in bytes) that running folds may use together
+     * @param options the training pipeline options used by every fold
+     * @return boolean - true if every fold was run, false if the run could not be set up or was interrupted
+     */
+    public static boolean multithreadCV(String resultsPath, Dataset dataset, int numFolds, String savePath, float learningRate, float momentum, int reductMode, long heapBudget, PipelineOptions options)
+    {
+        // Initialize start time
+        Metrics.Timer crossValidation = Metrics.start(Metrics.CROSS_VALIDATION);
+        
+        CrossValidationThread threads[] = new CrossValidationThread[numFolds];
+        RunManifest manifest = openManifest(savePath + "_manifest.properties", dataset, numFolds, learningRate, momentum, reductMode, options);
+        
+        if(manifest == null)
+            return false;
+        
+        // Reuse the recorded folds when resuming, otherwise split dataset into multiple folds
+        String foldPaths[] = manifest.getFoldPaths(numFolds);
+        boolean resumed = foldPaths != null;
+        
+        if(!resumed)
+        {
+            DatasetSplitter splitter = null;
+            foldPaths = splitData(splitter, dataset, numFolds, savePath, false);
+        }
+        else
+        {
+            System.out.println("Resuming run recorded in " + manifest.getPath());
+        }
+        
+        int foldSizes[] = new int[numFolds];
+        
+        // Combine the folds into a single dataset
+        ArrayList<Dataset>folds = new ArrayList<Dataset>();
+        
+        for(int i = 0; i < numFolds; i++)
+        {
+            if(foldPaths[i] == null)
+            {
+                System.out.println("Could not write fold " + i);
+                return false;
+            }
+            
+            folds.add(new Dataset(foldPaths[i]));
+            foldSizes[i] = folds.get(i).numInstances();
+            
+            if(resumed && (foldSizes[i] != manifest.getFoldSize(i) || !manifest.isFoldUnchanged(i)))
+            {
+                System.out.println("Fold file " + foldPaths[i] + " no longer matches " + manifest.getPath());
+                return false;
+            }
+        }
+        
+        int firstIndex[] = firstIndices(foldSizes);
+        
+        if(!resumed)
+        {
+            try
+            {
+                manifest.setFoldPaths(foldPaths, foldSizes);
+            }
+            catch(IOException e)
+            {
+                System.out.println("Could not write run manifest " + manifest.getPath() + ": " + e.getMessage());
+                return false;
+            }
+        }
+        
+        // Combine folds again
+        Dataset fullSet = makeTrainingSet(folds);
+        folds = null;
+        
+        FoldAdmission admission = new FoldAdmission(heapBudget, options.getThreads());
+        System.out.println("Fold heap budget: " + admission.getBudget()/(1024*1024) + " MB");
+        
+        // Folds running together share the processors when they classify their test sets
+        int foldThreads = threadBudget(options.getThreads() > 0 ? Math.min(options.getThreads(), numFolds) : numFolds);
+        
+        for(int i = 0; i < numFolds; i++)
+        {
+            // Each thread builds its own test and training sets once it is admitted
+            threads[i] = new CrossValidationThread();
+            threads[i].init(resultsPath + "_fold_" + i, fullSet, firstIndex[i], foldSizes[i], savePath + "fold_" + i, i, learningRate, momentum, reductMode, admission, options, manifest, foldThreads);
+            threads[i].start();
+        }
+        
+        for(int i = 0; i < numFolds; i++)
+        {
+            try
+            {
+                threads[i].join(); 
+            }
+            catch(InterruptedException e)
+            {
+                System.err.println("Thread handling fold " + i + " was interrupted");
+                return false;
+            }
+        }
+        
+        System.out.println("All threads have completed their jobs. Time: " + crossValidation.stop() + " ms");
+        
+        return true;
+    }
+    
+    /**
+     * Opens the manifest of a multi-fold run. With the resume option the manifest of the earlier run
+     * is loaded and must have been written for the same parameters; otherwise a new manifest is started.
+     * 
+     * @param path         path of the manifest file
+     * @param dataset      the source dataset
+     * @param numFolds     the number of folds
+     * @param learningRate the learning rate for backpropagation
+     * @param momentum     the momentum for backpropagation
+     * @param reductMode   the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param options      the training pipeline options
+     * @return the manifest, or null if the run cannot be resumed
+     */
+    public static RunManifest openManifest(String path, Dataset dataset, int numFolds, float learningRate, float momentum, int reductMode, PipelineOptions options)
+    {
+        RunManifest manifest = new RunManifest(path);
+        
+        if(options.resume())
+        {
+            if(new File(path).exists())
+            {
+                try
+                {
+                    manifest = RunManifest.load(path);
+                }
+                catch(IOException e)
+                {
+                    System.out.println("Could not read run manifest " + path + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            else
+            {
+                System.out.println("No run manifest at " + path + ", starting a new run");
+            }
+        }
+        
+        // Every parameter that changes the folds or the stage outputs must match to resume
+        LinkedHashMap<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("dataset", String.valueOf(dataset.getPath()));
+        parameters.put("folds", Integer.toString(numFolds));
+        parameters.put("learningRate", Float.toString(learningRate));
+        parameters.put("momentum", Float.toString(momentum));
+        parameters.put("reductMode", Integer.toString(reductMode));
+        parameters.put("collapseDuplicates", Boolean.toString(options.collapseDuplicates()));
+        parameters.put("undersampleRatio", Double.toString(options.getUndersampleRatio()));
+        parameters.put("seed", Long.toString(options.getSeed()));
+        
+        try
+        {
+            if(!manifest.checkParameters(parameters))
+            {
+                System.out.println("Cannot resume a run with different parameters");
+                return null;
+            }
+        }
+        catch(IOException e)
+        {
+            System.out.println("Could not write run manifest " + path + ": " + e.getMessage());
+            return null;
+        }
+        
+        return manifest;
+    }
+    
+    /**
+     * Gets the index of the first instance of each fold in the combined dataset,
+     * where the folds are appended in order
+     * @param foldSizes the number of instances in each fold
+     * @return the index of the first instance of each fold
+     */
+    public static int[] firstIndices(int foldSizes[])
+    {
+        int firstIndex[] = new int[foldSizes.length];
+        
+        for(int i = 1; i < foldSizes.length; i++)
+            firstIndex[i] = firstIndex[i - 1] + foldSizes[i - 1];
+        
+        return firstIndex;
+    }
+    
+    /**
+     * Makes a new dataset by copying sequential instances from a given source
+     * @param source the source dataset
+     * @param first the first instance to be copied
+     * @param numInstances the number of instances to be copied
+     * @return returns the new dataset
+     */
+    public static Dataset getTestDataset(Dataset source, int first, int numInstances)
+    {
+        Instances test = new Instances(source.getInstances(), numInstances);
+        
+        for(int i = 0; i < numInstances; i++)
+        {
+            test.add(source.getInstances().get(first + i));
+        }
+        
+        return Dataset.adopt(test);
+    }
+    
+    /**
+     * Makes a new dataset by adding all instances from a given source
+     * EXCEPT for instances in the range [testFirst, testFirst + testInstances - 1]
+     * @param source the source dataset
+     * @param testFirst the first instance to be excluded
+     * @param testInstances the number of instances to be excluded
+     * @return returns the new dataset
+     */
+    public static Dataset getTrainDataset(Dataset source, int testFirst, int testInstances)
+    {
+        Instances train = new Instances(source.getInstances(), source.numInstances() - testInstances);
+        
+        for(int i = 0; i < source.numInstances(); i++)
+        {
+            if(i < testFirst || i > (testFirst + testInstances - 1))
+                train.add(source.getInstances().get(i));
+        }
+        
+        return Dataset.adopt(train);
+    }
+    
+    /**
+     * Checks arguments for the cascade mode. If arguments are valid, calls cascadeClassify
+     * and trains and evaluates a cascade classifier with the given training set, evaluation set,
+     * learning rate, momentum, reduct mode and rule confidence.
+     * 
+     * @param args
+     * @param options the pipeline flags given on the command line
+     */
+    public static void tryCascade(String[] args, PipelineOptions options)
+    {
+        String filepathTrain, filepathTest, resultsPath;
+        Dataset trainingSet, testingSet;
+        float learningRate, momentum, confidence;
+        int reductMode;
+        
+        if(args.length < 8)
+        {
+            System.out.println("Not enough arguments for mode 'cascade'");
+            printProperUsage();
+            return;
+        }
+        
+        filepathTrain = args[1];
+        filepathTest = args[2];
+        resultsPath = args[3];
+        
+        try
+        {
+            learningRate = Float.parseFloat(args[4]);
+            momentum = Float.parseFloat(args[5]);
+            reductMode = Integer.parseInt(args[6]);
+            confidence = Float.parseFloat(args[7]);
+        }
+        catch(NumberFormatException e)
+        {
+            System.out.println("Invalid non-numeric argument.");
+            printProperUsage();
+            return;
+        }
+        
+        if(learningRate < 0.0 || learningRate > 1.0 || momentum < 0.0 || momentum > 1.0 || confidence < 0.0 || confidence > 1.0)
+        {
+            System.out.println("Learning rate, momentum and confidence are expected as floats between 0.0 and 1.0");
+            printProperUsage();
+            return;
+        }
+        
+        if(reductMode != 1 && reductMode != 2)
+        {
+            System.out.println("Reduct-mode can only be set to 1 (M-All) or 2 (M-Dec)");
+            printProperUsage();
+            return;
+        }
+        
+        trainingSet = new Dataset(filepathTrain);
+        testingSet = new Dataset(filepathTest);
+        
+        if(!testingSet.hasData())
+        {
+            System.out.println("Could not load testing set");
+        }
+        else if(!trainingSet.hasData())
+        {
+            System.out.println("Could not load training set");
+        }
+        else
+        {
+            trainingSet.setClassIndex(trainingSet.numAttributes() - 1);
+            testingSet.setClassIndex(testingSet.numAttributes() - 1);
+            
+            CascadeClassifier cascade = new CascadeClassifier(createNetwork(learningRate, momentum), confidence);
+            Evaluation results = cascadeClassify(trainingSet, testingSet, reductMode, cascade, resultsPath + "_transformer.model", options);
+            saveResults(results, resultsPath);
+            
+            if(results != null)
+            {
+                System.out.print(cascade.getStageReport());
+                saveStageReport(cascade, resultsPath);
+            }
+        }
+    }
+    
+    /**
+     * Appends the fraction of instances handled by each stage of a cascade classifier to the results file.
+     * 
+     * @param cascade the evaluated cascade classifier
+     * @param path path of the results file
+     */
+    public static void saveStageReport(CascadeClassifier cascade, String path)
+    {
+        try
+        {
+            PrintWriter printReport = new PrintWriter(new FileWriter(path, true));
+            printReport.print(cascade.getStageReport());
+            printReport.close();
+        }
+        catch(Exception e)
+        {
+            System.out.println("Could not save stage report");
+        }
+    }
+    
+    /**
+     * Performs one run of training and testing and returns the evaluation.
+     * 
+     * @param trainingSet  - the data to train the model on
+     * @param testSet      - the data to test the model on
+     * @param learningRate - the learning rate for the model
+     * @param momentum     - the momentum for the model
+     * @param reductMode   - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @return             - returns the evaluation for the model
+     */
+    public static Evaluation testOnceClassify(Dataset trainingSet, Dataset testSet, float learningRate, float momentum, int reductMode)
+    {
+        return testOnceClassify(trainingSet, testSet, learningRate, momentum, reductMode, new PipelineOptions());
+    }
+    
+    /**
+     * Performs one run of training and testing with the given pipeline options and returns the evaluation.
+     * 
+     * @param trainingSet  - the data to train the model on
+     * @param testSet      - the data to test the model on
+     * @param learningRate - the learning rate for the model
+     * @param momentum     - the momentum for the model
+     * @param reductMode   - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param options      - the training pipeline options
+     * @return             - returns the evaluation for the model
+     */
+    public static Evaluation testOnceClassify(Dataset trainingSet, Dataset testSet, float learningRate, float momentum, int reductMode, PipelineOptions options)
+    {
+        return testOnceClassify(trainingSet, testSet, learningRate, momentum, reductMode, options, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Performs one run of training and testing with the given pipeline options and returns the evaluation.
+     * The test set is classified with at most numThreads threads.
+     * 
+     * @param trainingSet  - the data to train the model on
+     * @param testSet      - the data to test the model on
+     * @param learningRate - the learning rate for the model
+     * @param momentum     - the momentum for the model
+     * @param reductMode   - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param options      - the training pipeline options
+     * @param numThreads   - the number of threads the run may classify with (see threadBudget)
+     * @return             - returns the evaluation for the model
+     */
+    public static Evaluation testOnceClassify(Dataset trainingSet, Dataset testSet, float learningRate, float momentum, int reductMode, PipelineOptions options, int numThreads)
+    {
+        return testOnceClassify(trainingSet, testSet, learningRate, momentum, reductMode, options, numThreads, null);
+    }
+    
+    /**
+     * Performs one run of training and testing and saves the compiled feature transformer,
+     * which turns raw transactions into the network's normalized inputs, to transformerPath.
+     * 
+     * @param trainingSet     - the data to train the model on
+     * @param testSet         - the data to test the model on
+     * @param learningRate    - the learning rate for the model
+     * @param momentum        - the momentum for the model
+     * @param reductMode      - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param options         - the training pipeline options
+     * @param numThreads      - the number of threads the run may classify with (see threadBudget)
+     * @param transformerPath - path to save the compiled feature transformer to (null to skip)
+     * @return                - returns the evaluation for the model
      */
-    public static void multithreadCV(String resultsPath, Dataset dataset, int numFolds, String savePath, float learningRate, float momentum, int reductMode)
+    public static Evaluation testOnceClassify(Dataset trainingSet, Dataset testSet, float learningRate, float momentum, int reductMode, PipelineOptions options, int numThreads, String transformerPath)
     {
-        // Initialize start time
-        long t_start = System.nanoTime();
-        
-        CrossValidationThread threads[] = new CrossValidationThread[numFolds];
-        
-        
-        // split dataset into multiple folds
-        DatasetSplitter splitter = null;
-        String foldPaths[] = splitData(splitter, dataset, numFolds, savePath, false);
-        int firstIndex[] = new int[numFolds];
-        
-        // Combine the folds into a single dataset
-        ArrayList<Dataset>folds = new ArrayList<Dataset>();
+        trainingSet = resampleTrainingSet(trainingSet, options);
+        BitSet reductBitSet = selectReduct(trainingSet, reductMode);
         
-        for(int i = 0; i < numFolds; i++)
-        {
-            if(i == 0)
-                firstIndex[i] = 0;
-            else
-                firstIndex[i] = firstIndex[i - 1] + folds.get(i - 1).numInstances() - 1;
-            
-            folds.add(new Dataset(foldPaths[i]));
-        }
+        if(reductBitSet == null)
+            return null;
         
-        // Combine folds again
-        Dataset fullSet = makeTrainingSet(folds);
+        // The training set is normalized straight from the projection, the test set is projected as it is classified
+        ProjectedDataset projection = new ProjectedDataset(trainingSet, reductBitSet);
+        NormalizedInputs inputs = prepareInputs(projection, options);
+        Classifier network = trainNetwork(inputs, learningRate, momentum);
         
-        for(int i = 0; i < numFolds; i++)
-        {
-            // get each dataset and test set
-            Dataset test = getTestDataset(fullSet, firstIndex[i], folds.get(i).numInstances());
-            Dataset train = getTrainDataset(fullSet, firstIndex[i], folds.get(i).numInstances());
-            test.setClassIndex(test.numAttributes() - 1);
-            train.setClassIndex(train.numAttributes() - 1);
-            test.setName(savePath + "fold_" + i + "_test");
-            train.setName(savePath + "fold_" + i + "_train");
-            // run testOnceClassify
-            threads[i] = new CrossValidationThread();
-            threads[i].init(resultsPath + "_fold_" + i, train, test, i, learningRate, momentum, reductMode);
-            threads[i].start();
-        }
-        folds = null;
+        if(network == null)
+            return null;
         
-        for(int i = 0; i < numFolds; i++)
+        if(transformerPath != null)
         {
             try
             {
-                threads[i].join(); 
+                saveTransformer(compileTransformer(trainingSet, projection, inputs.getNormalizer()), transformerPath);
             }
-            catch(InterruptedException e)
+            catch(Exception e)
             {
-                System.err.println("Thread handling fold " + i + " was interrupted");
-                return;
+                System.out.println("Could not compile feature transformer: " + e.getMessage());
             }
         }
         
-        long t_end = System.nanoTime();
-        
-        System.out.println("All threads have completed their jobs. Time: " + (t_end - t_start)/1000000 + " ms");
+        return evaluate(new ProjectedClassifier(network, projection), testSet, numThreads);
     }
     
     /**
-     * Makes a new dataset by copying sequential instances from a given source
-     * @param source the source dataset
-     * @param first the first instance to be copied
-     * @param numInstances the number of instances to be copied
-     * @return returns the new dataset
+     * Builds a neural network on the normalized inputs of the given (reduced) training set.
+     * The inputs are computed on the first call and shared by every later call for the
+     * same dataset, so training with several learning rates or momentums normalizes the data once.
+     * 
+     * @param reducedTrain - the data to train the model on (reduct already applied)
+     * @param learningRate - the learning rate for the model
+     * @param momentum     - the momentum for the model
+     * @return             - the built model, which normalizes instances as it classifies them, or null on failure
      */
-    public static Dataset getTestDataset(Dataset source, int first, int numInstances)
+    public static Classifier trainNetwork(Dataset reducedTrain, float learningRate, float momentum)
     {
-        Instances test = new Instances(source.getInstances(), numInstances);
-        
-        for(int i = 0; i < numInstances; i++)
-        {
-            test.add(source.getInstances().get(first + i));
-        }
-        
-        return new Dataset(test);
+        return trainNetwork(reducedTrain.getNormalizedInputs(), learningRate, momentum);
     }
     
     /**
-     * Makes a new dataset by adding all instances from a given source
-     * EXCEPT for instances in the range [testFirst, testFirst + testInstances - 1]
-     * @param source the source dataset
-     * @param testFirst the first instance to be excluded
-     * @param testInstances the number of instances to be excluded
-     * @return returns the new dataset
+     * Builds a neural network on the given normalized inputs. The inputs are read-only, so
+     * training with several learning rates or momentums can share them.
+     * 
+     * @param inputs       - the normalized training data (reduct already applied)
+     * @param learningRate - the learning rate for the model
+     * @param momentum     - the momentum for the model
+     * @return             - the built model, which normalizes instances as it classifies them, or null on failure
      */
-    public static Dataset getTrainDataset(Dataset source, int testFirst, int testInstances)
+    public static Classifier trainNetwork(NormalizedInputs inputs, float learningRate, float momentum)
     {
-        Instances train = new Instances(source.getInstances(), source.numInstances() - testInstances);
+        if(inputs == null)
+        {
+            System.err.println("Could not normalize the training data");
+            return null;
+        }
         
-        for(int i = 0; i < source.numInstances(); i++)
+        MultilayerPerceptron neuralNetwork = createNetwork(learningRate, momentum);
+        NormalizedClassifier network = new NormalizedClassifier(neuralNetwork);
+        Metrics.Timer train = Metrics.start(Metrics.TRAIN);
+        
+        // Build model based on training data
+        try
         {
-            if(i < testFirst || i > (testFirst + testInstances - 1))
-                train.add(source.getInstances().get(i));
+            setHiddenLayers(neuralNetwork, inputs.numAttributes());
+            network.buildClassifier(inputs);
+            train.stop();
+            Metrics.count("trainInstances", inputs.numRows());
+        }
+        catch(Exception e)
+        {
+            System.err.println("Could not run classifier on training data: " + e.getMessage());
+            return null;
         }
         
-        return new Dataset(train);
+        return network;
     }
     
     /**
-     * Performs one run of training and testing and returns the evaluation.
+     * Performs one run of training and testing with a cascade classifier and returns the evaluation.
+     * The number of instances handled by each stage is available from the cascade after evaluation.
+     * The compiled feature transformer for scoring raw transactions is saved to transformerPath.
      * 
-     * @param trainingSet  - the data to train the model on
-     * @param testSet      - the data to test the model on
-     * @param learningRate - the learning rate for the model
-     * @param momentum     - the momentum for the model
-     * @param reductMode   - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
-     * @return             - returns the evaluation for the model
+     * @param trainingSet     - the data to train the model on
+     * @param testSet         - the data to test the model on
+     * @param reductMode      - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param cascade         - the cascade classifier to build
+     * @param transformerPath - path to save the compiled feature transformer to (null to skip)
+     * @return                - returns the evaluation for the model
      */
-    public static Evaluation testOnceClassify(Dataset trainingSet, Dataset testSet, float learningRate, float momentum, int reductMode)
+    public static Evaluation cascadeClassify(Dataset trainingSet, Dataset testSet, int reductMode, CascadeClassifier cascade, String transformerPath)
     {
-        Evaluation eval;
-        MultilayerPerceptron neuralNetwork;
+        return cascadeClassify(trainingSet, testSet, reductMode, cascade, transformerPath, new PipelineOptions());
+    }
+    
+    /**
+     * Performs one run of training and testing with a cascade classifier and the given pipeline options.
+     * 
+     * @param trainingSet     - the data to train the model on
+     * @param testSet         - the data to test the model on
+     * @param reductMode      - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @param cascade         - the cascade classifier to build
+     * @param transformerPath - path to save the compiled feature transformer to (null to skip)
+     * @param options         - the training pipeline options
+     * @return                - returns the evaluation for the model
+     */
+    public static Evaluation cascadeClassify(Dataset trainingSet, Dataset testSet, int reductMode, CascadeClassifier cascade, String transformerPath, PipelineOptions options)
+    {
+        trainingSet = resampleTrainingSet(trainingSet, options);
+        BitSet reductBitSet = selectReduct(trainingSet, reductMode);
         
-        // Preprocess data using reduct with largest reduction in dimensionality
-        //TODO: Remove timing
-        System.out.println("Beginning discretization and reduct selection...");
-        long startReduct = System.nanoTime();
-        BitSet reductBitSet = findReducts(trainingSet, trainingSet.getName() + "_discretized.arff", reductMode);
-        long endReduct = System.nanoTime();
-        System.out.println("Time to discretize and find reduct: " + (endReduct - startReduct)/1000000);
+        if(reductBitSet == null)
+            return null;
+        
+        ProjectedDataset projection = new ProjectedDataset(trainingSet, reductBitSet);
+        Dataset reducedTrain = reduceTrainingSet(projection, options);
+        
+        // Collapsed rows carry weights normalized to a mean of 1, rule support is still counted in rows
+        if(options.collapseDuplicates())
+            cascade.setWeightScale(projection.sumOfWeights() / reducedTrain.numInstances());
         
-        // Remove attributes from training set and test set according to reduct
         try
         {
-            trainingSet = applyReduct(reductBitSet, trainingSet);
-            testSet = applyReduct(reductBitSet, testSet);
+            cascade.setStatistics(reducedTrain.getStatistics());
+            cascade.buildClassifier(reducedTrain.getInstances());
         }
         catch(Exception e)
         {
-            System.err.println("Could not apply reducts: ");
-            e.printStackTrace();
+            System.err.println("Could not run classifier on training data: " + e.getMessage());
             return null;
         }
         
-        neuralNetwork = new MultilayerPerceptron();
-        neuralNetwork.setLearningRate(learningRate);
-        neuralNetwork.setMomentum(momentum);
+        // Map the transformer from reduced attribute indices back to raw transaction indices
+        if(transformerPath != null)
+            saveTransformer(cascade.getTransformer().remap(projection.getIndices()), transformerPath);
         
-        // Build and evaluate model based on training data
+        // The stage counts are kept by the cascade itself, so it is not copied into shards
+        return evaluate(new ProjectedClassifier(cascade, projection), testSet, 1);
+    }
+    
+    /**
+     * Compiles the feature transformer of a network trained on a reduct projection. The cut points
+     * of the kept attributes are searched in the training set, whose statistics were cached by
+     * reduct selection, so the reduced data is not copied.
+     * 
+     * @param trainingSet - the data the network was trained on
+     * @param projection  - the reduct projection of the training set
+     * @param normalizer  - the normalizer of the network inputs, reading the reduced attributes
+     * @return            - the transformer, reading raw transaction indices
+     * @throws Exception if the cut points cannot be computed
+     */
+    public static FeatureTransformer compileTransformer(Dataset trainingSet, ProjectedDataset projection, InputNormalizer normalizer) throws Exception
+    {
+        // The projection keeps the class last
+        int keep[] = Arrays.copyOf(projection.getIndices(), projection.numAttributes() - 1);
+        
+        PresortedDiscretize discretizer = new PresortedDiscretize(trainingSet.getStatistics());
+        discretizer.setAttributeIndicesArray(keep);
+        discretizer.computeCutPoints(trainingSet.getInstances());
+        
+        return FeatureTransformer.compile(discretizer, keep).withNormalizer(normalizer.remap(projection.getIndices()));
+    }
+    
+    /**
+     * Saves a compiled feature transformer for scoring raw transactions.
+     * 
+     * @param transformer - the transformer, reading raw transaction indices
+     * @param path        - path to save the transformer to
+     */
+    public static void saveTransformer(FeatureTransformer transformer, String path)
+    {
         try
         {
-            neuralNetwork.setHiddenLayers(""+ trainingSet.numAttributes() + "," + trainingSet.numAttributes()/2);
-            neuralNetwork.buildClassifier(trainingSet.getInstances());
+            SerializationHelper.write(path, transformer);
+            System.out.println("Saved feature transformer to " + path);
         }
         catch(Exception e)
         {
-            System.err.println("Could not run classifier on training data: " + e.getMessage());
-            return null;
+            System.out.println("Could not save feature transformer");
         }
+    }
+    
+    /**
+     * Undersamples the majority class of the training set if enabled in the options. Runs before
+     * discretization and reduct selection so every later stage works on the smaller set.
+     * Test sets are never resampled.
+     * 
+     * @param trainingSet - the data to train the model on
+     * @param options     - the training pipeline options
+     * @return            - the undersampled training set, or the given set if undersampling is disabled
+     */
+    public static Dataset resampleTrainingSet(Dataset trainingSet, PipelineOptions options)
+    {
+        return resampleTrainingSet(trainingSet, options, 0);
+    }
+    
+    /**
+     * Undersamples the majority class of the training set of a fold if enabled in the options.
+     * The fold index is mixed into the seed, so each fold draws its own sample.
+     * 
+     * @param trainingSet - the data to train the model on
+     * @param options     - the training pipeline options
+     * @param fold        - the index of the fold the training set belongs to
+     * @return            - the undersampled training set, or the given set if undersampling is disabled
+     */
+    public static Dataset resampleTrainingSet(Dataset trainingSet, PipelineOptions options, int fold)
+    {
+        if(options.getUndersampleRatio() <= 0)
+            return trainingSet;
+        
+        return new ClassUndersampler(options.getUndersampleRatio(), options.getSeed()).apply(trainingSet, fold);
+    }
+    
+    /**
+     * Copies the training set onto the reduct attributes. With duplicate collapsing enabled,
+     * identical rows are merged into a single row weighted in proportion to the number of rows
+     * it replaces, with the weights normalized to a mean of 1 (see ProjectedDataset.materializeDistinct);
+     * only the training set is collapsed, evaluation always uses every test row.
+     * 
+     * @param projection - the reduct projection of the training set
+     * @param options    - the training pipeline options
+     * @return           - the reduced training set
+     */
+    public static Dataset reduceTrainingSet(ProjectedDataset projection, PipelineOptions options)
+    {
+        Metrics.Timer applyReduct = Metrics.start(Metrics.APPLY_REDUCT);
+        Dataset reducedTrain = options.collapseDuplicates() ? projection.materializeDistinct() : projection.materialize();
+        applyReduct.stop();
+        
+        return reducedTrain;
+    }
+    
+    /**
+     * Normalizes the training set on the reduct attributes for the neural network. The rows are
+     * read straight from the projection; only duplicate collapsing copies them first
+     * (see reduceTrainingSet).
+     * 
+     * @param projection - the reduct projection of the training set
+     * @param options    - the training pipeline options
+     * @return           - the normalized training set, or null if it could not be computed
+     */
+    public static NormalizedInputs prepareInputs(ProjectedDataset projection, PipelineOptions options)
+    {
+        if(options.collapseDuplicates())
+            return reduceTrainingSet(projection, options).getNormalizedInputs();
+        
+        Metrics.Timer applyReduct = Metrics.start(Metrics.APPLY_REDUCT);
+        NormalizedInputs inputs = projection.getNormalizedInputs();
+        applyReduct.stop();
+        
+        return inputs;
+    }
+    
+    /**
+     * Discretizes the training set and finds the reduct with the largest reduction in dimensionality.
+     * 
+     * @param trainingSet - the data to find the reduct for
+     * @param reductMode  - the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @return            - the reduct or null on failure
+     */
+    public static BitSet selectReduct(Dataset trainingSet, int reductMode)
+    {
+        // The discretize and reduct stages are timed by findReducts
+        System.out.println("Beginning discretization and reduct selection...");
+        BitSet reductBitSet = findReducts(trainingSet, trainingSet.getName() + "_discretized.arff", reductMode);
+        
+        if(reductBitSet == null)
+            System.err.println("Could not apply reducts: no reduct found");
+        
+        return reductBitSet;
+    }
+    
+    /**
+     * Creates a neural network with the given learning rate and momentum
+     * 
+     * @param learningRate - the learning rate for the model
+     * @param momentum     - the momentum for the model
+     * @return             - the (unbuilt) neural network
+     */
+    public static MultilayerPerceptron createNetwork(float learningRate, float momentum)
+    {
+        MultilayerPerceptron neuralNetwork = new MultilayerPerceptron();
+        neuralNetwork.setLearningRate(learningRate);
+        neuralNetwork.setMomentum(momentum);
+        
+        return neuralNetwork;
+    }
+    
+    /**
+     * Sets the hidden layers of the network according to the number of attributes in the training set
+     * 
+     * @param neuralNetwork - the network to configure
+     * @param trainingSet   - the (reduced) data the network will be trained on
+     */
+    public static void setHiddenLayers(MultilayerPerceptron neuralNetwork, Dataset trainingSet)
+    {
+        setHiddenLayers(neuralNetwork, trainingSet.numAttributes());
+    }
+    
+    /**
+     * Sets the hidden layers of the given network for training data with the given number of attributes
+     * 
+     * @param neuralNetwork - the network to configure
+     * @param numAttributes - the number of attributes of the training data, class included
+     */
+    public static void setHiddenLayers(MultilayerPerceptron neuralNetwork, int numAttributes)
+    {
+        neuralNetwork.setHiddenLayers(""+ numAttributes + "," + numAttributes/2);
+    }
+    
+    /**
+     * Divides the available processors between tasks that run at the same time, so that a task which
+     * starts threads of its own (see ShardedEvaluator) does not oversubscribe the machine
+     * 
+     * @param concurrentTasks - the number of tasks running at once
+     * @return                - the number of threads each task may use, at least 1
+     */
+    public static int threadBudget(int concurrentTasks)
+    {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, concurrentTasks));
+    }
+    
+    /**
+     * Tests and evaluates a built model on the given test set, sharded across the available processors
+     * 
+     * @param model   - the built model
+     * @param testSet - the (reduced) data to test the model on
+     * @return        - returns the evaluation for the model or null on failure
+     */
+    public static Evaluation evaluate(Classifier model, Dataset testSet)
+    {
+        return evaluate(model, testSet, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Tests and evaluates a built model on the given test set. The test set is split into shards that
+     * are classified in parallel (see ShardedEvaluator).
+     * 
+     * @param model      - the built model
+     * @param testSet    - the (reduced) data to test the model on
+     * @param numThreads - the largest number of shards, 1 to classify on the calling thread with the given model only
+     * @return           - returns the evaluation for the model or null on failure
+     */
+    public static Evaluation evaluate(Classifier model, Dataset testSet, int numThreads)
+    {
+        Evaluation eval;
+        Metrics.Timer evaluate = Metrics.start(Metrics.EVALUATE);
         
-        //  Test and evaluate model on testing data
         try
         {
-            eval  = new Evaluation(testSet.getInstances());
-            eval.evaluateModel(neuralNetwork, testSet.getInstances());
+            ShardedEvaluator evaluator = new ShardedEvaluator(model, numThreads);
+            eval = evaluator.evaluate(testSet.getInstances());
+            evaluate.stop();
+            Metrics.count("testInstances", testSet.numInstances());
             System.out.println("Testing evaluation: " + eval.pctCorrect() + "% Correct");
             System.out.println("                    " + eval.pctIncorrect() + "% Incorrect");
             return eval;
@@ -490,7 +1799,8 @@ public class TransactionClassifier
         System.out.println("    test-once <train> <test> <results> <learning-rate> <momentum> <reduct-mode>");
         System.out.println("          builds and trains a neural network on a training set and evaluates");
         System.out.println("          the model on the given testing set. Confusion matrix data is saved");
-        System.out.println("          in plain-text to the specified path");
+        System.out.println("          in plain-text to the specified path and the compiled feature transformer");
+        System.out.println("          to <results>_transformer.model");
         System.out.println("          train         : path to the .arff file containing the training data");
         System.out.println("          test          : path to the .arff file containing the testing data");
         System.out.println("          results       : path to save the confusion matrix data to");
@@ -499,7 +1809,7 @@ public class TransactionClassifier
         System.out.println("          reduct-mode   : the mode for reduct selection {1, 2}");
         System.out.println("                             1: Use discrenibility matrix of type M-All");
         System.out.println("                             2: Use discernibility matrix of type M-Dec\n");
-        System.out.println("    multi <dataset> <savepath> <results> <folds> <learning-rate> <momentum> <reduct-mode>");
+        System.out.println("    multi <dataset> <savepath> <results> <folds> <learning-rate> <momentum> <reduct-mode> [heap-budget]");
         System.out.println("          run cross-validation using concurrent threads");
         System.out.println("          dataset       : path to .arff file containing the target dataset");
         System.out.println("          savepath      : base path to save .arff files to");
@@ -508,6 +1818,83 @@ public class TransactionClassifier
         System.out.println("          learning-rate : the learning rate for backpropagation (0.0 - 1.0)");
         System.out.println("          momentum      : the momentum coefficient for backpropagation");
         System.out.println("          reduct-mode   : the mode for reduct selection {1, 2}");
+        System.out.println("          heap-budget   : optional heap in MB that concurrently running folds may use");
+        System.out.println("                          (default: 80% of the free heap)");
+        System.out.println("          the folds and finished stages are recorded in <savepath>_manifest.properties,");
+        System.out.println("          run again with " + PipelineOptions.RESUME + " to skip what an interrupted run already finished\n");
+        System.out.println("    cascade <train> <test> <results> <learning-rate> <momentum> <reduct-mode> <confidence>");
+        System.out.println("          same as test-once, but instances matching a confident rough set decision");
+        System.out.println("          rule on the reduct attributes are classified without the neural network.");
+        System.out.println("          The fraction of instances handled by each stage is appended to the results");
+        System.out.println("          and the compiled feature transformer is saved to <results>_transformer.model");
+        System.out.println("          confidence    : minimum fraction of matching training instances of the rule's class (0.0 - 1.0)");
+        System.out.println("    multi-process <dataset> <savepath> <results> <folds> <learning-rate> <momentum> <reduct-mode> <workers> [worker-heap]");
+        System.out.println("          same as multi, but every fold runs in one of <workers> separate JVMs with its own heap,");
+        System.out.println("          coordinated through the spool directory <savepath>_spool. A worker that dies is replaced");
+        System.out.println("          and its fold retried once. Results are saved as for repeated");
+        System.out.println("          worker-heap   : optional maximum heap of each worker in MB\n");
+        System.out.println("    repeated <dataset> <savepath> <results> <repeats> <folds> <learning-rate> <momentum> <reduct-mode>");
+        System.out.println("          run cross-validation <repeats> times, each with a different stratified split,");
+        System.out.println("          as one graph of tasks on a shared thread pool. Results of every fold are saved to");
+        System.out.println("          <results>_rep_r_fold_f and their sum to <results>_summary");
+        System.out.println("          repeats       : the number of repetitions (fold assignment seeded by " + PipelineOptions.SEED + " + repetition)\n");
+        System.out.println("    nested <dataset> <savepath> <results> <repeats> <outer-folds> <inner-folds> <learning-rates> <momentums> <reduct-mode>");
+        System.out.println("          nested cross-validation: the learning rate and momentum of each outer fold are chosen");
+        System.out.println("          by the positive class F-measure on inner folds of its training set. Discretization");
+        System.out.println("          and reducts of a training set are computed once and shared by every candidate");
+        System.out.println("          learning-rates : comma-separated learning rates to choose from");
+        System.out.println("          momentums      : comma-separated momentums to choose from (every combination is tried)");
+        System.out.println("\n    generate <savepath> <instances> <attributes> <numeric-share> <fraud-ratio> <duplicate-rate> <redundancy>");
+        System.out.println("          write a synthetic transaction dataset in .arff format for scale testing");
+        System.out.println("          savepath       : path of the .arff file to write");
+        System.out.println("          instances      : the number of instances (rows)");
+        System.out.println("          attributes     : the number of attributes, not counting the class");
+        System.out.println("          numeric-share  : share of the independent attributes that are numeric, the rest are nominal (0.0 - 1.0)");
+        System.out.println("          fraud-ratio    : share of instances in the fraud class (0.0 - 1.0)");
+        System.out.println("          duplicate-rate : share of instances that repeat an earlier instance (0.0 - 1.0)");
+        System.out.println("          redundancy     : share of attributes that are one-to-one functions of another attribute (0.0 - 1.0)");
+        System.out.println("          generated with " + PipelineOptions.SEED + " in chunks of " + PipelineOptions.CHUNK_SIZE + " instances (default: "
+                           + SyntheticDatasetGenerator.DEFAULT_CHUNK_SIZE + "), " + PipelineOptions.BINARY_CACHE + " also writes the binary cache");
+        System.out.println("\n    bench <savepath> <results> <instances> <folds> <threads> <attributes> <learning-rate> <momentum> <reduct-mode>");
+        System.out.println("          run multi mode on generated datasets for every combination of the listed sizes, fold");
+        System.out.println("          counts and thread counts, recording wall time, CPU time, peak heap and stage timings.");
+        System.out.println("          Runs are saved to <results>_bench.csv, strong and weak scaling tables to");
+        System.out.println("          <results>_strong_scaling.txt and <results>_weak_scaling.txt");
+        System.out.println("          instances  : comma-separated dataset sizes (weak scaling grows the smallest with the threads)");
+        System.out.println("          folds      : comma-separated fold counts");
+        System.out.println("          threads    : comma-separated numbers of folds run at once");
+        System.out.println("          attributes : the number of attributes of the generated datasets");
+        System.out.println("\n    reevaluate <results> <cost-fp> <cost-fn> [threshold]");
+        System.out.println("          evaluate the predictions stored with the results of every fold (<results>*.preds)");
+        System.out.println("          again without retraining: AUC of each fold and of all folds, the counts at the given");
+        System.out.println("          threshold and the threshold with the lowest cost. Saved to <results>_reevaluation,");
+        System.out.println("          with the ROC and precision-recall curves in <results>_roc.csv and <results>_pr.csv");
+        System.out.println("          results   : base path the results of the run were saved to");
+        System.out.println("          cost-fp   : the cost of a false positive");
+        System.out.println("          cost-fn   : the cost of a false negative");
+        System.out.println("          threshold : fraud probability above which an instance is classified as fraud");
+        System.out.println("                      (default: 0.5, which matches the saved confusion matrices)");
+        System.out.println("\n    options (all modes):");
+        System.out.println("          " + PipelineOptions.METRICS + "=<path>");
+        System.out.println("                save stage timings, counters, thread and heap usage to <path>.json and <path>.csv");
+        System.out.println("          " + PipelineOptions.BINARY_CACHE);
+        System.out.println("                write a binary cache next to every dataset file loaded or saved, and keep the");
+        System.out.println("                cache split mode loads through (default: no cache is written beside datasets,");
+        System.out.println("                split uses a temporary one beside the fold files)");
+        System.out.println("\n    options (split):");
+        System.out.println("          " + PipelineOptions.CHUNK_SIZE + "=<n>");
+        System.out.println("                stream the dataset in chunks of n instances and split the chunks in parallel,");
+        System.out.println("                for datasets that do not fit in memory (shuffled with " + PipelineOptions.SEED + ")");
+        System.out.println("\n    options (test-once, multi, cascade, repeated, nested):");
+        System.out.println("          " + PipelineOptions.COLLAPSE_DUPLICATES);
+        System.out.println("                merge identical rows of the reduced training set into one weighted row");
+        System.out.println("          " + PipelineOptions.UNDERSAMPLE + "=<ratio>");
+        System.out.println("                keep <ratio> majority class instances per minority instance in training sets");
+        System.out.println("          " + PipelineOptions.SEED + "=<n>");
+        System.out.println("                seed for undersampling (default: " + PipelineOptions.DEFAULT_SEED + ")");
+        System.out.println("\n    options (multi):");
+        System.out.println("          " + PipelineOptions.THREADS + "=<n>");
+        System.out.println("                run at most n folds at once (default: as many as the heap budget admits)\n");
         System.out.println("    help");
         System.out.println("          displays usage information");
         System.out.println("Author: Jordan Moreno-Lacalle");
@@ -524,33 +1911,8 @@ public class TransactionClassifier
      */
     public static Dataset applyReduct(BitSet reduct, Dataset dataset) throws Exception
     {
-        // The indices to be kept
-        int indices[] = new int[reduct.cardinality() + 1];
-
-        int index = 0;
-        
-        // Add reduct attribute indices to indices array
-        for(int i = 0; i < dataset.numAttributes(); i++)
-        {
-            if(reduct.get(i) || i == dataset.classIndex())
-            {
-                    indices[index] = i;
-                    index++; 
-            }
-        }
-        
-        /**
-         * Remove all attributes that are not part of the reduct
-         */
-        Remove removeReduct = new Remove();
-        removeReduct.setAttributeIndicesArray(indices);
-        // Invert selection because we want to KEEP the attributes in indices
-        removeReduct.setInvertSelection(true);
-        removeReduct.setInputFormat(dataset.getInstances());
-        Dataset modifiedData = new Dataset(Filter.useFilter(dataset.getInstances(), removeReduct));
-        modifiedData.setClassIndex(modifiedData.numAttributes() - 1);
-        
-        return modifiedData;
+        // Copy the reduct attributes in a single pass instead of running the Remove filter
+        return new ProjectedDataset(dataset, reduct).materialize();
     }
     
     /**
@@ -576,7 +1938,7 @@ public class TransactionClassifier
             }
         }
         
-        return new Dataset(trainingSet);
+        return Dataset.adopt(trainingSet);
     }
     
     /**
@@ -591,46 +1953,44 @@ public class TransactionClassifier
      */
     public static String[] splitData(DatasetSplitter splitter, Dataset dataset, int numFolds, String path, boolean saveCombined)
     {
-        String paths[] = new String[numFolds];
-        splitter = new DatasetSplitter(dataset.getInstances());
-
+        splitter = new DatasetSplitter(dataset);
+        
+        return splitData(splitter, numFolds, path, saveCombined);
+    }
+    
+    /**
+     * Splits the data of the given splitter across several folds. The data in each fold is saved
+     * to path_fold_i.arff where i is the fold number and path is the given base
+     * path. Only the row assignment is kept on the heap, each file is written straight from the
+     * splitter's rows.
+     * 
+     * @param splitter The splitter holding the data to be split
+     * @param numFolds The number of folds
+     * @param path     The base path to save fold data to
+     * @return returns paths to fold files
+     */
+    public static String[] splitData(DatasetSplitter splitter, int numFolds, String path, boolean saveCombined)
+    {
+        Metrics.Timer split = Metrics.start(Metrics.SPLIT);
         splitter.initFolds(numFolds);
         System.out.print("Splitting dataset...");
-        splitter.splitData();
+        int foldRows[][] = splitter.assignRows();
         System.out.println("Done.");
+        split.stop();
+        
+        if(splitter.getNumSkipped() > 0)
+            System.out.println(splitter.getNumSkipped() + " instances with a missing class were left out of the folds");
         
         if(saveCombined)
             System.out.println("Saving individual and combined files...");
         else
             System.out.println("Saving individual files only...");
         
-        ArrayList<Dataset> folds = splitter.getFolds();
-        
-        /**
-         * Save each fold's data individually AND combined datasets
-         */
-        for (int i = 0; i < folds.size(); i++)
-        {
-            String foldPath = path + "_fold_" + i + ".arff";
-            
-            try
-            {
-                DataSink.write(foldPath, folds.get(i).getInstances());
-                paths[i] = foldPath;
-                //folds.get(i).loadData(foldPath);
-                if(saveCombined)
-                {
-                    ArrayList<Dataset> foldsCopy = new ArrayList<>(folds);
-                    foldsCopy.remove(i);
-                    
-                    DataSink.write(path + "_combined_excludes_" + i + ".arff", makeTrainingSet(foldsCopy).getInstances());
-                }
-            }
-            catch (Exception e)
-            {
-                e.printStackTrace();
-            }
-        }
+        // Each fold file and combined file is written by its own task, combined files are streamed from the folds
+        Metrics.Timer save = Metrics.start(Metrics.SAVE);
+        FoldExporter exporter = new FoldExporter(splitter.getRowSource(), foldRows, path, Runtime.getRuntime().availableProcessors());
+        String paths[] = exporter.write(saveCombined);
+        save.stop();
         
         return paths;
     }
@@ -648,7 +2008,7 @@ public class TransactionClassifier
 
         try
         {
-            dataset.data.setClassIndex(classIndex);
+            dataset.setClassIndex(classIndex);
             dataset.discretize(path);
         } catch (Exception e)
         {
@@ -666,75 +2026,56 @@ public class TransactionClassifier
      * @return BitSet representing the most minimal reduct
      */
     public static BitSet findReducts(Dataset dataset, String discPath, int reductMode)
+    {
+        if(!discretizeForReducts(dataset, discPath))
+            return null;
+        
+        return findDiscretizedReducts(dataset, discPath, reductMode);
+    }
+    
+    /**
+     * Discretizes the given dataset and saves it to the file its reducts are found on
+     * 
+     * @param dataset The dataset to discretize
+     * @param discPath The path to save the discretized data to
+     * @return boolean - true if the discretized data was saved
+     */
+    public static boolean discretizeForReducts(Dataset dataset, String discPath)
     {
         // Discretize the data and save to a new file, this file will be loaded again and used to compute reducts
-        long discStart = System.nanoTime();
+        Metrics.Timer discretize = Metrics.start(Metrics.DISCRETIZE);
         if(null == dataset.discretize(discPath))
         {
             System.err.println("Could not discretize data");
-            return null;
+            return false;
         }
-        long discEnd = System.nanoTime();
-        System.out.println("Discretization took: " + (discEnd - discStart)/1000000);
+        System.out.println("Discretization took: " + discretize.stop());
+        
+        return true;
+    }
+    
+    /**
+     * Finds and returns the most minimal reduct of a dataset that was already discretized
+     * 
+     * @param dataset The dataset to find a reduct for
+     * @param discPath The path the discretized data was saved to (see discretizeForReducts)
+     * @param reductMode The type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @return BitSet representing the most minimal reduct
+     */
+    public static BitSet findDiscretizedReducts(Dataset dataset, String discPath, int reductMode)
+    {
         /*
          * rseslib uses a different file format than WEKA, so data loading must be
-         * handled separately for reduct selection.
+         * handled separately for reduct selection. Each call gets its own context, so
+         * concurrent folds share no rseslib output state.
          */
-        try
-        {
-            // Setup console output for rseslib methods
-            StandardOutput consoleStd = new StandardOutput();
-            StandardErrorOutput consoleErr = new StandardErrorOutput();
-            Report.addInfoOutput(consoleStd);
-            Report.addErrorOutput(consoleErr);
-
-            // Prepare reduct provider with appropriate properties
-            Properties properties = new Properties();
-            InputStream fileStream;
-
-            //if(reductMode == 1)
-            //    fileStream = TransactionClassifier.class.getResourceAsStream("/discernibility-matrix-all.properties");
-            //else
-            if(reductMode == 2)
-            {
-                fileStream = TransactionClassifier.class.getResourceAsStream("/discernibility-matrix-dec.properties");
-                properties.load(fileStream);
-            }
-            else
-            {
-                properties = null;
-            }
-                            
-            DoubleDataTable table = new ArrayListDoubleDataTable(new File(discPath), new StdOutProgress());
-            //AllGlobalReductsProvider reductsProvider = new AllGlobalReductsProvider(null, table);
-            AllGlobalReductsProvider reductsProvider = new AllGlobalReductsProvider(properties, table);
-            
-            // Get reducts
-            System.out.println("Finding reducts...");
-            long reductStart = System.nanoTime();
-            Collection<BitSet> reducts = reductsProvider.getReducts();
-            long reductEnd = System.nanoTime();
-            System.out.println("THREAD: " + Thread.currentThread().getId() + " -Finding reducts took: " + (reductEnd - reductStart)/1000000);
-            
-            // Get the first reduct (it offers the most reduction in dimensionality)
-            Object reductsArray[] = reducts.toArray();
-            ArrayList<BitSet> reductsList = new ArrayList<BitSet>();
-            reductsList.add((BitSet) reductsArray[0]);
-            BitSet firstReduct = reductsList.get(0);
-
-            // Print all selected reduct and all possible reducts
-            System.out.println(firstReduct);
-            Report.displaynl(reducts);
-            Report.close();
-            System.out.println();
-            
-            return firstReduct;
-        } 
-        catch (Exception e)
-        {
-            System.out.println("Could not compute reducts");
-            System.err.println(e.getMessage());
-            return null;
-        }
+        ReductContext context = new ReductContext(dataset.getName() != null ? dataset.getName() : discPath);
+        System.out.println("Finding reducts...");
+        Metrics.Timer reduct = Metrics.start(Metrics.REDUCT);
+        BitSet firstReduct = context.findReduct(discPath, reductMode);
+        context.log("Finding reducts took: " + reduct.stop());
+        context.flush();
+        
+        return firstReduct;
     }
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.jordanml.TransactionClassifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import weka.classifiers.Evaluation;
+import weka.core.SerializationHelper;
+
+/**
+ * Runs cross validation folds in a pool of local worker JVMs, so every fold
+ * gets its own heap and garbage collector and no static Weka or rseslib state
+ * is shared between folds. The coordinator and the workers communicate
+ * through a spool directory:
+ *
+ *     pending/  - task files waiting for a worker
+ *     running/  - task files claimed by a worker (renamed to task.worker-id)
+ *     done/     - finished task files and their serialized Evaluations
+ *     failed/   - task files that failed on every attempt, and the reason of
+ *                 each failure a worker reported (task.error)
+ *     logs/     - the output of each worker
+ *
+ * A worker claims a task by renaming it from pending/ to running/, which only
+ * one worker can do. If a worker dies its claimed tasks go back to pending/
+ * and a replacement worker is started, until a task has used all its attempts.
+ */
+public class WorkerPool
+{
+    /**
+     * PENDING, RUNNING, DONE, FAILED, LOGS - the subdirectories of the spool directory
+     * TASK_SUFFIX - the extension of task files
+     * RESULT_SUFFIX - the extension of serialized Evaluations
+     * ERROR_SUFFIX - the extension of the reason a task failed
+     * MAX_ATTEMPTS - the number of times a task is started before it counts as failed
+     * POLL_INTERVAL - milliseconds between checks on the workers
+     */
+    public static final String PENDING = "pending";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final String LOGS = "logs";
+    public static final String TASK_SUFFIX = ".task";
+    public static final String RESULT_SUFFIX = ".eval";
+    public static final String ERROR_SUFFIX = ".error";
+    private static final int MAX_ATTEMPTS = 2;
+    private static final long POLL_INTERVAL = 500;
+
+    /**
+     * spoolDir - the spool directory
+     * numWorkers - the number of worker JVMs run at the same time
+     * workerHeapMB - the maximum heap of each worker in MB, 0 for the JVM default
+     * options - the training pipeline options, passed to every worker
+     * nextWorkerId - the id of the next worker started
+     */
+    private File spoolDir;
+    private int numWorkers;
+    private int workerHeapMB;
+    private PipelineOptions options;
+    private int nextWorkerId = 0;
+
+    /**
+     * Constructor
+     *
+     * @param spoolDir     the spool directory (created if missing)
+     * @param numWorkers   the number of worker JVMs run at the same time
+     * @param workerHeapMB the maximum heap of each worker in MB, 0 for the JVM default
+     * @param options      the training pipeline options
+     */
+    public WorkerPool(String spoolDir, int numWorkers, int workerHeapMB, PipelineOptions options)
+    {
+        this.spoolDir = new File(spoolDir);
+        this.numWorkers = Math.max(1, numWorkers);
+        this.workerHeapMB = workerHeapMB;
+        this.options = options;
+    }
+
+    /**
+     * Removes the task, result and log files of an earlier run from the spool
+     * directory
+     */
+    public void clear()
+    {
+        for (String name : Arrays.asList(PENDING, RUNNING, DONE, FAILED, LOGS))
+        {
+            File files[] = dir(name).listFiles();
+
+            if (files == null)
+                continue;
+
+            for (File file : files)
+            {
+                if (file.isFile() && !file.delete())
+                    System.err.println("Could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Adds a fold task to the spool
+     *
+     * @param fold         the fold number
+     * @param trainPath    path to the fold's training set
+     * @param testPath     path to the fold's test set
+     * @param name         base name for files written for this fold
+     * @param learningRate the learning rate for backpropagation
+     * @param momentum     the momentum for backpropagation
+     * @param reductMode   the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @throws IOException if the task file cannot be written
+     */
+    public void submit(int fold, String trainPath, String testPath, String name, float learningRate, float momentum, int reductMode) throws IOException
+    {
+        createDirectories();
+
+        Properties task = new Properties();
+        task.setProperty("fold", Integer.toString(fold));
+        task.setProperty("train", trainPath);
+        task.setProperty("test", testPath);
+        task.setProperty("name", name);
+        task.setProperty("learningRate", Float.toString(learningRate));
+        task.setProperty("momentum", Float.toString(momentum));
+        task.setProperty("reductMode", Integer.toString(reductMode));
+        // Workers running together share the processors when they classify their test sets
+        task.setProperty("threads", Integer.toString(TransactionClassifier.threadBudget(numWorkers)));
+        task.setProperty("attempts", "0");
+
+        // Written under another name first so no worker claims a partial file
+        File temporary = new File(dir(PENDING), taskName(fold) + ".tmp");
+        writeTask(task, temporary);
+        Files.move(temporary.toPath(), new File(dir(PENDING), taskName(fold) + TASK_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Runs the workers until every task is done or has failed
+     *
+     * @param numFolds the number of submitted folds
+     * @return the result of every fold in fold order, with a null Evaluation for failed folds
+     * @throws IOException if a worker cannot be started
+     * @throws InterruptedException
+     */
+    public List<CrossValidationScheduler.FoldResult> run(int numFolds) throws IOException, InterruptedException
+    {
+        createDirectories();
+
+        ArrayList<Process> workers = new ArrayList<Process>();
+        ArrayList<Integer> workerIds = new ArrayList<Integer>();
+        String lastStatus = null;
+
+        for (int i = 0; i < Math.min(numWorkers, countTasks(PENDING)); i++)
+        {
+            workerIds.add(nextWorkerId);
+            workers.add(startWorker(nextWorkerId++));
+        }
+
+        while (!workers.isEmpty())
+        {
+            Thread.sleep(POLL_INTERVAL);
+
+            for (int i = workers.size() - 1; i >= 0; i--)
+            {
+                if (workers.get(i).isAlive())
+                    continue;
+
+                int exitCode = workers.get(i).exitValue();
+                int workerId = workerIds.get(i);
+                workers.remove(i);
+                workerIds.remove(i);
+
+                if (exitCode != 0)
+                {
+                    System.err.println("Worker " + workerId + " exited with code " + exitCode + ", see " + logFile(workerId));
+                    requeue(workerId);
+                }
+            }
+
+            // Replace workers that exited while tasks are still waiting
+            while (workers.size() < numWorkers && workers.size() < countTasks(PENDING))
+            {
+                workerIds.add(nextWorkerId);
+                workers.add(startWorker(nextWorkerId++));
+            }
+
+            String status = "Workers: " + workers.size() + ", pending: " + countTasks(PENDING) + ", running: " + countTasks(RUNNING) + ", done: " + countTasks(DONE) + ", failed: " + countTasks(FAILED);
+
+            if (!status.equals(lastStatus))
+                System.out.println(status);
+
+            lastStatus = status;
+        }
+
+        return collect(numFolds);
+    }
+
+    /**
+     * Reads the serialized Evaluation of every finished fold
+     *
+     * @param numFolds the number of submitted folds
+     * @return the result of every fold in fold order, with a null Evaluation for failed folds
+     */
+    public List<CrossValidationScheduler.FoldResult> collect(int numFolds)
+    {
+        ArrayList<CrossValidationScheduler.FoldResult> results = new ArrayList<CrossValidationScheduler.FoldResult>();
+
+        for (int fold = 0; fold < numFolds; fold++)
+        {
+            File result = new File(dir(DONE), taskName(fold) + RESULT_SUFFIX);
+            Evaluation evaluation = null;
+
+            if (result.exists())
+            {
+                try
+                {
+                    evaluation = (Evaluation) SerializationHelper.read(result.getPath());
+                }
+                catch (Exception e)
+                {
+                    System.err.println("Could not read result " + result + ": " + e.getMessage());
+                }
+            }
+            else
+            {
+                String error = getError(fold);
+                System.err.println("Fold " + fold + " failed" + (error != null ? ": " + error : ""));
+            }
+
+            results.add(new CrossValidationScheduler.FoldResult(0, fold, null, evaluation));
+        }
+
+        return results;
+    }
+
+    /**
+     * Gets the reason a worker reported for a failed fold
+     *
+     * @param fold the fold number
+     * @return the reason (the stack trace if the worker threw an exception), or null if none was reported
+     */
+    public String getError(int fold)
+    {
+        File error = new File(dir(FAILED), taskName(fold) + ERROR_SUFFIX);
+
+        try
+        {
+            return error.exists() ? new String(Files.readAllBytes(error.toPath()), StandardCharsets.UTF_8) : null;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a worker JVM on the same class path, logging to logs/worker-id.log
+     *
+     * @param workerId the id of the worker
+     * @return the worker process
+     * @throws IOException
+     */
+    private Process startWorker(int workerId) throws IOException
+    {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+
+        if (workerHeapMB > 0)
+            command.add("-Xmx" + workerHeapMB + "m");
+
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TransactionClassifier.class.getName());
+        command.add("worker");
+        command.add(spoolDir.getPath());
+        command.add(Integer.toString(workerId));
+        command.addAll(options.toArguments());
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile(workerId)));
+
+        System.out.println("Starting worker " + workerId);
+
+        return builder.start();
+    }
+
+    /**
+     * Moves the tasks claimed by a dead worker back to pending/, or to failed/
+     * once they have used all their attempts
+     *
+     * @param workerId the id of the worker
+     * @throws IOException
+     */
+    private void requeue(int workerId) throws IOException
+    {
+        File claimed[] = dir(RUNNING).listFiles();
+
+        if (claimed == null)
+            return;
+
+        for (File file : claimed)
+        {
+            if (!file.getName().endsWith(TASK_SUFFIX + "." + workerId))
+                continue;
+
+            String taskFile = file.getName().substring(0, file.getName().length() - ("." + workerId).length());
+            Properties task = readTask(file);
+            int attempts = Integer.parseInt(task.getProperty("attempts", "0")) + 1;
+            task.setProperty("attempts", Integer.toString(attempts));
+            writeTask(task, file);
+
+            String target = attempts < MAX_ATTEMPTS ? PENDING : FAILED;
+            Files.move(file.toPath(), new File(dir(target), taskFile).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            System.err.println("Task " + taskFile + " moved back to " + target + " after " + attempts + " attempt(s)");
+        }
+    }
+
+    private void createDirectories() throws IOException
+    {
+        for (String name : Arrays.asList(PENDING, RUNNING, DONE, FAILED, LOGS))
+        {
+            if (!dir(name).isDirectory() && !dir(name).mkdirs())
+                throw new IOException("Could not create " + dir(name));
+        }
+    }
+
+    private int countTasks(String state)
+    {
+        File files[] = dir(state).listFiles();
+        int count = 0;
+
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.getName().contains(TASK_SUFFIX))
+                    count++;
+            }
+        }
+
+        return count;
+    }
+
+    private File dir(String state)
+    {
+        return new File(spoolDir, state);
+    }
+
+    private File logFile(int workerId)
+    {
+        return new File(dir(LOGS), "worker-" + workerId + ".log");
+    }
+
+    /**
+     * Gets the file name (without extension) of a fold's task
+     *
+     * @param fold the fold number
+     * @return the task name
+     */
+    public static String taskName(int fold)
+    {
+        return "fold_" + fold;
+    }
+
+    /**
+     * Reads a task file
+     *
+     * @param file the task file
+     * @return the task properties
+     * @throws IOException
+     */
+    public static Properties readTask(File file) throws IOException
+    {
+        Properties task = new Properties();
+
+        try (InputStream in = new FileInputStream(file))
+        {
+            task.load(in);
+        }
+
+        return task;
+    }
+
+    /**
+     * Writes a task file
+     *
+     * @param task the task properties
+     * @param file the task file
+     * @throws IOException
+     */
+    public static void writeTask(Properties task, File file) throws IOException
+    {
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            task.store(out, "Cross validation fold task");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.AttributeStatistics;
+import com.jordanml.TransactionClassifier.ColumnarDataset;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.AttributeStats;
+import weka.core.Instances;
+
+/**
+ * JUnit test class for the AttributeStatistics class.
+ *
+ */
+public class AttributeStatisticsTest
+{
+
+    static Instances data;
+    static AttributeStatistics statistics;
+
+    /**
+     * Generates a mixed numeric/nominal dataset with duplicates, missing values
+     * and weights, and computes its statistics on two threads
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(400, 6, 1);
+        generator.setNumericShare(0.6);
+        generator.setFraudRatio(0.3);
+        generator.setDuplicateRate(0.2);
+        data = new Instances(TestData.generate("statistics", generator));
+
+        for (int i = 0; i < data.numInstances(); i += 9)
+        {
+            data.instance(i).setMissing(i % (data.numAttributes() - 1));
+            data.instance(i).setWeight(2);
+        }
+
+        statistics = new AttributeStatistics(ColumnarDataset.fromInstances(data), 2);
+    }
+
+    /**
+     * Test that the statistics of every attribute match WEKA's
+     */
+    @Test
+    public void testMatchesAttributeStats()
+    {
+        assertEquals(data.numInstances(), statistics.numInstances());
+        assertArrayEquals(data.attributeStats(data.classIndex()).nominalCounts, statistics.classCounts());
+
+        for (int col = 0; col < data.numAttributes(); col++)
+        {
+            AttributeStats expected = data.attributeStats(col);
+
+            assertEquals(expected.totalCount - expected.missingCount, statistics.numPresent(col));
+
+            if (data.attribute(col).isNominal())
+            {
+                assertArrayEquals(expected.nominalCounts, statistics.valueCounts(col));
+                continue;
+            }
+
+            assertNull(statistics.valueCounts(col));
+            assertEquals(expected.numericStats.min, statistics.min(col), 0);
+            assertEquals(expected.numericStats.max, statistics.max(col), 0);
+            assertEquals(expected.numericStats.mean, statistics.mean(col), 1e-9);
+            assertEquals(expected.numericStats.stdDev * expected.numericStats.stdDev, statistics.variance(col), 1e-6);
+        }
+    }
+
+    /**
+     * Test that the sorted orders list the instances with a value in ascending
+     * order, ties in instance order, followed by the missing ones
+     */
+    @Test
+    public void testSortedIndices()
+    {
+        for (int col = 0; col < data.numAttributes(); col++)
+        {
+            int order[] = statistics.sortedIndices(col);
+
+            if (data.attribute(col).isNominal())
+            {
+                assertNull(order);
+                continue;
+            }
+
+            assertEquals(data.numInstances(), order.length);
+
+            for (int i = 1; i < order.length; i++)
+            {
+                double previous = data.instance(order[i - 1]).value(col);
+                double current = data.instance(order[i]).value(col);
+
+                if (i < statistics.numPresent(col))
+                {
+                    assertTrue(previous <= current);
+
+                    if (previous == current)
+                        assertTrue(order[i - 1] < order[i]);
+                }
+                else
+                {
+                    assertTrue(data.instance(order[i]).isMissing(col));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that projected statistics are those of the chosen attributes
+     */
+    @Test
+    public void testProject()
+    {
+        int indices[] = { 3, 0, data.classIndex() };
+        AttributeStatistics projected = statistics.project(indices);
+
+        assertEquals(statistics.numInstances(), projected.numInstances());
+        assertSame(statistics.classCounts(), projected.classCounts());
+
+        for (int col = 0; col < indices.length; col++)
+        {
+            assertEquals(statistics.numPresent(indices[col]), projected.numPresent(col));
+            assertEquals(statistics.mean(indices[col]), projected.mean(col), 0);
+            assertSame(statistics.sortedIndices(indices[col]), projected.sortedIndices(col));
+            assertSame(statistics.valueCounts(indices[col]), projected.valueCounts(col));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.BinaryDatasetCache;
+import com.jordanml.TransactionClassifier.ColumnarDataset;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.OffHeapDataset;
+import com.jordanml.TransactionClassifier.RowSource;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+
+/**
+ * JUnit test class for the BinaryDatasetCache class.
+ *
+ */
+public class BinaryDatasetCacheTest
+{
+
+    static String sourcePath;
+    static Instances source;
+
+    /**
+     * Writes a mixed numeric/nominal dataset with missing values and weights
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(500, 6, 1);
+        generator.setNumericShare(0.5);
+        sourcePath = TestData.write("cache", generator);
+        source = new Instances(TestData.load(sourcePath).getInstances());
+
+        for (int i = 0; i < source.numInstances(); i += 7)
+        {
+            source.instance(i).setMissing(i % source.numAttributes());
+            source.instance(i).setWeight(2.5);
+        }
+    }
+
+    /**
+     * Test that reading the cache gives back every value, weight and the class index
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        BinaryDatasetCache.write(sourcePath, ColumnarDataset.fromInstances(source));
+
+        assertTrue(BinaryDatasetCache.isValid(sourcePath));
+        assertSameData(BinaryDatasetCache.read(sourcePath));
+    }
+
+    /**
+     * Test that mapping the cache gives back every value, weight and the class index
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRoundTripMapped() throws Exception
+    {
+        BinaryDatasetCache.write(sourcePath, ColumnarDataset.fromInstances(source));
+        OffHeapDataset mapped = BinaryDatasetCache.map(sourcePath);
+
+        assertSameData(mapped);
+    }
+
+    /**
+     * Test that writing again replaces the cache and leaves no temporary files behind
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRewrite() throws Exception
+    {
+        BinaryDatasetCache.write(sourcePath, ColumnarDataset.fromInstances(source));
+        BinaryDatasetCache.write(sourcePath, ColumnarDataset.fromInstances(source));
+
+        File cache = new File(BinaryDatasetCache.cachePath(sourcePath)).getAbsoluteFile();
+        File leftover[] = cache.getParentFile().listFiles();
+
+        for (File file : leftover)
+            assertFalse(file.getName(), file.getName().startsWith(cache.getName() + ".") && file.getName().endsWith(".tmp"));
+
+        assertSameData(BinaryDatasetCache.read(sourcePath));
+    }
+
+    /**
+     * Test that a cache no longer matches a source file that changed
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testInvalidAfterChange() throws Exception
+    {
+        BinaryDatasetCache.write(sourcePath, ColumnarDataset.fromInstances(source));
+        new File(sourcePath).setLastModified(new File(sourcePath).lastModified() - 10000);
+
+        assertFalse(BinaryDatasetCache.isValid(sourcePath));
+    }
+
+    /**
+     * Test that loading through the cache gives the same data and class index as parsing
+     */
+    @Test
+    public void testLoadMatchesParse() throws Exception
+    {
+        new File(BinaryDatasetCache.cachePath(sourcePath)).delete();
+        Dataset parsed = new Dataset(sourcePath);
+
+        // A cache written from data with the class index set
+        Instances withClass = new Instances(parsed.getInstances());
+        withClass.setClassIndex(withClass.numAttributes() - 1);
+        BinaryDatasetCache.write(sourcePath, ColumnarDataset.fromInstances(withClass));
+
+        assertTrue(BinaryDatasetCache.isValid(sourcePath));
+        Dataset cached = new Dataset(sourcePath);
+
+        assertEquals(-1, parsed.classIndex());
+        assertEquals(parsed.classIndex(), cached.classIndex());
+        assertEquals(parsed.numInstances(), cached.numInstances());
+
+        for (int i = 0; i < parsed.numInstances(); i++)
+            assertEquals(parsed.getInstances().instance(i).toString(), cached.getInstances().instance(i).toString());
+    }
+
+    /**
+     * Test that loading and saving only write the cache when it is enabled
+     */
+    @Test
+    public void testCacheWrittenWhenEnabled()
+    {
+        File cache = new File(BinaryDatasetCache.cachePath(sourcePath));
+        cache.delete();
+
+        Dataset dataset = new Dataset(sourcePath);
+        assertFalse(cache.exists());
+        dataset.saveFile(sourcePath);
+        assertFalse(cache.exists());
+
+        Dataset.setBinaryCache(true);
+        try
+        {
+            new Dataset(sourcePath);
+            assertTrue(BinaryDatasetCache.isValid(sourcePath));
+
+            cache.delete();
+            dataset.saveFile(sourcePath);
+            assertTrue(BinaryDatasetCache.isValid(sourcePath));
+        }
+        finally
+        {
+            Dataset.setBinaryCache(false);
+        }
+    }
+
+    /**
+     * Test that the streaming writer produces the same cache as writing from the heap
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteStreaming() throws Exception
+    {
+        Instances parsed = new Dataset(sourcePath).getInstances();
+
+        BinaryDatasetCache.writeStreaming(sourcePath, 64, 2);
+        ColumnarDataset streamed = BinaryDatasetCache.read(sourcePath);
+
+        assertEquals(parsed.numInstances(), streamed.numInstances());
+
+        for (int row = 0; row < parsed.numInstances(); row++)
+        {
+            for (int col = 0; col < parsed.numAttributes(); col++)
+                assertEquals(parsed.instance(row).value(col), streamed.value(row, col), 0.0);
+        }
+    }
+
+    /**
+     * Checks that cached data holds the same values, weights and class index as the source
+     *
+     * @param cached the data read from the cache
+     */
+    private static void assertSameData(RowSource cached)
+    {
+        assertEquals(source.numInstances(), cached.numInstances());
+        assertEquals(source.numAttributes(), cached.numAttributes());
+        assertEquals(source.classIndex(), cached.classIndex());
+
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            assertEquals(source.instance(row).weight(), cached.weight(row), 0.0);
+
+            for (int col = 0; col < source.numAttributes(); col++)
+            {
+                if (source.instance(row).isMissing(col))
+                    assertTrue(Double.isNaN(cached.value(row, col)));
+                else
+                    assertEquals(source.instance(row).value(col), cached.value(row, col), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.CascadeClassifier;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.TransactionClassifier;
+
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+
+/**
+ * JUnit test class for the CascadeClassifier class.
+ *
+ */
+public class CascadeClassifierTest
+{
+
+    static Instances train;
+    static Instances test;
+
+    /**
+     * Generates a small mixed dataset with duplicate rows and splits it into a
+     * training and a test set
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(1500, 5, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        generator.setDuplicateRate(0.3);
+
+        Instances data = TestData.generate("cascade", generator);
+        train = new Instances(data, 0, 1000);
+        test = new Instances(data, 1000, data.numInstances() - 1000);
+    }
+
+    /**
+     * Test that every instance is classified by exactly one stage and gets a
+     * class distribution
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testClassify() throws Exception
+    {
+        CascadeClassifier cascade = new CascadeClassifier(network(), 0.9, 5);
+        cascade.buildClassifier(train);
+
+        for (int i = 0; i < test.numInstances(); i++)
+        {
+            double distribution[] = cascade.distributionForInstance(test.instance(i));
+            assertEquals(test.numClasses(), distribution.length);
+            assertEquals(1.0, distribution[0] + distribution[1], 1e-6);
+        }
+
+        assertEquals(test.numInstances(), cascade.getRuleCount() + cascade.getNetworkCount());
+        assertTrue(cascade.getRuleCount() > 0);
+        assertTrue(cascade.getNetworkCount() > 0);
+    }
+
+    /**
+     * Test that every training pattern becomes a rule without support and
+     * confidence thresholds and that no rule is used when no rule can be
+     * confident enough
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testThresholds() throws Exception
+    {
+        CascadeClassifier everyPattern = new CascadeClassifier(network(), 0, 1);
+        everyPattern.buildClassifier(train);
+
+        for (int i = 0; i < train.numInstances(); i++)
+            everyPattern.distributionForInstance(train.instance(i));
+
+        assertEquals(train.numInstances(), everyPattern.getRuleCount());
+
+        CascadeClassifier noPattern = new CascadeClassifier(network(), 1.1, 1);
+        noPattern.buildClassifier(train);
+
+        for (int i = 0; i < test.numInstances(); i++)
+            noPattern.distributionForInstance(test.instance(i));
+
+        assertEquals(0, noPattern.getRuleCount());
+        assertEquals(test.numInstances(), noPattern.getNetworkCount());
+    }
+
+    /**
+     * Test that the rule stage bins instances with the cut points WEKA's
+     * Discretize finds on the training data
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesDiscretize() throws Exception
+    {
+        CascadeClassifier cascade = new CascadeClassifier(network(), 0.9, 5);
+        cascade.buildClassifier(train);
+
+        Discretize discretizer = new Discretize();
+        discretizer.setInputFormat(train);
+        Instances discretized = Filter.useFilter(train, discretizer);
+
+        for (int i = 0; i < train.numInstances(); i++)
+        {
+            for (int j = 0; j < cascade.getTransformer().numOutputs(); j++)
+                assertEquals(discretized.instance(i).value(j), cascade.getTransformer().binValue(j, train.instance(i).value(j)), 0);
+        }
+    }
+
+    /**
+     * Creates a network that trains quickly
+     *
+     * @return the network
+     */
+    private static MultilayerPerceptron network()
+    {
+        MultilayerPerceptron network = TransactionClassifier.createNetwork(0.3f, 0.2f);
+        network.setTrainingTime(5);
+
+        return network;
+    }
+}
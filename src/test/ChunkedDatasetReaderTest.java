@@ -0,0 +1,256 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.BinaryDatasetCache;
+import com.jordanml.TransactionClassifier.ChunkedDatasetReader;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+import weka.core.converters.AbstractFileLoader;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.CSVLoader;
+import weka.core.converters.CSVSaver;
+
+/**
+ * JUnit test class for the ChunkedDatasetReader class.
+ *
+ */
+public class ChunkedDatasetReaderTest
+{
+
+    /**
+     * Collects the chunks of a file in chunk order
+     */
+    static class Collector implements ChunkedDatasetReader.ChunkConsumer
+    {
+        ArrayList<Integer> indices = new ArrayList<Integer>();
+        Instances chunks[] = new Instances[100];
+
+        @Override
+        public synchronized void accept(int chunkIndex, Instances chunk)
+        {
+            indices.add(chunkIndex);
+            chunks[chunkIndex] = chunk;
+        }
+    }
+
+    /**
+     * Test that comment lines are left out of ARFF files and every row is read once
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testArffComments() throws Exception
+    {
+        File file = write("arff", ".arff",
+                "@relation test",
+                "@attribute amount numeric",
+                "@attribute class {n,f}",
+                "@data",
+                "% a comment",
+                "1.5,n",
+                "2.5,f",
+                "% another comment",
+                "3.5,n",
+                "4.5,f",
+                "5.5,n");
+
+        ChunkedDatasetReader reader = new ChunkedDatasetReader(file.getPath(), 2, 2);
+        Collector collector = new Collector();
+
+        assertEquals(3, reader.read(collector));
+        Collections.sort(collector.indices);
+        assertEquals(0, (int) collector.indices.get(0));
+        assertEquals(2, (int) collector.indices.get(2));
+
+        double expected = 1.5;
+        for (int chunk = 0; chunk < 3; chunk++)
+        {
+            for (int i = 0; i < collector.chunks[chunk].numInstances(); i++)
+            {
+                assertEquals(expected, collector.chunks[chunk].instance(i).value(0), 0.0);
+                expected++;
+            }
+        }
+    }
+
+    /**
+     * Test that CSV rows starting with "%", with empty fields, spaces and quoted
+     * commas are read the way CSVLoader reads them
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCsvRows() throws Exception
+    {
+        File file = write("csv", ".csv",
+                "code,amount,class",
+                "%A,10.5,n",
+                "B,,f",
+                ",3.0,n",
+                "C D,1,f",
+                "\"E,F\",2,n");
+
+        ChunkedDatasetReader reader = new ChunkedDatasetReader(file.getPath(), 100, 1);
+        Collector collector = new Collector();
+        reader.read(collector);
+        Instances chunk = collector.chunks[0];
+
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(file);
+        Instances expected = loader.getDataSet();
+
+        assertEquals(5, chunk.numInstances());
+        assertEquals(expected.numInstances(), chunk.numInstances());
+        assertEquals("%A", chunk.instance(0).stringValue(0));
+        assertTrue(chunk.instance(1).isMissing(1));
+        assertTrue(chunk.instance(2).isMissing(0));
+        assertEquals("C D", chunk.instance(3).stringValue(0));
+        assertEquals("E,F", chunk.instance(4).stringValue(0));
+
+        for (int i = 0; i < expected.numInstances(); i++)
+            assertEquals(expected.instance(i).toString(), chunk.instance(i).toString());
+    }
+
+    /**
+     * Test that a doubled quote inside a quoted CSV field is read as one quote
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCsvQuoteEscape() throws Exception
+    {
+        File file = write("quotes", ".csv",
+                "code,amount,class",
+                "\"say \"\"hi\"\"\",1,n",
+                "'it''s',2,f",
+                "\"\"\"\",3,n");
+
+        ChunkedDatasetReader reader = new ChunkedDatasetReader(file.getPath(), 100, 1);
+        Collector collector = new Collector();
+        reader.read(collector);
+        Instances chunk = collector.chunks[0];
+
+        assertEquals(3, chunk.numInstances());
+        assertEquals("say \"hi\"", chunk.instance(0).stringValue(0));
+        assertEquals("it's", chunk.instance(1).stringValue(0));
+        assertEquals("\"", chunk.instance(2).stringValue(0));
+        assertEquals(3.0, chunk.instance(2).value(1), 0.0);
+    }
+
+    /**
+     * Test that the types and nominal values of a CSV file are inferred from
+     * every chunk, not just the first
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCsvStructureFromWholeFile() throws Exception
+    {
+        File file = write("structure", ".csv",
+                "code,amount,class",
+                "1,10.5,n",
+                "2,3,n",
+                "3,,f",
+                "4,7,n",
+                "X,1e3,f",
+                "5,2,r");
+
+        ChunkedDatasetReader reader = new ChunkedDatasetReader(file.getPath(), 2, 2);
+        Collector collector = new Collector();
+        assertEquals(3, reader.read(collector));
+
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(file);
+        Instances expected = loader.getDataSet();
+        Instances structure = reader.getStructure();
+        expected.setClassIndex(structure.classIndex());
+
+        assertTrue(structure.attribute(0).isString());
+        assertTrue(structure.attribute(1).isNumeric());
+        assertEquals(3, structure.attribute(2).numValues());
+        assertEquals(expected.relationName(), structure.relationName());
+        assertNull(expected.equalHeadersMsg(structure));
+
+        int row = 0;
+        for (int chunk = 0; chunk < 3; chunk++)
+        {
+            for (int i = 0; i < collector.chunks[chunk].numInstances(); i++)
+                assertEquals(expected.instance(row++).toString(), collector.chunks[chunk].instance(i).toString());
+        }
+    }
+
+    /**
+     * Test that a dataset loaded in chunks equals the file read by WEKA, for
+     * ARFF and CSV files with more than one chunk
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testDatasetLoad() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(ChunkedDatasetReader.DEFAULT_CHUNK_SIZE * 2 + 500, 4, 1);
+        generator.setNumericShare(0.5);
+        String arffPath = TestData.write("chunked", generator);
+
+        File csv = File.createTempFile("chunked", ".csv");
+        csv.deleteOnExit();
+        new File(BinaryDatasetCache.cachePath(csv.getPath())).deleteOnExit();
+        ArffLoader arff = new ArffLoader();
+        arff.setSource(new File(arffPath));
+        CSVSaver saver = new CSVSaver();
+        saver.setInstances(arff.getDataSet());
+        saver.setFile(csv);
+        saver.writeBatch();
+
+        for (String path : new String[] { arffPath, csv.getPath() })
+        {
+            AbstractFileLoader loader = csv.getPath().equals(path) ? new CSVLoader() : new ArffLoader();
+            loader.setSource(new File(path));
+            Instances expected = loader.getDataSet();
+            Instances loaded = new Dataset(path).getInstances();
+
+            assertEquals(-1, loaded.classIndex());
+            assertEquals(expected.relationName(), loaded.relationName());
+            assertNull(expected.equalHeadersMsg(loaded));
+            assertEquals(expected.numInstances(), loaded.numInstances());
+
+            for (int i = 0; i < expected.numInstances(); i++)
+                assertEquals(expected.instance(i).toString(), loaded.instance(i).toString());
+        }
+    }
+
+    /**
+     * Writes lines to a temporary file
+     *
+     * @param prefix    the file name prefix
+     * @param extension the file extension
+     * @param lines     the lines of the file
+     * @return the file
+     * @throws IOException
+     */
+    private static File write(String prefix, String extension, String... lines) throws IOException
+    {
+        File file = File.createTempFile(prefix, extension);
+        file.deleteOnExit();
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(file)))
+        {
+            for (String line : lines)
+                out.println(line);
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,133 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.ClassUndersampler;
+import com.jordanml.TransactionClassifier.Dataset;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit test class for the ClassUndersampler class.
+ *
+ */
+public class ClassUndersamplerTest
+{
+
+    static Dataset trainingSet;
+
+    /**
+     * Builds a training set of 900 majority, 60 minority and 10 unlabelled rows,
+     * each row holding its own row number
+     */
+    @Before
+    public void setUp()
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("row"));
+        attributes.add(new Attribute("class", Arrays.asList("n", "f")));
+
+        Instances data = new Instances("undersample", attributes, 970);
+        data.setClassIndex(1);
+
+        for (int row = 0; row < 970; row++)
+        {
+            double classValue = row % 97 == 0 ? Utils.missingValue() : row % 16 == 0 ? 1 : 0;
+            data.add(new DenseInstance(1.0, new double[] { row, classValue }));
+        }
+
+        trainingSet = new Dataset(data);
+    }
+
+    /**
+     * Test that every minority row and the required number of majority rows are kept
+     */
+    @Test
+    public void testCounts()
+    {
+        ClassUndersampler undersampler = new ClassUndersampler(2.5, 1);
+        int counts[] = trainingSet.getInstances().attributeStats(1).nominalCounts;
+        int required[][] = undersampler.instancesRequired(counts);
+
+        assertEquals(Math.round(counts[1] * 2.5), required[0][ClassUndersampler.KEPT]);
+        assertEquals(counts[0] - required[0][ClassUndersampler.KEPT], required[0][ClassUndersampler.DROPPED]);
+        assertEquals(counts[1], required[1][ClassUndersampler.KEPT]);
+        assertEquals(0, required[1][ClassUndersampler.DROPPED]);
+
+        Instances sampled = undersampler.apply(trainingSet, 0).getInstances();
+        int sampledCounts[] = sampled.attributeStats(1).nominalCounts;
+
+        assertEquals(required[0][ClassUndersampler.KEPT], sampledCounts[0]);
+        assertEquals(required[1][ClassUndersampler.KEPT], sampledCounts[1]);
+        assertEquals(0, sampled.attributeStats(1).missingCount);
+
+        for (int i = 1; i < sampled.numInstances(); i++)
+            assertTrue(sampled.instance(i - 1).value(0) < sampled.instance(i).value(0));
+    }
+
+    /**
+     * Test that a ratio above the class balance keeps every row with a class
+     */
+    @Test
+    public void testRatioAboveBalance()
+    {
+        Instances sampled = new ClassUndersampler(100, 1).apply(trainingSet, 0).getInstances();
+
+        assertEquals(trainingSet.numInstances() - 10, sampled.numInstances());
+    }
+
+    /**
+     * Test that the same seed and fold select the same rows and that other
+     * folds or seeds select other rows
+     */
+    @Test
+    public void testDeterminism()
+    {
+        double first[] = rows(new ClassUndersampler(1, 7).apply(trainingSet, 0));
+
+        assertArrayEquals(first, rows(new ClassUndersampler(1, 7).apply(trainingSet, 0)), 0.0);
+        assertFalse(Arrays.equals(first, rows(new ClassUndersampler(1, 7).apply(trainingSet, 1))));
+        assertFalse(Arrays.equals(first, rows(new ClassUndersampler(1, 8).apply(trainingSet, 0))));
+    }
+
+    /**
+     * Test that the counts are taken from the rows, not from cached statistics
+     * that no longer match them
+     */
+    @Test
+    public void testStaleStatistics()
+    {
+        Instances data = new Instances(trainingSet.getInstances());
+        Dataset relabelled = new Dataset(data);
+        relabelled.getStatistics();
+
+        // Changed behind the dataset's back, so its cached class counts are stale
+        for (int row = 0; row < data.numInstances(); row += 5)
+            data.instance(row).setClassValue(1);
+
+        Instances sampled = new ClassUndersampler(1, 1).apply(relabelled, 0).getInstances();
+        int counts[] = data.attributeStats(1).nominalCounts;
+
+        assertEquals(2 * Math.min(counts[0], counts[1]), sampled.numInstances());
+    }
+
+    /**
+     * Gets the row numbers of a sampled dataset
+     *
+     * @param sampled the sampled dataset
+     * @return the value of the row attribute of every instance
+     */
+    private static double[] rows(Dataset sampled)
+    {
+        return sampled.getInstances().attributeToDoubleArray(0);
+    }
+}
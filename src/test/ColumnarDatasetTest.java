@@ -0,0 +1,191 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.ColumnarDataset;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.DatasetSplitter;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit test class for the ColumnarDataset class.
+ *
+ */
+public class ColumnarDatasetTest
+{
+
+    static Dataset testDataset;
+    static ColumnarDataset testColumns;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        testDataset = new Dataset("../data/breast-cancer.arff");
+        testDataset.setClassIndex(testDataset.numAttributes() - 1);
+        testColumns = testDataset.toColumnar();
+    }
+
+    /**
+     * Test that the columns hold the same shape as the source data
+     */
+    @Test
+    public void testFromInstances()
+    {
+        assertEquals(testDataset.numInstances(), testColumns.numInstances());
+        assertEquals(testDataset.numAttributes(), testColumns.numAttributes());
+        assertEquals(testDataset.classIndex(), testColumns.classIndex());
+    }
+
+    /**
+     * Test that nominal attributes are stored one byte per instance
+     */
+    @Test
+    public void testByteCoded()
+    {
+        for (int i = 0; i < testColumns.numAttributes(); i++)
+        {
+            assertEquals(true, testColumns.isByteCoded(i));
+            assertNotNull(testColumns.getNominalColumn(i));
+        }
+    }
+
+    /**
+     * Test that converting back to Instances preserves every value
+     */
+    @Test
+    public void testToInstances()
+    {
+        Instances converted = testColumns.toInstances();
+
+        assertEquals(testDataset.numInstances(), converted.numInstances());
+
+        for (int i = 0; i < converted.numInstances(); i++)
+        {
+            for (int j = 0; j < converted.numAttributes(); j++)
+            {
+                if (testDataset.getInstances().instance(i).isMissing(j))
+                    assertEquals(true, converted.instance(i).isMissing(j));
+                else
+                    assertEquals(testDataset.getInstances().instance(i).value(j), converted.instance(i).value(j), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Test that class counts match WEKA's attribute statistics
+     */
+    @Test
+    public void testClassCounts()
+    {
+        int expected[] = testDataset.getInstances().attributeStats(testDataset.classIndex()).nominalCounts;
+
+        assertArrayEquals(expected, testColumns.classCounts());
+    }
+
+    /**
+     * Test that a nominal class with too many values for a byte is counted from its double column
+     */
+    @Test
+    public void testClassCountsManyValues()
+    {
+        Instances data = classOnly(ColumnarDataset.MAX_NOMINAL_VALUES + 45);
+        addClass(data, 0);
+        addClass(data, 299);
+        addClass(data, 299);
+        addClass(data, Utils.missingValue());
+
+        ColumnarDataset columns = ColumnarDataset.fromInstances(data);
+
+        assertEquals(false, columns.isByteCoded(1));
+        assertEquals(299, columns.classCode(1));
+        assertEquals(-1, columns.classCode(3));
+        assertEquals(1, columns.classCounts()[0]);
+        assertEquals(2, columns.classCounts()[299]);
+    }
+
+    /**
+     * Test that a numeric class is rejected with a clear error
+     */
+    @Test
+    public void testClassCountsNumericClass()
+    {
+        Instances data = classOnly(0);
+        addClass(data, 1.5);
+
+        try
+        {
+            ColumnarDataset.fromInstances(data).classCounts();
+            fail("Should not count the values of a numeric class");
+        }
+        catch (IllegalStateException e)
+        {
+            assertTrue(e.getMessage().contains("nominal"));
+        }
+    }
+
+    /**
+     * Test that splitting leaves out and counts the instances with a missing class
+     */
+    @Test
+    public void testSplitSkipsMissingClass()
+    {
+        Instances data = new Instances(testDataset.getInstances());
+        data.instance(0).setClassMissing();
+        data.instance(1).setClassMissing();
+
+        DatasetSplitter splitter = new DatasetSplitter(ColumnarDataset.fromInstances(data));
+        splitter.initFolds(5);
+        splitter.splitData();
+
+        int total = 0;
+        for (Dataset fold : splitter.getFolds())
+            total += fold.numInstances();
+
+        assertEquals(2, splitter.getNumSkipped());
+        assertEquals(data.numInstances() - 2, total);
+    }
+
+    /**
+     * Creates a dataset whose only attribute before the class is numeric
+     *
+     * @param numClassValues the number of values of the nominal class, 0 for a numeric class
+     * @return the empty dataset with the class index set
+     */
+    private static Instances classOnly(int numClassValues)
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("value"));
+
+        if (numClassValues == 0)
+        {
+            attributes.add(new Attribute("class"));
+        }
+        else
+        {
+            ArrayList<String> values = new ArrayList<String>();
+            for (int i = 0; i < numClassValues; i++)
+                values.add("c" + i);
+
+            attributes.add(new Attribute("class", values));
+        }
+
+        Instances data = new Instances("classOnly", attributes, 0);
+        data.setClassIndex(1);
+
+        return data;
+    }
+
+    private static void addClass(Instances data, double classValue)
+    {
+        data.add(new DenseInstance(1.0, new double[] {data.numInstances(), classValue}));
+    }
+}
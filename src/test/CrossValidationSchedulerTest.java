@@ -0,0 +1,118 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.CrossValidationScheduler;
+import com.jordanml.TransactionClassifier.CrossValidationScheduler.Candidate;
+import com.jordanml.TransactionClassifier.CrossValidationScheduler.FoldResult;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.PipelineOptions;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+/**
+ * JUnit test class for the CrossValidationScheduler class.
+ *
+ */
+public class CrossValidationSchedulerTest
+{
+
+    static Dataset dataset;
+    static String workPath;
+
+    /**
+     * Generates a small dataset and a directory for the preprocessing files
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(90, 4, 1);
+        generator.setFraudRatio(0.3);
+        dataset = TestData.load(TestData.write("scheduler", generator));
+
+        File directory = Files.createTempDirectory("scheduler").toFile();
+        directory.deleteOnExit();
+        workPath = directory.getPath() + File.separator;
+    }
+
+    /**
+     * Test that every repetition tests each row once and the results are
+     * ordered by repetition and then fold
+     */
+    @Test
+    public void testRepeated()
+    {
+        CrossValidationScheduler scheduler = new CrossValidationScheduler(dataset, workPath, 2, new PipelineOptions(), 2);
+        List<FoldResult> results = scheduler.runRepeated(2, 3, new Candidate(0.3f, 0.2f));
+
+        assertEquals(6, results.size());
+
+        double tested[] = new double[2];
+
+        for (int i = 0; i < results.size(); i++)
+        {
+            FoldResult result = results.get(i);
+
+            assertEquals(i / 3, result.getRepetition());
+            assertEquals(i % 3, result.getFold());
+            assertNotNull(result.getEvaluation());
+            tested[result.getRepetition()] += result.getEvaluation().numInstances();
+        }
+
+        assertEquals(dataset.numInstances(), tested[0], 0);
+        assertEquals(dataset.numInstances(), tested[1], 0);
+    }
+
+    /**
+     * Test that the candidates evaluated on an inner fold share its
+     * preprocessing and that every outer fold selects one of the candidates
+     */
+    @Test
+    public void testNestedSharesPreprocessing()
+    {
+        List<Candidate> candidates = Arrays.asList(new Candidate(0.3f, 0.2f), new Candidate(0.1f, 0.1f));
+        CrossValidationScheduler scheduler = new CrossValidationScheduler(dataset, workPath, 2, new PipelineOptions(), 2);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        List<FoldResult> results;
+
+        System.setOut(new PrintStream(captured, true));
+        try
+        {
+            results = scheduler.runNested(1, 2, 2, candidates);
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+
+        assertEquals(2, results.size());
+
+        for (FoldResult result : results)
+        {
+            assertTrue(candidates.contains(result.getCandidate()));
+            assertNotNull(result.getEvaluation());
+        }
+
+        // The second candidate reuses each of the 2 x 2 inner training sets, the outer training sets are not shared
+        String log = captured.toString();
+        int reused = 0;
+
+        for (int at = log.indexOf("Reusing preprocessed training set"); at >= 0; at = log.indexOf("Reusing preprocessed training set", at + 1))
+            reused++;
+
+        assertEquals(4, reused);
+    }
+}
@@ -110,5 +110,6 @@ public class DatasetSplitterTest
         assertNotNull(source);
         assertEquals(testDataset.numAttributes(), source.numAttributes());
         assertEquals(testDataset.numInstances(), source.numInstances());
+        assertEquals(source.numAttributes() - 1, source.classIndex());
     }
 }
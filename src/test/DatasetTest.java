@@ -6,8 +6,10 @@ import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.jordanml.TransactionClassifier.AttributeStatistics;
 import com.jordanml.TransactionClassifier.Dataset;
 
+import weka.core.AttributeStats;
 import weka.core.Instance;
 
 /**
@@ -97,7 +99,7 @@ public class DatasetTest
 
         try
         {
-            new Dataset(nominalClass.data);
+            new Dataset(nominalClass.getInstances());
         }
         catch (Exception e)
         {
@@ -161,7 +163,7 @@ public class DatasetTest
 
         try
         {
-            testDataset.loadData(nominalClass.data);
+            testDataset.loadData(nominalClass.getInstances());
         } catch (Exception e)
         {
             fail("Could not load data");
@@ -191,7 +193,7 @@ public class DatasetTest
     @Test
     public void testDiscretizeNominalClass()
     {
-        nominalClass.data.setClassIndex(nominalClass.numAttributes() - 1);
+        nominalClass.setClassIndex(nominalClass.numAttributes() - 1);
 
         try
         {
@@ -210,7 +212,7 @@ public class DatasetTest
     @Test
     public void testDiscretizeNumericalClass()
     {
-        numericalClass.data.setClassIndex(numericalClass.numAttributes() - 1);
+        numericalClass.setClassIndex(numericalClass.numAttributes() - 1);
 
         assertEquals("Should return null", null, numericalClass.discretize("../data/test/numericalClassShouldFail.arff"));
     }
@@ -241,10 +243,103 @@ public class DatasetTest
     {
 
         int numInstances = nominalClass.numInstances();
-        Instance instance = (Instance) nominalClass.data.instance(0).copy();
+        Instance instance = (Instance) nominalClass.getInstances().instance(0).copy();
 
         nominalClass.addInstance(instance);
         assertEquals(numInstances + 1, nominalClass.numInstances());
     }
 
+    /**
+     * Test that a dataset sharing an Instances object copies it before adding an
+     * instance, leaving the original unchanged
+     */
+    @Test
+    public void testAddInstanceShared()
+    {
+        int numInstances = nominalClass.numInstances();
+        Dataset shared = new Dataset(nominalClass.getInstances());
+        Instance instance = (Instance) nominalClass.getInstances().instance(0).copy();
+
+        assertSame(nominalClass.getInstances(), shared.getInstances());
+        shared.addInstance(instance);
+        assertNotSame(nominalClass.getInstances(), shared.getInstances());
+        assertEquals(numInstances + 1, shared.numInstances());
+        assertEquals(numInstances, nominalClass.numInstances());
+    }
+
+    /**
+     * Test that setting the class index of a dataset sharing an Instances object
+     * does not change the class index of the original
+     */
+    @Test
+    public void testSetClassIndexShared()
+    {
+        int classIndex = nominalClass.classIndex();
+        Dataset shared = new Dataset(nominalClass.getInstances());
+
+        shared.setClassIndex(0);
+        assertEquals(0, shared.classIndex());
+        assertEquals(classIndex, nominalClass.classIndex());
+    }
+
+    /**
+     * Test that the dataset handing out its Instances object copies it before adding
+     * an instance, leaving the dataset sharing it unchanged
+     */
+    @Test
+    public void testAddInstanceOwner()
+    {
+        int numInstances = nominalClass.numInstances();
+        Dataset shared = new Dataset(nominalClass.getInstances());
+        Instance instance = (Instance) nominalClass.getInstances().instance(0).copy();
+
+        nominalClass.addInstance(instance);
+        assertNotSame(nominalClass.getInstances(), shared.getInstances());
+        assertEquals(numInstances + 1, nominalClass.numInstances());
+        assertEquals(numInstances, shared.numInstances());
+    }
+
+
+    /**
+     * Test that the cached statistics match WEKA's attribute statistics and that
+     * the sorted indices are in ascending order of value
+     */
+    @Test
+    public void testStatistics()
+    {
+        nominalClass.setClassIndex(nominalClass.numAttributes() - 1);
+        AttributeStatistics statistics = nominalClass.getStatistics();
+
+        assertArrayEquals(nominalClass.getInstances().attributeStats(nominalClass.classIndex()).nominalCounts, statistics.classCounts());
+
+        for (int col = 0; col < nominalClass.numAttributes(); col++)
+        {
+            if (!nominalClass.getInstances().attribute(col).isNumeric())
+                continue;
+
+            AttributeStats expected = nominalClass.getInstances().attributeStats(col);
+            int sorted[] = statistics.sortedIndices(col);
+
+            assertEquals(expected.numericStats.min, statistics.min(col), 0.0);
+            assertEquals(expected.numericStats.max, statistics.max(col), 0.0);
+            assertEquals(expected.numericStats.mean, statistics.mean(col), 1e-6);
+
+            for (int i = 1; i < statistics.numPresent(col); i++)
+                assertTrue(nominalClass.getInstances().instance(sorted[i - 1]).value(col) <= nominalClass.getInstances().instance(sorted[i]).value(col));
+        }
+    }
+
+    /**
+     * Test that the cached statistics are dropped when an instance is added
+     */
+    @Test
+    public void testStatisticsInvalidated()
+    {
+        nominalClass.setClassIndex(nominalClass.numAttributes() - 1);
+        int numInstances = nominalClass.getStatistics().numInstances();
+
+        nominalClass.addInstance((Instance) nominalClass.getInstances().instance(0).copy());
+        assertEquals(numInstances + 1, nominalClass.getStatistics().numInstances());
+    }
+
 }
@@ -0,0 +1,145 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.AttributeStatistics;
+import com.jordanml.TransactionClassifier.ColumnarDataset;
+import com.jordanml.TransactionClassifier.FeatureTransformer;
+import com.jordanml.TransactionClassifier.InputNormalizer;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+
+/**
+ * JUnit test class for the FeatureTransformer class.
+ *
+ */
+public class FeatureTransformerTest
+{
+
+    static Instances mixed;
+    static Instances discretized;
+    static FeatureTransformer transformer;
+
+    /**
+     * Generates a dataset with numeric and nominal attributes and discretizes it
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(2000, 8, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        mixed = TestData.generate("mixed", generator);
+
+        Discretize discretizer = new Discretize();
+        discretizer.setInputFormat(mixed);
+        discretized = Filter.useFilter(mixed, discretizer);
+
+        int keep[] = new int[mixed.numAttributes() - 1];
+        for (int i = 0; i < keep.length; i++)
+            keep[i] = i;
+
+        transformer = FeatureTransformer.compile(discretizer, keep);
+    }
+
+    /**
+     * Test that the data has both kinds of attributes
+     */
+    @Test
+    public void testMixedAttributes()
+    {
+        int numeric = 0;
+        int nominal = 0;
+
+        for (int i = 0; i < transformer.numOutputs(); i++)
+        {
+            if (mixed.attribute(i).isNumeric())
+                numeric++;
+            else
+                nominal++;
+        }
+
+        assertTrue(numeric > 0);
+        assertTrue(nominal > 0);
+    }
+
+    /**
+     * Test that every attribute has as many bins as Discretize outputs values
+     */
+    @Test
+    public void testNumBins()
+    {
+        for (int i = 0; i < transformer.numOutputs(); i++)
+            assertEquals(discretized.attribute(i).numValues(), transformer.numBins(i));
+    }
+
+    /**
+     * Test that binValue gives the value Discretize outputs, numeric and nominal
+     */
+    @Test
+    public void testBinValue()
+    {
+        for (int row = 0; row < mixed.numInstances(); row++)
+        {
+            for (int i = 0; i < transformer.numOutputs(); i++)
+                assertEquals(mixed.attribute(i).name(), (int) discretized.instance(row).value(i), transformer.binValue(i, mixed.instance(row).value(i)));
+        }
+    }
+
+    /**
+     * Test that project gives the normalized network inputs, also when the
+     * transformer reads its attributes through an index mapping
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProjectNormalizes() throws Exception
+    {
+        InputNormalizer normalizer = new InputNormalizer(mixed, AttributeStatistics.compute(ColumnarDataset.fromInstances(mixed)));
+        FeatureTransformer normalized = transformer.withNormalizer(normalizer);
+        assertEquals(normalizer.numOutputs(), normalized.numInputs());
+
+        // The remapped transformer reads raw rows with an extra leading column
+        int rawIndices[] = new int[mixed.numAttributes()];
+        for (int i = 0; i < rawIndices.length; i++)
+            rawIndices[i] = i + 1;
+        FeatureTransformer remapped = normalized.remap(rawIndices);
+
+        double expected[] = new double[normalizer.numOutputs()];
+        double out[] = new double[normalized.numInputs()];
+        double shiftedOut[] = new double[normalized.numInputs()];
+        double shifted[] = new double[mixed.numAttributes() + 1];
+
+        for (int row = 0; row < mixed.numInstances(); row++)
+        {
+            double values[] = mixed.instance(row).toDoubleArray();
+            System.arraycopy(values, 0, shifted, 1, values.length);
+
+            normalizer.transform(mixed.instance(row), expected);
+            normalized.project(values, out);
+            remapped.project(shifted, shiftedOut);
+
+            assertArrayEquals(expected, out, 0);
+            assertArrayEquals(expected, shiftedOut, 0);
+        }
+    }
+
+    /**
+     * Test that missing values are binned to -1
+     */
+    @Test
+    public void testBinValueMissing()
+    {
+        for (int i = 0; i < transformer.numOutputs(); i++)
+            assertEquals(-1, transformer.binValue(i, Utils.missingValue()));
+    }
+}
@@ -0,0 +1,184 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.FoldAdmission;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.TransactionClassifier;
+
+/**
+ * JUnit test class for the FoldAdmission class.
+ *
+ */
+public class FoldAdmissionTest
+{
+
+    static final long MB = 1L << 20;
+
+    static FoldAdmission admission;
+
+    /**
+     * Makes a budget that fits two 1MB folds
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        admission = new FoldAdmission(2 * MB);
+    }
+
+    /**
+     * Test that a fold waits until another one releases its share of the budget
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWaitsForRelease() throws Exception
+    {
+        int first = admission.acquire(MB);
+        int second = admission.acquire(MB);
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread third = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    admission.release(admission.acquire(MB));
+                    admitted.countDown();
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        };
+        third.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+
+        admission.release(first);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+
+        admission.release(second);
+        third.join();
+    }
+
+    /**
+     * Test that a fold larger than the budget reserves the whole budget and so
+     * waits for every other fold
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testLargeFoldRunsAlone() throws Exception
+    {
+        assertEquals(2 * MB, admission.getBudget());
+        assertEquals(1, admission.acquire(1));
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final int reserved[] = new int[1];
+        Thread large = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    reserved[0] = admission.acquire(10 * MB);
+                    admitted.countDown();
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        };
+        large.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+
+        admission.release(1);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        large.join();
+        assertEquals(2, reserved[0]);
+    }
+
+    /**
+     * Test that the cap on running folds holds even when the budget has room
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMaxFolds() throws Exception
+    {
+        final FoldAdmission capped = new FoldAdmission(100 * MB, 1);
+        int first = capped.acquire(MB);
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread second = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    capped.release(capped.acquire(MB));
+                    admitted.countDown();
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        };
+        second.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+
+        capped.release(first);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        second.join();
+    }
+
+    /**
+     * Test that the folds of the combined dataset start right after each other,
+     * so every instance is in exactly one test set
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFoldsPartitionDataset() throws Exception
+    {
+        Dataset full = TestData.load(TestData.write("admission", new SyntheticDatasetGenerator(50, 3, 1)));
+        int foldSizes[] = { 17, 17, 16 };
+        int firstIndex[] = TransactionClassifier.firstIndices(foldSizes);
+
+        assertArrayEquals(new int[] { 0, 17, 34 }, firstIndex);
+
+        boolean tested[] = new boolean[full.numInstances()];
+
+        for (int i = 0; i < foldSizes.length; i++)
+        {
+            Dataset test = TransactionClassifier.getTestDataset(full, firstIndex[i], foldSizes[i]);
+            Dataset train = TransactionClassifier.getTrainDataset(full, firstIndex[i], foldSizes[i]);
+
+            assertEquals(foldSizes[i], test.numInstances());
+            assertEquals(full.numInstances() - foldSizes[i], train.numInstances());
+
+            for (int j = 0; j < foldSizes[i]; j++)
+            {
+                assertFalse(tested[firstIndex[i] + j]);
+                tested[firstIndex[i] + j] = true;
+                assertEquals(full.getInstances().instance(firstIndex[i] + j).toString(), test.getInstances().instance(j).toString());
+            }
+        }
+
+        for (int i = 0; i < tested.length; i++)
+            assertTrue(tested[i]);
+    }
+}
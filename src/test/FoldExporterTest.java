@@ -0,0 +1,161 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.BinaryDatasetCache;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.DatasetSplitter;
+import com.jordanml.TransactionClassifier.FoldExporter;
+import com.jordanml.TransactionClassifier.RowSource;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSink;
+
+/**
+ * JUnit test class for the FoldExporter class.
+ *
+ */
+public class FoldExporterTest
+{
+
+    static final int NUM_FOLDS = 3;
+
+    static String basePath;
+    static RowSource source;
+    static int foldRows[][];
+
+    /**
+     * Generates a mixed dataset and assigns its rows to folds
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(500, 6, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        String path = TestData.write("export", generator);
+
+        DatasetSplitter splitter = new DatasetSplitter(new Dataset(path));
+        splitter.initFolds(NUM_FOLDS);
+        foldRows = splitter.assignRows();
+        source = splitter.getRowSource();
+
+        basePath = path.substring(0, path.length() - ".arff".length());
+
+        for (int i = 0; i < NUM_FOLDS; i++)
+        {
+            new File(FoldExporter.foldPath(basePath, i)).deleteOnExit();
+            new File(BinaryDatasetCache.cachePath(FoldExporter.foldPath(basePath, i))).deleteOnExit();
+            new File(FoldExporter.combinedPath(basePath, i)).deleteOnExit();
+        }
+    }
+
+    /**
+     * Test that streaming each combined file from the rows gives the file
+     * DataSink writes for the combined Instances
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteCombined() throws Exception
+    {
+        FoldExporter exporter = new FoldExporter(source, foldRows, basePath, 1);
+
+        for (int excluded = 0; excluded < NUM_FOLDS; excluded++)
+        {
+            Instances combined = new Instances(source.getHeader(), 0);
+
+            for (int i = 0; i < NUM_FOLDS; i++)
+            {
+                if (i != excluded)
+                    add(combined, foldRows[i]);
+            }
+
+            exporter.writeCombined(excluded);
+            assertSameFile(combined, FoldExporter.combinedPath(basePath, excluded));
+        }
+    }
+
+    /**
+     * Test that writing the folds gives the files DataSink writes for each fold
+     * and, when requested, for the combination of the other folds
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteFolds() throws Exception
+    {
+        ArrayList<Instances> folds = new ArrayList<Instances>();
+
+        for (int i = 0; i < NUM_FOLDS; i++)
+        {
+            Instances fold = new Instances(source.getHeader(), 0);
+            add(fold, foldRows[i]);
+            folds.add(fold);
+        }
+
+        String paths[] = new FoldExporter(source, foldRows, basePath, 2).write(false);
+
+        for (int i = 0; i < NUM_FOLDS; i++)
+        {
+            assertEquals(FoldExporter.foldPath(basePath, i), paths[i]);
+            assertSameFile(folds.get(i), paths[i]);
+            assertFalse(new File(FoldExporter.combinedPath(basePath, i)).exists());
+        }
+
+        paths = new FoldExporter(source, foldRows, basePath, 2).write(true);
+
+        for (int excluded = 0; excluded < NUM_FOLDS; excluded++)
+        {
+            assertSameFile(folds.get(excluded), paths[excluded]);
+
+            Instances combined = new Instances(source.getHeader(), 0);
+
+            for (int i = 0; i < NUM_FOLDS; i++)
+            {
+                if (i != excluded)
+                    combined.addAll(folds.get(i));
+            }
+
+            assertSameFile(combined, FoldExporter.combinedPath(basePath, excluded));
+        }
+    }
+
+    /**
+     * Adds rows of the source to a set of instances
+     *
+     * @param instances the instances to add to
+     * @param rows      the rows, in order
+     */
+    private static void add(Instances instances, int rows[])
+    {
+        for (int row : rows)
+            instances.add(source.instance(row));
+    }
+
+    /**
+     * Checks that a file holds exactly what DataSink writes for the given instances
+     *
+     * @param expected   the instances
+     * @param outputPath the file to check
+     * @throws java.lang.Exception
+     */
+    private static void assertSameFile(Instances expected, String outputPath) throws Exception
+    {
+        File reference = File.createTempFile("reference", ".arff");
+        reference.deleteOnExit();
+        DataSink.write(reference.getPath(), expected);
+
+        assertEquals(new String(Files.readAllBytes(reference.toPath()), "UTF-8"), new String(Files.readAllBytes(new File(outputPath).toPath()), "UTF-8"));
+    }
+}
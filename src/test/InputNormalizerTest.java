@@ -0,0 +1,115 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.NormalizedClassifier;
+
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit test class for the InputNormalizer class.
+ *
+ */
+public class InputNormalizerTest
+{
+
+    static Instances train;
+    static Instances test;
+
+    /**
+     * Builds data with a numeric, a two-valued and two many-valued nominal
+     * attributes and missing values. The last channel only occurs in the test
+     * data and the constant attribute only ever takes its first value.
+     */
+    @Before
+    public void setUp()
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("amount"));
+        attributes.add(new Attribute("online", Arrays.asList("no", "yes")));
+        attributes.add(new Attribute("channel", Arrays.asList("pos", "web", "phone", "atm")));
+        attributes.add(new Attribute("constant", Arrays.asList("a", "b", "c")));
+        attributes.add(new Attribute("class", Arrays.asList("n", "f")));
+
+        train = new Instances("train", attributes, 0);
+        train.setClassIndex(train.numAttributes() - 1);
+        test = new Instances(train, 0);
+
+        Random random = new Random(1);
+        fill(train, 300, 3, random);
+        fill(test, 100, 4, random);
+    }
+
+    /**
+     * Adds rows whose class depends on the attribute values
+     *
+     * @param data     the data to add to
+     * @param rows     the number of rows
+     * @param channels the number of channel values to draw from
+     * @param random   the source of the values
+     */
+    private static void fill(Instances data, int rows, int channels, Random random)
+    {
+        for (int i = 0; i < rows; i++)
+        {
+            double values[] = new double[data.numAttributes()];
+            values[0] = random.nextGaussian() * 50 + 100;
+            values[1] = random.nextInt(2);
+            values[2] = random.nextInt(channels);
+            values[3] = 0;
+            values[4] = values[0] > 120 && values[1] == 1 || values[2] == 2 ? 1 : 0;
+
+            for (int col = 0; col < 4; col++)
+            {
+                if (random.nextInt(10) == 0)
+                    values[col] = Utils.missingValue();
+            }
+
+            data.add(new DenseInstance(1.0, values));
+        }
+    }
+
+    /**
+     * Creates the network both classifiers are built with
+     *
+     * @return the network
+     */
+    private static MultilayerPerceptron createNetwork()
+    {
+        MultilayerPerceptron network = new MultilayerPerceptron();
+        network.setHiddenLayers("3");
+        network.setTrainingTime(50);
+
+        return network;
+    }
+
+    /**
+     * Test that training on the normalized inputs gives the same predictions as
+     * a MultilayerPerceptron that converts and normalizes its data itself
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesMultilayerPerceptron() throws Exception
+    {
+        MultilayerPerceptron plain = createNetwork();
+        plain.buildClassifier(train);
+
+        NormalizedClassifier normalized = new NormalizedClassifier(createNetwork());
+        normalized.buildClassifier(train);
+
+        for (int row = 0; row < test.numInstances(); row++)
+            assertArrayEquals(test.instance(row).toString(), plain.distributionForInstance(test.instance(row)), normalized.distributionForInstance(test.instance(row)), 1e-4);
+    }
+}
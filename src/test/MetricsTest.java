@@ -0,0 +1,223 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.Metrics;
+
+/**
+ * JUnit test class for the Metrics class.
+ *
+ */
+public class MetricsTest
+{
+
+    static final String HEADER = "type,name,tag,count,total_ms,mean_ms,min_ms,max_ms,p50_ms,p90_ms,p99_ms,threads,max_heap_used_mb,value";
+
+    /**
+     * Starts every test from an empty registry
+     */
+    @Before
+    public void setUp()
+    {
+        Metrics.reset();
+        Metrics.clearTag();
+    }
+
+    /**
+     * Test that every stopped timer adds to its stage, from any thread
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTimerAccumulation() throws Exception
+    {
+        final long elapsed[] = new long[4];
+        Thread threads[] = new Thread[elapsed.length];
+
+        for (int i = 0; i < threads.length; i++)
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    Metrics.Timer timer = Metrics.start(Metrics.TRAIN);
+
+                    try
+                    {
+                        Thread.sleep(20);
+                    }
+                    catch (InterruptedException e)
+                    {
+                    }
+
+                    elapsed[index] = timer.stop();
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        long total = 0;
+
+        for (long time : elapsed)
+        {
+            assertTrue(time >= 20);
+            total += time;
+        }
+
+        assertTrue(Metrics.totalNanos(Metrics.TRAIN) >= total * 1000000);
+        assertTrue(Metrics.totalNanos(Metrics.TRAIN) < (total + elapsed.length) * 1000000);
+        assertEquals(0, Metrics.totalNanos(Metrics.EVALUATE));
+
+        String row[] = rows(writeCsv()).get("timer," + Metrics.TRAIN + "," + Metrics.ALL);
+        assertEquals("4", row[3]);
+        assertEquals("4", row[11]);
+
+        Metrics.reset();
+        assertEquals(0, Metrics.totalNanos(Metrics.TRAIN));
+    }
+
+    /**
+     * Test that measurements are kept apart by the tag of the thread that made
+     * them, and that stage totals sum over the tags
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTags() throws Exception
+    {
+        Metrics.setTag("fold_0");
+        Metrics.Timer tagged = Metrics.start(Metrics.REDUCT);
+        Metrics.count("rows", 10);
+        Metrics.count("rows", 5);
+        Metrics.clearTag();
+
+        // A timer keeps the tag it was started with
+        long taggedNanos = tagged.stop() * 1000000;
+        Metrics.start(Metrics.REDUCT).stop();
+        Metrics.count("rows", 1);
+
+        HashMap<String, String[]> rows = rows(writeCsv());
+
+        assertEquals("1", rows.get("timer," + Metrics.REDUCT + ",fold_0")[3]);
+        assertEquals("1", rows.get("timer," + Metrics.REDUCT + "," + Metrics.ALL)[3]);
+        assertEquals("15", rows.get("counter,rows,fold_0")[13]);
+        assertEquals("1", rows.get("counter,rows," + Metrics.ALL)[13]);
+        assertTrue(Metrics.totalNanos(Metrics.REDUCT) >= taggedNanos);
+    }
+
+    /**
+     * Test that the peak heap usage covers live data and starts again from the
+     * current usage after a reset
+     */
+    @Test
+    public void testPeakHeapReset()
+    {
+        byte block[] = new byte[64 << 20];
+        block[block.length - 1] = 1;
+        long peak = Metrics.peakHeapUsed();
+
+        assertTrue(peak >= block.length);
+
+        block = null;
+        System.gc();
+        Metrics.resetPeakHeapUsed();
+
+        assertTrue(Metrics.peakHeapUsed() < peak);
+    }
+
+    /**
+     * Test that every CSV row has the columns of the header, with timers,
+     * counters and JVM rows in their own columns
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCsvLayout() throws Exception
+    {
+        Metrics.start(Metrics.LOAD).stop();
+        Metrics.count("instances", 42);
+
+        List<String> lines = Files.readAllLines(new File(writeCsv()).toPath());
+        int columns = HEADER.split(",").length;
+
+        assertEquals(HEADER, lines.get(0));
+
+        for (String line : lines)
+            assertEquals(line, columns, line.split(",", -1).length);
+
+        HashMap<String, String[]> rows = rows(lines.toArray(new String[0]));
+        String timer[] = rows.get("timer," + Metrics.LOAD + "," + Metrics.ALL);
+        String counter[] = rows.get("counter,instances," + Metrics.ALL);
+
+        assertEquals("1", timer[3]);
+        assertEquals("", timer[13]);
+        Double.parseDouble(timer[4]);
+        Double.parseDouble(timer[12]);
+
+        assertEquals("", counter[3]);
+        assertEquals("42", counter[13]);
+
+        for (String name : new String[] { "processors", "peakThreads", "heapMaxMB", "peakHeapUsedMB" })
+            Double.parseDouble(rows.get("jvm," + name + "," + Metrics.ALL)[13]);
+
+        assertEquals(Integer.toString(Runtime.getRuntime().availableProcessors()), rows.get("jvm,processors," + Metrics.ALL)[13]);
+    }
+
+    /**
+     * Writes the registry to a temporary CSV file
+     *
+     * @return the path of the file
+     * @throws java.lang.Exception
+     */
+    private static String writeCsv() throws Exception
+    {
+        File file = File.createTempFile("metrics", ".csv");
+        file.deleteOnExit();
+        Metrics.writeCsv(file.getPath());
+
+        return file.getPath();
+    }
+
+    /**
+     * Reads the rows of a CSV report by type, name and tag
+     *
+     * @param path the report
+     * @return the columns of each row
+     * @throws java.lang.Exception
+     */
+    private static HashMap<String, String[]> rows(String path) throws Exception
+    {
+        return rows(Files.readAllLines(new File(path).toPath()).toArray(new String[0]));
+    }
+
+    /**
+     * Indexes the rows of a CSV report by type, name and tag
+     *
+     * @param lines the lines of the report
+     * @return the columns of each row
+     */
+    private static HashMap<String, String[]> rows(String lines[])
+    {
+        HashMap<String, String[]> rows = new HashMap<String, String[]>();
+
+        for (int i = 1; i < lines.length; i++)
+        {
+            String columns[] = lines[i].split(",", -1);
+            rows.put(columns[0] + "," + columns[1] + "," + columns[2], columns);
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,196 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.BinaryDatasetCache;
+import com.jordanml.TransactionClassifier.OffHeapDataset;
+import com.jordanml.TransactionClassifier.RowSource;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * JUnit test class for the OffHeapDataset class.
+ *
+ */
+public class OffHeapDatasetTest
+{
+
+    static String sourcePath;
+    static Instances source;
+
+    /**
+     * Writes a mixed numeric/nominal dataset and reads it without a cache
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(600, 5, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        sourcePath = TestData.write("offheap", generator);
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(sourcePath)))
+        {
+            source = new Instances(reader);
+        }
+        source.setClassIndex(source.numAttributes() - 1);
+    }
+
+    /**
+     * Test that allocated buffers start zero filled with unit weights and keep
+     * the values set, missing ones included
+     */
+    @Test
+    public void testAllocate()
+    {
+        OffHeapDataset dataset = OffHeapDataset.allocate(source, 10);
+
+        assertEquals(10, dataset.numInstances());
+        assertEquals(source.numAttributes(), dataset.numAttributes());
+        assertEquals(source.classIndex(), dataset.classIndex());
+
+        for (int row = 0; row < 10; row++)
+        {
+            assertEquals(1.0, dataset.weight(row), 0);
+            for (int col = 0; col < dataset.numAttributes(); col++)
+                assertEquals(0.0, dataset.value(row, col), 0);
+        }
+
+        for (int col = 0; col < dataset.numAttributes(); col++)
+        {
+            dataset.setValue(3, col, 1);
+            dataset.setValue(4, col, Utils.missingValue());
+
+            assertEquals(1.0, dataset.value(3, col), 0);
+            assertTrue(Utils.isMissingValue(dataset.value(4, col)));
+        }
+    }
+
+    /**
+     * Test that a copy of instances holds every value and weight
+     */
+    @Test
+    public void testFromInstances()
+    {
+        source.instance(2).setMissing(0);
+        source.instance(5).setWeight(3.5);
+
+        assertSameData(OffHeapDataset.fromInstances(source));
+    }
+
+    /**
+     * Test that weights are only stored once one differs from 1
+     */
+    @Test
+    public void testSetWeight()
+    {
+        OffHeapDataset dataset = OffHeapDataset.allocate(source, 5);
+
+        dataset.setWeight(2, 1.0);
+        assertEquals(1.0, dataset.weight(2), 0);
+
+        dataset.setWeight(2, 2.5);
+        assertEquals(2.5, dataset.weight(2), 0);
+
+        for (int row = 0; row < 5; row++)
+        {
+            if (row != 2)
+                assertEquals(1.0, dataset.weight(row), 0);
+        }
+    }
+
+    /**
+     * Test that class codes and counts follow the class values, a missing class
+     * has code -1 and a dataset without a class index has no codes
+     */
+    @Test
+    public void testClassCode()
+    {
+        source.instance(0).setClassMissing();
+        OffHeapDataset dataset = OffHeapDataset.fromInstances(source);
+        int counts[] = new int[source.numClasses()];
+
+        assertEquals(-1, dataset.classCode(0));
+        for (int row = 1; row < source.numInstances(); row++)
+        {
+            assertEquals((int) source.instance(row).classValue(), dataset.classCode(row));
+            counts[dataset.classCode(row)]++;
+        }
+        assertArrayEquals(counts, dataset.classCounts());
+
+        dataset.setClassIndex(-1);
+        try
+        {
+            dataset.classCode(1);
+            fail("Expected an IllegalStateException without a class index");
+        }
+        catch (IllegalStateException e)
+        {
+        }
+    }
+
+    /**
+     * Test that loading writes the cache next to the file and maps every value
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testLoad() throws Exception
+    {
+        OffHeapDataset dataset = OffHeapDataset.load(sourcePath);
+
+        assertTrue(BinaryDatasetCache.isValid(sourcePath));
+        dataset.setClassIndex(source.classIndex());
+        assertSameData(dataset);
+    }
+
+    /**
+     * Test that loading through a cache directory maps every value and leaves
+     * no cache next to the file or in the directory
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testLoadThroughDirectory() throws Exception
+    {
+        File directory = Files.createTempDirectory("offheap").toFile();
+        directory.deleteOnExit();
+
+        OffHeapDataset dataset = OffHeapDataset.load(sourcePath, directory.getPath());
+
+        assertFalse(new File(BinaryDatasetCache.cachePath(sourcePath)).exists());
+        assertEquals(0, directory.list().length);
+        dataset.setClassIndex(source.classIndex());
+        assertSameData(dataset);
+    }
+
+    /**
+     * Checks that a row source holds the same values and weights as the source instances
+     *
+     * @param dataset the row source
+     */
+    private static void assertSameData(RowSource dataset)
+    {
+        assertEquals(source.numInstances(), dataset.numInstances());
+
+        for (int row = 0; row < source.numInstances(); row++)
+        {
+            assertEquals(source.instance(row).weight(), dataset.weight(row), 0);
+
+            for (int col = 0; col < source.numAttributes(); col++)
+                assertEquals(source.instance(row).value(col), dataset.value(row, col), 0);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.DatasetSplitter;
+import com.jordanml.TransactionClassifier.PartitionedSplitter;
+
+/**
+ * JUnit test class for the PartitionedSplitter class.
+ *
+ */
+public class PartitionedSplitterTest
+{
+
+    /**
+     * Test that the chunk quotas add up to each chunk's class counts and to
+     * each fold's requirement, for chunks of uneven sizes and empty classes
+     */
+    @Test
+    public void testApportionSumsExactly()
+    {
+        Random random = new Random(1);
+
+        for (int trial = 0; trial < 200; trial++)
+        {
+            int numChunks = 1 + random.nextInt(12);
+            int numClasses = 2 + random.nextInt(3);
+            int numFolds = 2 + random.nextInt(9);
+            int chunkCounts[][] = new int[numChunks][numClasses];
+            int classCounts[] = new int[numClasses];
+
+            for (int k = 0; k < numChunks; k++)
+            {
+                for (int c = 0; c < numClasses; c++)
+                {
+                    // Rare classes are absent from most chunks
+                    chunkCounts[k][c] = c == 0 ? random.nextInt(1000) : random.nextInt(4) == 0 ? random.nextInt(7) : 0;
+                    classCounts[c] += chunkCounts[k][c];
+                }
+            }
+
+            int required[][] = DatasetSplitter.computeInstancesRequired(classCounts, numFolds);
+            int quotas[][][] = PartitionedSplitter.apportion(chunkCounts, required);
+
+            for (int c = 0; c < numClasses; c++)
+            {
+                for (int k = 0; k < numChunks; k++)
+                {
+                    int total = 0;
+
+                    for (int f = 0; f < numFolds; f++)
+                    {
+                        assertTrue(quotas[k][c][f] >= 0);
+                        total += quotas[k][c][f];
+                    }
+
+                    assertEquals(chunkCounts[k][c], total);
+                }
+
+                for (int f = 0; f < numFolds; f++)
+                {
+                    int total = 0;
+
+                    for (int k = 0; k < numChunks; k++)
+                        total += quotas[k][c][f];
+
+                    assertEquals(required[c][f], total);
+                }
+            }
+        }
+    }
+}
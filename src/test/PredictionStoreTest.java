@@ -0,0 +1,135 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.PredictionStore;
+
+/**
+ * JUnit test class for the PredictionStore class.
+ *
+ */
+public class PredictionStoreTest
+{
+
+    static File directory;
+    static PredictionStore store;
+
+    /**
+     * Creates a directory for the stores and a weighted store
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory("stores").toFile();
+        directory.deleteOnExit();
+
+        double scores[] = {0.1, 0.5000000001, 0.75, 0.5};
+        byte labels[] = {0, 1, 1, 0};
+        double weights[] = {1.0, 2.0, 0.5, 1.0};
+        store = new PredictionStore(scores, labels, weights);
+    }
+
+    /**
+     * Test that reading a store gives back every probability, label and weight
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        String path = write("results");
+        PredictionStore read = PredictionStore.read(path);
+
+        assertEquals(store.numInstances(), read.numInstances());
+
+        for (int i = 0; i < store.numInstances(); i++)
+        {
+            assertEquals(store.score(i), read.score(i), 0.0);
+            assertEquals(store.isPositive(i), read.isPositive(i));
+            assertEquals(store.weight(i), read.weight(i), 0.0);
+        }
+    }
+
+    /**
+     * Test that a store cut short is rejected with an IOException
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTruncated() throws Exception
+    {
+        String path = write("results");
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+
+        try
+        {
+            PredictionStore.read(path);
+            fail("Read a truncated store");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Truncated"));
+        }
+    }
+
+    /**
+     * Test that only the stores of the run's folds are found
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFindStores() throws Exception
+    {
+        write("results");
+        write("results_fold_0");
+        write("results_fold_12");
+        write("results_rep_1_fold_3");
+        write("results_old");
+        write("results_fold_0_copy");
+        write("results_rep_1_fold_x");
+        write("other_fold_0");
+
+        ArrayList<String> found = PredictionStore.findStores(new File(directory, "results").getPath());
+        ArrayList<String> names = new ArrayList<String>();
+
+        for (String path : found)
+            names.add(new File(path).getName());
+
+        assertEquals(4, names.size());
+        assertTrue(names.contains("results.preds"));
+        assertTrue(names.contains("results_fold_0.preds"));
+        assertTrue(names.contains("results_fold_12.preds"));
+        assertTrue(names.contains("results_rep_1_fold_3.preds"));
+    }
+
+    /**
+     * Writes the store into the test directory
+     *
+     * @param resultsName the name of the results the store belongs to
+     * @return the path of the store
+     * @throws IOException
+     */
+    private static String write(String resultsName) throws IOException
+    {
+        File file = new File(directory, PredictionStore.storePath(resultsName));
+        file.deleteOnExit();
+        store.write(file.getPath());
+
+        return file.getPath();
+    }
+}
@@ -0,0 +1,140 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.AttributeStatistics;
+import com.jordanml.TransactionClassifier.ColumnarDataset;
+import com.jordanml.TransactionClassifier.PresortedDiscretize;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+
+/**
+ * JUnit test class for the PresortedDiscretize class.
+ *
+ */
+public class PresortedDiscretizeTest
+{
+
+    static Instances data;
+    static AttributeStatistics statistics;
+
+    /**
+     * Generates a mostly numeric dataset with duplicates, missing values and
+     * weights, and computes its statistics
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(600, 8, 1);
+        generator.setNumericShare(0.8);
+        generator.setFraudRatio(0.3);
+        generator.setDuplicateRate(0.2);
+        data = new Instances(TestData.generate("discretize", generator));
+
+        for (int i = 0; i < data.numInstances(); i += 11)
+        {
+            data.instance(i).setMissing(i % (data.numAttributes() - 1));
+            data.instance(i).setWeight(0.5);
+        }
+
+        statistics = AttributeStatistics.compute(ColumnarDataset.fromInstances(data));
+    }
+
+    /**
+     * Test that filtering gives the cut points and output of Discretize
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesDiscretize() throws Exception
+    {
+        Discretize expected = new Discretize();
+        expected.setInputFormat(data);
+        Instances expectedOutput = Filter.useFilter(data, expected);
+
+        PresortedDiscretize presorted = new PresortedDiscretize(statistics);
+        presorted.setInputFormat(data);
+        Instances output = Filter.useFilter(data, presorted);
+
+        assertSameCutPoints(expected, presorted);
+        assertEquals(expectedOutput.toString(), output.toString());
+
+        // The data must actually be split for the comparison to mean anything
+        int split = 0;
+        for (int col = 0; col < data.numAttributes(); col++)
+        {
+            if (presorted.getCutPoints(col) != null)
+                split++;
+        }
+        assertTrue(split > 0);
+    }
+
+    /**
+     * Test that computing the cut points without filtering gives the cut points
+     * and output format of Discretize
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testComputeCutPoints() throws Exception
+    {
+        Discretize expected = new Discretize();
+        expected.setInputFormat(data);
+        Instances expectedOutput = Filter.useFilter(data, expected);
+
+        PresortedDiscretize presorted = new PresortedDiscretize(statistics);
+        presorted.computeCutPoints(data);
+
+        assertSameCutPoints(expected, presorted);
+        assertEquals(new Instances(expectedOutput, 0).toString(), presorted.getOutputFormat().toString());
+    }
+
+    /**
+     * Test that options the presorted search does not implement and statistics
+     * of other data fall back to the cut points of Discretize
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFallback() throws Exception
+    {
+        Discretize expected = new Discretize();
+        expected.setUseKononenko(true);
+        expected.setInputFormat(data);
+        Filter.useFilter(data, expected);
+
+        PresortedDiscretize presorted = new PresortedDiscretize(statistics);
+        presorted.setUseKononenko(true);
+        presorted.computeCutPoints(data);
+        assertSameCutPoints(expected, presorted);
+
+        Instances half = new Instances(data, 0, data.numInstances() / 2);
+        expected = new Discretize();
+        expected.setInputFormat(half);
+        Filter.useFilter(half, expected);
+
+        presorted = new PresortedDiscretize(statistics);
+        presorted.computeCutPoints(half);
+        assertSameCutPoints(expected, presorted);
+    }
+
+    /**
+     * Checks that two filters found the same cut points for every attribute
+     *
+     * @param expected the Discretize filter
+     * @param actual   the PresortedDiscretize filter
+     */
+    private static void assertSameCutPoints(Discretize expected, Discretize actual)
+    {
+        for (int col = 0; col < data.numAttributes(); col++)
+            assertArrayEquals("attribute " + col, expected.getCutPoints(col), actual.getCutPoints(col), 0);
+    }
+}
@@ -0,0 +1,176 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.NormalizedClassifier;
+import com.jordanml.TransactionClassifier.NormalizedInputs;
+import com.jordanml.TransactionClassifier.ProjectedClassifier;
+import com.jordanml.TransactionClassifier.ProjectedDataset;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.TransactionClassifier;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.evaluation.Evaluation;
+import weka.classifiers.functions.MultilayerPerceptron;
+import weka.core.Instances;
+
+/**
+ * JUnit test class for the ProjectedDataset class.
+ *
+ */
+public class ProjectedDatasetTest
+{
+
+    static Dataset dataset;
+    static ProjectedDataset projection;
+    static Dataset materialized;
+
+    /**
+     * Generates a mixed dataset and projects it onto every other attribute
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(300, 8, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        generator.setDuplicateRate(0.5);
+        dataset = TestData.load(TestData.write("projected", generator));
+
+        BitSet reduct = new BitSet();
+        for (int i = 0; i < dataset.numAttributes() - 1; i += 2)
+            reduct.set(i);
+
+        projection = new ProjectedDataset(dataset, reduct);
+        materialized = projection.materialize();
+    }
+
+    /**
+     * Test that the view gives the same rows as the materialized copy
+     */
+    @Test
+    public void testRowSource()
+    {
+        Instances copy = materialized.getInstances();
+        int classCounts[] = copy.attributeStats(copy.classIndex()).nominalCounts;
+
+        assertEquals(copy.numInstances(), projection.numInstances());
+        assertEquals(copy.numAttributes(), projection.numAttributes());
+        assertEquals(copy.classIndex(), projection.classIndex());
+        assertArrayEquals(classCounts, projection.classCounts());
+
+        for (int row = 0; row < copy.numInstances(); row++)
+        {
+            assertEquals(copy.instance(row).weight(), projection.weight(row), 0.0);
+            assertEquals((int) copy.instance(row).classValue(), projection.classCode(row));
+
+            for (int col = 0; col < copy.numAttributes(); col++)
+                assertEquals(copy.instance(row).value(col), projection.value(row, col), 0.0);
+        }
+    }
+
+    /**
+     * Test that normalizing the view gives the same inputs as normalizing the copy
+     */
+    @Test
+    public void testNormalizedInputs()
+    {
+        NormalizedInputs viewInputs = projection.getNormalizedInputs();
+        NormalizedInputs copyInputs = materialized.getNormalizedInputs();
+
+        assertEquals(copyInputs.numRows(), viewInputs.numRows());
+        assertEquals(copyInputs.numInputs(), viewInputs.numInputs());
+        assertEquals(copyInputs.numAttributes(), viewInputs.numAttributes());
+        assertArrayEquals(copyInputs.getValues(), viewInputs.getValues(), 0.0f);
+        assertArrayEquals(copyInputs.getLabels(), viewInputs.getLabels());
+    }
+
+    /**
+     * Test that classifying raw instances gives the same distributions as
+     * classifying their projection
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProjectedClassifier() throws Exception
+    {
+        MultilayerPerceptron network = new MultilayerPerceptron();
+        network.setTrainingTime(20);
+        NormalizedClassifier classifier = new NormalizedClassifier(network);
+        classifier.buildClassifier(projection.getNormalizedInputs());
+
+        ProjectedClassifier projected = new ProjectedClassifier(classifier, projection);
+        Instances raw = dataset.getInstances();
+
+        for (int row = 0; row < raw.numInstances(); row++)
+            assertArrayEquals(classifier.distributionForInstance(projection.instance(row)), projected.distributionForInstance(raw.instance(row)), 0.0);
+    }
+
+    /**
+     * Test that collapsed rows have weights in proportion to the rows they
+     * replace, normalized to a mean of 1
+     */
+    @Test
+    public void testMaterializeDistinct()
+    {
+        Instances distinct = projection.materializeDistinct().getInstances();
+        Instances copy = materialized.getInstances();
+
+        assertTrue(distinct.numInstances() < copy.numInstances());
+        assertEquals(distinct.numInstances(), distinct.sumOfWeights(), 1e-9);
+
+        double scale = (double) copy.numInstances() / distinct.numInstances();
+
+        for (int i = 0; i < distinct.numInstances(); i++)
+        {
+            int count = 0;
+
+            for (int row = 0; row < copy.numInstances(); row++)
+            {
+                if (Arrays.equals(distinct.instance(i).toDoubleArray(), copy.instance(row).toDoubleArray()))
+                    count++;
+            }
+
+            assertEquals(count, distinct.instance(i).weight() * scale, 1e-9);
+        }
+    }
+
+    /**
+     * Test that a network trained on the collapsed rows is about as accurate as
+     * one trained on every row, for data where most rows are duplicates
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCollapsedAccuracy() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(3000, 4, 1);
+        generator.setNumericShare(0);
+        generator.setFraudRatio(0.2);
+        generator.setDuplicateRate(0.9);
+        Dataset duplicates = TestData.load(TestData.write("duplicates", generator));
+
+        BitSet reduct = new BitSet();
+        reduct.set(0, duplicates.numAttributes() - 1);
+        ProjectedDataset all = new ProjectedDataset(duplicates, reduct);
+
+        Classifier full = TransactionClassifier.trainNetwork(all.getNormalizedInputs(), 0.3f, 0.2f);
+        Classifier collapsed = TransactionClassifier.trainNetwork(all.materializeDistinct().getNormalizedInputs(), 0.3f, 0.2f);
+        Instances copy = all.materialize().getInstances();
+
+        Evaluation fullEval = new Evaluation(copy);
+        fullEval.evaluateModel(full, copy);
+        Evaluation collapsedEval = new Evaluation(copy);
+        collapsedEval.evaluateModel(collapsed, copy);
+        assertEquals(fullEval.pctCorrect(), collapsedEval.pctCorrect(), 5.0);
+    }
+}
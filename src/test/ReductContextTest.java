@@ -0,0 +1,160 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.BitSet;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.ReductContext;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.TransactionClassifier;
+
+import rseslib.processing.reducts.AllGlobalReductsProvider;
+import rseslib.structure.table.ArrayListDoubleDataTable;
+import rseslib.system.progress.StdOutProgress;
+
+/**
+ * JUnit test class for the ReductContext class.
+ *
+ */
+public class ReductContextTest
+{
+
+    static final int NUM_FOLDS = 3;
+
+    static String discPaths[];
+
+    /**
+     * Generates a dataset and discretizes the training set of each of its
+     * folds for reduct selection
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(120, 5, 1);
+        generator.setFraudRatio(0.3);
+        generator.setRedundancy(0.2);
+        Dataset dataset = TestData.load(TestData.write("reduct", generator));
+
+        int foldSizes[] = { 40, 40, 40 };
+        int firstIndex[] = TransactionClassifier.firstIndices(foldSizes);
+        discPaths = new String[NUM_FOLDS];
+
+        for (int i = 0; i < NUM_FOLDS; i++)
+        {
+            Dataset trainSet = TransactionClassifier.getTrainDataset(dataset, firstIndex[i], foldSizes[i]);
+            trainSet.setClassIndex(trainSet.numAttributes() - 1);
+
+            File discretized = File.createTempFile("reduct_fold_" + i, "_discretized.arff");
+            discretized.deleteOnExit();
+            discPaths[i] = discretized.getPath();
+
+            assertTrue(TransactionClassifier.discretizeForReducts(trainSet, discPaths[i]));
+        }
+    }
+
+    /**
+     * Test that folds finding their reducts at the same time, each in its own
+     * context, get the reducts the per-fold computation of the baseline gets
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesBaseline() throws Exception
+    {
+        for (int reductMode = 1; reductMode <= 2; reductMode++)
+        {
+            final int mode = reductMode;
+            final BitSet reducts[] = new BitSet[NUM_FOLDS];
+            Thread folds[] = new Thread[NUM_FOLDS];
+
+            for (int i = 0; i < NUM_FOLDS; i++)
+            {
+                final int fold = i;
+                folds[i] = new Thread()
+                {
+                    public void run()
+                    {
+                        reducts[fold] = new ReductContext("fold_" + fold).findReduct(discPaths[fold], mode);
+                    }
+                };
+                folds[i].start();
+            }
+
+            for (Thread fold : folds)
+                fold.join();
+
+            for (int i = 0; i < NUM_FOLDS; i++)
+            {
+                assertNotNull(reducts[i]);
+                assertEquals("mode " + mode + ", fold " + i, baselineReduct(discPaths[i], mode), reducts[i]);
+            }
+        }
+    }
+
+    /**
+     * Test that messages are held back until flush and printed with the task name
+     */
+    @Test
+    public void testFlush()
+    {
+        ReductContext context = new ReductContext("fold_0");
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+        System.setOut(new PrintStream(captured, true));
+        try
+        {
+            context.log("first");
+            context.log("second");
+            assertEquals(0, captured.size());
+
+            context.flush();
+            context.flush();
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+
+        assertEquals("[fold_0] first" + System.lineSeparator() + "[fold_0] second" + System.lineSeparator(), captured.toString());
+    }
+
+    /**
+     * Finds the first reduct the way the baseline did for every fold: the
+     * provider settings are loaded for the call and progress goes to stdout
+     *
+     * @param discPath   path to the discretized data
+     * @param reductMode the type of discernibility matrix to use (1 - mAll or 2 - mDec)
+     * @return the first reduct
+     * @throws java.lang.Exception
+     */
+    private static BitSet baselineReduct(String discPath, int reductMode) throws Exception
+    {
+        Properties properties = null;
+
+        if (reductMode == 2)
+        {
+            properties = new Properties();
+
+            try (InputStream fileStream = TransactionClassifier.class.getResourceAsStream("/discernibility-matrix-dec.properties"))
+            {
+                properties.load(fileStream);
+            }
+        }
+
+        ArrayListDoubleDataTable table = new ArrayListDoubleDataTable(new File(discPath), new StdOutProgress());
+
+        return new AllGlobalReductsProvider(properties, table).getReducts().iterator().next();
+    }
+}
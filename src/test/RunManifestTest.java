@@ -0,0 +1,199 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.CrossValidationThread;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.FoldAdmission;
+import com.jordanml.TransactionClassifier.PipelineOptions;
+import com.jordanml.TransactionClassifier.RunManifest;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.TransactionClassifier;
+
+/**
+ * JUnit test class for the RunManifest class.
+ *
+ */
+public class RunManifestTest
+{
+
+    static Dataset dataset;
+    static String manifestPath;
+
+    /**
+     * Generates a small dataset and picks a path for the manifest
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        dataset = TestData.load(TestData.write("manifest", new SyntheticDatasetGenerator(100, 4, 1)));
+
+        File manifest = File.createTempFile("run", "_manifest.properties");
+        manifest.delete();
+        manifest.deleteOnExit();
+        manifestPath = manifest.getPath();
+    }
+
+    /**
+     * Test that decoding an encoded reduct gives it back
+     */
+    @Test
+    public void testReductRoundTrip()
+    {
+        BitSet reduct = new BitSet();
+        reduct.set(0);
+        reduct.set(3);
+        reduct.set(17);
+
+        assertEquals("0,3,17", RunManifest.encodeReduct(reduct));
+        assertEquals(reduct, RunManifest.decodeReduct(RunManifest.encodeReduct(reduct)));
+        assertEquals(new BitSet(), RunManifest.decodeReduct(RunManifest.encodeReduct(new BitSet())));
+        assertNull(RunManifest.decodeReduct(null));
+    }
+
+    /**
+     * Test that recorded stages survive a reload and that resuming with
+     * different parameters is refused
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParameterMismatch() throws Exception
+    {
+        PipelineOptions options = new PipelineOptions();
+        RunManifest manifest = TransactionClassifier.openManifest(manifestPath, dataset, 3, 0.3f, 0.2f, 1, options);
+        assertNotNull(manifest);
+        manifest.setStage(1, RunManifest.STAGE_REDUCT, "0,2");
+
+        options.setResume(true);
+        RunManifest resumed = TransactionClassifier.openManifest(manifestPath, dataset, 3, 0.3f, 0.2f, 1, options);
+        assertNotNull(resumed);
+        assertEquals("0,2", resumed.getStage(1, RunManifest.STAGE_REDUCT));
+        assertFalse(resumed.isComplete(1));
+
+        assertNull(TransactionClassifier.openManifest(manifestPath, dataset, 3, 0.5f, 0.2f, 1, options));
+        assertNull(TransactionClassifier.openManifest(manifestPath, dataset, 5, 0.3f, 0.2f, 1, options));
+
+        options.setSeed(options.getSeed() + 1);
+        assertNull(TransactionClassifier.openManifest(manifestPath, dataset, 3, 0.3f, 0.2f, 1, options));
+
+        // A refused resume leaves the recorded run as it was
+        assertEquals("0,2", RunManifest.load(manifestPath).getStage(1, RunManifest.STAGE_REDUCT));
+    }
+
+    /**
+     * Test that a recorded fold file or stage file is only reused while its
+     * contents are unchanged, even by an edit that keeps the size
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFileChecksums() throws Exception
+    {
+        File fold = File.createTempFile("checksum", ".arff");
+        fold.deleteOnExit();
+        Files.write(fold.toPath(), "0,1,0\n".getBytes("UTF-8"));
+
+        RunManifest manifest = new RunManifest(manifestPath);
+        manifest.setFoldPaths(new String[] { fold.getPath() }, new int[] { 1 });
+        manifest.setFileStage(0, RunManifest.STAGE_CUT_POINTS, fold.getPath());
+
+        RunManifest reloaded = RunManifest.load(manifestPath);
+        assertTrue(reloaded.isFoldUnchanged(0));
+        assertEquals(fold.getPath(), reloaded.getFileStage(0, RunManifest.STAGE_CUT_POINTS));
+        assertNull(reloaded.getFileStage(1, RunManifest.STAGE_CUT_POINTS));
+
+        Files.write(fold.toPath(), "0,1,1\n".getBytes("UTF-8"));
+        assertFalse(reloaded.isFoldUnchanged(0));
+        assertNull(reloaded.getFileStage(0, RunManifest.STAGE_CUT_POINTS));
+
+        fold.delete();
+        assertFalse(reloaded.isFoldUnchanged(0));
+    }
+
+    /**
+     * Test that a fold resumed after discretization finds its reduct on the
+     * recorded discretized training set without discretizing again
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReusesCutPoints() throws Exception
+    {
+        String name = manifestPath + "_fold_0";
+        File results = File.createTempFile("results", "");
+        results.delete();
+        results.deleteOnExit();
+        new File(name + ".model").deleteOnExit();
+
+        RunManifest first = new RunManifest(manifestPath);
+        runFold(first, results.getPath(), name);
+
+        String discPath = first.getFileStage(0, RunManifest.STAGE_CUT_POINTS);
+        assertNotNull(discPath);
+        new File(discPath).deleteOnExit();
+        assertNotNull(first.getStage(0, RunManifest.STAGE_REDUCT));
+
+        // An interrupted run that only got as far as discretizing
+        File resumedPath = File.createTempFile("resumed", "_manifest.properties");
+        resumedPath.deleteOnExit();
+        RunManifest resumed = new RunManifest(resumedPath.getPath());
+        resumed.setFileStage(0, RunManifest.STAGE_CUT_POINTS, discPath);
+
+        long modified = new File(discPath).lastModified() - 10000;
+        new File(discPath).setLastModified(modified);
+        results.delete();
+        runFold(resumed, results.getPath(), name);
+
+        assertEquals(modified, new File(discPath).lastModified());
+        assertEquals(first.getStage(0, RunManifest.STAGE_REDUCT), resumed.getStage(0, RunManifest.STAGE_REDUCT));
+        assertTrue(resumed.isComplete(0));
+    }
+
+    /**
+     * Runs the first fold of a 3-fold split of the dataset
+     *
+     * @param manifest    the manifest of the run
+     * @param resultsPath the path to save the fold's results to
+     * @param name        base name for files written for the fold
+     */
+    private static void runFold(RunManifest manifest, String resultsPath, String name)
+    {
+        CrossValidationThread thread = new CrossValidationThread();
+        thread.init(resultsPath, dataset, 0, 30, name, 0, 0.3f, 0.2f, 1, new FoldAdmission(Long.MAX_VALUE), new PipelineOptions(), manifest, 1);
+        thread.run();
+    }
+
+    /**
+     * Test that a fold whose results were recorded is not run again
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSkipsCompleteFold() throws Exception
+    {
+        File results = File.createTempFile("results", "");
+        results.delete();
+        results.deleteOnExit();
+
+        RunManifest manifest = new RunManifest(manifestPath);
+        manifest.setStage(0, RunManifest.STAGE_RESULTS, results.getPath());
+
+        CrossValidationThread thread = new CrossValidationThread();
+        thread.init(results.getPath(), dataset, 0, 30, manifestPath + "_fold_0", 0, 0.3f, 0.2f, 1, new FoldAdmission(Long.MAX_VALUE), new PipelineOptions(), manifest, 1);
+        thread.run();
+
+        assertFalse(results.exists());
+        assertNull(manifest.getStage(0, RunManifest.STAGE_REDUCT));
+        assertNull(manifest.getStage(0, RunManifest.STAGE_MODEL));
+    }
+}
@@ -0,0 +1,127 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.FoldExporter;
+import com.jordanml.TransactionClassifier.PipelineOptions;
+import com.jordanml.TransactionClassifier.ScalingBenchmark;
+import com.jordanml.TransactionClassifier.ScalingBenchmark.Run;
+
+/**
+ * JUnit test class for the ScalingBenchmark class.
+ *
+ */
+public class ScalingBenchmarkTest
+{
+
+    static final int SIZES[] = { 30 };
+    static final int FOLDS[] = { 2 };
+    static final int THREADS[] = { 1, 2 };
+
+    static String savePath;
+    static String resultsPath;
+
+    /**
+     * Picks an empty directory for the datasets, folds and results
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        File directory = Files.createTempDirectory("scaling").toFile();
+        directory.deleteOnExit();
+        savePath = directory.getPath() + File.separator + "data";
+        resultsPath = directory.getPath() + File.separator + "res";
+    }
+
+    /**
+     * Test that the weak scaling size grows with the thread count
+     */
+    @Test
+    public void testWeakSize()
+    {
+        assertEquals(30, ScalingBenchmark.weakSize(30, 1, 1));
+        assertEquals(60, ScalingBenchmark.weakSize(30, 2, 1));
+        assertEquals(45, ScalingBenchmark.weakSize(30, 3, 2));
+    }
+
+    /**
+     * Test that a run that fails is skipped: find does not return it, the
+     * runs the matrix needs are still made, and the CSV report has one row
+     * per recorded run
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFailedRunSkipped() throws Exception
+    {
+        // A directory where the first fold of the 2 thread run goes makes that run fail
+        File blocked = new File(FoldExporter.foldPath(savePath + "_n30_k2_t2", 0));
+        assertTrue(blocked.mkdir());
+        blocked.deleteOnExit();
+
+        ScalingBenchmark benchmark = new ScalingBenchmark(savePath, resultsPath, 4, 0.3f, 0.2f, 2, new PipelineOptions());
+        benchmark.run(SIZES, FOLDS, THREADS);
+
+        List<Run> runs = benchmark.getRuns();
+
+        // The matrix run with 1 thread, and the weak scaling run of 60 instances with 2 threads
+        assertEquals(2, runs.size());
+        assertSame(runs.get(0), benchmark.find(30, 2, 1));
+        assertNull(benchmark.find(30, 2, 2));
+        assertSame(runs.get(1), benchmark.find(60, 2, 2));
+        assertNull(benchmark.find(60, 2, 1));
+
+        for (Run run : runs)
+        {
+            assertTrue(run.wallMs > 0);
+            assertTrue(run.peakHeapMB > 0);
+        }
+
+        File report = File.createTempFile("scaling", ".csv");
+        report.deleteOnExit();
+        benchmark.saveRuns(report.getPath());
+
+        List<String> lines = Files.readAllLines(report.toPath());
+        String header[] = lines.get(0).split(",");
+
+        assertEquals(3, lines.size());
+        assertEquals("instances", header[0]);
+        assertEquals("bottleneck", header[header.length - 1]);
+
+        for (int i = 1; i < lines.size(); i++)
+        {
+            String columns[] = lines.get(i).split(",", -1);
+            Run run = runs.get(i - 1);
+
+            assertEquals(header.length, columns.length);
+            assertEquals(Integer.toString(run.instances), columns[0]);
+            assertEquals(Integer.toString(run.folds), columns[1]);
+            assertEquals(Integer.toString(run.threads), columns[2]);
+            assertEquals(run.bottleneck(), columns[columns.length - 1]);
+        }
+
+        assertTrue(benchmark.weakScaling(SIZES, FOLDS, THREADS).contains(run(60, 2)));
+        assertFalse(benchmark.strongScaling(SIZES, FOLDS, THREADS).contains(run(30, 2)));
+    }
+
+    /**
+     * Gets the start of a scaling table row
+     *
+     * @param instances the size of the dataset
+     * @param threads   the thread count
+     * @return the first columns of the row
+     */
+    private static String run(int instances, int threads)
+    {
+        return String.format("%12d %6d %8d ", instances, 2, threads);
+    }
+}
@@ -0,0 +1,76 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.ShardedEvaluator;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+
+/**
+ * JUnit test class for the ShardedEvaluator class.
+ *
+ */
+public class ShardedEvaluatorTest
+{
+
+    static Instances train;
+    static Instances test;
+    static Classifier model;
+
+    /**
+     * Generates a mixed dataset, trains a tree on its first half and weights
+     * some of the test rows
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(12000, 6, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        Instances data = TestData.generate("sharded", generator);
+        train = new Instances(data, 0, 2000);
+        test = new Instances(data, 2000, data.numInstances() - 2000);
+
+        for (int i = 0; i < test.numInstances(); i += 5)
+            test.instance(i).setWeight(3.0);
+
+        model = new J48();
+        model.buildClassifier(train);
+    }
+
+    /**
+     * Test that evaluating in shards gives the statistics evaluateModel gives
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesEvaluateModel() throws Exception
+    {
+        Evaluation expected = new Evaluation(train);
+        expected.evaluateModel(model, test);
+
+        for (int numThreads : new int[] {1, 3, 8})
+        {
+            Evaluation sharded = new ShardedEvaluator(model, numThreads).evaluate(test);
+            double expectedMatrix[][] = expected.confusionMatrix();
+            double shardedMatrix[][] = sharded.confusionMatrix();
+
+            for (int i = 0; i < expectedMatrix.length; i++)
+                assertArrayEquals(expectedMatrix[i], shardedMatrix[i], 1e-9);
+
+            assertEquals(expected.numInstances(), sharded.numInstances(), 1e-9);
+            assertEquals(expected.pctCorrect(), sharded.pctCorrect(), 1e-9);
+            assertEquals(expected.areaUnderROC(1), sharded.areaUnderROC(1), 1e-9);
+            assertEquals(expected.rootMeanSquaredError(), sharded.rootMeanSquaredError(), 1e-9);
+        }
+    }
+}
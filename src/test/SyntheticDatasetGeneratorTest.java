@@ -0,0 +1,54 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+/**
+ * JUnit test class for the SyntheticDatasetGenerator class.
+ *
+ */
+public class SyntheticDatasetGeneratorTest
+{
+
+    /**
+     * Test that the generated file only depends on the seed, not on the
+     * number of threads generating its chunks
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testIndependentOfThreads() throws Exception
+    {
+        byte single[] = generate(1, 1);
+
+        assertTrue(Arrays.equals(single, generate(4, 1)));
+        assertTrue(Arrays.equals(single, generate(7, 1)));
+        assertFalse(Arrays.equals(single, generate(4, 2)));
+    }
+
+    /**
+     * Generates a mixed dataset of many small chunks
+     *
+     * @param numThreads the number of chunks generated at the same time
+     * @param seed       the seed of the generator
+     * @return the contents of the generated file
+     * @throws java.lang.Exception
+     */
+    private static byte[] generate(int numThreads, long seed) throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(2000, 8, numThreads);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.1);
+        generator.setDuplicateRate(0.3);
+        generator.setSeed(seed);
+        generator.setChunkSize(97);
+        return Files.readAllBytes(new File(TestData.write("generated", generator)).toPath());
+    }
+}
@@ -0,0 +1,68 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.jordanml.TransactionClassifier.BinaryDatasetCache;
+import com.jordanml.TransactionClassifier.Dataset;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+
+import weka.core.Instances;
+
+/**
+ * Generated datasets shared by the test classes.
+ *
+ */
+public class TestData
+{
+
+    /**
+     * Writes a generated dataset to a temporary ARFF file. The file and its
+     * binary cache are deleted when the JVM exits.
+     *
+     * @param prefix    the prefix of the file name
+     * @param generator the configured generator
+     * @return the path of the file
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static String write(String prefix, SyntheticDatasetGenerator generator) throws IOException, InterruptedException
+    {
+        File file = File.createTempFile(prefix, ".arff");
+        file.deleteOnExit();
+        new File(BinaryDatasetCache.cachePath(file.getPath())).deleteOnExit();
+
+        generator.write(file.getPath());
+
+        return file.getPath();
+    }
+
+    /**
+     * Loads a dataset with its last attribute as the class
+     *
+     * @param path the path of the file
+     * @return the dataset
+     */
+    public static Dataset load(String path)
+    {
+        Dataset dataset = new Dataset(path);
+        dataset.setClassIndex(dataset.numAttributes() - 1);
+
+        return dataset;
+    }
+
+    /**
+     * Writes a generated dataset to a temporary ARFF file and loads it with
+     * its last attribute as the class
+     *
+     * @param prefix    the prefix of the file name
+     * @param generator the configured generator
+     * @return the instances of the dataset
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static Instances generate(String prefix, SyntheticDatasetGenerator generator) throws IOException, InterruptedException
+    {
+        return load(write(prefix, generator)).getInstances();
+    }
+}
@@ -8,7 +8,19 @@ public class TestRunner
 {
     public static void main(String[] args)
     {
-        Result result = JUnitCore.runClasses(DatasetTest.class, DatasetSplitterTest.class);
+        Result result = JUnitCore.runClasses(DatasetTest.class, DatasetSplitterTest.class, ColumnarDatasetTest.class,
+                FeatureTransformerTest.class, BinaryDatasetCacheTest.class,
+                ChunkedDatasetReaderTest.class, ProjectedDatasetTest.class,
+                InputNormalizerTest.class, ClassUndersamplerTest.class,
+                FoldExporterTest.class, PartitionedSplitterTest.class,
+                RunManifestTest.class, SyntheticDatasetGeneratorTest.class,
+                ShardedEvaluatorTest.class, PredictionStoreTest.class,
+                ThresholdAnalysisTest.class, CascadeClassifierTest.class,
+                OffHeapDatasetTest.class, FoldAdmissionTest.class,
+                AttributeStatisticsTest.class, PresortedDiscretizeTest.class,
+                CrossValidationSchedulerTest.class, WorkerPoolTest.class,
+                ReductContextTest.class, MetricsTest.class,
+                ScalingBenchmarkTest.class);
           
         for (Failure failure : result.getFailures()) 
         {
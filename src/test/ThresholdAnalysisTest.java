@@ -0,0 +1,142 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.PredictionStore;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.ThresholdAnalysis;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.evaluation.ThresholdCurve;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ * JUnit test class for the ThresholdAnalysis class.
+ *
+ */
+public class ThresholdAnalysisTest
+{
+
+    static Instances train;
+    static Instances test;
+
+    /**
+     * Generates a mixed dataset, splits it in halves and weights some of the
+     * test rows
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(4000, 6, 1);
+        generator.setNumericShare(0.5);
+        generator.setFraudRatio(0.2);
+        generator.setDuplicateRate(0.3);
+        Instances data = TestData.generate("threshold", generator);
+        train = new Instances(data, 0, 2000);
+        test = new Instances(data, 2000, 2000);
+
+        for (int i = 0; i < test.numInstances(); i += 7)
+            test.instance(i).setWeight(2.5);
+    }
+
+    /**
+     * Test the area under the ROC curve and the counts at every threshold
+     * against Weka's ThresholdCurve, for a model with many distinct
+     * probabilities and one with many ties
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMatchesThresholdCurve() throws Exception
+    {
+        NaiveBayes bayes = new NaiveBayes();
+        bayes.buildClassifier(train);
+        assertMatchesThresholdCurve(bayes);
+
+        J48 tree = new J48();
+        tree.buildClassifier(train);
+        assertMatchesThresholdCurve(tree);
+    }
+
+    /**
+     * Test that the cost at the default threshold of 0.5 is the cost of
+     * Weka's confusion matrix, including probabilities tied at 0.5
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCostAtDefaultThreshold() throws Exception
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("amount"));
+        attributes.add(new Attribute("class", Arrays.asList("n", "f")));
+        Instances header = new Instances("ties", attributes, 0);
+        header.setClassIndex(1);
+
+        Evaluation eval = new Evaluation(header);
+        double probabilities[] = {0.1, 0.5, 0.5, 0.5000001, 0.9, 0.4999999, 0.5, 0.7};
+        double classes[] = {0, 0, 1, 1, 1, 0, 1, 0};
+
+        for (int i = 0; i < probabilities.length; i++)
+        {
+            DenseInstance instance = new DenseInstance(1.0 + i % 3, new double[] {i, classes[i]});
+            instance.setDataset(header);
+            eval.evaluateModelOnceAndRecordPrediction(new double[] {1 - probabilities[i], probabilities[i]}, instance);
+        }
+
+        ThresholdAnalysis analysis = new ThresholdAnalysis(PredictionStore.fromEvaluation(eval, 1));
+        int point = analysis.point(0.5);
+
+        assertEquals(eval.numTruePositives(1), analysis.confusionMatrix(point)[1][1], 1e-12);
+        assertEquals(eval.numFalsePositives(1), analysis.confusionMatrix(point)[0][1], 1e-12);
+        assertEquals(3 * eval.numFalsePositives(1) + 7 * eval.numFalseNegatives(1), analysis.cost(point, 3, 7), 1e-12);
+    }
+
+    /**
+     * Checks an evaluation of a model on the test set against ThresholdCurve
+     *
+     * @param model the built model
+     * @throws java.lang.Exception
+     */
+    private static void assertMatchesThresholdCurve(Classifier model) throws Exception
+    {
+        Evaluation eval = new Evaluation(train);
+        eval.evaluateModel(model, test);
+
+        ThresholdAnalysis analysis = new ThresholdAnalysis(PredictionStore.fromEvaluation(eval, 1));
+        Instances curve = new ThresholdCurve().getCurve(eval.predictions(), 1);
+
+        assertEquals(ThresholdCurve.getROCArea(curve), analysis.areaUnderROC(), 1e-9);
+        assertEquals(eval.areaUnderROC(1), analysis.areaUnderROC(), 1e-9);
+
+        int thresholdIndex = curve.attribute(ThresholdCurve.THRESHOLD_NAME).index();
+        int truePositivesIndex = curve.attribute(ThresholdCurve.TRUE_POS_NAME).index();
+        int falsePositivesIndex = curve.attribute(ThresholdCurve.FALSE_POS_NAME).index();
+
+        // ThresholdCurve predicts positive at or above each threshold
+        for (int i = 0; i < curve.numInstances(); i++)
+        {
+            double threshold = curve.instance(i).value(thresholdIndex);
+            int point = analysis.numPoints() - 1;
+
+            while (point > 0 && analysis.threshold(point) < threshold)
+                point--;
+
+            assertEquals(curve.instance(i).value(truePositivesIndex), analysis.confusionMatrix(point)[1][1], 1e-9);
+            assertEquals(curve.instance(i).value(falsePositivesIndex), analysis.confusionMatrix(point)[0][1], 1e-9);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jordanml.TransactionClassifier.CrossValidationScheduler.FoldResult;
+import com.jordanml.TransactionClassifier.FoldWorker;
+import com.jordanml.TransactionClassifier.PipelineOptions;
+import com.jordanml.TransactionClassifier.SyntheticDatasetGenerator;
+import com.jordanml.TransactionClassifier.WorkerPool;
+
+/**
+ * JUnit test class for the WorkerPool and FoldWorker classes.
+ *
+ */
+public class WorkerPoolTest
+{
+
+    static String spoolPath;
+    static String trainPath;
+    static String testPath;
+
+    /**
+     * Generates a training and a test set and picks an empty spool directory
+     *
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(80, 4, 1);
+        generator.setFraudRatio(0.3);
+        trainPath = TestData.write("pooltrain", generator);
+
+        generator = new SyntheticDatasetGenerator(30, 4, 1);
+        generator.setFraudRatio(0.3);
+        generator.setSeed(2);
+        testPath = TestData.write("pooltest", generator);
+
+        File spool = Files.createTempDirectory("spool").toFile();
+        spool.deleteOnExit();
+        spoolPath = spool.getPath();
+    }
+
+    /**
+     * Test that workers running together each claim different tasks and
+     * together finish every task once
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWorkersShareTasks() throws Exception
+    {
+        final int numFolds = 4;
+        WorkerPool pool = new WorkerPool(spoolPath, 2, 0, new PipelineOptions());
+
+        for (int fold = 0; fold < numFolds; fold++)
+            submit(pool, fold);
+
+        final AtomicInteger finished = new AtomicInteger();
+        Thread workers[] = new Thread[2];
+
+        for (int i = 0; i < workers.length; i++)
+        {
+            final int workerId = i;
+            workers[i] = new Thread()
+            {
+                public void run()
+                {
+                    finished.addAndGet(new FoldWorker(spoolPath, workerId, new PipelineOptions()).run());
+                }
+            };
+            workers[i].start();
+        }
+
+        for (Thread worker : workers)
+            worker.join();
+
+        assertEquals(numFolds, finished.get());
+        assertEquals(0, new File(spoolPath, WorkerPool.PENDING).list().length);
+        assertEquals(0, new File(spoolPath, WorkerPool.RUNNING).list().length);
+        assertEquals(0, new File(spoolPath, WorkerPool.FAILED).list().length);
+
+        List<FoldResult> results = pool.collect(numFolds);
+
+        for (int fold = 0; fold < numFolds; fold++)
+        {
+            assertEquals(fold, results.get(fold).getFold());
+            assertNotNull(results.get(fold).getEvaluation());
+            assertTrue(new File(new File(spoolPath, WorkerPool.DONE), WorkerPool.taskName(fold) + WorkerPool.TASK_SUFFIX).exists());
+        }
+    }
+
+    /**
+     * Test that a task failing in a worker JVM ends the run instead of
+     * leaving it waiting, and that the worker's exception is reported
+     *
+     * @throws java.lang.Exception
+     */
+    @Test(timeout = 120000)
+    public void testFailingTask() throws Exception
+    {
+        WorkerPool pool = new WorkerPool(spoolPath, 2, 0, new PipelineOptions());
+        submit(pool, 0);
+        submit(pool, 1);
+
+        // A task no worker can run
+        File failing = new File(new File(spoolPath, WorkerPool.PENDING), WorkerPool.taskName(1) + WorkerPool.TASK_SUFFIX);
+        Properties task = WorkerPool.readTask(failing);
+        task.setProperty("learningRate", "fast");
+        WorkerPool.writeTask(task, failing);
+
+        List<FoldResult> results = pool.run(2);
+
+        assertNotNull(results.get(0).getEvaluation());
+        assertNull(results.get(1).getEvaluation());
+        assertNull(pool.getError(0));
+        assertTrue(pool.getError(1), pool.getError(1).contains("NumberFormatException"));
+        assertTrue(new File(new File(spoolPath, WorkerPool.FAILED), WorkerPool.taskName(1) + WorkerPool.TASK_SUFFIX).exists());
+        assertEquals(0, new File(spoolPath, WorkerPool.RUNNING).list().length);
+    }
+
+    /**
+     * Adds a task on the generated training and test set
+     *
+     * @param pool the pool to add the task to
+     * @param fold the fold number
+     * @throws java.lang.Exception
+     */
+    private static void submit(WorkerPool pool, int fold) throws Exception
+    {
+        pool.submit(fold, trainPath, testPath, spoolPath + File.separator + "fold_" + fold, 0.3f, 0.2f, 2);
+    }
+}